@@ -18,8 +18,9 @@ package net.paoding.rose.jade.context.spring;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.sql.DataSource;
@@ -35,6 +36,7 @@ import net.paoding.rose.jade.statement.StatementWrapperProvider;
 import net.paoding.rose.jade.statement.cached.CacheProvider;
 import net.paoding.rose.load.ResourceRef;
 import net.paoding.rose.load.RoseScanner;
+import net.paoding.rose.load.index.ComponentIndex;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.logging.Log;
@@ -305,7 +307,7 @@ public class JadeBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
         final List<ResourceRef> resources = findRoseResources();
 
         // 2、从获取的资源(resources)中，把rose=*、rose=DAO、rose=dao的筛选出来，并以URL的形式返回
-        List<String> urls = findJadeResources(resources);
+        Map<String, ResourceRef> urls = findJadeResources(resources);
 
         // 3、从每个URL中找出符合规范的DAO接口，并将之以JadeFactoryBean的形式注册到Spring容器中
         findJadeDAODefinitions(beanFactory, urls);
@@ -333,18 +335,18 @@ public class JadeBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
     /*
      * 找出含有dao、DAO标识的url
      */
-    private List<String> findJadeResources(final List<ResourceRef> resources) {
-        List<String> urls = new LinkedList<String>();
+    private Map<String, ResourceRef> findJadeResources(final List<ResourceRef> resources) {
+        Map<String, ResourceRef> urls = new LinkedHashMap<String, ResourceRef>();
         for (ResourceRef ref : resources) {
             if (ref.hasModifier("dao") || ref.hasModifier("DAO")) {
                 try {
                     Resource resource = ref.getResource();
                     File resourceFile = resource.getFile();
                     if (resourceFile.isFile()) {
-                        urls.add("jar:file:" + resourceFile.toURI().getPath()
-                                + ResourceUtils.JAR_URL_SEPARATOR);
+                        urls.put("jar:file:" + resourceFile.toURI().getPath()
+                                + ResourceUtils.JAR_URL_SEPARATOR, ref);
                     } else if (resourceFile.isDirectory()) {
-                        urls.add(resourceFile.toURI().toString());
+                        urls.put(resourceFile.toURI().toString(), ref);
                     }
                 } catch (IOException e) {
                     throw new ApplicationContextException("error on resource.getFile", e);
@@ -352,7 +354,7 @@ public class JadeBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
             }
         }
         if (logger.isInfoEnabled()) {
-            logger.info("[jade] found " + urls.size() + " jade urls: " + urls);
+            logger.info("[jade] found " + urls.size() + " jade urls: " + urls.keySet());
         }
         return urls;
     }
@@ -361,16 +363,31 @@ public class JadeBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
      * 从获得的目录或jar包中寻找出符合规范的DAO接口，并注册到Spring容器中
      */
     private void findJadeDAODefinitions(ConfigurableListableBeanFactory beanFactory,
-            List<String> urls) {
+            Map<String, ResourceRef> urls) {
         JadeComponentProvider provider = new JadeComponentProvider();
         Set<String> daoClassNames = new HashSet<String>();
 
-        for (String url : urls) {
-            if (logger.isInfoEnabled()) {
-                logger.info("[jade] call 'jade/find'");
+        for (Map.Entry<String, ResourceRef> entry : urls.entrySet()) {
+            String url = entry.getKey();
+            ComponentIndex index;
+            try {
+                index = RoseScanner.getInstance().getComponentIndex(entry.getValue());
+            } catch (IOException e) {
+                throw new ApplicationContextException("error on getComponentIndex", e);
+            }
+            Set<BeanDefinition> dfs;
+            if (index != null) {
+                // 编译时生成的索引已经列出了DAO接口，不必扫描
+                if (logger.isInfoEnabled()) {
+                    logger.info("[jade] use component index of '" + url + "'");
+                }
+                dfs = provider.findIndexedComponents(url, index);
+            } else {
+                if (logger.isInfoEnabled()) {
+                    logger.info("[jade] call 'jade/find'");
+                }
+                dfs = provider.findCandidateComponents(url);
             }
-
-            Set<BeanDefinition> dfs = provider.findCandidateComponents(url);
             if (logger.isInfoEnabled()) {
                 logger.info("[jade] found " + dfs.size() + " beanDefinition from '" + url + "'");
             }
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Set;
 
 import net.paoding.rose.jade.annotation.DAO;
+import net.paoding.rose.load.index.ComponentIndex;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -207,6 +208,41 @@ public class JadeComponentProvider implements ResourceLoaderAware {
         return candidates;
     }
 
+    /**
+     * 按编译时生成的组件索引返回一个目录或jar包下符合Jade规范的DAO接口：只读取索引中列出的DAO接口，
+     * 不必在整个目录或jar包中查找*DAO.class。
+     * <p>
+     * 索引按默认的resourcePattern(**&#47;*DAO.class)生成，设置了其他resourcePattern时应使用
+     * {@link #findCandidateComponents(String)}。
+     * 
+     * @see ComponentIndex
+     */
+    public Set<BeanDefinition> findIndexedComponents(String uriPrefix, ComponentIndex index) {
+        if (!uriPrefix.endsWith("/")) {
+            uriPrefix = uriPrefix + "/";
+        }
+        Set<BeanDefinition> candidates = new LinkedHashSet<BeanDefinition>();
+        try {
+            for (String className : index.getClassNames(ComponentIndex.DAO)) {
+                Resource resource = this.resourcePatternResolver.getResource(uriPrefix
+                        + className.replace('.', '/') + ".class");
+                MetadataReader metadataReader = metadataReaderFactory.getMetadataReader(resource);
+                ScannedGenericBeanDefinition sbd = new ScannedGenericBeanDefinition(metadataReader);
+                sbd.setResource(resource);
+                sbd.setSource(resource);
+                if (isCandidateComponent(metadataReader) && sbd.getMetadata().isInterface()
+                        && sbd.getMetadata().isIndependent()) {
+                    candidates.add(sbd);
+                } else if (logger.isDebugEnabled()) {
+                    logger.debug("Ignored indexed class: " + resource);
+                }
+            }
+        } catch (IOException ex) {
+            throw new BeanDefinitionStoreException("I/O failure during jade scanning", ex);
+        }
+        return candidates;
+    }
+
     /**
      * Determine whether the given class does not match any exclude filter
      * and does match at least one include filter.
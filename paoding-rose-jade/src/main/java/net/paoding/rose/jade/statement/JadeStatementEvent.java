@@ -0,0 +1,55 @@
+/*
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License i distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.jade.statement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次DAO语句的执行，事件的持续时间是 {@link Querier} 执行的时间
+ * 
+ */
+@Name("net.paoding.rose.JadeStatement")
+@Label("Jade Statement")
+@Category( { "Rose", "Jade" })
+@Description("A statement executed by a jade DAO")
+@StackTrace(false)
+class JadeStatementEvent extends Event {
+
+    @Label("DAO Method")
+    String method;
+
+    @Label("SQL Type")
+    String sqlType;
+
+    @Label("SQL Hash")
+    @Description("Hash code of the executed SQL, the same for the same SQL")
+    int sqlHash;
+
+    @Label("Rows")
+    @Description("Rows selected or updated, -1 if unknown")
+    long rows;
+
+    @Label("Data Source")
+    String dataSource;
+
+    @Label("Success")
+    boolean success;
+}
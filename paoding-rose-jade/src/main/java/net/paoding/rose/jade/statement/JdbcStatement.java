@@ -153,7 +153,7 @@ public class JdbcStatement implements Statement {
                 runtimes.add(runtime);
                 index++;
             }
-            result = querier.execute(sqlType, runtimes.toArray(new StatementRuntime[0]));
+            result = query(runtimes.toArray(new StatementRuntime[0]));
             result = afterInvocationCallback.execute(runtimes.get(0), result);
         } else {
             StatementRuntime runtime = new StatementRuntimeImpl(metaData, parameters);
@@ -161,13 +161,33 @@ public class JdbcStatement implements Statement {
                 interpreter.interpret(runtime);
             }
             log(parameters, runtime);
-            result = querier.execute(sqlType, runtime);
+            result = query(runtime);
             result = afterInvocationCallback.execute(runtime, result);
         }
         return result;
 
     }
 
+    private Object query(StatementRuntime... runtimes) {
+        // JFR的JadeStatement事件，没有开启时为null
+        final Object event = StatementEvents.getInstance().begin();
+        if (event == null) {
+            return querier.execute(sqlType, runtimes);
+        }
+        for (StatementRuntime runtime : runtimes) {
+            runtime.setAttribute(StatementEvents.EVENT_ATTRIBUTE, event);
+        }
+        Object result = null;
+        boolean success = false;
+        try {
+            result = querier.execute(sqlType, runtimes);
+            success = true;
+            return result;
+        } finally {
+            StatementEvents.getInstance().commit(event, runtimes[0], sqlType, result, success);
+        }
+    }
+
     private void log(Map<String, Object> parameters, StatementRuntime runtime) {
         if (sqlLogger.isInfoEnabled()) {
             String sql = runtime.getSQL();
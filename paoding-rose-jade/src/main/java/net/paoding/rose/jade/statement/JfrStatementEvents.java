@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License i distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.jade.statement;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import jdk.jfr.EventType;
+import net.paoding.rose.jade.annotation.SQLType;
+import net.paoding.rose.jade.dataaccess.DataAccess;
+
+/**
+ * 运行在有jdk.jfr的JVM上时的 {@link StatementEvents}
+ * 
+ */
+class JfrStatementEvents extends StatementEvents {
+
+    private final EventType type = EventType.getEventType(JadeStatementEvent.class);
+
+    @Override
+    public Object begin() {
+        if (!type.isEnabled()) {
+            return null;
+        }
+        JadeStatementEvent event = new JadeStatementEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void setDataAccess(Object event, DataAccess dataAccess) {
+        DataSource dataSource = dataAccess.getDataSource();
+        // DataSource的toString()可能很长甚至含有密码，只记录类型和identity
+        ((JadeStatementEvent) event).dataSource = dataSource == null ? null : dataSource
+                .getClass().getName()
+                + "@" + Integer.toHexString(System.identityHashCode(dataSource));
+    }
+
+    @Override
+    public void commit(Object event, StatementRuntime runtime, SQLType sqlType, Object result,
+            boolean success) {
+        JadeStatementEvent e = (JadeStatementEvent) event;
+        e.end();
+        if (!e.shouldCommit()) {
+            return;
+        }
+        e.method = runtime.getMetaData().toString();
+        e.sqlType = sqlType.name();
+        e.sqlHash = runtime.getSQL().hashCode();
+        e.rows = success ? rows(runtime, sqlType, result) : -1;
+        e.success = success;
+        e.commit();
+    }
+
+    /**
+     * 查询返回的行数、更新影响的行数，不能确定时返回-1
+     */
+    private static long rows(StatementRuntime runtime, SQLType sqlType, Object result) {
+        if (sqlType == SQLType.WRITE) {
+            if (result instanceof int[]) {
+                long rows = 0;
+                for (int updated : (int[]) result) {
+                    rows += updated;
+                }
+                return rows;
+            }
+            // 返回generated key时结果不是行数
+            if (result instanceof Number
+                    && !runtime.getMetaData().getReturnGeneratedKeys()
+                            .shouldReturnGerneratedKeys(runtime)) {
+                return ((Number) result).longValue();
+            }
+            return -1;
+        }
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?>) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map<?, ?>) {
+            return ((Map<?, ?>) result).size();
+        }
+        if (result.getClass().isArray()) {
+            return Array.getLength(result);
+        }
+        return 1;
+    }
+}
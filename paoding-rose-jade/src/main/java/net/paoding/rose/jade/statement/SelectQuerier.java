@@ -68,6 +68,7 @@ public class SelectQuerier implements Querier {
     public Object execute(SQLType sqlType, StatementRuntime runtime) {
         DataAccess dataAccess = dataAccessFactory.getDataAccess(//
                 runtime.getMetaData(), runtime.getAttributes());
+        StatementEvents.setDataAccess(runtime, dataAccess);
         // 执行查询
         List<?> listResult = dataAccess.select(runtime.getSQL(), runtime.getArgs(), rowMapper);
         return converter.convert(runtime, listResult);
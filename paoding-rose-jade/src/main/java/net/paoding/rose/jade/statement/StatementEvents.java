@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License i distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.jade.statement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import net.paoding.rose.jade.annotation.SQLType;
+import net.paoding.rose.jade.dataaccess.DataAccess;
+
+/**
+ * {@link StatementEvents} 向JDK Flight Recorder(JFR)发出DAO语句的JadeStatement事件：DAO方法、SQL的hash、
+ * 行数、DataSource以及执行的时间。
+ * <p>
+ * 事件由JFR的设置(net.paoding.rose.JadeStatement的enabled、threshold)控制，没有开启时 {@link #begin()}
+ * 返回null，{@link JdbcStatement} 不再做任何事情；运行在没有jdk.jfr的JVM上时使用空实现。
+ * 
+ */
+abstract class StatementEvents {
+
+    private static final Log logger = LogFactory.getLog(StatementEvents.class);
+
+    /**
+     * 开启事件时，{@link JdbcStatement} 把事件放在 {@link StatementRuntime} 的这个属性中，由
+     * {@link Querier} 记入所使用的DataSource
+     */
+    static final String EVENT_ATTRIBUTE = "_jfr_statement_event_";
+
+    private static final StatementEvents instance = create();
+
+    public static StatementEvents getInstance() {
+        return instance;
+    }
+
+    private static StatementEvents create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+        } catch (Throwable e) {
+            return new StatementEvents() {};
+        }
+        try {
+            // 通过反射加载，使本类不直接引用jdk.jfr
+            return (StatementEvents) Class.forName(StatementEvents.class.getPackage().getName()
+                    + ".JfrStatementEvents").newInstance();
+        } catch (Throwable e) {
+            logger.warn("JFR events of jade are disabled", e);
+            return new StatementEvents() {};
+        }
+    }
+
+    /**
+     * 如果runtime带有事件，把dataAccess的DataSource记入事件
+     * 
+     * @param runtime
+     * @param dataAccess
+     */
+    static void setDataAccess(StatementRuntime runtime, DataAccess dataAccess) {
+        Object event = runtime.getAttribute(EVENT_ATTRIBUTE);
+        if (event != null) {
+            instance.setDataAccess(event, dataAccess);
+        }
+    }
+
+    /**
+     * 开始一个语句的事件
+     * 
+     * @return 没有开启这个事件时返回null
+     */
+    public Object begin() {
+        return null;
+    }
+
+    /**
+     * 
+     * @param event 非null
+     * @param dataAccess
+     */
+    public void setDataAccess(Object event, DataAccess dataAccess) {
+    }
+
+    /**
+     * 结束并提交 {@link #begin()} 返回的事件
+     * 
+     * @param event 非null
+     * @param runtime 所执行的语句，批量执行时是其中第一个
+     * @param sqlType
+     * @param result {@link Querier} 返回的结果，执行失败时为null
+     * @param success 是否执行成功
+     */
+    public void commit(Object event, StatementRuntime runtime, SQLType sqlType, Object result,
+            boolean success) {
+    }
+}
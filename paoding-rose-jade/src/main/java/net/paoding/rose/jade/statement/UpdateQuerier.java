@@ -70,6 +70,7 @@ public class UpdateQuerier implements Querier {
         Number result;
         DataAccess dataAccess = dataAccessFactory.getDataAccess(//
             runtime.getMetaData(), runtime.getAttributes());
+        StatementEvents.setDataAccess(runtime, dataAccess);
         if (returnGeneratedKeys.shouldReturnGerneratedKeys(runtime)) {
             ArrayList<Map<String, Object>> keys = new ArrayList<Map<String, Object>>(1);
             KeyHolder generatedKeyHolder = new GeneratedKeyHolder(keys);
@@ -131,6 +132,7 @@ public class UpdateQuerier implements Querier {
             StatementRuntime runtime = batchRuntimes.get(0);
             DataAccess dataAccess = dataAccessFactory.getDataAccess(//
                 runtime.getMetaData(), runtime.getAttributes());
+            StatementEvents.setDataAccess(runtime, dataAccess);
             List<Object[]> argsList = new ArrayList<Object[]>(batchRuntimes.size());
             for (StatementRuntime batchRuntime : batchRuntimes) {
                 argsList.add(batchRuntime.getArgs());
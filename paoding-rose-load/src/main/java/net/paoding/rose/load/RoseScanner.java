@@ -26,8 +26,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import net.paoding.rose.load.cache.ScanCache;
+import net.paoding.rose.load.index.ComponentIndex;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -66,6 +72,11 @@ public class RoseScanner {
 
     private List<ResourceRef> jarResources;
 
+    /** 各jar包或classes目录的组件索引，没有可用索引的记为NO_INDEX */
+    private final Map<String, Object> componentIndexes = new HashMap<String, Object>();
+
+    private static final Object NO_INDEX = new Object();
+
     // -------------------------------------------------------------
 
     private RoseScanner() {
@@ -259,7 +270,7 @@ public class RoseScanner {
             if (logger.isInfoEnabled()) {
                 logger.info("[jarFile] start to found available jar files for rose to scanning...");
             }
-            List<ResourceRef> jarResources = new LinkedList<ResourceRef>();
+            List<String> paths = new ArrayList<String>();
             Resource[] metaInfResources = resourcePatternResolver
                     .getResources("classpath*:/META-INF/");
             for (Resource metaInfResource : metaInfResources) {
@@ -272,23 +283,12 @@ public class RoseScanner {
                         } else {
                             path = path.substring(0, path.lastIndexOf('!'));
                         }
-                        Resource resource = new FileSystemResource(path);
-                        if (jarResources.contains(resource)) {
+                        if (paths.contains(path)) {
                             if (logger.isDebugEnabled()) {
                                 logger.debug("[jarFile] skip replicated jar resource: " + path);// 在多个 linux环境 下发现有重复,fix it!
                             }
                         } else {
-                            ResourceRef ref = ResourceRef.toResourceRef(resource);
-                            if (ref.getModifiers() != null) {
-                                jarResources.add(ref);
-                                if (logger.isInfoEnabled()) {
-                                    logger.info("[jarFile] add jar resource: " + ref);
-                                }
-                            } else {
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("[jarFile] not rose jar resource: " + path);
-                                }
-                            }
+                            paths.add(path);
                         }
                     } catch (Exception e) {
                         logger.error(urlObject, e);
@@ -299,6 +299,41 @@ public class RoseScanner {
                     }
                 }
             }
+            // 所有jar包都没有变化时，直接使用上次的结果，不必再逐个读取它们的rose.properties或MANIFEST.MF
+            ScanCache cache = ScanCache.get("jarResources", paths.toString());
+            String fingerprint = null;
+            List<ResourceRef> jarResources = null;
+            if (cache != null) {
+                ScanCache.Fingerprint fp = new ScanCache.Fingerprint();
+                for (String path : paths) {
+                    fp.addFile(new File(path));
+                }
+                fingerprint = fp.toString();
+                jarResources = loadJarResources(cache, fingerprint);
+            }
+            if (jarResources == null) {
+                jarResources = new LinkedList<ResourceRef>();
+                for (String path : paths) {
+                    try {
+                        ResourceRef ref = ResourceRef.toResourceRef(new FileSystemResource(path));
+                        if (ref.getModifiers() != null) {
+                            jarResources.add(ref);
+                            if (logger.isInfoEnabled()) {
+                                logger.info("[jarFile] add jar resource: " + ref);
+                            }
+                        } else {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("[jarFile] not rose jar resource: " + path);
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.error(path, e);
+                    }
+                }
+                if (cache != null) {
+                    storeJarResources(cache, fingerprint, jarResources);
+                }
+            }
             this.jarResources = jarResources;
             if (logger.isInfoEnabled()) {
                 logger.info("[jarFile] found " + jarResources.size() + " jar files: "
@@ -313,4 +348,80 @@ public class RoseScanner {
         return Collections.unmodifiableList(jarResources);
     }
 
+    private List<ResourceRef> loadJarResources(ScanCache cache, String fingerprint) {
+        Properties p = cache.load(fingerprint);
+        if (p == null) {
+            return null;
+        }
+        List<ResourceRef> jarResources = new LinkedList<ResourceRef>();
+        for (int i = 0; p.containsKey("jar." + i + ".path"); i++) {
+            String prefix = "jar." + i + ".";
+            Properties properties = new Properties();
+            for (String name : p.stringPropertyNames()) {
+                if (name.startsWith(prefix + "property.")) {
+                    properties.setProperty(name.substring(prefix.length() + "property.".length()),
+                            p.getProperty(name));
+                }
+            }
+            ResourceRef ref = new ResourceRef(new FileSystemResource(p.getProperty(prefix
+                    + "path")), StringUtils.split(p.getProperty(prefix + "modifiers"), ", "),
+                    properties);
+            jarResources.add(ref);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("[jarFile] loaded " + jarResources.size() + " jar resources from "
+                    + cache.getFile());
+        }
+        return jarResources;
+    }
+
+    private void storeJarResources(ScanCache cache, String fingerprint,
+            List<ResourceRef> jarResources) {
+        Properties p = new Properties();
+        int i = 0;
+        for (ResourceRef ref : jarResources) {
+            String prefix = "jar." + (i++) + ".";
+            try {
+                p.setProperty(prefix + "path", ref.getResource().getFile().getPath());
+            } catch (IOException e) {
+                logger.warn("[jarFile] not cached because of " + ref, e);
+                return;
+            }
+            p.setProperty(prefix + "modifiers", StringUtils.join(ref.getModifiers(), ", "));
+            for (String name : ref.getProperties().stringPropertyNames()) {
+                p.setProperty(prefix + "property." + name, ref.getProperties().getProperty(name));
+            }
+        }
+        cache.store(fingerprint, p);
+    }
+
+    /**
+     * 返回所给jar包或classes目录在编译时生成的组件索引，没有索引或者索引已经过时的返回null
+     * 
+     * @param ref
+     * @return
+     * @throws IOException
+     * @see ComponentIndex
+     */
+    public synchronized ComponentIndex getComponentIndex(ResourceRef ref) throws IOException {
+        String key = ref.getResource().getURI().toString();
+        Object index = componentIndexes.get(key);
+        if (index == null) {
+            ComponentIndex loaded = ComponentIndex.load(ref);
+            if (loaded == null) {
+                index = NO_INDEX;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("[componentIndex] no available index in " + key);
+                }
+            } else {
+                index = loaded;
+                if (logger.isInfoEnabled()) {
+                    logger.info("[componentIndex] found " + loaded + " in " + key);
+                }
+            }
+            componentIndexes.put(key, index);
+        }
+        return index == NO_INDEX ? null : (ComponentIndex) index;
+    }
+
 }
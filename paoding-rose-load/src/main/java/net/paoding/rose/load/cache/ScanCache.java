@@ -0,0 +1,354 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.load.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link ScanCache} 把一次扫描的结果(如有rose标识的jar包及其modifiers、各module及其类)保存在磁盘上，
+ * 下次启动时如果类路径没有变化就直接使用，不必重新打开每个jar包、遍历每个目录。
+ * <p>
+ * 每个缓存文件记录了扫描时的指纹({@link Fingerprint})：所扫描的jar包的路径、大小、修改时间，以及classes目录下每个文件的路径、大小、修改时间。
+ * 读取时只要指纹对不上、版本不同或者文件损坏，就当作没有缓存，重新扫描并覆盖它；写入时先写临时文件再改名，
+ * 所以同时启动的多个进程不会读到写了一半的文件。
+ * <p>
+ * 默认不使用缓存，由 {@link #setDirectory(File)} 指定存放的目录后生效(RoseFilter的scanCache参数)。
+ * 同一目录可以存放多个应用的缓存，文件名中含有区分它们的键的摘要。
+ * <p>
+ * 缓存的内容(applicationContext等配置文件的地址、要加载的类名)会被直接使用，指纹只能发现类路径的变化，
+ * 不能防止有意伪造的缓存文件。因此假定缓存目录及其上级目录只有运行应用的用户可以写入：
+ * {@link #setDirectory(File)} 拒绝不属于当前用户、或者同组及其他用户可写的目录，不要把它设置为/tmp这样的公共目录。
+ * 
+ */
+public class ScanCache {
+
+    private static final Log logger = LogFactory.getLog(ScanCache.class);
+
+    static final String VERSION = "1";
+
+    private static final String VERSION_KEY = "scanCache.version";
+
+    private static final String FINGERPRINT_KEY = "scanCache.fingerprint";
+
+    private static volatile File directory;
+
+    private final File file;
+
+    ScanCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 设置存放缓存文件的目录，null表示不使用缓存。目录不存在时创建为只有当前用户可以读写的目录；
+     * 不属于当前用户、同组或其他用户可写，或者无法确认这些时，记录警告并且不使用缓存
+     * 
+     * @param directory
+     */
+    public static void setDirectory(File directory) {
+        if (directory != null) {
+            String problem = checkDirectory(directory);
+            if (problem != null) {
+                logger.warn("[scanCache] disabled: " + problem);
+                directory = null;
+            }
+        }
+        ScanCache.directory = directory;
+    }
+
+    /**
+     * 检查(必要时创建)缓存目录
+     * 
+     * @param directory
+     * @return 不能使用的原因，可以使用时返回null
+     */
+    static String checkDirectory(File directory) {
+        if (!directory.isDirectory()) {
+            if (!directory.mkdirs() && !directory.isDirectory()) {
+                return "can not create directory " + directory;
+            }
+            directory.setReadable(false, false);
+            directory.setReadable(true, true);
+            directory.setWritable(false, false);
+            directory.setWritable(true, true);
+            directory.setExecutable(false, false);
+            directory.setExecutable(true, true);
+        }
+        try {
+            return checkOwnerAndPermissions(directory);
+        } catch (ClassNotFoundException e) {
+            return "can not verify the owner of " + directory + " without java.nio.file (Java 7+)";
+        } catch (InvocationTargetException e) {
+            return "can not verify the owner of " + directory + ": " + e.getCause();
+        } catch (Exception e) {
+            return "can not verify the owner of " + directory + ": " + e;
+        }
+    }
+
+    /**
+     * 通过反射使用java.nio.file(Java 7)：目录的所有者应该与在其中新建的文件的所有者(即当前用户)相同；
+     * 在POSIX文件系统上还要求同组、其他用户不可写，其他文件系统(比如Windows)只检查所有者
+     */
+    private static String checkOwnerAndPermissions(File directory) throws Exception {
+        Class<?> files = Class.forName("java.nio.file.Files");
+        Class<?> pathClass = Class.forName("java.nio.file.Path");
+        Object noOptions = Array.newInstance(Class.forName("java.nio.file.LinkOption"), 0);
+        Method toPath = File.class.getMethod("toPath");
+        Method getOwner = files.getMethod("getOwner", pathClass, noOptions.getClass());
+        Method getPermissions = files.getMethod("getPosixFilePermissions", pathClass, noOptions
+                .getClass());
+        Object path = toPath.invoke(directory);
+        Object owner = getOwner.invoke(null, path, noOptions);
+        File probe = File.createTempFile("owner", ".tmp", directory);
+        Object user;
+        try {
+            user = getOwner.invoke(null, toPath.invoke(probe), noOptions);
+        } finally {
+            probe.delete();
+        }
+        if (!owner.equals(user)) {
+            return directory + " is owned by " + owner + ", not " + user;
+        }
+        Set<?> permissions;
+        try {
+            permissions = (Set<?>) getPermissions.invoke(null, path, noOptions);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                return null;
+            }
+            throw e;
+        }
+        for (Object permission : permissions) {
+            String name = permission.toString();
+            if (name.equals("GROUP_WRITE") || name.equals("OTHERS_WRITE")) {
+                return directory + " is writable by other users (" + permissions + ")";
+            }
+        }
+        return null;
+    }
+
+    public static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 返回所给名字和键的缓存，没有设置缓存目录时返回null
+     * 
+     * @param name 缓存的名字，如jarResources
+     * @param key 区分同一目录中不同应用的缓存，如所扫描的jar包的路径
+     * @return
+     */
+    public static ScanCache get(String name, String key) {
+        File directory = ScanCache.directory;
+        if (directory == null) {
+            return null;
+        }
+        return new ScanCache(new File(directory, name + "-" + md5(key).substring(0, 16)
+                + ".cache"));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 读取缓存的内容；没有缓存文件，或者它的版本、指纹和所给的不一致，或者不能读取时返回null
+     * 
+     * @param fingerprint
+     * @return
+     */
+    public Properties load(String fingerprint) {
+        if (!file.isFile()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[scanCache] not found " + file);
+            }
+            return null;
+        }
+        Properties p = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("[scanCache] ignored unreadable " + file, e);
+            return null;
+        }
+        if (!VERSION.equals(p.getProperty(VERSION_KEY))
+                || !fingerprint.equals(p.getProperty(FINGERPRINT_KEY))) {
+            if (logger.isInfoEnabled()) {
+                logger.info("[scanCache] ignored out of date " + file);
+            }
+            return null;
+        }
+        p.remove(VERSION_KEY);
+        p.remove(FINGERPRINT_KEY);
+        return p;
+    }
+
+    /**
+     * 写入缓存，失败时只记录日志
+     * 
+     * @param fingerprint
+     * @param p
+     */
+    public void store(String fingerprint, Properties p) {
+        Properties copy = new Properties();
+        copy.putAll(p);
+        copy.setProperty(VERSION_KEY, VERSION);
+        copy.setProperty(FINGERPRINT_KEY, fingerprint);
+        File temp = null;
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("can not create directory " + dir);
+            }
+            temp = File.createTempFile(file.getName(), ".tmp", dir);
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                copy.store(out, "rose scan cache, do not edit");
+            } finally {
+                out.close();
+            }
+            // Windows下不能改名为已经存在的文件
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("can not rename " + temp + " to " + file);
+            }
+            temp = null;
+            if (logger.isInfoEnabled()) {
+                logger.info("[scanCache] stored " + file);
+            }
+        } catch (IOException e) {
+            logger.warn("[scanCache] failed to store " + file, e);
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    static String md5(String value) {
+        try {
+            return toHex(MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 扫描所依据的文件的指纹：依次加入的文本，以及文件的路径、大小、修改时间(目录则是其下所有文件的)的摘要。
+     * 只读取文件的属性，不读取内容。
+     */
+    public static class Fingerprint {
+
+        private final MessageDigest digest;
+
+        private int files;
+
+        public Fingerprint() {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Fingerprint add(String value) {
+            try {
+                digest.update(value.getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            digest.update((byte) '\n');
+            return this;
+        }
+
+        /**
+         * 加入一个文件；如果是目录，加入其下所有的文件和子目录(按名字排序)
+         * 
+         * @param file
+         * @return
+         */
+        public Fingerprint addFile(File file) {
+            add(file.getAbsolutePath());
+            addTree(file, "");
+            return this;
+        }
+
+        private void addTree(File file, String path) {
+            if (file.isDirectory()) {
+                add(path + "/");
+                String[] names = file.list();
+                if (names != null) {
+                    Arrays.sort(names);
+                    for (String name : names) {
+                        addTree(new File(file, name), path + "/" + name);
+                    }
+                }
+            } else {
+                files++;
+                add(path + "\t" + file.length() + "\t" + file.lastModified());
+            }
+        }
+
+        /**
+         * 加入的文件个数(不含目录)
+         * 
+         * @return
+         */
+        public int getFileCount() {
+            return files;
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return toHex(((MessageDigest) digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
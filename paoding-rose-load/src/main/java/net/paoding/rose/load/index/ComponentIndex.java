@@ -0,0 +1,463 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.load.index;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import net.paoding.rose.load.ResourceRef;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link ComponentIndex} 是编译时由 {@link ComponentIndexProcessor} 写入jar包或classes目录的
+ * META-INF/rose/components.idx：列出controllers包下的控制器(以及它在controllers下的相对路径)、拦截器、
+ * 错误处理器、参数解析器、验证器、其他组件，以及所有的DAO接口。启动时Rose据此只加载列出的类，不必逐个加载、检查每个类。
+ * <p>
+ * 索引同时记录了编译时所有顶层类的个数和摘要，以及这次编译写出的每个class文件(包括内部类)的CRC32的摘要。
+ * 只有jar包或目录中实际的class文件与之完全一致时索引才被使用({@link #load(ResourceRef)})：
+ * IDE的增量编译只处理改动过的类，它写出的索引、类被增删之后留下的旧索引、
+ * 以及类名不变只是内容改动(比如给控制器加上@Ignored)的class文件都对不上，这时Rose回到原来的扫描方式。
+ * 没有class文件摘要的索引(比如不是由javac编译的)同样不被使用。
+ * <p>
+ * jar包中的CRC32直接取自jar的目录，不需要读取class文件；classes目录则需要读取每个class文件来计算。
+ * <p>
+ * 文件格式为UTF-8的文本，一行一项，字段之间以tab分隔，#开头的是注释：
+ * 
+ * <pre>
+ * version	2
+ * classes	123	(顶层类名排序后以\n连接的MD5)
+ * files	130	(所有class文件的"路径\tCRC32"排序后以\n连接的MD5)
+ * controller	com.xxx.controllers.admin.UserController	admin
+ * interceptor	com.xxx.controllers.AccessInterceptor
+ * dao	com.xxx.dao.UserDAO
+ * </pre>
+ * 
+ */
+public class ComponentIndex {
+
+    private static final Log logger = LogFactory.getLog(ComponentIndex.class);
+
+    /** 索引在jar包或classes目录中的位置 */
+    public static final String LOCATION = "META-INF/rose/components.idx";
+
+    public static final String CONTROLLER = "controller";
+
+    public static final String INTERCEPTOR = "interceptor";
+
+    public static final String ERROR_HANDLER = "errorHandler";
+
+    public static final String RESOLVER = "resolver";
+
+    public static final String VALIDATOR = "validator";
+
+    /** controllers包下其他的类，同样会被注册到module的容器中 */
+    public static final String COMPONENT = "component";
+
+    public static final String DAO = "dao";
+
+    static final int VERSION = 2;
+
+    private final int classCount;
+
+    private final String digest;
+
+    /** 编译时写出的class文件的个数，-1表示没有记录 */
+    private int fileCount = -1;
+
+    private String fileDigest;
+
+    /** 类名 -> 类别 */
+    private final Map<String, String> kinds = new LinkedHashMap<String, String>();
+
+    /** 控制器类名 -> 所在包在controllers下的相对路径 */
+    private final Map<String, String> modulePaths = new LinkedHashMap<String, String>();
+
+    ComponentIndex(int classCount, String digest) {
+        this.classCount = classCount;
+        this.digest = digest;
+    }
+
+    /**
+     * 读取所给jar包或classes目录的索引，没有索引或者索引已经过时的返回null
+     * 
+     * @param ref
+     * @return
+     * @throws IOException
+     */
+    public static ComponentIndex load(ResourceRef ref) throws IOException {
+        File root = ref.getResource().getFile();
+        ComponentIndex index;
+        List<String> classNames = new ArrayList<String>();
+        Map<String, Long> checksums = new TreeMap<String, Long>();
+        if (root.isFile()) {
+            JarFile jarFile = new JarFile(root);
+            try {
+                JarEntry entry = jarFile.getJarEntry(LOCATION);
+                if (entry == null) {
+                    return null;
+                }
+                index = read(jarFile.getInputStream(entry));
+                if (index == null || !index.hasFileDigest()) {
+                    return ignored(index, root);
+                }
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry classEntry = entries.nextElement();
+                    String path = classEntry.getName();
+                    if (isClassFile(path)) {
+                        // 目录中记录的CRC32，-1表示不知道，这时摘要一定对不上
+                        checksums.put(path, classEntry.getCrc());
+                    }
+                    addClassName(classNames, path);
+                }
+            } finally {
+                jarFile.close();
+            }
+        } else {
+            File file = new File(root, LOCATION);
+            if (!file.isFile()) {
+                return null;
+            }
+            index = read(new FileInputStream(file));
+            if (index == null || !index.hasFileDigest()) {
+                return ignored(index, root);
+            }
+            addClassFiles(classNames, checksums, root, "");
+        }
+        if (!index.isUpToDate(classNames) || !index.isSameFiles(checksums)) {
+            if (logger.isInfoEnabled()) {
+                logger.info("[componentIndex] ignored out-of-date " + LOCATION + " in " + root);
+            }
+            return null;
+        }
+        return index;
+    }
+
+    private static ComponentIndex ignored(ComponentIndex index, File root) {
+        if (!logger.isInfoEnabled()) {
+            return null;
+        }
+        // 旧版本Rose编译的jar包的索引也是这样，所以不作为警告
+        if (index == null) {
+            logger.info("[componentIndex] ignored other version of " + LOCATION + " in " + root);
+        } else {
+            logger.info("[componentIndex] ignored " + LOCATION + " in " + root
+                    + ": no checksums of the class files (not compiled by javac?)");
+        }
+        return null;
+    }
+
+    private static void addClassFiles(List<String> classNames, Map<String, Long> checksums,
+            File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addClassFiles(classNames, checksums, file, prefix + file.getName() + "/");
+            } else {
+                String path = prefix + file.getName();
+                if (isClassFile(path)) {
+                    checksums.put(path, checksum(file));
+                }
+                addClassName(classNames, path);
+            }
+        }
+    }
+
+    /**
+     * 参与class文件摘要计算的文件：META-INF以外的所有class文件
+     */
+    static boolean isClassFile(String path) {
+        return path.endsWith(".class") && !path.startsWith("META-INF/");
+    }
+
+    /**
+     * 文件内容的CRC32
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 如果是顶层类的class文件，把类名加入classNames
+     */
+    private static void addClassName(List<String> classNames, String path) {
+        if (!path.endsWith(".class") || path.indexOf('$') != -1
+                || path.startsWith("META-INF/")) {
+            return;
+        }
+        String className = path.substring(0, path.length() - ".class".length()).replace('/',
+                '.');
+        if (!isIndexedClassName(className)) {
+            return;
+        }
+        classNames.add(className);
+    }
+
+    /**
+     * 参与个数和摘要计算的类：不含$的顶层类，package-info除外
+     */
+    static boolean isIndexedClassName(String className) {
+        return className.indexOf('$') == -1 && !className.equals("package-info")
+                && !className.endsWith(".package-info");
+    }
+
+    /**
+     * 一组类名的摘要：排序后以\n连接的MD5
+     * 
+     * @param classNames
+     * @return
+     */
+    static String digest(Collection<String> classNames) {
+        List<String> sorted = new ArrayList<String>(classNames);
+        Collections.sort(sorted);
+        return md5(sorted);
+    }
+
+    /**
+     * 一组class文件的摘要：按路径排序的"路径\tCRC32"以\n连接的MD5
+     * 
+     * @param checksums class文件在jar包或classes目录中的路径 -> CRC32
+     * @return
+     */
+    static String fileDigest(Map<String, Long> checksums) {
+        List<String> lines = new ArrayList<String>(checksums.size());
+        for (Map.Entry<String, Long> entry : new TreeMap<String, Long>(checksums).entrySet()) {
+            lines.add(entry.getKey() + "\t" + Long.toHexString(entry.getValue()));
+        }
+        return md5(lines);
+    }
+
+    private static String md5(List<String> lines) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            for (String line : lines) {
+                md5.update(line.getBytes("UTF-8"));
+                md5.update((byte) '\n');
+            }
+            StringBuilder sb = new StringBuilder(32);
+            for (byte b : md5.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 
+     * @param in 读取后关闭
+     * @return 版本不认识的返回null
+     * @throws IOException
+     */
+    static ComponentIndex read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            ComponentIndex index = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields[0].equals("version")) {
+                    if (Integer.parseInt(fields[1]) != VERSION) {
+                        return null;
+                    }
+                } else if (fields[0].equals("classes")) {
+                    index = new ComponentIndex(Integer.parseInt(fields[1]), fields[2]);
+                } else if (index == null) {
+                    throw new IOException("missing 'classes' line before '" + line + "'");
+                } else if (fields[0].equals("files")) {
+                    index.setFiles(Integer.parseInt(fields[1]), fields[2]);
+                } else {
+                    index.add(fields[0], fields[1], fields.length > 2 ? fields[2] : null);
+                }
+            }
+            if (index == null) {
+                throw new IOException("missing 'classes' line");
+            }
+            return index;
+        } finally {
+            reader.close();
+        }
+    }
+
+    void write(Writer writer) throws IOException {
+        writer.write("# generated by " + ComponentIndexProcessor.class.getName() + "\n");
+        writer.write("version\t" + VERSION + "\n");
+        writer.write("classes\t" + classCount + "\t" + digest + "\n");
+        if (fileDigest != null) {
+            writer.write("files\t" + fileCount + "\t" + fileDigest + "\n");
+        }
+        for (Map.Entry<String, String> entry : kinds.entrySet()) {
+            writer.write(entry.getValue() + "\t" + entry.getKey());
+            String modulePath = modulePaths.get(entry.getKey());
+            if (modulePath != null) {
+                writer.write("\t" + modulePath);
+            }
+            writer.write("\n");
+        }
+    }
+
+    void setFiles(int fileCount, String fileDigest) {
+        this.fileCount = fileCount;
+        this.fileDigest = fileDigest;
+    }
+
+    boolean hasFileDigest() {
+        return fileDigest != null;
+    }
+
+    void add(String kind, String className, String modulePath) {
+        kinds.put(className, kind);
+        if (modulePath != null) {
+            modulePaths.put(className, modulePath);
+        }
+    }
+
+    /**
+     * 所给的类名(所有顶层类)是否与编译时记录的一致
+     * 
+     * @param classNames
+     * @return
+     */
+    public boolean isUpToDate(Collection<String> classNames) {
+        return classNames.size() == classCount && digest.equals(digest(classNames));
+    }
+
+    /**
+     * 所给的class文件(META-INF以外的所有class文件)是否就是编译时写出的那些
+     * 
+     * @param checksums 路径 -> CRC32
+     * @return
+     */
+    boolean isSameFiles(Map<String, Long> checksums) {
+        return fileDigest != null && checksums.size() == fileCount
+                && fileDigest.equals(fileDigest(checksums));
+    }
+
+    /**
+     * 编译时的顶层类的个数
+     * 
+     * @return
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * 是否是索引中的类
+     * 
+     * @param className
+     * @return
+     */
+    public boolean contains(String className) {
+        return kinds.containsKey(className);
+    }
+
+    /**
+     * 所给类在索引中的类别，不在索引中的返回null
+     * 
+     * @param className
+     * @return
+     */
+    public String getKind(String className) {
+        return kinds.get(className);
+    }
+
+    /**
+     * 索引中属于所给类别的类，按编译时的顺序
+     * 
+     * @param kind
+     * @return
+     */
+    public List<String> getClassNames(String kind) {
+        List<String> classNames = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : kinds.entrySet()) {
+            if (entry.getValue().equals(kind)) {
+                classNames.add(entry.getKey());
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * 控制器所在的包在controllers下的相对路径，比如"admin/user"，直接在controllers下的为""
+     * 
+     * @param className
+     * @return 不是控制器的返回null
+     */
+    public String getModulePath(String className) {
+        return modulePaths.get(className);
+    }
+
+    /**
+     * 索引中的类的个数
+     * 
+     * @return
+     */
+    public int size() {
+        return kinds.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentIndex[components=" + kinds.size() + ", classes=" + classCount + "]";
+    }
+}
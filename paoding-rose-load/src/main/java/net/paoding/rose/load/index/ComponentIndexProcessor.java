@@ -0,0 +1,347 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.load.index;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * {@link ComponentIndexProcessor} 在编译时写出 {@link ComponentIndex}(META-INF/rose/components.idx)。
+ * <p>
+ * 它通过paoding-rose-load的META-INF/services自动注册，依赖Rose的工程用Maven(或javac)编译时不需要另外配置；
+ * 不需要索引时可以用编译参数 -Arose.index=false 关闭。Maven的编译插件在有源文件改动时重新编译整个模块，
+ * 写出的索引总是完整的；只编译了部分源文件(比如IDE的增量编译)时写出的索引对不上实际的类，运行时不会被使用。
+ * <p>
+ * javac在annotation processor结束之后才生成class文件，所以索引先不含class文件的摘要；
+ * 处理器通过javac的TaskListener得知每个class文件写出之后，计算它们的CRC32，把摘要补写到索引中。
+ * 其他编译器(比如Eclipse的)没有这个接口，它们写出的索引没有摘要，运行时不会被使用。
+ * <p>
+ * 索引的规则与Rose运行时的判断一致：controllers包(及其子包)下public、非抽象、没有标注@Ignored的顶层类，
+ * 以及标注了@DAO、名字以DAO结尾的接口。
+ * 
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(ComponentIndexProcessor.OPTION)
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    /** 编译参数，值为false时不写出索引 */
+    public static final String OPTION = "rose.index";
+
+    private static final String CONTROLLERS = "controllers";
+
+    private static final String[] CONTROLLER_SUFFIXES = new String[] { "Resource", "Controller",
+            "C", "Action" };
+
+    private static final String IGNORED = "net.paoding.rose.web.annotation.Ignored";
+
+    private static final String DAO_ANNOTATION = "net.paoding.rose.jade.annotation.DAO";
+
+    /** 按顺序判断的类别及其接口 */
+    private static final String[][] INTERFACE_KINDS = new String[][] {
+            { ComponentIndex.INTERCEPTOR, "net.paoding.rose.web.ControllerInterceptor" },
+            { ComponentIndex.ERROR_HANDLER, "net.paoding.rose.web.ControllerErrorHandler" },
+            { ComponentIndex.RESOLVER, "net.paoding.rose.web.paramresolver.ParamResolver" },
+            { ComponentIndex.VALIDATOR, "net.paoding.rose.web.ParamValidator" } };
+
+    private final Set<String> classNames = new HashSet<String>();
+
+    private ComponentIndex index;
+
+    /** 已经写出的完整索引，没有写出时为null */
+    private ComponentIndex complete;
+
+    /** 写出的索引文件，不能作为本地文件访问或者不能补写摘要时为null */
+    private File indexFile;
+
+    /** 还没有生成class文件的顶层类 */
+    private final Set<String> pendingClasses = new HashSet<String>();
+
+    /** 已经生成的class文件的路径 -> CRC32 */
+    private final Map<String, Long> checksums = new HashMap<String, Long>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        if (!"false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION))) {
+            addGenerateListener();
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if ("false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION))) {
+            return false;
+        }
+        if (index == null) {
+            index = new ComponentIndex(0, "");
+        }
+        if (roundEnv.processingOver()) {
+            write();
+            return false;
+        }
+        // 每一轮的Element只在这一轮中使用
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                TypeElement type = (TypeElement) element;
+                String className = binaryName(type);
+                pendingClasses.add(className);
+                if (ComponentIndex.isIndexedClassName(className)) {
+                    classNames.add(className);
+                }
+                addModuleClass(type, className);
+                addDAOs(type);
+            }
+        }
+        return false;
+    }
+
+    private void addModuleClass(TypeElement type, String className) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type)
+                .getQualifiedName().toString();
+        String modulePath = modulePath(packageName);
+        if (modulePath == null || !type.getKind().isClass()
+                || !type.getModifiers().contains(Modifier.PUBLIC)
+                || type.getModifiers().contains(Modifier.ABSTRACT) || hasAnnotation(type, IGNORED)) {
+            return;
+        }
+        String simpleName = type.getSimpleName().toString();
+        for (String suffix : CONTROLLER_SUFFIXES) {
+            if (simpleName.length() > suffix.length() && simpleName.endsWith(suffix)) {
+                if (suffix.length() == 1
+                        && Character.isUpperCase(simpleName.charAt(simpleName.length()
+                                - suffix.length() - 1))) {
+                    continue;
+                }
+                index.add(ComponentIndex.CONTROLLER, className, modulePath);
+                return;
+            }
+        }
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+        for (String[] kind : INTERFACE_KINDS) {
+            TypeElement interfaceType = elements.getTypeElement(kind[1]);
+            if (interfaceType != null
+                    && types.isAssignable(type.asType(), types.erasure(interfaceType.asType()))) {
+                index.add(kind[0], className, null);
+                return;
+            }
+        }
+        index.add(ComponentIndex.COMPONENT, className, null);
+    }
+
+    /**
+     * 包在controllers下的相对路径，不在controllers下的返回null
+     */
+    private static String modulePath(String packageName) {
+        String[] names = packageName.split("\\.");
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(CONTROLLERS)) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = i + 1; j < names.length; j++) {
+                    if (sb.length() > 0) {
+                        sb.append('/');
+                    }
+                    sb.append(names[j]);
+                }
+                return sb.toString();
+            }
+        }
+        return null;
+    }
+
+    private void addDAOs(TypeElement type) {
+        if (type.getKind() == ElementKind.INTERFACE && hasAnnotation(type, DAO_ANNOTATION)) {
+            String className = binaryName(type);
+            if (className.endsWith("DAO")) {
+                index.add(ComponentIndex.DAO, className, null);
+            }
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member instanceof TypeElement) {
+                addDAOs((TypeElement) member);
+            }
+        }
+    }
+
+    private static boolean hasAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            Element annotationType = annotation.getAnnotationType().asElement();
+            if (((TypeElement) annotationType).getQualifiedName().contentEquals(annotationName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void write() {
+        if (index.size() == 0) {
+            return;
+        }
+        ComponentIndex complete = new ComponentIndex(classNames.size(), ComponentIndex
+                .digest(classNames));
+        for (String kind : new String[] { ComponentIndex.CONTROLLER, ComponentIndex.INTERCEPTOR,
+                ComponentIndex.ERROR_HANDLER, ComponentIndex.RESOLVER, ComponentIndex.VALIDATOR,
+                ComponentIndex.COMPONENT, ComponentIndex.DAO }) {
+            for (String className : index.getClassNames(kind)) {
+                complete.add(kind, className, index.getModulePath(className));
+            }
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", ComponentIndex.LOCATION);
+            write(complete, file.openOutputStream());
+            this.complete = complete;
+            URI uri = file.toUri();
+            if ("file".equals(uri.getScheme())) {
+                this.indexFile = new File(uri);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "failed to write " + ComponentIndex.LOCATION + ": " + e);
+        }
+    }
+
+    private static void write(ComponentIndex index, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        try {
+            index.write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * 通过反射注册javac的TaskListener(com.sun.source.util)，不是javac时什么也不做
+     */
+    private void addGenerateListener() {
+        try {
+            ClassLoader classLoader = processingEnv.getClass().getClassLoader();
+            if (classLoader == null) {
+                classLoader = ClassLoader.getSystemClassLoader();
+            }
+            Class<?> javacTaskClass = Class.forName("com.sun.source.util.JavacTask", false,
+                    classLoader);
+            Class<?> listenerClass = Class.forName("com.sun.source.util.TaskListener", false,
+                    classLoader);
+            Object javacTask = javacTaskClass.getMethod("instance", ProcessingEnvironment.class)
+                    .invoke(null, processingEnv);
+            Object listener = Proxy.newProxyInstance(classLoader, new Class<?>[] { listenerClass },
+                    new InvocationHandler() {
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                                throws Throwable {
+                            String name = method.getName();
+                            if (name.equals("finished")) {
+                                finished(args[0]);
+                            } else if (name.equals("equals")) {
+                                return proxy == args[0];
+                            } else if (name.equals("hashCode")) {
+                                return System.identityHashCode(proxy);
+                            } else if (name.equals("toString")) {
+                                return ComponentIndexProcessor.class.getName() + "$listener";
+                            }
+                            return null;
+                        }
+                    });
+            javacTaskClass.getMethod("addTaskListener", listenerClass).invoke(javacTask, listener);
+        } catch (Throwable e) {
+            // 不是javac(或者被构建工具包装过)，索引中不会有class文件的摘要
+        }
+    }
+
+    /**
+     * TaskListener.finished：一个class文件写出之后记下它的CRC32，所有顶层类都已写出时把摘要补写到索引中。
+     * 内部类、匿名类在它们的顶层类之前写出；此后如果还有class文件写出，重新写一次
+     */
+    private void finished(Object event) throws Exception {
+        if (complete == null || indexFile == null) {
+            return;
+        }
+        Object kind = event.getClass().getMethod("getKind").invoke(event);
+        if (!"GENERATE".equals(String.valueOf(kind))) {
+            return;
+        }
+        TypeElement type = (TypeElement) event.getClass().getMethod("getTypeElement").invoke(
+                event);
+        String className = binaryName(type);
+        String path = className.replace('.', '/') + ".class";
+        // CLASS_OUTPUT的根目录
+        File root = indexFile.getParentFile().getParentFile().getParentFile();
+        File classFile = new File(root, path);
+        if (classFile.isFile()) {
+            checksums.put(path, ComponentIndex.checksum(classFile));
+        } else {
+            // 对不上就不要摘要，运行时回到扫描
+            indexFile = null;
+            complete.setFiles(-1, null);
+            rewrite(new File(root, ComponentIndex.LOCATION));
+            return;
+        }
+        pendingClasses.remove(className);
+        if (pendingClasses.isEmpty()) {
+            complete.setFiles(checksums.size(), ComponentIndex.fileDigest(checksums));
+            rewrite(indexFile);
+        }
+    }
+
+    private void rewrite(File file) {
+        try {
+            write(complete, new FileOutputStream(file));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "failed to write " + file + ": " + e);
+        }
+    }
+}
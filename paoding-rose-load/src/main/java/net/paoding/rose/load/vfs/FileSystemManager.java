@@ -18,7 +18,9 @@ package net.paoding.rose.load.vfs;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.jar.JarFile;
 
 import org.apache.commons.collections.map.LRUMap;
 import org.apache.commons.lang.StringUtils;
@@ -37,10 +39,16 @@ public class FileSystemManager {
 
     private boolean traceEnabled = logger.isTraceEnabled();
 
+    // 所有FileSystemManager共用的JarFile，key为jar文件的路径
+    private static final Map<String, SharedJarFile> jarFiles = new HashMap<String, SharedJarFile>();
+
     @SuppressWarnings("unchecked")
     private Map<String, FileObject> cached = new LRUMap(10000);
 
-    public FileObject resolveFile(String urlString) throws IOException {
+    // jar文件的根级FileObject不随cached的淘汰而丢弃，以免重复建立jar文件的目录索引
+    private Map<String, JarFileObject> jarRoots = new HashMap<String, JarFileObject>();
+
+    public synchronized FileObject resolveFile(String urlString) throws IOException {
         if (traceEnabled) {
             logger.trace("[fs] resolveFile ... by urlString '" + urlString + "'");
         }
@@ -73,6 +81,9 @@ public class FileSystemManager {
                 return object;
             }
             if (ResourceUtils.isJarURL(url)) {
+                if (urlString.endsWith(ResourceUtils.JAR_URL_SEPARATOR)) {
+                    return resolveJarRoot(urlString);
+                }
                 if (!urlString.endsWith("/")) {
                     object = resolveFile(urlString + "/");
                 }
@@ -110,8 +121,66 @@ public class FileSystemManager {
         }
     }
 
+    /**
+     * 返回jar文件的根级FileObject，如jar:file:/path/to/your/jarfile.jar!/
+     * 
+     * @param urlString
+     * @return
+     * @throws IOException
+     */
+    synchronized JarFileObject resolveJarRoot(String urlString) throws IOException {
+        JarFileObject root = jarRoots.get(urlString);
+        if (root == null) {
+            root = new JarFileObject(this, new URL(urlString));
+            jarRoots.put(urlString, root);
+            cached.put(urlString, root);
+            if (traceEnabled) {
+                logger.trace("[fs] create jarFileObject for '" + urlString + "'");
+            }
+        }
+        return root;
+    }
+
     public synchronized void clearCache() {
         cached.clear();
+        jarRoots.clear();
+    }
+
+    /**
+     * 返回所给jar文件共用的 {@link JarFile}，同一个jar文件只打开一次，jar文件的大小或修改时间变化后重新打开。
+     * <p>
+     * 和JDK对jar:地址的缓存一样，打开的JarFile不会被关闭；被替换的旧JarFile也不关闭，可能还有FileObject在读取它。
+     * 
+     * @param path jar文件的路径
+     * @return
+     * @throws IOException
+     */
+    static JarFile getJarFile(String path) throws IOException {
+        File file = new File(path);
+        synchronized (jarFiles) {
+            SharedJarFile shared = jarFiles.get(file.getPath());
+            if (shared == null || shared.lastModified != file.lastModified()
+                    || shared.length != file.length()) {
+                shared = new SharedJarFile(new JarFile(file), file.lastModified(), file.length());
+                jarFiles.put(file.getPath(), shared);
+            }
+            return shared.jarFile;
+        }
+    }
+
+    private static class SharedJarFile {
+
+        final JarFile jarFile;
+
+        final long lastModified;
+
+        final long length;
+
+        SharedJarFile(JarFile jarFile, long lastModified, long length) {
+            this.jarFile = jarFile;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
     }
 
 }
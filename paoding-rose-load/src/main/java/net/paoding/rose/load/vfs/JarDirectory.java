@@ -0,0 +1,91 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.load.vfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 一个jar文件的目录索引：遍历一次jar文件的中央目录(central directory，由JDK映射到内存中读取)，
+ * 记下每个目录下直接的文件和子目录，之后列出任何一个目录的儿子都不必再遍历整个jar文件。
+ * <p>
+ * 有些jar文件没有为目录单独写入条目，这样的目录由其下文件的名字推出，同样出现在索引中。
+ * 
+ */
+class JarDirectory {
+
+    // key为目录的条目名，如net/paoding/，根目录为""；value为其下直接的文件和子目录的条目名，按在jar文件中的顺序
+    private final Map<String, List<String>> children = new HashMap<String, List<String>>();
+
+    JarDirectory(JarFile jarFile) {
+        children.put("", new ArrayList<String>());
+        Enumeration<JarEntry> e = jarFile.entries();
+        while (e.hasMoreElements()) {
+            add(e.nextElement().getName());
+        }
+    }
+
+    private void add(String entryName) {
+        if (children.containsKey(entryName)) {
+            return;
+        }
+        boolean directory = entryName.endsWith("/");
+        int end = directory ? entryName.length() - 1 : entryName.length();
+        if (end <= 0) {
+            return;
+        }
+        if (directory) {
+            children.put(entryName, new ArrayList<String>());
+        }
+        String parent = entryName.substring(0, entryName.lastIndexOf('/', end - 1) + 1);
+        List<String> siblings = children.get(parent);
+        if (siblings == null) {
+            add(parent);
+            siblings = children.get(parent);
+        }
+        siblings.add(entryName);
+    }
+
+    /**
+     * 
+     * @param entryName 目录的条目名，可以不以/结尾
+     * @return
+     */
+    public boolean isDirectory(String entryName) {
+        return children.containsKey(entryName) || children.containsKey(entryName + "/");
+    }
+
+    /**
+     * 所给目录下直接的文件和子目录的条目名，子目录以/结尾；不是目录时返回空列表
+     * 
+     * @param entryName 目录的条目名，可以不以/结尾，根目录为""
+     * @return
+     */
+    public List<String> getChildren(String entryName) {
+        List<String> list = children.get(entryName);
+        if (list == null) {
+            list = children.get(entryName + "/");
+        }
+        return list == null ? Collections.<String> emptyList() : Collections
+                .unmodifiableList(list);
+    }
+}
@@ -19,8 +19,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.Enumeration;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -49,13 +47,19 @@ public class JarFileObject implements FileObject {
     // 该文件所属的jar文件的根级FileObject对象，如jar:file:/path/to/your/jarfile.jar!/
     private final JarFileObject root;
 
-    // 该文件所属的jar文件的JarFile对象
+    // 该文件所属的jar文件的JarFile对象，同一个jar文件的所有FileObject共用一个
     private final JarFile jarFile;
 
+    // 该文件所属的jar文件的目录索引，只在根级FileObject对象上第一次使用时建立
+    private JarDirectory directory;
+
     // 该文件在JarFile中的JarEntry对象，如net/paoding， com/yourcampany/yourapp
     // 如果是根地址，如xxx.jar!/，entry将为null
     private final JarEntry entry;
 
+    // 该文件的条目名，如net/paoding/、net/paoding/Foo.class，根地址为""
+    private final String entryName;
+
     JarFileObject(FileSystemManager fs, URL url) throws FileNotFoundException, IOException {
         this.fs = fs;
         String urlString = url.toString();
@@ -66,14 +70,15 @@ public class JarFileObject implements FileObject {
             int beginIndex = urlString.indexOf(ResourceUtils.FILE_URL_PREFIX)
                     + ResourceUtils.FILE_URL_PREFIX.length();
             int endIndex = urlString.indexOf(ResourceUtils.JAR_URL_SEPARATOR);
-            this.jarFile = new JarFile(urlString.substring(beginIndex, endIndex));
+            this.jarFile = FileSystemManager.getJarFile(urlString.substring(beginIndex, endIndex));
         } else {
-            this.root = (JarFileObject) fs.resolveFile(urlString.substring(//
+            this.root = fs.resolveJarRoot(urlString.substring(//
                     0, urlString.indexOf(ResourceUtils.JAR_URL_SEPARATOR)
                             + ResourceUtils.JAR_URL_SEPARATOR.length()));
             this.jarFile = root.jarFile;
         }
         this.entry = jarFile.getJarEntry(entryName);
+        this.entryName = (entry == null) ? entryName : entry.getName();
         this.url = url;
         this.urlString = urlString;
         int indexSep = entryName.lastIndexOf('/');
@@ -96,21 +101,20 @@ public class JarFileObject implements FileObject {
 
     @Override
     public FileObject[] getChildren() throws IOException {
-        List<FileObject> children = new LinkedList<FileObject>();
-        Enumeration<JarEntry> e = jarFile.entries();
-        String entryName = root == this ? "" : entry.getName();
-        while (e.hasMoreElements()) {
-            JarEntry entry = e.nextElement();
-            if (entry.getName().length() > entryName.length()
-                    && entry.getName().startsWith(entryName)) {
-                int index = entry.getName().indexOf('/', entryName.length() + 1);
-                // 儿子=文件或子目录
-                if (index == -1 || index == entry.getName().length() - 1) {
-                    children.add(fs.resolveFile(root.urlString + entry.getName()));
-                }
-            }
+        // 儿子=文件或子目录，从目录索引中得到，不必遍历整个jar文件
+        List<String> names = root.getDirectory().getChildren(entryName);
+        FileObject[] children = new FileObject[names.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = fs.resolveFile(root.urlString + names.get(i));
+        }
+        return children;
+    }
+
+    private synchronized JarDirectory getDirectory() {
+        if (directory == null) {
+            directory = new JarDirectory(jarFile);
         }
-        return children.toArray(new FileObject[0]);
+        return directory;
     }
 
     @Override
@@ -122,7 +126,7 @@ public class JarFileObject implements FileObject {
 
             @Override
             public InputStream getInputStream() throws IOException {
-                return getURL().openStream();
+                return jarFile.getInputStream(entry);
             }
         };
     }
@@ -134,25 +138,16 @@ public class JarFileObject implements FileObject {
 
     @Override
     public FileObject getParent() throws IOException {
-        if (entry == null) {
-            return null;
-        }
-        if (entry.getName().length() == 0) {
+        if (root == this || !exists()) {
             return null;
         }
-        int lastSep = entry.getName().lastIndexOf('/');
+        String name = entryName.endsWith("/") ? entryName.substring(0, entryName.length() - 1)
+                : entryName;
+        int lastSep = name.lastIndexOf('/');
         if (lastSep == -1) {
             return root;
         }
-        String entryName = entry.getName();
-        String parentEntryName;
-        if (entry.isDirectory()) {
-            parentEntryName = entryName.substring(0, 1 + entryName.lastIndexOf('/', entryName
-                    .length() - 2));
-        } else {
-            parentEntryName = entryName.substring(0, 1 + lastSep);
-        }
-        return fs.resolveFile(root.urlString + parentEntryName);
+        return fs.resolveFile(root.urlString + name.substring(0, lastSep + 1));
     }
 
     @Override
@@ -167,7 +162,8 @@ public class JarFileObject implements FileObject {
 
     @Override
     public boolean exists() throws IOException {
-        return root == this || entry != null;
+        // 没有单独条目的目录由目录索引判断
+        return root == this || entry != null || root.getDirectory().isDirectory(entryName);
     }
 
     @Override
@@ -0,0 +1,101 @@
+package net.paoding.rose.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * 每个测试使用一个新建的临时目录 {@link #root}，测试结束后删除
+ */
+public abstract class TempDirTestCase extends TestCase {
+
+    protected File root;
+
+    @Override
+    protected void setUp() throws Exception {
+        root = File.createTempFile("rose-" + getClass().getSimpleName(), "");
+        root.delete();
+        root.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(root);
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 在临时目录下写一个UTF-8的文件，所需的目录一并创建
+     * 
+     * @param path 相对于 {@link #root} 的路径
+     * @param content
+     * @return
+     * @throws IOException
+     */
+    protected File write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    /**
+     * 把一个目录打成jar包，放在临时目录旁边，测试结束后删除
+     * 
+     * @param dir
+     * @param excluded 不放进jar包的路径，可以为null
+     * @return
+     * @throws IOException
+     */
+    protected File jar(File dir, String excluded) throws IOException {
+        File jar = new File(root.getParentFile(), root.getName() + ".jar");
+        jar.deleteOnExit();
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            addEntries(out, dir, "", excluded);
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+
+    private void addEntries(JarOutputStream out, File dir, String prefix, String excluded)
+            throws IOException {
+        for (File file : dir.listFiles()) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                addEntries(out, file, path + "/", excluded);
+            } else if (!path.equals(excluded)) {
+                out.putNextEntry(new JarEntry(path));
+                InputStream in = new FileInputStream(file);
+                try {
+                    byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.paoding.rose.load.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import net.paoding.rose.load.TempDirTestCase;
+
+public class ScanCacheTest extends TempDirTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ScanCache.setDirectory(new File(root, "cache"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ScanCache.setDirectory(null);
+        super.tearDown();
+    }
+
+    private String fingerprint() {
+        return new ScanCache.Fingerprint().add("scope").addFile(new File(root, "classes"))
+                .toString();
+    }
+
+    public void testDisabled() {
+        ScanCache.setDirectory(null);
+        assertNull(ScanCache.get("moduleResources", "key"));
+    }
+
+    public void testDirectoryCreated() {
+        File directory = new File(root, "cache");
+        assertEquals(directory, ScanCache.getDirectory());
+        assertTrue(directory.isDirectory());
+        assertNull(ScanCache.checkDirectory(directory));
+    }
+
+    public void testDirectoryWritableByOthers() {
+        if (File.separatorChar != '/') {
+            return; // 只在POSIX文件系统上检查权限
+        }
+        File directory = new File(root, "shared");
+        directory.mkdirs();
+        directory.setWritable(true, false);
+        assertNotNull(ScanCache.checkDirectory(directory));
+        ScanCache.setDirectory(directory);
+        assertNull(ScanCache.getDirectory());
+        assertNull(ScanCache.get("moduleResources", "key"));
+    }
+
+    public void testStoreAndLoad() throws IOException {
+        write("classes/a/controllers/HelloController.class", "1");
+        String fingerprint = fingerprint();
+        assertEquals(fingerprint, fingerprint());
+
+        ScanCache cache = ScanCache.get("moduleResources", "key");
+        assertNull(cache.load(fingerprint));
+        Properties p = new Properties();
+        p.setProperty("module.0.url", "file:/a b/controllers/");
+        cache.store(fingerprint, p);
+        assertTrue(cache.getFile().isFile());
+
+        Properties loaded = ScanCache.get("moduleResources", "key").load(fingerprint);
+        assertEquals(p, loaded);
+        assertNull(ScanCache.get("moduleResources", "other").load(fingerprint));
+    }
+
+    public void testFingerprintChanges() throws IOException {
+        File file = write("classes/a/controllers/HelloController.class", "1");
+        String fingerprint = fingerprint();
+
+        write("classes/a/controllers/HelloController.class", "12");
+        String resized = fingerprint();
+        assertFalse(fingerprint.equals(resized));
+
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertFalse(resized.equals(fingerprint()));
+
+        String touched = fingerprint();
+        write("classes/a/controllers/sub/WorldController.class", "1");
+        assertFalse(touched.equals(fingerprint()));
+    }
+
+    public void testOutOfDateOrBroken() throws IOException {
+        write("classes/a/controllers/HelloController.class", "1");
+        String fingerprint = fingerprint();
+        ScanCache cache = ScanCache.get("moduleResources", "key");
+        cache.store(fingerprint, new Properties());
+        assertNotNull(cache.load(fingerprint));
+
+        write("classes/a/controllers/HelloController.class", "12");
+        assertNull(cache.load(fingerprint()));
+
+        FileOutputStream out = new FileOutputStream(cache.getFile());
+        out.write("scanCache.version=0\n".getBytes("UTF-8"));
+        out.close();
+        assertNull(cache.load(fingerprint));
+    }
+}
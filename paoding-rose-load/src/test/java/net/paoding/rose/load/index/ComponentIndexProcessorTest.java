@@ -0,0 +1,221 @@
+package net.paoding.rose.load.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import net.paoding.rose.load.ResourceRef;
+import net.paoding.rose.load.TempDirTestCase;
+
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * 用javac编译一组示例源文件，检查 {@link ComponentIndexProcessor} 写出的索引
+ */
+public class ComponentIndexProcessorTest extends TempDirTestCase {
+
+    private static final String[][] SOURCES = {
+            // 注解和接口只按名字判断，这里用同名的桩代替web、jade模块
+            { "net/paoding/rose/web/annotation/Ignored.java",
+                    "package net.paoding.rose.web.annotation;\n"
+                            + "public @interface Ignored {}" },
+            { "net/paoding/rose/jade/annotation/DAO.java",
+                    "package net.paoding.rose.jade.annotation;\n" + "public @interface DAO {}" },
+            { "net/paoding/rose/web/ControllerInterceptor.java",
+                    "package net.paoding.rose.web;\n"
+                            + "public interface ControllerInterceptor {}" },
+            { "net/paoding/rose/web/ParamValidator.java",
+                    "package net.paoding.rose.web;\n" + "public interface ParamValidator {}" },
+            { "com/xxx/controllers/HelloController.java",
+                    "package com.xxx.controllers;\n"
+                            + "public class HelloController { Runnable r = new Runnable() {"
+                            + " public void run() {} }; }" },
+            { "com/xxx/controllers/admin/UserController.java",
+                    "package com.xxx.controllers.admin;\n" + "public class UserController {}" },
+            { "com/xxx/controllers/admin/ListC.java",
+                    "package com.xxx.controllers.admin;\n" + "public class ListC {}" },
+            // 以大写字母加C结尾的不是控制器
+            { "com/xxx/controllers/admin/UC.java",
+                    "package com.xxx.controllers.admin;\n" + "public class UC {}" },
+            { "com/xxx/controllers/AccessInterceptor.java",
+                    "package com.xxx.controllers;\n"
+                            + "public class AccessInterceptor"
+                            + " implements net.paoding.rose.web.ControllerInterceptor {}" },
+            { "com/xxx/controllers/NotNullValidator.java",
+                    "package com.xxx.controllers;\n"
+                            + "public class NotNullValidator"
+                            + " implements net.paoding.rose.web.ParamValidator {}" },
+            { "com/xxx/controllers/BaseController.java",
+                    "package com.xxx.controllers;\n" + "public abstract class BaseController {}" },
+            { "com/xxx/controllers/OldController.java",
+                    "package com.xxx.controllers;\n"
+                            + "@net.paoding.rose.web.annotation.Ignored\n"
+                            + "public class OldController {}" },
+            { "com/xxx/controllers/Helper.java",
+                    "package com.xxx.controllers;\n" + "class Helper {}" },
+            { "com/xxx/controllers/Util.java",
+                    "package com.xxx.controllers;\n" + "public class Util {}" },
+            { "com/xxx/dao/UserDAO.java",
+                    "package com.xxx.dao;\n" + "@net.paoding.rose.jade.annotation.DAO\n"
+                            + "public interface UserDAO {}" },
+            { "com/xxx/dao/Holder.java",
+                    "package com.xxx.dao;\n" + "public class Holder {\n"
+                            + "  @net.paoding.rose.jade.annotation.DAO interface InnerDAO {}\n"
+                            + "}" },
+            // 不以DAO结尾
+            { "com/xxx/dao/UserRepository.java",
+                    "package com.xxx.dao;\n" + "@net.paoding.rose.jade.annotation.DAO\n"
+                            + "public interface UserRepository {}" },
+            { "com/xxx/dao/package-info.java", "package com.xxx.dao;" },
+            { "com/xxx/service/UserService.java",
+                    "package com.xxx.service;\n" + "public class UserService {}" } };
+
+    private JavaCompiler compiler;
+
+    private File classes;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        compiler = ToolProvider.getSystemJavaCompiler();
+        classes = new File(root, "classes");
+        classes.mkdirs();
+        for (String[] source : SOURCES) {
+            write("src/" + source[0], source[1]);
+        }
+    }
+
+    private void compile(List<String> options, String... paths) throws IOException {
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            List<File> files = new ArrayList<File>();
+            for (String path : paths) {
+                files.add(new File(root, "src/" + path));
+            }
+            List<String> allOptions = new ArrayList<String>(options);
+            allOptions.addAll(Arrays.asList("-d", classes.getPath(), "-classpath", classes
+                    .getPath()));
+            DiagnosticCollector<JavaFileObject> diagnostics;
+            diagnostics = new DiagnosticCollector<JavaFileObject>();
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    allOptions, null, fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Arrays.asList(new ComponentIndexProcessor()));
+            boolean success = task.call();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                assertFalse(diagnostic.toString(), diagnostic.getKind() == Diagnostic.Kind.ERROR
+                        || diagnostic.getKind() == Diagnostic.Kind.WARNING);
+            }
+            assertTrue(success);
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private void compileAll(String... options) throws IOException {
+        String[] paths = new String[SOURCES.length];
+        for (int i = 0; i < SOURCES.length; i++) {
+            paths[i] = SOURCES[i][0];
+        }
+        compile(Arrays.asList(options), paths);
+    }
+
+    private ComponentIndex load() throws IOException {
+        return ComponentIndex.load(new ResourceRef(new FileSystemResource(classes.getPath()
+                + "/"), null, null));
+    }
+
+    public void testClassification() throws IOException {
+        if (compiler == null) {
+            return; // 在JRE上运行，没有javac
+        }
+        compileAll();
+        ComponentIndex index = load();
+        assertNotNull(index);
+        // 除package-info、内部类和匿名类以外的所有顶层类
+        assertEquals(SOURCES.length - 1, index.getClassCount());
+        assertEquals(Arrays.asList("com.xxx.controllers.HelloController",
+                "com.xxx.controllers.admin.ListC", "com.xxx.controllers.admin.UserController"),
+                sorted(index.getClassNames(ComponentIndex.CONTROLLER)));
+        assertEquals("", index.getModulePath("com.xxx.controllers.HelloController"));
+        assertEquals("admin", index.getModulePath("com.xxx.controllers.admin.UserController"));
+        assertEquals(Arrays.asList("com.xxx.controllers.AccessInterceptor"), index
+                .getClassNames(ComponentIndex.INTERCEPTOR));
+        assertEquals(Arrays.asList("com.xxx.controllers.NotNullValidator"), index
+                .getClassNames(ComponentIndex.VALIDATOR));
+        assertEquals(Arrays.asList("com.xxx.controllers.Util", "com.xxx.controllers.admin.UC"),
+                sorted(index.getClassNames(ComponentIndex.COMPONENT)));
+        assertEquals(Arrays.asList("com.xxx.dao.Holder$InnerDAO", "com.xxx.dao.UserDAO"),
+                sorted(index.getClassNames(ComponentIndex.DAO)));
+        assertFalse(index.contains("com.xxx.controllers.BaseController"));
+        assertFalse(index.contains("com.xxx.controllers.OldController"));
+        assertFalse(index.contains("com.xxx.controllers.Helper"));
+        assertFalse(index.contains("com.xxx.dao.UserRepository"));
+        assertFalse(index.contains("com.xxx.service.UserService"));
+    }
+
+    public void testDisabled() throws IOException {
+        if (compiler == null) {
+            return;
+        }
+        compileAll("-A" + ComponentIndexProcessor.OPTION + "=false");
+        assertFalse(new File(classes, ComponentIndex.LOCATION).exists());
+        assertNull(load());
+    }
+
+    public void testPartialCompilation() throws IOException {
+        if (compiler == null) {
+            return;
+        }
+        compileAll();
+        assertNotNull(load());
+        // 只重新编译一个源文件，写出的索引只包含这一个类
+        compile(new ArrayList<String>(), "com/xxx/controllers/HelloController.java");
+        assertNull(load());
+    }
+
+    public void testRecompiledWithoutProcessor() throws IOException {
+        if (compiler == null) {
+            return;
+        }
+        compileAll();
+        assertNotNull(load());
+        // IDE不运行annotation processor的增量编译：类名不变，索引没有重写，紧接着就发生
+        write("src/com/xxx/controllers/HelloController.java", "package com.xxx.controllers;\n"
+                + "@net.paoding.rose.web.annotation.Ignored\n"
+                + "public class HelloController {}");
+        compile(Arrays.asList("-proc:none"), "com/xxx/controllers/HelloController.java");
+        assertNull(load());
+    }
+
+    public void testJar() throws IOException {
+        if (compiler == null) {
+            return;
+        }
+        compileAll();
+        File jar = jar(classes, null);
+        try {
+            ComponentIndex index = ComponentIndex.load(new ResourceRef(new FileSystemResource(
+                    jar), null, null));
+            assertNotNull(index);
+            assertEquals(3, index.getClassNames(ComponentIndex.CONTROLLER).size());
+        } finally {
+            jar.delete();
+        }
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> sorted = new ArrayList<String>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
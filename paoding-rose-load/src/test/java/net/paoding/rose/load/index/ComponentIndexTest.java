@@ -0,0 +1,167 @@
+package net.paoding.rose.load.index;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.paoding.rose.load.ResourceRef;
+import net.paoding.rose.load.TempDirTestCase;
+
+import org.springframework.core.io.FileSystemResource;
+
+public class ComponentIndexTest extends TempDirTestCase {
+
+    private static final List<String> CLASS_NAMES = Arrays.asList(
+            "com.xxx.controllers.HelloController", "com.xxx.controllers.admin.UserController",
+            "com.xxx.controllers.AccessInterceptor", "com.xxx.dao.UserDAO");
+
+    private File touch(String path) throws IOException {
+        return write(path, path);
+    }
+
+    /**
+     * 写出索引，class文件的摘要按目录中现有的class文件计算
+     */
+    private void writeIndex(List<String> classNames) throws IOException {
+        writeIndex(classNames, true);
+    }
+
+    private void writeIndex(List<String> classNames, boolean withFiles) throws IOException {
+        ComponentIndex index = new ComponentIndex(classNames.size(), ComponentIndex
+                .digest(classNames));
+        if (withFiles) {
+            Map<String, Long> checksums = new TreeMap<String, Long>();
+            addChecksums(checksums, root, "");
+            index.setFiles(checksums.size(), ComponentIndex.fileDigest(checksums));
+        }
+        index.add(ComponentIndex.CONTROLLER, "com.xxx.controllers.HelloController", "");
+        index.add(ComponentIndex.CONTROLLER, "com.xxx.controllers.admin.UserController",
+                "admin");
+        index.add(ComponentIndex.INTERCEPTOR, "com.xxx.controllers.AccessInterceptor", null);
+        index.add(ComponentIndex.DAO, "com.xxx.dao.UserDAO", null);
+        File file = new File(root, ComponentIndex.LOCATION);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        index.write(writer);
+        writer.close();
+    }
+
+    private void addChecksums(Map<String, Long> checksums, File dir, String prefix)
+            throws IOException {
+        for (File file : dir.listFiles()) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                addChecksums(checksums, file, path + "/");
+            } else if (ComponentIndex.isClassFile(path)) {
+                checksums.put(path, ComponentIndex.checksum(file));
+            }
+        }
+    }
+
+    private ComponentIndex load() throws IOException {
+        return ComponentIndex.load(new ResourceRef(new FileSystemResource(root.getPath() + "/"),
+                null, null));
+    }
+
+    private ComponentIndex loadJar(File jar) throws IOException {
+        try {
+            return ComponentIndex.load(new ResourceRef(new FileSystemResource(jar), null, null));
+        } finally {
+            jar.delete();
+        }
+    }
+
+    private void createClasses() throws IOException {
+        touch("com/xxx/controllers/HelloController.class");
+        touch("com/xxx/controllers/HelloController$1.class");
+        touch("com/xxx/controllers/admin/UserController.class");
+        touch("com/xxx/controllers/AccessInterceptor.class");
+        touch("com/xxx/dao/UserDAO.class");
+        touch("com/xxx/dao/package-info.class");
+    }
+
+    public void testUpToDate() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        ComponentIndex index = load();
+        assertNotNull(index);
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("com.xxx.controllers.HelloController",
+                "com.xxx.controllers.admin.UserController"), index
+                .getClassNames(ComponentIndex.CONTROLLER));
+        assertEquals("", index.getModulePath("com.xxx.controllers.HelloController"));
+        assertEquals("admin", index.getModulePath("com.xxx.controllers.admin.UserController"));
+        assertNull(index.getModulePath("com.xxx.controllers.AccessInterceptor"));
+        assertEquals(ComponentIndex.DAO, index.getKind("com.xxx.dao.UserDAO"));
+        assertFalse(index.contains("com.xxx.controllers.HelloController$1"));
+    }
+
+    public void testClassAdded() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        touch("com/xxx/controllers/WorldController.class");
+        assertNull(load());
+    }
+
+    public void testPartialIndex() throws IOException {
+        createClasses();
+        // 增量编译只处理了其中一个类
+        writeIndex(Arrays.asList("com.xxx.controllers.HelloController"));
+        assertNull(load());
+    }
+
+    public void testRecompiledAfterIndex() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        assertNotNull(load());
+        // 没有运行annotation processor的增量编译只重写了改动过的类，不论间隔多短
+        write("com/xxx/controllers/HelloController.class", "@Ignored");
+        assertNull(load());
+    }
+
+    public void testInnerClassRecompiled() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        write("com/xxx/controllers/HelloController$1.class", "changed");
+        assertNull(load());
+    }
+
+    public void testNoFileDigest() throws IOException {
+        createClasses();
+        // 比如由不支持TaskListener的编译器写出的索引
+        writeIndex(CLASS_NAMES, false);
+        assertNull(load());
+    }
+
+    public void testJar() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        ComponentIndex index = loadJar(jar(root, null));
+        assertNotNull(index);
+        assertEquals(4, index.size());
+    }
+
+    public void testJarWithRecompiledClass() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        write("com/xxx/dao/UserDAO.class", "recompiled");
+        assertNull(loadJar(jar(root, null)));
+    }
+
+    public void testJarWithMissingClass() throws IOException {
+        createClasses();
+        writeIndex(CLASS_NAMES);
+        assertNull(loadJar(jar(root, "com/xxx/controllers/HelloController$1.class")));
+    }
+
+    public void testNoIndex() throws IOException {
+        createClasses();
+        assertNull(load());
+    }
+}
@@ -1,8 +1,12 @@
 package net.paoding.rose.load.vfs;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
 
 import junit.framework.TestCase;
 import net.paoding.rose.load.vfs.FileObject;
@@ -14,6 +18,7 @@ import net.paoding.rose.load.vfs.SimpleFileObject;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.util.ResourceUtils;
+import org.springframework.util.StreamUtils;
 
 public class FileObjectTest extends TestCase {
 
@@ -170,4 +175,49 @@ public class FileObjectTest extends TestCase {
         assertTrue(rootObject.getChild("org/").exists());
         assertTrue(rootObject.getChild("org/") == fs.resolveFile(root + "org/"));
     }
+
+    public void testJarFileWithoutDirectoryEntries() throws IOException {
+        File file = File.createTempFile("rose-vfs-", ".jar");
+        file.deleteOnExit();
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        for (String name : new String[] { "a/b/C.class", "a/D.class", "a/b/c/E.class" }) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(name.getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        out.close();
+
+        FileSystemManager fs = new FileSystemManager();
+        String root = ResourceUtils.URL_PROTOCOL_JAR + ":" + file.toURI()
+                + ResourceUtils.JAR_URL_SEPARATOR;
+        FileObject rootObject = fs.resolveFile(root);
+        assertEquals(1, rootObject.getChildren().length);
+
+        FileObject a = rootObject.getChild("a");
+        assertTrue(a.exists());
+        assertSame(FileType.FOLDER, a.getType());
+        assertSame(a, fs.resolveFile(root + "a/"));
+        assertSame(rootObject, a.getParent());
+
+        FileObject[] children = a.getChildren();
+        assertEquals(2, children.length);
+        FileObject b = fs.resolveFile(root + "a/b/");
+        assertTrue(ArrayUtils.contains(children, b));
+        FileObject d = a.getChild("D.class");
+        assertTrue(ArrayUtils.contains(children, d));
+        assertSame(FileType.FILE, d.getType());
+        assertSame(a, d.getParent());
+        assertSame(a, b.getParent());
+        assertEquals(2, b.getChildren().length);
+        assertEquals(0, d.getChildren().length);
+        assertFalse(a.getChild("x/").exists());
+
+        InputStream in = d.getContent().getInputStream();
+        assertEquals("a/D.class", new String(StreamUtils.copyToByteArray(in), "UTF-8"));
+        in.close();
+
+        // 不同的FileSystemManager共用同一个JarFile
+        assertSame(FileSystemManager.getJarFile(file.getPath()), FileSystemManager
+                .getJarFile(file.getPath()));
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2007-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.portal.impl;
+
+import jdk.jfr.EventType;
+import net.paoding.rose.web.portal.Window;
+
+/**
+ * 运行在有jdk.jfr的JVM上时的 {@link WindowEvents}
+ * 
+ */
+class JfrWindowEvents extends WindowEvents {
+
+    private final EventType type = EventType.getEventType(PortalWindowEvent.class);
+
+    @Override
+    public Object begin() {
+        if (!type.isEnabled()) {
+            return null;
+        }
+        PortalWindowEvent event = new PortalWindowEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commit(Object event, Window window, long queueNanos, long runNanos) {
+        PortalWindowEvent e = (PortalWindowEvent) event;
+        e.end();
+        if (!e.shouldCommit()) {
+            return;
+        }
+        e.name = window.getName();
+        e.path = window.getPath();
+        e.queueWait = queueNanos;
+        e.runTime = runNanos;
+        e.status = window.getStatusCode();
+        e.error = window.getThrowable() == null ? null : window.getThrowable().getClass()
+                .getName();
+        e.commit();
+    }
+}
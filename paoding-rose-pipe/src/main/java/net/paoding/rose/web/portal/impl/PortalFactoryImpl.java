@@ -29,6 +29,8 @@ import net.paoding.rose.web.portal.Portal;
 import net.paoding.rose.web.portal.PortalFactory;
 import net.paoding.rose.web.portal.WindowListener;
 import net.paoding.rose.web.portal.PortalSetting;
+import net.paoding.rose.web.var.Model;
+import net.paoding.rose.web.var.ModelImpl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -141,6 +143,9 @@ public class PortalFactoryImpl implements PortalFactory, InitializingBean {
             responseWrapper.setResponse(portalResponse);
         }
 
+        // 窗口在其他线程中执行，可能通过portal访问这个invocation的model
+        shareModel(inv);
+
         //
         inv.setAttribute("$$paoding-rose-portal.portal", portal);
 
@@ -154,6 +159,7 @@ public class PortalFactoryImpl implements PortalFactory, InitializingBean {
         if (pipe == null) {
             if (create) {
                 pipe = new PipeImpl(inv, executorService, windowListener);
+                shareModel(inv);
                 inv.getHeadInvocation().setAttribute("$$paoding-rose-portal.pipe", pipe);
             }
         } else if (pipe.getInvocation() != inv) {
@@ -167,4 +173,11 @@ public class PortalFactoryImpl implements PortalFactory, InitializingBean {
         return pipe;
     }
 
+    private void shareModel(Invocation inv) {
+        Model model = inv.getModel();
+        if (model instanceof ModelImpl) {
+            ((ModelImpl) model).share();
+        }
+    }
+
 }
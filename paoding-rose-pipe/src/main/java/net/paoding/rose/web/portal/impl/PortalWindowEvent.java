@@ -0,0 +1,58 @@
+/*
+ * Copyright 2007-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.portal.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 一个portal/pipe窗口，事件的持续时间是从提交给线程池到执行结束
+ * 
+ */
+@Name("net.paoding.rose.PortalWindow")
+@Label("Portal Window")
+@Category( { "Rose", "Portal" })
+@Description("A portal or pipe window executed by Rose")
+@StackTrace(false)
+class PortalWindowEvent extends Event {
+
+    @Label("Name")
+    String name;
+
+    @Label("Path")
+    String path;
+
+    @Label("Queue Wait")
+    @Description("Time waited in the executor before running")
+    @Timespan
+    long queueWait;
+
+    @Label("Run Time")
+    @Timespan
+    long runTime;
+
+    @Label("Status")
+    int status;
+
+    @Label("Error")
+    @Description("Class of the exception thrown, if any")
+    String error;
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2007-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.portal.impl;
+
+import net.paoding.rose.web.portal.Window;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link WindowEvents} 向JDK Flight Recorder(JFR)发出窗口的PortalWindow事件：窗口名、在线程池中排队等待的时间、执行的时间。
+ * <p>
+ * 事件由JFR的设置(net.paoding.rose.PortalWindow的enabled、threshold)控制，没有开启时
+ * {@link #begin()} 返回null，窗口任务不再做任何事情；运行在没有jdk.jfr的JVM上时使用空实现。
+ * 
+ */
+abstract class WindowEvents {
+
+    private static final Log logger = LogFactory.getLog(WindowEvents.class);
+
+    private static final WindowEvents instance = create();
+
+    public static WindowEvents getInstance() {
+        return instance;
+    }
+
+    private static WindowEvents create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+        } catch (Throwable e) {
+            return new WindowEvents() {};
+        }
+        try {
+            // 通过反射加载，使本类不直接引用jdk.jfr
+            return (WindowEvents) Class.forName(WindowEvents.class.getPackage().getName()
+                    + ".JfrWindowEvents").newInstance();
+        } catch (Throwable e) {
+            logger.warn("JFR events of portal windows are disabled", e);
+            return new WindowEvents() {};
+        }
+    }
+
+    /**
+     * 在窗口提交给线程池时开始一个事件
+     * 
+     * @return 没有开启这个事件时返回null
+     */
+    public Object begin() {
+        return null;
+    }
+
+    /**
+     * 结束并提交 {@link #begin()} 返回的事件
+     * 
+     * @param event 非null
+     * @param window
+     * @param queueNanos 提交后等待执行的时间
+     * @param runNanos 执行的时间
+     */
+    public void commit(Object event, Window window, long queueNanos, long runNanos) {
+    }
+}
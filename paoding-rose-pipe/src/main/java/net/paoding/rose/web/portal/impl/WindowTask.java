@@ -39,6 +39,12 @@ final class WindowTask implements Runnable {
 
     private final WindowResponse response;
 
+    /** JFR的PortalWindow事件，没有开启时为null */
+    private final Object event;
+
+    /** 开启了PortalWindow事件时，窗口提交的时间 */
+    private final long submitTime;
+
     public WindowTask(WindowImpl window, WindowRequest request, WindowResponse response) {
         if (window == null) {
             throw new NullPointerException("window");
@@ -46,6 +52,8 @@ final class WindowTask implements Runnable {
         this.window = window;
         this.request = request;
         this.response = response;
+        this.event = WindowEvents.getInstance().begin();
+        this.submitTime = event == null ? 0 : System.nanoTime();
     }
 
     public WindowImpl getWindow() {
@@ -54,6 +62,7 @@ final class WindowTask implements Runnable {
 
     @Override
     public void run() {
+        final long startTime = event == null ? 0 : System.nanoTime();
         try {
             // started
             window.getContainer().onWindowStarted(window);
@@ -93,6 +102,11 @@ final class WindowTask implements Runnable {
             final PortalRequest portalRequest = PortalRequest.unwrapPortalRequest(wrapper);
             portalRequest.setRequest(null);
 
+            if (event != null) {
+                WindowEvents.getInstance().commit(event, window, startTime - submitTime,
+                        System.nanoTime() - startTime);
+            }
+
         }
     }
 
@@ -78,6 +78,11 @@ public interface RoseConstants {
      */
     public static final String CONF_INTERCEPTED_DENY = "intercepted.deny";
 
+    /**
+     * 可配置在模块的rose.properties中，true或false表示本模块以及没有另外配置的子模块是否压缩响应
+     */
+    public static final String CONF_COMPRESSION = "compression";
+
     /**
      *用于在每个module的包的rose.properties中中，定义module.path时，
      * 可通过它引用上个package定义的module.path
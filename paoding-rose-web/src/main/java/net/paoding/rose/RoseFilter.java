@@ -15,11 +15,18 @@
  */
 package net.paoding.rose;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -32,17 +39,21 @@ import net.paoding.rose.scanner.ModuleResource;
 import net.paoding.rose.scanner.ModuleResourceProvider;
 import net.paoding.rose.scanner.ModuleResourceProviderImpl;
 import net.paoding.rose.load.LoadScope;
+import net.paoding.rose.load.cache.ScanCache;
 import net.paoding.rose.load.context.RoseWebAppContext;
 import net.paoding.rose.util.PrinteHelper;
+import net.paoding.rose.util.SpringUtils;
 import net.paoding.rose.web.RequestPath;
 import net.paoding.rose.web.annotation.ReqMethod;
 import net.paoding.rose.web.impl.mapping.ConstantMapping;
 import net.paoding.rose.web.impl.mapping.Mapping;
 import net.paoding.rose.web.impl.mapping.MappingNode;
+import net.paoding.rose.web.impl.mapping.MatchCache;
 import net.paoding.rose.web.impl.mapping.TreeBuilder;
 import net.paoding.rose.web.impl.mapping.ignored.IgnoredPath;
 import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathEnds;
 import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathEquals;
+import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathMatcher;
 import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathRegexMatch;
 import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathStarts;
 import net.paoding.rose.web.impl.module.Module;
@@ -50,9 +61,16 @@ import net.paoding.rose.web.impl.module.ModulesBuilder;
 import net.paoding.rose.web.impl.module.ModulesBuilderImpl;
 import net.paoding.rose.web.impl.thread.LinkedEngine;
 import net.paoding.rose.web.impl.thread.RootEngine;
+import net.paoding.rose.web.impl.thread.InternalForwarder;
 import net.paoding.rose.web.impl.thread.Rose;
+import net.paoding.rose.web.impl.thread.VirtualThreadExecutor;
+import net.paoding.rose.web.instruction.BufferPool;
 import net.paoding.rose.web.instruction.InstructionExecutor;
 import net.paoding.rose.web.instruction.InstructionExecutorImpl;
+import net.paoding.rose.web.instruction.ResponseCompression;
+import net.paoding.rose.web.instruction.ViewInstruction;
+import net.paoding.rose.web.metrics.MetricsRecorder;
+import net.paoding.rose.web.metrics.RoseMetrics;
 
 import org.apache.commons.lang.StringUtils;
 import org.springframework.context.ApplicationContext;
@@ -62,6 +80,7 @@ import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 import org.springframework.web.filter.GenericFilterBean;
 import org.springframework.web.util.NestedServletException;
+import org.springframework.web.util.WebUtils;
 
 /**
  * Rose 是一个基于Servlet规范、Spring“规范”的WEB开发框架。
@@ -160,10 +179,75 @@ public class RoseFilter extends GenericFilterBean {
 
     private LoadScope load = new LoadScope("", "controllers");
 
+    /** 并行构建模块的线程数，1表示逐个构建 */
+    private int moduleBuildThreads = 1;
+
+    /** 存放扫描结果缓存的目录，null表示不使用 */
+    private File scanCacheDirectory;
+
+    /** 扫描结果缓存是否存放在servlet容器为应用提供的临时目录中 */
+    private boolean scanCacheInTempDir;
+
+    /** 是否为匹配树创建子结点索引 */
+    private boolean mappingIndexed = true;
+
+    /** 匹配结果缓存的大小，0表示不使用缓存 */
+    private int matchCacheSize = 0;
+
+    private String matchCacheEviction = MatchCache.EVICTION_LRU;
+
+    private int matchCacheMaxRegexValues = 16;
+
+    private MatchCache matchCache;
+
+    /** 异步action的默认超时时间(毫秒)，-1表示使用容器的默认值 */
+    private long asyncTimeout = -1;
+
+    /** 执行异步action返回的Callable、等待一般Future的线程数，0表示CPU数的4倍 */
+    private int asyncThreads = 0;
+
+    /** 上述线程都在忙时最多排队等待的异步结果数 */
+    private int asyncQueueSize = 1000;
+
+    private ExecutorService asyncExecutor;
+
+    /** 是否默认在虚拟线程中执行action */
+    private boolean virtualThreads = false;
+
+    private VirtualThreadExecutor virtualThreadExecutor;
+
+    /** 重新扫描/views目录的间隔(秒)，0表示启动后不再扫描 */
+    private int viewsRefreshInterval = 0;
+
+    private int outputBufferSize = BufferPool.DEFAULT_BUFFER_SIZE;
+
+    private int outputBufferPoolSize = BufferPool.DEFAULT_MAX_POOLED;
+
+    /** forward到Rose自己的地址时是否在内部完成，不经过容器 */
+    private boolean internalForward = false;
+
+    private InternalForwarder internalForwarder;
+
+    /** 是否统计各action的请求数、状态和各阶段耗时 */
+    private boolean metrics = false;
+
+    private RoseMetrics roseMetrics;
+
+    private boolean compression = false;
+
+    private int compressionMinSize = ResponseCompression.DEFAULT_MIN_SIZE;
+
+    private String[] compressionMimeTypes = ResponseCompression.DEFAULT_MIME_TYPES;
+
+    private int compressionLevel = -1;
+
     private IgnoredPath[] ignoredPaths = new IgnoredPath[] {
             new IgnoredPathStarts(RoseConstants.VIEWS_PATH_WITH_END_SEP),
             new IgnoredPathEquals("/favicon.ico") };
 
+    /** ignoredPaths编译后的匹配器，由init创建 */
+    private IgnoredPathMatcher ignoredPathMatcher;
+
     /**
      * 改变默认行为，告知Rose要读取的applicationContext地址
      */
@@ -187,6 +271,218 @@ public class RoseFilter extends GenericFilterBean {
         this.modulesBuilderClass = modulesBuilderClass;
     }
 
+    /**
+     * 设置启动时并行构建模块(创建、refresh各模块的Spring容器，注册、检查控制器)的线程数(默认1，逐个构建)，
+     * 0表示使用cpu的个数；子模块总在父模块之后构建，得到的模块顺序、拦截器顺序与逐个构建时相同
+     * 
+     * @param moduleBuildThreads
+     * @see ModulesBuilderImpl#setThreads(int)
+     */
+    public void setModuleBuildThreads(int moduleBuildThreads) {
+        this.moduleBuildThreads = moduleBuildThreads;
+    }
+
+    /**
+     * 把启动时的扫描结果(有rose标识的jar包、各模块及其类)缓存在磁盘上，下次启动时如果所扫描的jar包、classes目录都没有变化
+     * (路径、大小、修改时间)就直接使用，不必重新扫描。
+     * <p>
+     * 值为true或1时存放在servlet容器为这个应用提供的临时目录(javax.servlet.context.tempdir)下的rose-scan-cache目录中，
+     * 其他非空的值(false、0除外)作为存放的目录；默认不缓存。
+     * <p>
+     * 缓存中的配置文件地址、类名会被直接使用，所以目录必须只有运行应用的用户可以写入，不要使用/tmp这样的公共目录；
+     * 不属于当前用户或者其他用户可写的目录会被拒绝，见 {@link ScanCache#setDirectory(File)}
+     * 
+     * @param scanCache
+     * @see ScanCache
+     */
+    public void setScanCache(String scanCache) {
+        scanCache = StringUtils.trimToEmpty(scanCache);
+        if (scanCache.length() == 0 || "false".equalsIgnoreCase(scanCache)
+                || "0".equals(scanCache)) {
+            this.scanCacheDirectory = null;
+            this.scanCacheInTempDir = false;
+        } else if ("true".equalsIgnoreCase(scanCache) || "1".equals(scanCache)) {
+            this.scanCacheDirectory = null;
+            this.scanCacheInTempDir = true;
+        } else {
+            this.scanCacheDirectory = new File(scanCache);
+            this.scanCacheInTempDir = false;
+        }
+    }
+
+    /**
+     * 是否为匹配树的结点创建子结点索引(默认true)。设置为false时，匹配过程将逐个比较同级的兄弟结点。
+     * 
+     * @param mappingIndexed
+     */
+    public void setMappingIndexed(boolean mappingIndexed) {
+        this.mappingIndexed = mappingIndexed;
+    }
+
+    /**
+     * 设置匹配结果缓存的最大项数(默认0，即不使用缓存)
+     * 
+     * @param matchCacheSize
+     * @see MatchCache
+     */
+    public void setMatchCacheSize(int matchCacheSize) {
+        this.matchCacheSize = matchCacheSize;
+    }
+
+    /**
+     * 设置匹配结果缓存的淘汰策略：lru(默认)或fifo
+     * 
+     * @param matchCacheEviction
+     */
+    public void setMatchCacheEviction(String matchCacheEviction) {
+        this.matchCacheEviction = matchCacheEviction;
+    }
+
+    /**
+     * 设置经过一个变量结点的地址最多写入匹配结果缓存多少次，超过的被认为是高基数参数而不再缓存(默认16)
+     * 
+     * @param matchCacheMaxRegexValues
+     */
+    public void setMatchCacheMaxRegexValues(int matchCacheMaxRegexValues) {
+        this.matchCacheMaxRegexValues = matchCacheMaxRegexValues;
+    }
+
+    /**
+     * 设置返回Callable、Future或DeferredResult的action的默认异步超时时间(毫秒)，
+     * 可被action方法或控制器上的 @AsyncTimeout 覆盖；-1(默认)表示使用容器的默认值，0表示不超时。
+     * <p>
+     * 异步处理需要在web.xml中为RoseFilter(以及它之前的filter)配置&lt;async-supported&gt;true&lt;/async-supported&gt;，
+     * 否则Rose在容器线程中等待这些结果。
+     * 
+     * @param asyncTimeout
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * 设置执行异步action返回的Callable(以及等待不能注册回调的一般Future)的线程数，默认0表示CPU数的4倍。
+     * <p>
+     * 这些线程由Rose自己的线程池提供，不占用容器处理请求的线程；线程空闲60秒后退出。
+     * 
+     * @param asyncThreads
+     */
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    /**
+     * 设置asyncThreads个线程都在忙时最多排队的Callable/Future数(默认1000)，超出的请求返回503。
+     * 
+     * @param asyncQueueSize
+     */
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    /**
+     * 设置是否默认把匹配到的action放到虚拟线程中执行(默认false)，可被action方法或控制器上的 @VirtualThread 覆盖。
+     * <p>
+     * 和asyncTimeout一样需要在web.xml中为RoseFilter配置&lt;async-supported&gt;true&lt;/async-supported&gt;，
+     * 否则仍在容器线程中执行；运行环境(JDK 21以前)不支持虚拟线程时这个参数和 @VirtualThread 都不起作用，只在启动时给出警告。
+     * 
+     * @param virtualThreads
+     * @see VirtualThreadExecutor
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Rose在启动时扫描一次/views目录，此后查找视图文件只使用这个索引；
+     * 设置一个大于0的秒数(比如开发环境)可以让Rose定期重新扫描，以发现新增、删除的视图文件(默认0，不重新扫描)。
+     * 
+     * @param viewsRefreshInterval
+     */
+    public void setViewsRefreshInterval(int viewsRefreshInterval) {
+        this.viewsRefreshInterval = viewsRefreshInterval;
+    }
+
+    /**
+     * 设置输出InputStream等响应内容时使用的缓冲区大小(字节，默认8192)
+     * 
+     * @param outputBufferSize
+     * @see BufferPool
+     */
+    public void setOutputBufferSize(int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * 设置缓冲区池最多保留的缓冲区个数(默认64)，0表示不保留
+     * 
+     * @param outputBufferPoolSize
+     * @see BufferPool
+     */
+    public void setOutputBufferPoolSize(int outputBufferPoolSize) {
+        this.outputBufferPoolSize = outputBufferPoolSize;
+    }
+
+    /**
+     * 设置是否在Rose内部完成forward(默认false)：目标地址由Rose处理时，直接在匹配树上匹配并执行，
+     * 不再经过容器的RequestDispatcher和RoseFilter；其他地址仍交给容器
+     * 
+     * @param internalForward
+     * @see InternalForwarder
+     */
+    public void setInternalForward(boolean internalForward) {
+        this.internalForward = internalForward;
+    }
+
+    /**
+     * 设置是否统计各action的请求数、异常、响应状态以及匹配、参数解析、拦截器、action、渲染各阶段的耗时分布(默认false)，
+     * 结果在/rose-info/metrics查看，并交给根容器中 {@link MetricsRecorder} 类型的bean；关闭时请求不做任何计时
+     * 
+     * @param metrics
+     * @see RoseMetrics
+     */
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 设置是否默认压缩(gzip)响应(默认false)，可被模块rose.properties的compression以及action方法或控制器上的
+     * &#064;Compress 覆盖
+     * 
+     * @param compression
+     * @see ResponseCompression
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 设置压缩的最小字节数(默认1024)，更小的响应不压缩
+     * 
+     * @param compressionMinSize
+     */
+    public void setCompressionMinSize(int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    /**
+     * 设置可以压缩的内容类型，以逗号分隔(默认为文本、html、xml、css、javascript、json)
+     * 
+     * @param compressionMimeTypes
+     */
+    public void setCompressionMimeTypes(String[] compressionMimeTypes) {
+        this.compressionMimeTypes = compressionMimeTypes;
+    }
+
+    /**
+     * 设置压缩级别，1(最快)-9(最小)，-1(默认)使用zlib的默认级别
+     * 
+     * @param compressionLevel
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
     /**
      * <pre>
      * like: &quot;com.renren.myapp, com.renren.yourapp&quot; etc
@@ -265,6 +561,23 @@ public class RoseFilter extends GenericFilterBean {
                 logger.debug("[init] parameters: " + sb);
             }
 
+            // 根容器中的jade等也会扫描，所以在创建根容器之前设置
+            File cacheDirectory = scanCacheDirectory;
+            if (scanCacheInTempDir) {
+                File tempDir = (File) getServletContext().getAttribute(
+                        WebUtils.TEMP_DIR_CONTEXT_ATTRIBUTE);
+                if (tempDir != null) {
+                    cacheDirectory = new File(tempDir, "rose-scan-cache");
+                } else {
+                    logger.warn("[init] scan cache is disabled: the servlet container provides no "
+                            + WebUtils.TEMP_DIR_CONTEXT_ATTRIBUTE);
+                }
+            }
+            ScanCache.setDirectory(cacheDirectory);
+            if (ScanCache.getDirectory() != null && logger.isInfoEnabled()) {
+                logger.info("[init] using scan cache in " + ScanCache.getDirectory());
+            }
+
             WebApplicationContext rootContext = prepareRootApplicationContext();
 
             if (logger.isInfoEnabled()) {
@@ -281,8 +594,53 @@ public class RoseFilter extends GenericFilterBean {
             }
 
             // 创建匹配树以及各个结点的上的执行逻辑(Engine)
+            this.asyncExecutor = createAsyncExecutor();
             this.mappingTree = prepareMappingTree(modules);
 
+            this.ignoredPathMatcher = IgnoredPathMatcher.compile(ignoredPaths);
+            if (logger.isInfoEnabled()) {
+                logger.info("[init] using " + ignoredPathMatcher);
+            }
+
+            if (matchCacheSize > 0) {
+                this.matchCache = new MatchCache(matchCacheSize, matchCacheEviction);
+                this.matchCache.setMaxRegexValues(matchCacheMaxRegexValues);
+                if (logger.isInfoEnabled()) {
+                    logger.info("[init] using " + matchCache);
+                }
+            }
+
+            if (VirtualThreadExecutor.isVirtualThreadSupported()) {
+                this.virtualThreadExecutor = new VirtualThreadExecutor(virtualThreads);
+            } else if (virtualThreads) {
+                logger.warn("[init] virtual threads are not supported by this JVM ("
+                        + System.getProperty("java.version")
+                        + "), actions will be executed in the container's threads");
+            }
+
+            if (metrics) {
+                this.roseMetrics = new RoseMetrics();
+                for (MetricsRecorder recorder : SpringUtils.getBeans(rootContext,
+                        MetricsRecorder.class)) {
+                    roseMetrics.addRecorder(recorder);
+                }
+                if (logger.isInfoEnabled()) {
+                    logger.info("[init] using " + roseMetrics);
+                }
+            }
+
+            if (internalForward) {
+                this.internalForwarder = new InternalForwarder(modules, mappingTree, matchCache,
+                        ignoredPathMatcher);
+            }
+
+            BufferPool.configure(outputBufferSize, outputBufferPoolSize);
+            ResponseCompression.configure(compression, compressionMinSize,
+                    compressionMimeTypes, compressionLevel);
+
+            ViewInstruction.initViewFileIndex(getServletContext(), viewsRefreshInterval);
+            ViewInstruction.prepareViewDispatchers(modules);
+
             if (logger.isInfoEnabled()) {
                 logger.info("[init] exits from 'init/mappingTree'");
                 logger.info("[init] exits from 'init'");
@@ -330,6 +688,15 @@ public class RoseFilter extends GenericFilterBean {
         // 创建RequestPath对象，用于记录对地址解析的结果
         final RequestPath requestPath = new RequestPath(httpRequest);
 
+        // 内部forward的目标返回了":continue"，改由容器forward而来：不再执行一遍Rose，直接交给容器的其他组件
+        if (requestPath.isForwardRequest()
+                && requestPath.getUri().equals(
+                        httpRequest.getAttribute(InternalForwarder.CONTINUE_ATTR))) {
+            httpRequest.removeAttribute(InternalForwarder.CONTINUE_ATTR);
+            notMatched(filterChain, httpRequest, httpResponse, requestPath);
+            return;
+        }
+
         //  简单、快速判断本次请求，如果不应由Rose执行，返回true
         if (quicklyPass(requestPath)) {
             notMatched(filterChain, httpRequest, httpResponse, requestPath);
@@ -341,6 +708,11 @@ public class RoseFilter extends GenericFilterBean {
         try {
             // rose 对象代表Rose框架对一次请求的执行：一朵玫瑰出墙来
             final Rose rose = new Rose(modules, mappingTree, httpRequest, httpResponse, requestPath);
+            rose.setMatchCache(matchCache);
+            rose.setVirtualThreadExecutor(virtualThreadExecutor);
+            rose.setInternalForwarder(internalForwarder);
+            rose.setIgnoredPathMatcher(ignoredPathMatcher);
+            rose.setMetrics(roseMetrics);
 
             // 对请求进行匹配、处理、渲染以及渲染后的操作，如果找不到映配则返回false
             matched = rose.start();
@@ -461,6 +833,10 @@ public class RoseFilter extends GenericFilterBean {
         }
 
         ModulesBuilder modulesBuilder = modulesBuilderClass.newInstance();
+        if (modulesBuilder instanceof ModulesBuilderImpl) {
+            ((ModulesBuilderImpl) modulesBuilder).setThreads(moduleBuildThreads > 0 ? //
+                    moduleBuildThreads : Runtime.getRuntime().availableProcessors());
+        }
 
         if (logger.isInfoEnabled()) {
             logger.info("[init/module] using modulesBuilder: " + modulesBuilder);
@@ -480,16 +856,48 @@ public class RoseFilter extends GenericFilterBean {
     private MappingNode prepareMappingTree(List<Module> modules) {
         Mapping rootMapping = new ConstantMapping("");
         MappingNode mappingTree = new MappingNode(rootMapping);
-        LinkedEngine rootEngine = new LinkedEngine(null, new RootEngine(instructionExecutor),
-                mappingTree);
+        RootEngine root = new RootEngine(instructionExecutor);
+        root.setAsyncTimeout(asyncTimeout);
+        root.setAsyncExecutor(asyncExecutor);
+        LinkedEngine rootEngine = new LinkedEngine(null, root, mappingTree);
         mappingTree.getMiddleEngines().addEngine(ReqMethod.ALL, rootEngine);
 
         TreeBuilder treeBuilder = new TreeBuilder();
         treeBuilder.create(mappingTree, modules);
 
+        if (mappingIndexed) {
+            mappingTree.compileIndex();
+        }
+
         return mappingTree;
     }
 
+    private ExecutorService createAsyncExecutor() {
+        int threads = asyncThreads > 0 ? asyncThreads
+                : Runtime.getRuntime().availableProcessors() * 4;
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(Math.max(asyncQueueSize, 1)),
+                new ThreadFactory() {
+
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "rose-async-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setContextClassLoader(classLoader);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        if (logger.isInfoEnabled()) {
+            logger.info("[init] async executor: threads=" + threads + ", queueSize="
+                    + asyncQueueSize);
+        }
+        return executor;
+    }
+
     /**
      * 简单、快速判断本次请求，如果不应由Rose执行，返回true
      * 
@@ -497,12 +905,7 @@ public class RoseFilter extends GenericFilterBean {
      * @return
      */
     private boolean quicklyPass(final RequestPath requestPath) {
-        for (IgnoredPath p : ignoredPaths) {
-            if (p.hit(requestPath)) {
-                return true;
-            }
-        }
-        return false;
+        return ignoredPathMatcher.pass(requestPath);
     }
 
     @Override
@@ -526,6 +929,16 @@ public class RoseFilter extends GenericFilterBean {
             logger.error("", e);
             getServletContext().log("", e);
         }
+
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
+
+        ViewInstruction.destroyViewFileIndex();
         super.destroy();
     }
 
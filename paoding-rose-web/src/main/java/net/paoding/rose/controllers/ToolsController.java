@@ -20,7 +20,9 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -30,18 +32,30 @@ import net.paoding.rose.web.InterceptorDelegate;
 import net.paoding.rose.web.Invocation;
 import net.paoding.rose.web.RequestPath;
 import net.paoding.rose.web.annotation.HttpFeatures;
+import net.paoding.rose.web.annotation.Param;
 import net.paoding.rose.web.annotation.Path;
 import net.paoding.rose.web.annotation.ReqMethod;
 import net.paoding.rose.web.annotation.rest.Get;
 import net.paoding.rose.web.impl.mapping.EngineGroup;
 import net.paoding.rose.web.impl.mapping.MappingNode;
+import net.paoding.rose.web.impl.mapping.MatchCache;
 import net.paoding.rose.web.impl.mapping.MatchResult;
+import net.paoding.rose.web.impl.mapping.ignored.IgnoredPath;
+import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathMatcher;
 import net.paoding.rose.web.impl.module.ControllerRef;
 import net.paoding.rose.web.impl.module.Module;
 import net.paoding.rose.web.impl.thread.ActionEngine;
 import net.paoding.rose.web.impl.thread.InvocationBean;
 import net.paoding.rose.web.impl.thread.LinkedEngine;
 import net.paoding.rose.web.impl.thread.Rose;
+import net.paoding.rose.web.instruction.JsonInstruction;
+import net.paoding.rose.web.metrics.ActionMetrics;
+import net.paoding.rose.web.metrics.Histogram;
+import net.paoding.rose.web.metrics.InterceptorMetrics;
+import net.paoding.rose.web.metrics.Phase;
+import net.paoding.rose.web.metrics.RoseMetrics;
+
+import org.apache.commons.lang.StringEscapeUtils;
 
 /**
  * 
@@ -74,6 +88,19 @@ public class ToolsController {
 
         s += "<div style='margin-left:20px'>";
         s += "<a href=\"" + prefix + "startupInfo\">/rose-info/startupInfo</a></div>";
+
+        s += "<div style='margin-left:20px'>";
+        s += "<a href=\"" + prefix + "matchCache\">/rose-info/matchCache</a></div>";
+
+        s += "<div style='margin-left:20px'>";
+        s += "<a href=\"" + prefix + "ignoredPaths\">/rose-info/ignoredPaths</a></div>";
+
+        s += "<div style='margin-left:20px'>";
+        s += "<a href=\"" + prefix + "metrics\">/rose-info/metrics</a>";
+        s += " (<a href=\"" + prefix + "metrics?format=json\">json</a>)</div>";
+
+        s += "<div style='margin-left:20px'>";
+        s += "<a href=\"" + prefix + "interceptors\">/rose-info/interceptors</a></div>";
         s += "<p>";
         return Utils.wrap(s);
     }
@@ -192,6 +219,218 @@ public class ToolsController {
         return Utils.wrap(startup);
     }
 
+    @Get("matchCache")
+    public String matchCache(Rose rose) {
+        MatchCache cache = rose.getMatchCache();
+        if (cache == null) {
+            return Utils.wrap("match cache is disabled, set RoseFilter's init-param "
+                    + "'matchCacheSize' to enable it.");
+        }
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        long total = hits + misses;
+        StringBuilder sb = new StringBuilder(512).append("<table>");
+        sb.append("<tr><td>size</td><td>").append(cache.size()).append("/").append(
+                cache.getMaxSize()).append("</td></tr>");
+        sb.append("<tr><td>eviction</td><td>").append(cache.getEviction()).append("</td></tr>");
+        sb.append("<tr><td>hits</td><td>").append(hits).append("</td></tr>");
+        sb.append("<tr><td>misses</td><td>").append(misses).append("</td></tr>");
+        sb.append("<tr><td>hitRatio</td><td>").append(
+                total == 0 ? "-" : String.format("%.2f%%", hits * 100.0 / total)).append(
+                "</td></tr>");
+        sb.append("<tr><td>evictions</td><td>").append(cache.getEvictions()).append("</td></tr>");
+        sb.append("<tr><td>maxRegexValues</td><td>").append(cache.getMaxRegexValues()).append(
+                "</td></tr>");
+        sb.append("<tr><td>uncacheableRegexNodes</td><td>").append(
+                cache.getUncacheableRegexNodes()).append("</td></tr>");
+        sb.append("</table>");
+        return Utils.wrap(sb.toString());
+    }
+
+    @Get("ignoredPaths")
+    public String ignoredPaths(Rose rose) {
+        IgnoredPathMatcher matcher = rose.getIgnoredPathMatcher();
+        if (matcher == null) {
+            return Utils.wrap("ignored paths are not available.");
+        }
+        long ignored = matcher.getIgnoredCount();
+        long dispatched = matcher.getDispatchedCount();
+        long total = ignored + dispatched;
+        StringBuilder sb = new StringBuilder(512).append("<table>");
+        sb.append("<tr><td>ignored</td><td>").append(ignored).append("</td></tr>");
+        sb.append("<tr><td>dispatched</td><td>").append(dispatched).append("</td></tr>");
+        sb.append("<tr><td>ignoredRatio</td><td>").append(
+                total == 0 ? "-" : String.format("%.2f%%", ignored * 100.0 / total)).append(
+                "</td></tr>");
+        sb.append("<tr><td>matcher</td><td>").append(
+                StringEscapeUtils.escapeHtml(matcher.toString())).append("</td></tr>");
+        sb.append("<tr valign=\"top\"><td>rules</td><td>");
+        for (IgnoredPath ignoredPath : matcher.getIgnoredPaths()) {
+            sb.append(StringEscapeUtils.escapeHtml(ignoredPath.toString())).append("<br>");
+        }
+        sb.append("</td></tr>");
+        sb.append("</table>");
+        return Utils.wrap(sb.toString());
+    }
+
+    /**
+     * 各action的请求数、异常数、响应状态以及各阶段耗时的分布；format=json时输出json(耗时单位为微秒，
+     * 同时含有各拦截器的平均耗时)，否则输出文本(毫秒)
+     */
+    @Get("metrics")
+    public Object metrics(Rose rose, Invocation inv, @Param("format") String format) {
+        RoseMetrics metrics = rose.getMetrics();
+        if ("json".equals(format)) {
+            Map<String, Object> json = new LinkedHashMap<String, Object>();
+            json.put("enabled", metrics != null);
+            if (metrics != null) {
+                json.put("since", metrics.getStartTime());
+                json.put("unit", "us");
+                List<Object> actions = new ArrayList<Object>();
+                for (ActionMetrics action : metrics.getActionMetrics()) {
+                    actions.add(toJson(action));
+                }
+                json.put("actions", actions);
+            }
+            return new JsonInstruction(json);
+        }
+        inv.getResponse().setContentType("text/plain");
+        if (metrics == null) {
+            return "@metrics is disabled, set RoseFilter's init-param 'metrics' to true to enable it.";
+        }
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder sb = new StringBuilder(2048).append("@");
+        sb.append("since ").append(simpleDateFormat.format(new Date(metrics.getStartTime())));
+        sb.append(", times in ms\n");
+        for (ActionMetrics action : metrics.getActionMetrics()) {
+            Histogram.Snapshot total = action.getHistogram(Phase.TOTAL).snapshot();
+            sb.append("\n").append(action.getName()).append("\n");
+            sb.append("  count=").append(total.getCount()).append(" errors=").append(
+                    action.getErrors()).append(" statuses=").append(action.getStatuses())
+                    .append("\n");
+            sb.append(String.format("  %-13s%10s%10s%10s%10s%10s%10s%n", "phase", "count",
+                    "mean", "p50", "p99", "p999", "max"));
+            for (Phase phase : Phase.values()) {
+                Histogram.Snapshot s = action.getHistogram(phase).snapshot();
+                if (s.getCount() == 0) {
+                    continue;
+                }
+                sb.append(String.format("  %-13s%10d%10.3f%10.3f%10.3f%10.3f%10.3f%n", phase
+                        .name().toLowerCase(), s.getCount(), s.getMean() / 1000, s
+                        .getValueAtQuantile(0.5) / 1000.0, s.getValueAtQuantile(0.99) / 1000.0, s
+                        .getValueAtQuantile(0.999) / 1000.0, s.getMax() / 1000.0));
+            }
+        }
+        return sb.toString();
+    }
+
+    private Map<String, Object> toJson(ActionMetrics action) {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        json.put("name", action.getName());
+        json.put("count", action.getHistogram(Phase.TOTAL).snapshot().getCount());
+        json.put("errors", action.getErrors());
+        json.put("statuses", action.getStatuses());
+        Map<String, Object> phases = new LinkedHashMap<String, Object>();
+        for (Phase phase : Phase.values()) {
+            Histogram.Snapshot s = action.getHistogram(phase).snapshot();
+            if (s.getCount() == 0) {
+                continue;
+            }
+            Map<String, Object> p = new LinkedHashMap<String, Object>();
+            p.put("count", s.getCount());
+            p.put("mean", Math.round(s.getMean()));
+            p.put("p50", s.getValueAtQuantile(0.5));
+            p.put("p99", s.getValueAtQuantile(0.99));
+            p.put("p999", s.getValueAtQuantile(0.999));
+            p.put("max", s.getMax());
+            phases.put(phase.name().toLowerCase(), p);
+        }
+        json.put("phases", phases);
+        List<Object> interceptors = new ArrayList<Object>();
+        for (InterceptorMetrics interceptor : action.getInterceptorMetrics()) {
+            Map<String, Object> i = new LinkedHashMap<String, Object>();
+            i.put("name", interceptor.getName());
+            i.put("calls", interceptor.getCalls());
+            i.put("shortCircuits", interceptor.getShortCircuits());
+            i.put("errors", interceptor.getErrors());
+            i.put("before", meanMicros(interceptor.getBeforeNanos(), interceptor.getCalls()));
+            i.put("after", meanMicros(interceptor.getAfterNanos(), interceptor.getAfters()));
+            i.put("afterCompletion", meanMicros(interceptor.getAfterCompletionNanos(),
+                    interceptor.getAfterCompletions()));
+            interceptors.add(i);
+        }
+        json.put("interceptors", interceptors);
+        return json;
+    }
+
+    /**
+     * 各拦截器的调用次数、短路次数、异常次数以及before、after、afterCompletion的平均耗时，先按拦截器汇总，再按action列出
+     */
+    @Get("interceptors")
+    public String interceptors(Rose rose) {
+        RoseMetrics metrics = rose.getMetrics();
+        if (metrics == null) {
+            return Utils.wrap("metrics is disabled, set RoseFilter's init-param "
+                    + "'metrics' to true to enable it.");
+        }
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("average times in microseconds<p><table>");
+        appendInterceptorHeader(sb, "interceptor");
+        for (InterceptorMetrics interceptor : metrics.getInterceptorMetrics().values()) {
+            appendInterceptorRow(sb, interceptor.getName(), interceptor);
+        }
+        sb.append("</table><p><table>");
+        appendInterceptorHeader(sb, "action / interceptor");
+        for (ActionMetrics action : metrics.getActionMetrics()) {
+            if (action.getInterceptorMetrics().isEmpty()) {
+                continue;
+            }
+            sb.append("<tr><td colspan=\"9\"><b>").append(action.getName()).append(
+                    "</b></td></tr>");
+            for (InterceptorMetrics interceptor : action.getInterceptorMetrics()) {
+                appendInterceptorRow(sb, "&nbsp;&nbsp;" + interceptor.getName(), interceptor);
+            }
+        }
+        sb.append("</table>");
+        return Utils.wrap(sb.toString());
+    }
+
+    private void appendInterceptorHeader(StringBuilder sb, String first) {
+        sb.append("<tr><th align=\"left\">").append(first).append("</th><th>calls</th>");
+        sb.append("<th>shortCircuits</th><th>ratio</th><th>errors</th><th>before</th>");
+        sb.append("<th>after</th><th>afterCompletion</th><th>total</th></tr>");
+    }
+
+    private void appendInterceptorRow(StringBuilder sb, String name,
+            InterceptorMetrics interceptor) {
+        long calls = interceptor.getCalls();
+        long shortCircuits = interceptor.getShortCircuits();
+        long totalNanos = interceptor.getBeforeNanos() + interceptor.getAfterNanos()
+                + interceptor.getAfterCompletionNanos();
+        sb.append("<tr align=\"right\"><td align=\"left\">").append(name).append("</td>");
+        sb.append("<td>").append(calls).append("</td>");
+        sb.append("<td>").append(shortCircuits).append("</td>");
+        sb.append("<td>").append(
+                calls == 0 ? "-" : String.format("%.2f%%", shortCircuits * 100.0 / calls))
+                .append("</td>");
+        sb.append("<td>").append(interceptor.getErrors()).append("</td>");
+        sb.append("<td>").append(average(interceptor.getBeforeNanos(), calls)).append("</td>");
+        sb.append("<td>").append(average(interceptor.getAfterNanos(), interceptor.getAfters()))
+                .append("</td>");
+        sb.append("<td>").append(
+                average(interceptor.getAfterCompletionNanos(), interceptor
+                        .getAfterCompletions())).append("</td>");
+        sb.append("<td>").append(average(totalNanos, calls)).append("</td></tr>");
+    }
+
+    private long meanMicros(long nanos, long count) {
+        return count == 0 ? 0 : nanos / 1000 / count;
+    }
+
+    private String average(long nanos, long count) {
+        return count == 0 ? "-" : String.format("%.1f", nanos / 1000.0 / count);
+    }
+
     //------------rewriter--------
 
     @Get("module")
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.scanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.paoding.rose.web.annotation.Ignored;
+
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.SpringAsmInfo;
+import org.springframework.util.StreamUtils;
+
+/**
+ * 直接从class文件的字节读出的模块类信息，判断一个类是否需要加载时不必 Class.forName 它(也就不会执行它的静态初始化)。
+ * <p>
+ * 只读取类的访问标志和类上的annotation，方法体、调试信息等都跳过。
+ * 
+ */
+class ModuleClassMetadata extends ClassVisitor {
+
+    /** Java 7、Java 8的class文件主版本号 */
+    private static final int V7 = 51, V8 = 52;
+
+    private static final String IGNORED_DESC = "L" + Ignored.class.getName().replace('.', '/')
+            + ";";
+
+    private int access;
+
+    private boolean ignored;
+
+    private ModuleClassMetadata() {
+        super(SpringAsmInfo.ASM_VERSION);
+    }
+
+    /**
+     * 读取一个class文件；文件的版本高于所用ASM能够识别的版本等情况下抛出 {@link IllegalArgumentException}
+     * 
+     * @param in 读取后由调用者关闭
+     * @return
+     * @throws IOException
+     */
+    public static ModuleClassMetadata read(InputStream in) throws IOException {
+        byte[] bytes = StreamUtils.copyToByteArray(in);
+        // Spring 3.2.4所带的ASM不接受Java 8的class文件；跳过方法体时Java 8的class文件中没有它不认识的内容，
+        // 所以按Java 7的版本号交给它读取。更高的版本仍然抛出异常
+        if (bytes.length > 7 && (((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF)) == V8) {
+            bytes[6] = 0;
+            bytes[7] = V7;
+        }
+        ModuleClassMetadata metadata = new ModuleClassMetadata();
+        new ClassReader(bytes).accept(metadata, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG
+                | ClassReader.SKIP_FRAMES);
+        return metadata;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+            String[] interfaces) {
+        this.access = access;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        if (IGNORED_DESC.equals(desc)) {
+            ignored = true;
+        }
+        return null;
+    }
+
+    public boolean isPublic() {
+        return (access & Opcodes.ACC_PUBLIC) != 0;
+    }
+
+    /**
+     * 抽象类、接口或annotation
+     * 
+     * @return
+     */
+    public boolean isAbstract() {
+        return (access & Opcodes.ACC_ABSTRACT) != 0;
+    }
+
+    public boolean isIgnored() {
+        return ignored;
+    }
+
+    /**
+     * 和ModulesBuilderImpl注册bean定义时的判断一致：不是public的、抽象的或标注了 {@link Ignored} 的类不会成为模块中的bean
+     * 
+     * @return
+     */
+    public boolean isCandidate() {
+        return isPublic() && !isAbstract() && !isIgnored();
+    }
+}
@@ -69,6 +69,9 @@ public class ModuleResource implements Comparable<ModuleResource> {
 
     private String[] interceptedDeny;
 
+    // rose.properties中的compression，没有配置的继承父模块的
+    private Boolean compression;
+
     // getters & setters
 
     public URL getModuleUrl() {
@@ -143,6 +146,14 @@ public class ModuleResource implements Comparable<ModuleResource> {
         this.interceptedDeny = interceptedDeny;
     }
 
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Boolean compression) {
+        this.compression = compression;
+    }
+
     // -- overrides --
 
     /**
@@ -15,6 +15,7 @@
  */
 package net.paoding.rose.scanner;
 
+import static net.paoding.rose.RoseConstants.CONF_COMPRESSION;
 import static net.paoding.rose.RoseConstants.CONF_INTERCEPTED_ALLOW;
 import static net.paoding.rose.RoseConstants.CONF_INTERCEPTED_DENY;
 import static net.paoding.rose.RoseConstants.CONF_MODULE_IGNORED;
@@ -25,12 +26,15 @@ import static net.paoding.rose.RoseConstants.CONTROLLERS;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import net.paoding.rose.load.vfs.FileName;
 import net.paoding.rose.load.vfs.FileObject;
@@ -38,6 +42,8 @@ import net.paoding.rose.load.vfs.FileSystemManager;
 import net.paoding.rose.load.LoadScope;
 import net.paoding.rose.load.ResourceRef;
 import net.paoding.rose.load.RoseScanner;
+import net.paoding.rose.load.cache.ScanCache;
+import net.paoding.rose.load.index.ComponentIndex;
 import net.paoding.rose.util.RoseStringUtil;
 
 import org.apache.commons.lang.StringUtils;
@@ -61,6 +67,31 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
         List<ModuleResource> moduleResourceList = new LinkedList<ModuleResource>();
 
         Map<FileObject, ModuleResource> moduleResourceMap = new HashMap<FileObject, ModuleResource>();
+
+        /** 正在扫描的jar包或classes目录的组件索引，没有时为null */
+        ComponentIndex index;
+
+        /** 含有类文件的模块：其中的类即使都被跳过，模块也要保留 */
+        Set<ModuleResource> modulesWithClasses = new HashSet<ModuleResource>();
+
+        /** 找到的(顶层)类文件的个数 */
+        int foundClasses;
+
+        /** 因为不在组件索引中而没有加载的类的个数 */
+        int skippedClasses;
+
+        /** 读取了class文件的类的个数，以及读取所花的时间(纳秒) */
+        int readClasses;
+
+        long readNanos;
+
+        /** 读取class文件后判断为不必加载的类的个数 */
+        int filteredClasses;
+
+        /** 加载了的类的个数，以及加载所花的时间(纳秒) */
+        int loadedClasses;
+
+        long loadNanos;
     }
 
     @Override
@@ -84,6 +115,18 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
                     + " from these folders or jar files:" + refers);
         }
 
+        // 这些jar包和classes目录都没有变化时，直接使用上次找到的module，不必再扫描
+        ScanCache cache = ScanCache.get("moduleResources", Arrays.toString(controllersScope)
+                + refers);
+        String fingerprint = null;
+        if (cache != null) {
+            fingerprint = fingerprint(controllersScope, refers);
+            List<ModuleResource> cached = loadModuleResources(cache, fingerprint);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         FileSystemManager fileSystem = new FileSystemManager();
 
         for (ResourceRef refer : refers) {
@@ -116,6 +159,7 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
                 logger.info("[moduleResource] start to scan moduleResource in file: " + rootObject);
             }
 
+            local.index = RoseScanner.getInstance().getComponentIndex(refer);
             try {
                 int oldSize = local.moduleResourceList.size();
 
@@ -139,10 +183,146 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
 
         logger.info("[moduleResource] found " + local.moduleResourceList.size()
                 + " module resources ");
+        if (local.skippedClasses > 0 && logger.isInfoEnabled()) {
+            logger.info("[moduleResource] skipped loading " + local.skippedClasses
+                    + " classes not listed in " + ComponentIndex.LOCATION);
+        }
+        if (logger.isInfoEnabled()) {
+            int checkedClasses = local.foundClasses - local.skippedClasses;
+            logger.info("[moduleResource] found " + local.foundClasses + " class files, "
+                    + checkedClasses + " to be checked; bytecode pre-check read "
+                    + local.readClasses + " of them in " + (local.readNanos / 1000000)
+                    + " ms and skipped " + local.filteredClasses
+                    + " (not public, abstract or @Ignored), "
+                    + (checkedClasses - local.readClasses) + " unreadable were loaded unchecked");
+            logger.info("[moduleResource] loaded " + local.loadedClasses + " classes in "
+                    + (local.loadNanos / 1000000) + " ms (" + checkedClasses
+                    + " would be loaded without the pre-check)");
+        }
+        if (cache != null) {
+            storeModuleResources(cache, fingerprint, local.moduleResourceList);
+        }
 
         return local.moduleResourceList;
     }
 
+    private String fingerprint(String[] controllersScope, List<ResourceRef> refers)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        ScanCache.Fingerprint fingerprint = new ScanCache.Fingerprint();
+        fingerprint.add(Arrays.toString(controllersScope));
+        for (ResourceRef refer : refers) {
+            if (refer.hasModifier("controllers")) {
+                fingerprint.add(refer.toString());
+                fingerprint.addFile(refer.getResource().getFile());
+            }
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("[moduleResource] fingerprinted " + fingerprint.getFileCount()
+                    + " files in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return fingerprint.toString();
+    }
+
+    private List<ModuleResource> loadModuleResources(ScanCache cache, String fingerprint) {
+        Properties p = cache.load(fingerprint);
+        if (p == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        int loadedClasses = 0;
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<ModuleResource> moduleResourceList = new LinkedList<ModuleResource>();
+        try {
+            for (int i = 0; p.containsKey("module." + i + ".url"); i++) {
+                String prefix = "module." + i + ".";
+                ModuleResource moduleResource = new ModuleResource();
+                moduleResource.setModuleUrl(new URL(p.getProperty(prefix + "url")));
+                moduleResource.setMappingPath(p.getProperty(prefix + "mappingPath"));
+                moduleResource.setRelativePath(p.getProperty(prefix + "relativePath"));
+                // 父模块是没有被找到的空模块时，这里为null，这和ModulesBuilderImpl对它的处理是一样的
+                String parent = p.getProperty(prefix + "parent");
+                if (parent != null) {
+                    moduleResource.setParent(moduleResourceList.get(Integer.parseInt(parent)));
+                }
+                String interceptedAllow = p.getProperty(prefix + "interceptedAllow");
+                if (interceptedAllow != null) {
+                    moduleResource.setInterceptedAllow(StringUtils.split(interceptedAllow, ","));
+                }
+                String interceptedDeny = p.getProperty(prefix + "interceptedDeny");
+                if (interceptedDeny != null) {
+                    moduleResource.setInterceptedDeny(StringUtils.split(interceptedDeny, ","));
+                }
+                String compression = p.getProperty(prefix + "compression");
+                if (compression != null) {
+                    moduleResource.setCompression(Boolean.valueOf(compression));
+                }
+                for (int j = 0; p.containsKey(prefix + "context." + j); j++) {
+                    moduleResource.addContextResource(new URL(p.getProperty(prefix + "context."
+                            + j)));
+                }
+                for (int j = 0; p.containsKey(prefix + "message." + j); j++) {
+                    moduleResource.addMessageResource(p.getProperty(prefix + "message." + j));
+                }
+                for (int j = 0; p.containsKey(prefix + "class." + j); j++) {
+                    moduleResource.addModuleClass(Class.forName(p.getProperty(prefix + "class."
+                            + j), true, classLoader));
+                    loadedClasses++;
+                }
+                moduleResourceList.add(moduleResource);
+            }
+        } catch (Exception e) {
+            logger.warn("[moduleResource] ignored invalid " + cache.getFile(), e);
+            return null;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("[moduleResource] loaded " + moduleResourceList.size()
+                    + " module resources from " + cache.getFile() + "; loaded " + loadedClasses
+                    + " classes in " + ((System.nanoTime() - start) / 1000000) + " ms");
+        }
+        return moduleResourceList;
+    }
+
+    private void storeModuleResources(ScanCache cache, String fingerprint,
+            List<ModuleResource> moduleResourceList) {
+        Properties p = new Properties();
+        int i = 0;
+        for (ModuleResource moduleResource : moduleResourceList) {
+            String prefix = "module." + (i++) + ".";
+            p.setProperty(prefix + "url", moduleResource.getModuleUrl().toString());
+            p.setProperty(prefix + "mappingPath", moduleResource.getMappingPath());
+            p.setProperty(prefix + "relativePath", moduleResource.getRelativePath());
+            int parent = moduleResourceList.indexOf(moduleResource.getParent());
+            if (parent >= 0) {
+                p.setProperty(prefix + "parent", String.valueOf(parent));
+            }
+            if (moduleResource.getInterceptedAllow() != null) {
+                p.setProperty(prefix + "interceptedAllow", StringUtils.join(moduleResource
+                        .getInterceptedAllow(), ","));
+            }
+            if (moduleResource.getInterceptedDeny() != null) {
+                p.setProperty(prefix + "interceptedDeny", StringUtils.join(moduleResource
+                        .getInterceptedDeny(), ","));
+            }
+            if (moduleResource.getCompression() != null) {
+                p.setProperty(prefix + "compression", moduleResource.getCompression().toString());
+            }
+            int j = 0;
+            for (URL context : moduleResource.getContextResources()) {
+                p.setProperty(prefix + "context." + (j++), context.toString());
+            }
+            j = 0;
+            for (String message : moduleResource.getMessageBasenames()) {
+                p.setProperty(prefix + "message." + (j++), message);
+            }
+            j = 0;
+            for (Class<?> moduleClass : moduleResource.getModuleClasses()) {
+                p.setProperty(prefix + "class." + (j++), moduleClass.getName());
+            }
+        }
+        cache.store(fingerprint, p);
+    }
+
     protected void deepScanImpl(Local local, FileObject root, FileObject target) throws IOException {
         if (CONTROLLERS.equals(target.getName().getBaseName())) {
             checkModuleResourceCandidate(local, root, target, target);
@@ -165,6 +345,7 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
         String[] interceptedDeny = null;
 
         ModuleResource parentModule = local.moduleResourceMap.get(candidate.getParent());
+        Boolean compression = (parentModule == null) ? null : parentModule.getCompression();
         // 如果rose.properties设置了controllers的module.path?
         FileObject rosePropertiesFile = candidate.getChild("rose.properties");
         if (rosePropertiesFile != null && rosePropertiesFile.exists()) {
@@ -220,6 +401,12 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
                 interceptedDeny = StringUtils.split(interceptedDenyStrings, ",");
             }
 
+            String compressionString = StringUtils.trimToEmpty(p.getProperty(CONF_COMPRESSION));
+            if (compressionString.length() > 0) {
+                compression = Boolean.valueOf("true".equalsIgnoreCase(compressionString)
+                        || "1".equals(compressionString));
+            }
+
         }
         // 
         if (mappingPath == null) {
@@ -241,6 +428,7 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
         if (interceptedDeny != null) {
             moduleResource.setInterceptedDeny(interceptedDeny);
         }
+        moduleResource.setCompression(compression);
         local.moduleResourceMap.put(candidate, moduleResource);
         local.moduleResourceList.add(moduleResource);
         if (logger.isDebugEnabled()) {
@@ -312,9 +500,34 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
         className = StringUtils.removeEnd(className, ".class");
         className = className.replace('/', '.');
         ModuleResource module = local.moduleResourceMap.get(thisFolder);
+        local.modulesWithClasses.add(module);
+        local.foundClasses++;
+        // 有组件索引时，不在索引中的类不会被注册为bean，不必加载
+        if (local.index != null && !local.index.contains(className)) {
+            local.skippedClasses++;
+            if (logger.isDebugEnabled()) {
+                logger.debug("module '" + module.getMappingPath()
+                        + "': skipped class not in component index, name=" + className);
+            }
+            return;
+        }
+        // 从class文件判断是否是模块中的bean，不是的不必加载(也就不执行它的静态初始化)
+        ModuleClassMetadata metadata = readModuleClass(local, resource);
+        if (metadata != null && !metadata.isCandidate()) {
+            local.filteredClasses++;
+            if (logger.isDebugEnabled()) {
+                logger.debug("module '" + module.getMappingPath()
+                        + "': skipped class not public, abstract or @Ignored, name=" + className);
+            }
+            return;
+        }
         try {
             // TODO: classloader...
-            module.addModuleClass(Class.forName(className));
+            long start = System.nanoTime();
+            Class<?> clazz = Class.forName(className);
+            local.loadNanos += System.nanoTime() - start;
+            local.loadedClasses++;
+            module.addModuleClass(clazz);
             if (logger.isDebugEnabled()) {
                 logger.debug("module '" + module.getMappingPath() + "': found class, name="
                         + className);
@@ -324,11 +537,40 @@ public class ModuleResourceProviderImpl implements ModuleResourceProvider {
         }
     }
 
+    /**
+     * 读取class文件，不能读取时(比如所用ASM不认识的class文件版本)返回null，由调用者加载这个类再判断
+     */
+    private ModuleClassMetadata readModuleClass(Local local, FileObject resource) {
+        long start = System.nanoTime();
+        InputStream in = null;
+        try {
+            in = resource.getContent().getInputStream();
+            ModuleClassMetadata metadata = ModuleClassMetadata.read(in);
+            local.readClasses++;
+            return metadata;
+        } catch (Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("cannot read class file, load it instead: " + resource, e);
+            }
+            return null;
+        } finally {
+            local.readNanos += System.nanoTime() - start;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
     // FIXME: 如果一个module只有rose.properties文件也会从moduleInfoList中remove，以后是否需要修改？
     protected void afterScanning(Local local) {
         for (ModuleResource moduleResource : local.moduleResourceMap.values()) {
             if (moduleResource.getContextResources().size() == 0
-                    && moduleResource.getModuleClasses().size() == 0) {
+                    && moduleResource.getModuleClasses().size() == 0
+                    && !local.modulesWithClasses.contains(moduleResource)) {
                 local.moduleResourceList.remove(moduleResource);
                 if (logger.isInfoEnabled()) {
                     logger.info("remove empty module '" + moduleResource.getMappingPath() + "' "
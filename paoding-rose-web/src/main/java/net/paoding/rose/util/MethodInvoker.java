@@ -0,0 +1,134 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cglib.reflect.FastClass;
+import org.springframework.cglib.reflect.FastMethod;
+
+/**
+ * {@link MethodInvoker} 封装对一个方法的调用，用来代替每次请求都执行的 {@link Method#invoke(Object, Object...)}。
+ * <p>
+ * 对公开类的公开方法，使用 spring-core 内置的 cglib {@link FastClass} 生成按方法序号直接调用的字节码，
+ * 不再经过反射的访问检查和参数适配；其他情况(或生成失败时)退回到反射调用。
+ * <p>
+ * 两种实现对调用异常的处理一致：目标方法抛出的异常都包装为 {@link InvocationTargetException}，
+ * 因此调用方原有的异常解包逻辑不需要改变。
+ * <p>
+ * 可以通过系统属性 -Drose.invoker.reflection=true 强制使用反射调用。
+ */
+public abstract class MethodInvoker {
+
+    private static final Log logger = LogFactory.getLog(MethodInvoker.class);
+
+    private static final boolean forceReflection = Boolean
+            .getBoolean("rose.invoker.reflection");
+
+    protected final Method method;
+
+    protected MethodInvoker(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * 为所给方法创建调用器
+     *
+     * @param method
+     * @return
+     */
+    public static MethodInvoker create(Method method) {
+        if (!forceReflection) {
+            Class<?> declaringClass = method.getDeclaringClass();
+            if (Modifier.isPublic(method.getModifiers())
+                    && Modifier.isPublic(declaringClass.getModifiers())
+                    && !Modifier.isStatic(method.getModifiers())) {
+                try {
+                    FastClass fastClass = FastClass.create(declaringClass.getClassLoader(),
+                            declaringClass);
+                    return new FastMethodInvoker(method, fastClass.getMethod(method));
+                } catch (Throwable e) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("failed to generate invoker for " + method
+                                + ", using reflection instead", e);
+                    }
+                }
+            }
+        }
+        if (!method.isAccessible()) {
+            method.setAccessible(true);
+        }
+        return new ReflectionMethodInvoker(method);
+    }
+
+    /**
+     * 返回被调用的方法
+     *
+     * @return
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * 调用目标对象的方法
+     *
+     * @param target
+     * @param args
+     * @return
+     * @throws InvocationTargetException 目标方法抛出了异常
+     * @throws IllegalAccessException
+     */
+    public abstract Object invoke(Object target, Object[] args) throws InvocationTargetException,
+            IllegalAccessException;
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + method + "]";
+    }
+
+    static final class FastMethodInvoker extends MethodInvoker {
+
+        private final FastMethod fastMethod;
+
+        FastMethodInvoker(Method method, FastMethod fastMethod) {
+            super(method);
+            this.fastMethod = fastMethod;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+            return fastMethod.invoke(target, args);
+        }
+    }
+
+    static final class ReflectionMethodInvoker extends MethodInvoker {
+
+        ReflectionMethodInvoker(Method method) {
+            super(method);
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws InvocationTargetException,
+                IllegalAccessException {
+            return method.invoke(target, args);
+        }
+    }
+}
@@ -26,7 +26,10 @@ import net.paoding.rose.web.advancedinterceptor.ActionSelector;
 import net.paoding.rose.web.advancedinterceptor.DispatcherSelector;
 import net.paoding.rose.web.advancedinterceptor.Named;
 import net.paoding.rose.web.advancedinterceptor.Ordered;
+import net.paoding.rose.web.impl.thread.AfterAsyncResult;
 import net.paoding.rose.web.impl.thread.AfterCompletion;
+import net.paoding.rose.web.impl.thread.InvocationBean;
+import net.paoding.rose.web.impl.thread.Rose;
 import net.paoding.rose.web.instruction.Instruction;
 
 import org.apache.commons.logging.Log;
@@ -103,6 +106,18 @@ public class ControllerInterceptorAdapter implements Named, Ordered, ControllerI
         // next
         instruction = round(inv, chain);
 
+        // 异步action返回的Callable、Future、DeferredResult：after推迟到异步结果到达之后、渲染之前
+        if (Rose.isAsyncResult(instruction) && inv instanceof InvocationBean) {
+            ((InvocationBean) inv).getRose().addAfterAsyncResult(new AfterAsyncResult() {
+
+                @Override
+                public Object afterAsyncResult(Invocation inv, Object result) throws Exception {
+                    return after(inv, result);
+                }
+            });
+            return instruction;
+        }
+
         // after
         return after(inv, instruction);
     }
@@ -141,6 +156,9 @@ public class ControllerInterceptorAdapter implements Named, Ordered, ControllerI
      * <p>
      * 返回null或原来的instruction表示不改变控制器的返回结果。<br>
      * 返回另外的对象表示改变这个返回行为。这非常有用，或许通过拦截器能够将一个返回的对象转化为另外的对象以输出给请求着
+     * <p>
+     * action返回Callable、Future或DeferredResult时，本方法在异步结果到达之后、渲染之前才被调用(可能在另外的线程中)，
+     * instruction是实际的结果而不是这些对象本身；异步结果出错时和同步action抛出异常时一样，不调用本方法。
      * 
      * @param inv
      * @param instruction
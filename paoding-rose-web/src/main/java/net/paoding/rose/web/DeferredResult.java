@@ -0,0 +1,153 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web;
+
+/**
+ * {@link DeferredResult} 代表一个稍后才能得到的action返回值。
+ * <p>
+ * action方法返回一个 {@link DeferredResult} 后，Rose释放容器线程(需要容器和RoseFilter支持Servlet 3的异步处理)；
+ * 其他任何线程调用 {@link #setResult(Object)} 或 {@link #setError(Throwable)} 时，
+ * Rose在该线程中把结果当作action的返回值进行渲染，并执行拦截器的afterCompletion等收尾工作。
+ * 抛出的异常和同步调用时一样交给模块的ControllerErrorHandler处理。
+ * <p>
+ * 超时时间可以在创建时给出，也可以通过 {@link net.paoding.rose.web.annotation.AsyncTimeout} 设置；
+ * 超时时如果设置了timeoutResult则渲染它，否则作为 {@link java.util.concurrent.TimeoutException} 处理。
+ *
+ */
+public class DeferredResult {
+
+    private final long timeout;
+
+    private final Object timeoutResult;
+
+    private Object result;
+
+    private Throwable error;
+
+    private boolean done;
+
+    private ResultHandler resultHandler;
+
+    public DeferredResult() {
+        this(0, null);
+    }
+
+    /**
+     *
+     * @param timeout 超时时间，单位毫秒；0表示使用action或RoseFilter的设置
+     */
+    public DeferredResult(long timeout) {
+        this(timeout, null);
+    }
+
+    /**
+     *
+     * @param timeout 超时时间，单位毫秒；0表示使用action或RoseFilter的设置
+     * @param timeoutResult 超时时代替结果进行渲染的返回值，null表示按超时异常处理
+     */
+    public DeferredResult(long timeout, Object timeoutResult) {
+        this.timeout = timeout;
+        this.timeoutResult = timeoutResult;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public Object getTimeoutResult() {
+        return timeoutResult;
+    }
+
+    /**
+     * 设置结果，它将和action方法的返回值一样被渲染
+     *
+     * @param result
+     * @return 如果之前已经设置过结果或异常，返回false，本次设置被忽略
+     */
+    public boolean setResult(Object result) {
+        return set(result, null);
+    }
+
+    /**
+     * 设置异常，它将和action方法抛出的异常一样被处理
+     *
+     * @param error
+     * @return 如果之前已经设置过结果或异常，返回false，本次设置被忽略
+     */
+    public boolean setError(Throwable error) {
+        if (error == null) {
+            throw new NullPointerException("error");
+        }
+        return set(null, error);
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    private boolean set(Object result, Throwable error) {
+        ResultHandler handler;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.result = result;
+            this.error = error;
+            handler = this.resultHandler;
+        }
+        if (handler != null) {
+            handler.handleResult(result, error);
+        }
+        return true;
+    }
+
+    /**
+     * 仅限Rose框架本身内部调用!
+     * <p>
+     * 设置结果处理器；如果结果已经设置，处理器在当前线程中立即被调用
+     *
+     * @param resultHandler
+     */
+    public void setResultHandler(ResultHandler resultHandler) {
+        boolean handleNow;
+        synchronized (this) {
+            if (this.resultHandler != null) {
+                throw new IllegalStateException("resultHandler has been set");
+            }
+            this.resultHandler = resultHandler;
+            handleNow = done;
+        }
+        if (handleNow) {
+            resultHandler.handleResult(result, error);
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (this) {
+            return "DeferredResult[" + (done ? (error != null ? error : result) : "pending") + "]";
+        }
+    }
+
+    /**
+     * 仅限Rose框架本身内部使用!
+     */
+    public static interface ResultHandler {
+
+        void handleResult(Object result, Throwable error);
+    }
+}
@@ -77,6 +77,15 @@ public class InterceptorDelegate implements Ordered, Named, ControllerIntercepto
         }
     }
 
+    /**
+     * 所代理的拦截器是否实现了 {@link AfterCompletion}
+     * 
+     * @return
+     */
+    public boolean isAfterCompletion() {
+        return isAfterCompletion;
+    }
+
     @Override
     public int getPriority() {
         if (interceptor instanceof Ordered) {
@@ -49,6 +49,11 @@ public class RequestPath {
 
     private String actionPath;
 
+    /** modulePath、controllerPath在rosePath中的结束位置，由 {@link #setPathBoundaries(int, int)} 设置 */
+    private int modulePathEnd = -1;
+
+    private int controllerPathEnd = -1;
+
     private Dispatcher dispatcher;
 
     public RequestPath(ReqMethod method, String uri, String ctxpath, Dispatcher dispatcher) {
@@ -214,6 +219,9 @@ public class RequestPath {
     }
 
     public String getModulePath() {
+        if (modulePath == null && modulePathEnd >= 0) {
+            modulePath = rosePath.substring(0, modulePathEnd);
+        }
         return modulePath;
     }
 
@@ -223,12 +231,15 @@ public class RequestPath {
 
     public String getControllerPathInfo() {
         if (controllerPathInfo == null) {
-            controllerPathInfo = rosePath.substring(modulePath.length());
+            controllerPathInfo = rosePath.substring(getModulePath().length());
         }
         return controllerPathInfo;
     }
 
     public String getControllerPath() {
+        if (controllerPath == null && controllerPathEnd >= 0) {
+            controllerPath = rosePath.substring(modulePathEnd, controllerPathEnd);
+        }
         return controllerPath;
     }
 
@@ -237,6 +248,9 @@ public class RequestPath {
     }
 
     public String getActionPath() {
+        if (actionPath == null && controllerPathEnd >= 0) {
+            actionPath = rosePath.substring(controllerPathEnd);
+        }
         return actionPath;
     }
 
@@ -244,10 +258,27 @@ public class RequestPath {
         this.actionPath = actionPath;
     }
 
+    /**
+     * 设置modulePath、controllerPath在rosePath中的结束位置，
+     * modulePath、controllerPath、actionPath在第一次被取用时才从rosePath中截取
+     * 
+     * @param modulePathEnd
+     * @param controllerPathEnd
+     */
+    public void setPathBoundaries(int modulePathEnd, int controllerPathEnd) {
+        this.modulePathEnd = modulePathEnd;
+        this.controllerPathEnd = controllerPathEnd;
+        this.modulePath = null;
+        this.controllerPath = null;
+        this.actionPath = null;
+        this.controllerPathInfo = null;
+    }
+
     @Override
     public String toString() {
-        return "ctxpath=" + ctxpath + "; pathInfo=" + rosePath + "; modulePath=" + modulePath
-                + "; controllerPath=" + controllerPath + "; actionPath=" + actionPath;
+        return "ctxpath=" + ctxpath + "; pathInfo=" + rosePath + "; modulePath="
+                + getModulePath() + "; controllerPath=" + getControllerPath() + "; actionPath="
+                + getActionPath();
     }
 
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 使用 {@link AsyncTimeout} 标注返回异步结果(Callable、Future、
+ * {@link net.paoding.rose.web.DeferredResult})的action方法或其控制器，设置异步处理的超时时间。
+ * <p>
+ * 方法上的标注优先于控制器上的；都没有标注的使用RoseFilter的asyncTimeout参数，该参数也没有设置的使用容器的默认值。
+ *
+ */
+@Target( { ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AsyncTimeout {
+
+    /**
+     * 超时时间，单位毫秒；0表示不超时
+     *
+     * @return
+     */
+    long value();
+}
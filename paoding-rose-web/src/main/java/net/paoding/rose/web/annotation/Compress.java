@@ -0,0 +1,44 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 使用 {@link Compress} 标注action方法或控制器，开启或关闭它们的响应压缩(gzip)。
+ * <p>
+ * 方法上的标注优先于控制器上的；都没有标注的使用所在模块rose.properties中的compression，
+ * 再没有的使用RoseFilter的compression参数。
+ * 即使开启了，也只有客户端接受gzip、内容类型和大小符合RoseFilter的compressionMimeTypes、compressionMinSize时才会压缩，
+ * 参见 {@link net.paoding.rose.web.instruction.ResponseCompression}。
+ *
+ */
+@Target( { ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Compress {
+
+    /**
+     * 是否压缩响应
+     *
+     * @return
+     */
+    boolean value() default true;
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 使用 {@link VirtualThread} 标注action方法或控制器，表示Rose在匹配到它之后，通过Servlet
+ * 3的异步处理把拦截器、控制器以及页面渲染放到一个虚拟线程中执行，容器线程随即返回。
+ * 阻塞式的控制器(比如调用Jade DAO访问数据库)因此不需要改写成异步的形式。
+ * <p>
+ * 方法上的标注优先于控制器上的；都没有标注的使用RoseFilter的virtualThreads参数。
+ * 使用 @VirtualThread(false) 可以让个别action在全局开启时仍在容器线程中执行。
+ * <p>
+ * 详细说明(包括运行环境不支持虚拟线程时的行为、ThreadLocal的影响)参见
+ * {@link net.paoding.rose.web.impl.thread.VirtualThreadExecutor}。
+ *
+ */
+@Target( { ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface VirtualThread {
+
+    /**
+     * 是否在虚拟线程中执行
+     *
+     * @return
+     */
+    boolean value() default true;
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.mapping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.paoding.rose.util.RoseStringUtil;
+
+/**
+ * {@link ChildrenIndex} 是对一个 {@link MappingNode} 的所有子结点的编译结果，用于代替逐个兄弟结点的线性匹配。
+ * <p>
+ * 常量子结点按其定义放入哈希表，匹配时只需用下一段地址(从开头到下一个'/'之前)查找一次；
+ * 含有变量子结点的常量结点允许只匹配一段地址的前缀，这些结点以及所有的变量结点仍然按原有顺序逐个尝试。
+ * <p>
+ * 匹配结果与 {@link MappingNode} 的线性匹配完全一致：常量排在变量之前、较长的常量排在较短的常量之前，
+ * 而最长的候选常量恰好就是下一段地址本身。
+ */
+final class ChildrenIndex {
+
+    private static final MappingNode[] EMPTY = new MappingNode[0];
+
+    /** 所有常量子结点，以其地址定义为key */
+    private final Map<String, MappingNode> constants;
+
+    /** 可以只匹配一段地址前缀的常量子结点(即含有变量子结点的)，保持原有顺序 */
+    private final MappingNode[] prefixConstants;
+
+    /** 非常量的子结点，保持原有顺序 */
+    private final MappingNode[] regexChildren;
+
+    private ChildrenIndex(Map<String, MappingNode> constants, MappingNode[] prefixConstants,
+            MappingNode[] regexChildren) {
+        this.constants = constants;
+        this.prefixConstants = prefixConstants;
+        this.regexChildren = regexChildren;
+    }
+
+    /**
+     * 为所给结点的子结点创建索引；如果子结点中存在无法索引的常量定义，返回null，由该结点继续使用线性匹配
+     *
+     * @param node
+     * @return
+     */
+    static ChildrenIndex compile(MappingNode node) {
+        Map<String, MappingNode> constants = new HashMap<String, MappingNode>();
+        List<MappingNode> prefixConstants = new ArrayList<MappingNode>(2);
+        List<MappingNode> regexChildren = new ArrayList<MappingNode>(2);
+        MappingNode child = node.getLeftMostChild();
+        while (child != null) {
+            Mapping mapping = child.getMapping();
+            if (mapping instanceof ConstantMapping) {
+                String definition = mapping.getDefinition();
+                // 常量定义最多只能以'/'开头，中间不能再含有'/'，否则无法以"段"进行查找
+                if (definition.length() == 0 || definition.indexOf('/', 1) != -1) {
+                    return null;
+                }
+                constants.put(definition, child);
+                if (child.getAmmountOfRegexChildren() > 0) {
+                    prefixConstants.add(child);
+                }
+            } else {
+                regexChildren.add(child);
+            }
+            child = child.getSibling();
+        }
+        return new ChildrenIndex(constants, //
+                prefixConstants.toArray(prefixConstants.isEmpty() ? EMPTY
+                        : new MappingNode[prefixConstants.size()]),//
+                regexChildren.toArray(regexChildren.isEmpty() ? EMPTY
+                        : new MappingNode[regexChildren.size()]));
+    }
+
+    /**
+     * 从子结点中找出第一个能够匹配所给地址的结点，返回其匹配结果；没有匹配的返回null
+     *
+     * @param remaining 非空的剩余地址
+     * @return
+     */
+    MatchResult match(String remaining) {
+        if (constants.size() > 0) {
+            int end = remaining.indexOf('/', 1);
+            String segment = end == -1 ? remaining : remaining.substring(0, end);
+            MappingNode node = constants.get(segment);
+            if (node != null) {
+                return node.getMapping().match(remaining);
+            }
+            // 没有和整段地址相等的常量时，只有含变量子结点的常量才可能匹配这段地址的前缀
+            for (MappingNode prefix : prefixConstants) {
+                if (RoseStringUtil.startsWith(remaining, prefix.getMappingPath())) {
+                    return prefix.getMapping().match(remaining);
+                }
+            }
+        }
+        for (MappingNode regex : regexChildren) {
+            MatchResult result = regex.getMapping().match(remaining);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+}
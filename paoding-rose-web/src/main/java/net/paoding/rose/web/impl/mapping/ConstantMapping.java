@@ -25,6 +25,9 @@ public class ConstantMapping implements Mapping {
     /** 规范化的地址定义 */
     private final String definition;
 
+    /** 常量映射的匹配结果总是相同的，所有请求共用这一个 */
+    private MatchResult matchResult;
+
     public ConstantMapping(String definition) {
         this.definition = definition;
     }
@@ -37,6 +40,7 @@ public class ConstantMapping implements Mapping {
     @Override
     public void setMappingNode(MappingNode mappingNode) {
         this.mappingNode = mappingNode;
+        this.matchResult = new MatchResultImpl(mappingNode, definition);
     }
 
     @Override
@@ -53,7 +57,7 @@ public class ConstantMapping implements Mapping {
     @Override
     public MatchResult match(CharSequence input) {
         boolean matched = RoseStringUtil.startsWith(input, definition);
-        return !matched ? null : new MatchResultImpl(mappingNode, definition);
+        return !matched ? null : matchResult;
     }
 
     @Override
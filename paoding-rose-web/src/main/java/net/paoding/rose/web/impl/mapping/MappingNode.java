@@ -16,6 +16,8 @@
 package net.paoding.rose.web.impl.mapping;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import net.paoding.rose.web.RequestPath;
 
@@ -44,6 +46,12 @@ public class MappingNode implements Comparable<MappingNode> {
     /** 子节点是变量参数映射的数目 */
     private int ammountOfRegexChildren = -1;
 
+    /** 以地址定义为key的子结点，供构造树时快速查找子结点 */
+    private Map<String, MappingNode> childrenByDefinition;
+
+    /** 子结点的索引，由 {@link #compileIndex()} 创建；为null时使用兄弟结点的线性匹配 */
+    private ChildrenIndex childrenIndex;
+
     /** 叶子引擎: 只有含有叶子引擎的结点才能处理对应地址的请求 */
     private final EngineGroup leafEngines = new EngineGroupImpl();
 
@@ -80,6 +88,13 @@ public class MappingNode implements Comparable<MappingNode> {
     }
 
     public void linkAsChild(final MappingNode child) {
+        if (childrenByDefinition == null) {
+            childrenByDefinition = new HashMap<String, MappingNode>();
+        }
+        childrenByDefinition.put(child.getMapping().getDefinition(), child);
+        // 树结构发生变化，已有的索引作废
+        this.childrenIndex = null;
+        this.ammountOfRegexChildren = -1;
         if (this.leftMostChild == null) {
             this.leftMostChild = child;
         } else {
@@ -108,15 +123,46 @@ public class MappingNode implements Comparable<MappingNode> {
     }
 
     public MappingNode getChild(String mapping) {
-        MappingNode sibling = this.leftMostChild;
-        while (sibling != null) {
-            if (sibling.getMapping().getDefinition().equals(mapping)) {
-                return sibling;
-            } else {
-                sibling = sibling.sibling;
-            }
+        if (childrenByDefinition == null) {
+            return null;
         }
-        return null;
+        return childrenByDefinition.get(mapping);
+    }
+
+    /**
+     * 返回子结点中变量参数映射的数目
+     * 
+     * @return
+     */
+    public int getAmmountOfRegexChildren() {
+        if (ammountOfRegexChildren < 0) {
+            ammountOfRegexChildren = countRegexChildren(this);
+        }
+        return ammountOfRegexChildren;
+    }
+
+    /**
+     * 为本结点及其所有下级结点创建子结点索引，使匹配时对常量子结点的查找不再逐个比较兄弟结点。
+     * <p>
+     * 索引只改变查找方式，不改变匹配结果；应在整个树构造完毕后调用。
+     */
+    public void compileIndex() {
+        MappingNode child = leftMostChild;
+        while (child != null) {
+            child.compileIndex();
+            child = child.sibling;
+        }
+        this.ammountOfRegexChildren = countRegexChildren(this);
+        this.childrenIndex = leftMostChild == null ? null : ChildrenIndex.compile(this);
+    }
+
+    /**
+     * 本结点是否已经创建了子结点索引
+     * 
+     * @return
+     */
+    public boolean isIndexed() {
+        return childrenIndex != null;
     }
 
     public EngineGroup getLeafEngines() {
@@ -128,9 +174,12 @@ public class MappingNode implements Comparable<MappingNode> {
     }
 
     public ArrayList<MatchResult> match(RequestPath requestPath) {
+        if (childrenIndex != null && sibling == null) {
+            return indexedMatch(requestPath);
+        }
 
         // 用来储存并返回的匹配结果集合
-        ArrayList<MatchResult> matchResults = new ArrayList<MatchResult>(16);
+        ArrayList<MatchResult> matchResults = new ArrayList<MatchResult>(8);
 
         final boolean debugEnabled = logger.isDebugEnabled();
 
@@ -203,6 +252,81 @@ public class MappingNode implements Comparable<MappingNode> {
         }
     }
 
+    /**
+     * 使用子结点索引进行匹配，匹配规则、返回结果与 {@link #match(RequestPath)} 的线性匹配相同
+     * 
+     * @param requestPath
+     * @return
+     */
+    private ArrayList<MatchResult> indexedMatch(RequestPath requestPath) {
+        final boolean debugEnabled = logger.isDebugEnabled();
+
+        String remaining = requestPath.getRosePath();
+
+        // 根结点没有兄弟结点，它自己匹配不了就不可能再匹配了
+        MatchResult last = this.getMapping().match(remaining);
+        if (last != null && last.getParameterName() == null && getAmmountOfRegexChildren() == 0) {
+            if (remaining.length() > last.getValue().length()
+                    && remaining.charAt(last.getValue().length()) != '/') {
+                last = null;
+            }
+        }
+
+        ArrayList<MatchResult> matchResults = new ArrayList<MatchResult>(8);
+        while (last != null) {
+            if (debugEnabled) {
+                logger.debug("['" + requestPath.getRosePath() + "'] matched(" //
+                        + (matchResults.size() + 1) + "): '" + last + "'");
+            }
+            matchResults.add(last);
+            remaining = remaining.substring(last.getValue().length());
+            if (remaining.length() == 0) {
+                if (debugEnabled) {
+                    logger.debug("['" + requestPath.getRosePath() + "'] matched over.");
+                }
+                return matchResults;
+            }
+            MappingNode curNode = last.getMappingNode();
+            if (curNode.leftMostChild == null) {
+                break;
+            }
+            if (curNode.childrenIndex != null) {
+                last = curNode.childrenIndex.match(remaining);
+            } else {
+                last = curNode.linearMatchChildren(remaining);
+            }
+        }
+        if (debugEnabled) {
+            logger.debug("['" + requestPath.getRosePath() + "'] not matched");
+        }
+        return null;
+    }
+
+    /**
+     * 逐个尝试子结点，用于无法建立索引的结点
+     * 
+     * @param remaining
+     * @return
+     */
+    private MatchResult linearMatchChildren(String remaining) {
+        MappingNode child = leftMostChild;
+        while (child != null) {
+            MatchResult result = child.getMapping().match(remaining);
+            if (result != null && result.getParameterName() == null
+                    && child.getAmmountOfRegexChildren() == 0) {
+                if (remaining.length() > result.getValue().length()
+                        && remaining.charAt(result.getValue().length()) != '/') {
+                    result = null;
+                }
+            }
+            if (result != null) {
+                return result;
+            }
+            child = child.sibling;
+        }
+        return null;
+    }
+
     private int countRegexChildren(MappingNode curNode) {
         int ammountOfRegexChildren = 0;
         MappingNode child = curNode.leftMostChild;
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.mapping;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.paoding.rose.web.annotation.ReqMethod;
+import net.paoding.rose.web.impl.thread.LinkedEngine;
+
+/**
+ * {@link MatchCache} 缓存热点地址在匹配树上的匹配结果，使同一个地址的重复请求不再经过 {@link MappingNode#match}。
+ * <p>
+ * 缓存以(请求方法, rosePath)为key，保存匹配结果、地址中的参数以及该请求方法在叶子结点上的候选引擎。
+ * 由于候选引擎的最终选择和请求参数有关(如@IfParamExists)，选择过程仍然在每次请求中进行。
+ * <p>
+ * 缓存是有界的，分为若干段，每段由各自的锁保护，按LRU或FIFO淘汰。
+ * 对于含有变量参数的地址，如果经过某个变量结点的地址已经向缓存写入了 {@link #setMaxRegexValues(int)} 项，
+ * 则认为它是高基数参数(如用户id)，此后经过该结点的地址不再被缓存。
+ */
+public class MatchCache {
+
+    public static final String EVICTION_LRU = "lru";
+
+    public static final String EVICTION_FIFO = "fifo";
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    /** 经过每个变量结点的地址已经写入缓存的次数 */
+    private final ConcurrentHashMap<MappingNode, AtomicInteger> regexValueCounts = new ConcurrentHashMap<MappingNode, AtomicInteger>();
+
+    private final int maxSize;
+
+    private final String eviction;
+
+    private int maxRegexValues = 16;
+
+    /**
+     *
+     * @param maxSize 缓存的最大项数，必须大于0
+     * @param eviction {@link #EVICTION_LRU} 或 {@link #EVICTION_FIFO}
+     */
+    public MatchCache(int maxSize, String eviction) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize=" + maxSize);
+        }
+        boolean accessOrder;
+        if (eviction == null || EVICTION_LRU.equalsIgnoreCase(eviction)) {
+            accessOrder = true;
+            eviction = EVICTION_LRU;
+        } else if (EVICTION_FIFO.equalsIgnoreCase(eviction)) {
+            accessOrder = false;
+            eviction = EVICTION_FIFO;
+        } else {
+            throw new IllegalArgumentException("unknown eviction '" + eviction
+                    + "', only 'lru' or 'fifo' is supported");
+        }
+        this.maxSize = maxSize;
+        this.eviction = eviction;
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentSize, accessOrder);
+        }
+    }
+
+    /**
+     * 设置经过一个变量结点的地址最多允许写入缓存多少次；0表示含有变量参数的地址都不缓存
+     *
+     * @param maxRegexValues
+     */
+    public void setMaxRegexValues(int maxRegexValues) {
+        if (maxRegexValues < 0) {
+            throw new IllegalArgumentException("maxRegexValues=" + maxRegexValues);
+        }
+        this.maxRegexValues = maxRegexValues;
+    }
+
+    public int getMaxRegexValues() {
+        return maxRegexValues;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public String getEviction() {
+        return eviction;
+    }
+
+    /**
+     * 返回缓存的匹配结果，没有的返回null
+     *
+     * @param method
+     * @param rosePath
+     * @return
+     */
+    public Entry get(ReqMethod method, String rosePath) {
+        Key key = new Key(method, rosePath);
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * 把一次成功的匹配放入缓存，并返回代表它的缓存项；返回值可直接用于本次请求(即使它因为高基数参数而没有被缓存)
+     *
+     * @param method
+     * @param rosePath
+     * @param matchResults 非空的匹配结果
+     * @return
+     */
+    public Entry put(ReqMethod method, String rosePath, List<MatchResult> matchResults) {
+        Entry entry = new Entry(method, matchResults);
+        if (isCacheable(matchResults)) {
+            Key key = new Key(method, rosePath);
+            segmentFor(key).put(key, entry);
+        }
+        return entry;
+    }
+
+    private boolean isCacheable(List<MatchResult> matchResults) {
+        for (int i = 0; i < matchResults.size(); i++) {
+            MatchResult matchResult = matchResults.get(i);
+            if (matchResult.getParameterName() == null) {
+                continue;
+            }
+            if (maxRegexValues == 0) {
+                return false;
+            }
+            MappingNode node = matchResult.getMappingNode();
+            AtomicInteger count = regexValueCounts.get(node);
+            if (count == null) {
+                AtomicInteger created = new AtomicInteger();
+                count = regexValueCounts.putIfAbsent(node, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            if (count.get() >= maxRegexValues) {
+                return false;
+            }
+        }
+        for (int i = 0; i < matchResults.size(); i++) {
+            MatchResult matchResult = matchResults.get(i);
+            if (matchResult.getParameterName() != null) {
+                regexValueCounts.get(matchResult.getMappingNode()).incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 清空缓存以及计数
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        regexValueCounts.clear();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            hits += segment.hits;
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            misses += segment.misses;
+        }
+        return misses;
+    }
+
+    public long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            evictions += segment.evictions;
+        }
+        return evictions;
+    }
+
+    /**
+     * 返回已经被判定为高基数、不再缓存的变量结点的数目
+     *
+     * @return
+     */
+    public int getUncacheableRegexNodes() {
+        int count = 0;
+        for (AtomicInteger c : regexValueCounts.values()) {
+            if (c.get() >= maxRegexValues) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "MatchCache[size=" + size() + "/" + maxSize + ", eviction=" + eviction
+                + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    /**
+     * 缓存项：一个地址的匹配结果
+     */
+    public static final class Entry {
+
+        private final List<MatchResult> matchResults;
+
+        private final Map<String, String> uriParameters;
+
+        private final LinkedEngine[] leafEngines;
+
+        private Entry(ReqMethod method, List<MatchResult> matchResults) {
+            this.matchResults = Collections.unmodifiableList(matchResults);
+            Map<String, String> uriParameters = null;
+            for (int i = matchResults.size() - 1; i >= 0; i--) {
+                MatchResult matchResult = matchResults.get(i);
+                String name = matchResult.getParameterName();
+                if (name != null) {
+                    if (uriParameters == null) {
+                        uriParameters = new HashMap<String, String>(matchResults.size() << 1);
+                    }
+                    uriParameters.put(name, matchResult.getValue());
+                }
+            }
+            this.uriParameters = uriParameters == null ? null : Collections
+                    .unmodifiableMap(uriParameters);
+            MappingNode leaf = matchResults.get(matchResults.size() - 1).getMappingNode();
+            this.leafEngines = leaf.getLeafEngines().getEngines(method);
+        }
+
+        /**
+         * 匹配结果，不可修改
+         *
+         * @return
+         */
+        public List<MatchResult> getMatchResults() {
+            return matchResults;
+        }
+
+        /**
+         * 地址中的参数，不可修改；没有参数的返回null
+         *
+         * @return
+         */
+        public Map<String, String> getUriParameters() {
+            return uriParameters;
+        }
+
+        /**
+         * 叶子结点上对应请求方法的候选引擎
+         *
+         * @return
+         */
+        public LinkedEngine[] getLeafEngines() {
+            return leafEngines;
+        }
+    }
+
+    private static final class Key {
+
+        final ReqMethod method;
+
+        final String path;
+
+        final int hash;
+
+        Key(ReqMethod method, String path) {
+            this.method = method;
+            this.path = path;
+            this.hash = path.hashCode() * 31 + (method == null ? 0 : method.ordinal());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return this.method == that.method && this.path.equals(that.path);
+        }
+    }
+
+    private static final class Segment {
+
+        private final LinkedHashMap<Key, Entry> map;
+
+        volatile long hits;
+
+        volatile long misses;
+
+        volatile long evictions;
+
+        @SuppressWarnings("serial")
+        Segment(final int capacity, boolean accessOrder) {
+            this.map = new LinkedHashMap<Key, Entry>(capacity + 1, 1.0f, accessOrder) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if (size() > capacity) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Entry get(Key key) {
+            Entry entry = map.get(key);
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return entry;
+        }
+
+        synchronized void put(Key key, Entry entry) {
+            map.put(key, entry);
+        }
+
+        synchronized void clear() {
+            map.clear();
+            hits = misses = evictions = 0;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+}
@@ -10,8 +10,17 @@ public class IgnoredPathEnds implements IgnoredPath {
         this.path = path;
     }
 
+    String getPath() {
+        return path;
+    }
+
     @Override
     public boolean hit(RequestPath requestPath) {
         return requestPath.getRosePath().endsWith(path);
     }
+
+    @Override
+    public String toString() {
+        return "ends:" + path;
+    }
 }
@@ -11,9 +11,18 @@ public class IgnoredPathEquals implements IgnoredPath {
         this.path = path;
     }
 
+    String getPath() {
+        return path;
+    }
+
     @Override
     public boolean hit(RequestPath requestPath) {
         return requestPath.getRosePath().equals(path);
     }
+
+    @Override
+    public String toString() {
+        return "equals:" + path;
+    }
 }
 
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.mapping.ignored;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import net.paoding.rose.web.RequestPath;
+
+/**
+ * {@link IgnoredPathMatcher} 把RoseFilter配置的一组 {@link IgnoredPath} 编译为一个匹配器，
+ * 使每个请求的判断不再随规则数目线性增长：
+ * <ul>
+ * <li>{@link IgnoredPathEquals}：放在一个HashSet中</li>
+ * <li>{@link IgnoredPathStarts}：前缀树，沿rosePath从前往后走一遍</li>
+ * <li>{@link IgnoredPathEnds}：后缀树(反向的前缀树)，沿rosePath从后往前走一遍</li>
+ * <li>{@link IgnoredPathRegexMatch}：合并为一个"(?:a)|(?:b)|..."的正则表达式；含有反向引用、命名分组或者没有用\E结束的\Q的不能合并，
+ * 单独匹配</li>
+ * </ul>
+ * 其他类型的 {@link IgnoredPath} 仍然逐个判断。匹配结果和逐个调用 {@link IgnoredPath#hit(RequestPath)} 相同。
+ * <p>
+ * {@link #pass(RequestPath)} 同时记录被忽略、交给Rose处理的请求数，供/rose-info/ignoredPaths查看。
+ * 每个请求都要计数，计数和 {@link net.paoding.rose.web.metrics.InterceptorMetrics} 一样按线程分散在多个条带上。
+ *
+ */
+public class IgnoredPathMatcher implements IgnoredPath {
+
+    private static final int IGNORED = 0;
+
+    private static final int DISPATCHED = 1;
+
+    /** 每个条带占8个long(64字节，一个缓存行)，只用前2个 */
+    private static final int FIELDS = 8;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final IgnoredPath[] ignoredPaths;
+
+    private final Set<String> equals;
+
+    private final CharTrie starts;
+
+    private final CharTrie ends;
+
+    private final Pattern regex;
+
+    private final IgnoredPath[] others;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * FIELDS);
+
+    private IgnoredPathMatcher(IgnoredPath[] ignoredPaths) {
+        this.ignoredPaths = ignoredPaths.clone();
+        Set<String> equals = new HashSet<String>();
+        CharTrie starts = new CharTrie();
+        CharTrie ends = new CharTrie();
+        StringBuilder regex = new StringBuilder();
+        List<IgnoredPath> others = new ArrayList<IgnoredPath>();
+        for (IgnoredPath ignoredPath : ignoredPaths) {
+            Class<?> type = ignoredPath.getClass();
+            if (type == IgnoredPathEquals.class) {
+                equals.add(((IgnoredPathEquals) ignoredPath).getPath());
+            } else if (type == IgnoredPathStarts.class) {
+                starts.add(((IgnoredPathStarts) ignoredPath).getPath(), false);
+            } else if (type == IgnoredPathEnds.class) {
+                ends.add(((IgnoredPathEnds) ignoredPath).getPath(), true);
+            } else if (type == IgnoredPathRegexMatch.class) {
+                Pattern pattern = ((IgnoredPathRegexMatch) ignoredPath).getPath();
+                if (!isCombinable(pattern.pattern())) {
+                    others.add(ignoredPath);
+                } else {
+                    if (regex.length() > 0) {
+                        regex.append('|');
+                    }
+                    regex.append("(?:").append(pattern.pattern()).append(')');
+                }
+            } else {
+                others.add(ignoredPath);
+            }
+        }
+        this.equals = equals.isEmpty() ? null : equals;
+        this.starts = starts.isEmpty() ? null : starts.compile();
+        this.ends = ends.isEmpty() ? null : ends.compile();
+        this.regex = regex.length() == 0 ? null : Pattern.compile(regex.toString());
+        this.others = others.toArray(new IgnoredPath[others.size()]);
+    }
+
+    /**
+     * 一条正则规则能否放入"(?:a)|(?:b)|..."中和其他规则一起匹配。以下情况不能：
+     * <ul>
+     * <li>反向引用(\1、\k&lt;name&gt;)：合并后分组的序号变了</li>
+     * <li>命名分组((?&lt;name&gt;...))：两条规则使用同一个名字时合并后的正则表达式无法编译</li>
+     * <li>没有用\E结束的\Q：后面的")|(?:..."都会被当作字面字符</li>
+     * </ul>
+     * \Q...\E之间的字符和转义的字符不作判断；字符类中的"(?&lt;"会被误认为命名分组，只是少合并一条规则而已。
+     *
+     * @param regex
+     * @return
+     */
+    static boolean isCombinable(String regex) {
+        int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                char next = regex.charAt(++i);
+                if (next == 'Q') {
+                    int end = regex.indexOf("\\E", i + 1);
+                    if (end < 0) {
+                        return false;
+                    }
+                    i = end + 1;
+                } else if (next == 'k' || (next >= '0' && next <= '9')) {
+                    return false;
+                }
+            } else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < length) {
+                char next = regex.charAt(i + 3);
+                if (next != '=' && next != '!') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 不小于cpu数的2的幂，最多64
+     */
+    private static int stripes(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * FIELDS;
+    }
+
+    private long sum(int field) {
+        long sum = 0;
+        for (int i = field; i < counts.length(); i += FIELDS) {
+            sum += counts.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * 编译所给的规则
+     *
+     * @param ignoredPaths
+     * @return
+     */
+    public static IgnoredPathMatcher compile(IgnoredPath[] ignoredPaths) {
+        return new IgnoredPathMatcher(ignoredPaths);
+    }
+
+    @Override
+    public boolean hit(RequestPath requestPath) {
+        String rosePath = requestPath.getRosePath();
+        if (equals != null && equals.contains(rosePath)) {
+            return true;
+        }
+        if (starts != null && starts.matchesPrefixOf(rosePath)) {
+            return true;
+        }
+        if (ends != null && ends.matchesSuffixOf(rosePath)) {
+            return true;
+        }
+        if (regex != null && regex.matcher(rosePath).matches()) {
+            return true;
+        }
+        for (IgnoredPath other : others) {
+            if (other.hit(requestPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断一个进入RoseFilter的请求是否应被忽略，并记录到计数中
+     *
+     * @param requestPath
+     * @return 应被忽略时返回true
+     */
+    public boolean pass(RequestPath requestPath) {
+        if (hit(requestPath)) {
+            counts.incrementAndGet(stripe() + IGNORED);
+            return true;
+        }
+        counts.incrementAndGet(stripe() + DISPATCHED);
+        return false;
+    }
+
+    /**
+     * 被忽略(交给容器的其他组件)的请求数
+     *
+     * @return
+     */
+    public long getIgnoredCount() {
+        return sum(IGNORED);
+    }
+
+    /**
+     * 没有被忽略、交给Rose匹配处理的请求数
+     *
+     * @return
+     */
+    public long getDispatchedCount() {
+        return sum(DISPATCHED);
+    }
+
+    /**
+     * 编译前的规则
+     *
+     * @return
+     */
+    public IgnoredPath[] getIgnoredPaths() {
+        return ignoredPaths.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "IgnoredPathMatcher[equals=" + (equals == null ? 0 : equals.size()) + ", starts="
+                + (starts == null ? 0 : starts.size) + ", ends="
+                + (ends == null ? 0 : ends.size) + ", regex=" + regex + ", others="
+                + Arrays.toString(others) + "]";
+    }
+
+    /**
+     * 字符前缀树：构造时使用TreeMap，compile之后每个结点的子结点是按字符排序的数组，以二分查找
+     */
+    static class CharTrie {
+
+        private static final char[] NO_CHARS = new char[0];
+
+        private static final CharTrie[] NO_CHILDREN = new CharTrie[0];
+
+        private Map<Character, CharTrie> building = new TreeMap<Character, CharTrie>();
+
+        private char[] chars = NO_CHARS;
+
+        private CharTrie[] children = NO_CHILDREN;
+
+        /** 到这个结点为止的字符串是一条规则 */
+        private boolean terminal;
+
+        /** 规则数(只在根结点上有意义) */
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * @param key
+         * @param reversed 为true时从后往前加入，用于后缀匹配
+         */
+        void add(String key, boolean reversed) {
+            CharTrie node = this;
+            int length = key.length();
+            for (int i = 0; i < length; i++) {
+                char c = key.charAt(reversed ? length - 1 - i : i);
+                CharTrie child = node.building.get(c);
+                if (child == null) {
+                    child = new CharTrie();
+                    node.building.put(c, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+            size++;
+        }
+
+        CharTrie compile() {
+            int n = building.size();
+            if (n > 0) {
+                chars = new char[n];
+                children = new CharTrie[n];
+                int i = 0;
+                for (Map.Entry<Character, CharTrie> entry : building.entrySet()) {
+                    chars[i] = entry.getKey();
+                    children[i] = entry.getValue().compile();
+                    i++;
+                }
+            }
+            building = null;
+            return this;
+        }
+
+        private CharTrie child(char c) {
+            int index = Arrays.binarySearch(chars, c);
+            return index < 0 ? null : children[index];
+        }
+
+        /**
+         * 是否有某条规则是所给字符串的前缀
+         */
+        boolean matchesPrefixOf(String str) {
+            CharTrie node = this;
+            int length = str.length();
+            for (int i = 0; !node.terminal; i++) {
+                if (i == length || (node = node.child(str.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 是否有某条规则是所给字符串的后缀(规则是反向加入的)
+         */
+        boolean matchesSuffixOf(String str) {
+            CharTrie node = this;
+            for (int i = str.length() - 1; !node.terminal; i--) {
+                if (i < 0 || (node = node.child(str.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
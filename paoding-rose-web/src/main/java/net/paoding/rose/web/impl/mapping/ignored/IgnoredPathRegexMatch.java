@@ -12,8 +12,17 @@ public class IgnoredPathRegexMatch implements IgnoredPath {
         this.path = Pattern.compile(path);
     }
 
+    Pattern getPath() {
+        return path;
+    }
+
     @Override
     public boolean hit(RequestPath requestPath) {
         return path.matcher(requestPath.getRosePath()).matches();
     }
+
+    @Override
+    public String toString() {
+        return "regex:" + path;
+    }
 }
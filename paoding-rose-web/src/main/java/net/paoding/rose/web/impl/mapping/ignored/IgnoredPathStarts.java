@@ -10,8 +10,17 @@ public class IgnoredPathStarts implements IgnoredPath {
         this.path = path;
     }
 
+    String getPath() {
+        return path;
+    }
+
     @Override
     public boolean hit(RequestPath requestPath) {
         return requestPath.getRosePath().startsWith(path);
     }
+
+    @Override
+    public String toString() {
+        return "starts:" + path;
+    }
 }
\ No newline at end of file
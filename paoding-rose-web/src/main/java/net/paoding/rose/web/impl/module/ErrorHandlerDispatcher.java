@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import net.paoding.rose.util.MethodInvoker;
 import net.paoding.rose.web.ControllerErrorHandler;
 import net.paoding.rose.web.Invocation;
 
@@ -58,6 +59,7 @@ public class ErrorHandlerDispatcher implements ControllerErrorHandler {
                 if (parameterClasses.length == 2
                         && parameterClasses[INVOCATION_INDEX] == Invocation.class
                         && Throwable.class.isAssignableFrom(parameterClasses[THROWABLE_INDEX])) {
+                    final MethodInvoker invoker = MethodInvoker.create(method);
                     delegates.add(new ErrorHandlerDelegate() {
 
                         @Override
@@ -69,8 +71,7 @@ public class ErrorHandlerDispatcher implements ControllerErrorHandler {
                         public Object onError(Invocation inv, Throwable ex) throws Throwable {
                             Object[] args = new Object[] { inv, ex };
                             try {
-                                return method
-                                        .invoke(ErrorHandlerDispatcher.this.errorHandler, args);
+                                return invoker.invoke(ErrorHandlerDispatcher.this.errorHandler, args);
                             } catch (Throwable e) {
                                 logger.error("error happened when handling error " + ex.getClass()
                                         + " at " + ErrorHandlerDispatcher.this.toString());
@@ -121,4 +121,11 @@ public interface Module {
      */
     public ControllerErrorHandler getErrorHandler();
 
+    /**
+     * 由本模块(或上级模块)rose.properties的compression设置的是否压缩响应，没有设置的返回null
+     * 
+     * 
+     */
+    public Boolean getCompression();
+
 }
@@ -66,6 +66,9 @@ public class ModuleImpl implements Module {
     // 本模块使用的错误处理器(如果本模块没有定义，则使用上级模块的errorHanlder或根applicationContext的errorHandler)
     private ControllerErrorHandler errorHandler;
 
+    // 由rose.properties设置的是否压缩响应
+    private Boolean compression;
+
     // 默认的控制器，当按照"/controller/action"找不到控制器处理请求时，会试着看看这个控制器是否可以处理
     // 会先看看有没有@Path("")标注的或@DefaultController标注的
     // 没有的话则按照候选方案看看有没有default,index,home,welcome的控制器，有的话就是它了
@@ -163,4 +166,13 @@ public class ModuleImpl implements Module {
     public void setErrorHandler(ControllerErrorHandler errorHandler) {
         this.errorHandler = errorHandler;
     }
+
+    @Override
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Boolean compression) {
+        this.compression = compression;
+    }
 }
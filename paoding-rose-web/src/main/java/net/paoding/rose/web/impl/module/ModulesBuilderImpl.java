@@ -24,6 +24,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Resource;
 import javax.servlet.ServletContext;
@@ -68,6 +75,21 @@ public class ModulesBuilderImpl implements ModulesBuilder {
 
     private Log logger = LogFactory.getLog(getClass());
 
+    /** 并行构建模块的线程数，不大于1时在调用线程中逐个构建 */
+    private int threads = 1;
+
+    /**
+     * 设置并行构建模块的线程数(默认1，在调用线程中逐个构建)。
+     * <p>
+     * 并行构建时，一个模块在它的父模块构建完成后开始，同一父模块下的子模块同时创建、refresh各自的Spring容器，
+     * 注册并检查各自的控制器；返回的模块顺序以及各模块的拦截器顺序与逐个构建时相同。
+     * 
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public List<Module> build(List<ModuleResource> moduleResources,
             WebApplicationContext rootContext) throws Exception {
 
@@ -75,138 +97,218 @@ public class ModulesBuilderImpl implements ModulesBuilder {
         moduleResources = new ArrayList<ModuleResource>(moduleResources);
         Collections.sort(moduleResources);
 
-        // 将要返回的模块列表
-        List<Module> modules = new ArrayList<Module>(moduleResources.size());
-        Map<ModuleResource, Module> modulesAsMap = new HashMap<ModuleResource, Module>();
-
-        // 
-        for (ModuleResource moduleResource : moduleResources) {
-            final Module parentModule = (moduleResource.getParent() == null) ? null//
-                    : modulesAsMap.get(moduleResource.getParent());
-            final WebApplicationContext parentContext = (parentModule == null) ? rootContext//
-                    : parentModule.getApplicationContext();
-            final String namespace = "context@controllers"
-                    + moduleResource.getRelativePath().replace('/', '.');
-
-            // 创建该module的spring context对象
-            final ServletContext servletContext = parentContext == null ? null //
-                    : parentContext.getServletContext();
-            final ModuleAppContext moduleContext = ModuleAppContext.createModuleContext(//
-                    parentContext,//
-                    moduleResource.getContextResources(),//
-                    moduleResource.getMessageBasenames(),//
-                    /*id*/moduleResource.getModuleUrl().toString(),//
-                    namespace//
-                    );
-
-            // 扫描找到的类...定义到applicationContext
-            registerBeanDefinitions(moduleContext, moduleResource.getModuleClasses());
-
-            // 创建module对象
-            final ModuleImpl module = new ModuleImpl(//
-                    parentModule, //
-                    moduleResource.getModuleUrl(), //
-                    moduleResource.getMappingPath(), //
-                    moduleResource.getRelativePath(), //
-                    moduleContext);
-            //
-            modulesAsMap.put(moduleResource, module);
+        long startTime = System.currentTimeMillis();
+        List<Module> modules;
+        if (threads > 1 && moduleResources.size() > 1) {
+            modules = buildConcurrently(moduleResources, rootContext);
+        } else {
+            // 将要返回的模块列表
+            modules = new ArrayList<Module>(moduleResources.size());
+            Map<ModuleResource, Module> modulesAsMap = new HashMap<ModuleResource, Module>();
+            for (ModuleResource moduleResource : moduleResources) {
+                Module parentModule = (moduleResource.getParent() == null) ? null//
+                        : modulesAsMap.get(moduleResource.getParent());
+                Module module = buildModule(moduleResource, parentModule, rootContext);
+                modulesAsMap.put(moduleResource, module);
+                modules.add(module);
+            }
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("[moduleBuild] built " + modules.size() + " modules in "
+                    + (System.currentTimeMillis() - startTime) + " ms"
+                    + (threads > 1 ? " by " + threads + " threads" : ""));
+        }
+        return modules;
+    }
 
-            // 设置到servletContext全局属性
-            if (servletContext != null) {
-                String contextAttrKey = WebApplicationContext.class.getName() + "@"
-                        + moduleResource.getModuleUrl();
-                servletContext.setAttribute(contextAttrKey, moduleContext);
+    /**
+     * 在线程池中构建各模块，每个模块的任务先等待父模块的任务完成。
+     * <p>
+     * 任务按父模块在前的顺序提交，线程池按提交顺序执行，一个任务开始等待时它的父模块任务一定已经开始，所以不会因为线程用尽而互相等待。
+     */
+    private List<Module> buildConcurrently(List<ModuleResource> moduleResources,
+            final WebApplicationContext rootContext) throws Exception {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads,
+                moduleResources.size()), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rose-module-builder-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                // 和调用线程一样使用web应用的ClassLoader
+                thread.setContextClassLoader(classLoader);
+                return thread;
+            }
+        });
+        try {
+            Map<ModuleResource, Future<Module>> futures = new HashMap<ModuleResource, Future<Module>>();
+            List<Future<Module>> ordered = new ArrayList<Future<Module>>(moduleResources.size());
+            for (final ModuleResource moduleResource : moduleResources) {
+                final Future<Module> parentFuture = (moduleResource.getParent() == null) ? null
+                        : futures.get(moduleResource.getParent());
+                Future<Module> future = executor.submit(new Callable<Module>() {
+
+                    @Override
+                    public Module call() throws Exception {
+                        Module parentModule = (parentFuture == null) ? null : parentFuture.get();
+                        return buildModule(moduleResource, parentModule, rootContext);
+                    }
+                });
+                futures.put(moduleResource, future);
+                ordered.add(future);
+            }
+            // 按模块顺序取结果，有多个模块失败时抛出的总是排在最前的那个的异常
+            List<Module> modules = new ArrayList<Module>(moduleResources.size());
+            for (Future<Module> future : ordered) {
+                try {
+                    modules.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw e;
+                }
             }
+            return modules;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            // 从Spring应用环境中找出本web模块要使用的ParamValidator，ParamResolver, ControllerInterceptor, ControllerErrorHandler
-            List<ParamResolver> customerResolvers = findContextResolvers(moduleContext);
+    private Module buildModule(ModuleResource moduleResource, Module parentModule,
+            WebApplicationContext rootContext) throws Exception {
+        long startTime = System.currentTimeMillis();
+        final WebApplicationContext parentContext = (parentModule == null) ? rootContext//
+                : parentModule.getApplicationContext();
+        final String namespace = "context@controllers"
+                + moduleResource.getRelativePath().replace('/', '.');
+
+        // 创建该module的spring context对象
+        final ServletContext servletContext = parentContext == null ? null //
+                : parentContext.getServletContext();
+        final ModuleAppContext moduleContext = ModuleAppContext.createModuleContext(//
+                parentContext,//
+                moduleResource.getContextResources(),//
+                moduleResource.getMessageBasenames(),//
+                /*id*/moduleResource.getModuleUrl().toString(),//
+                namespace//
+                );
+
+        // 扫描找到的类...定义到applicationContext
+        registerBeanDefinitions(moduleContext, moduleResource.getModuleClasses());
+
+        // 创建module对象
+        final ModuleImpl module = new ModuleImpl(//
+                parentModule, //
+                moduleResource.getModuleUrl(), //
+                moduleResource.getMappingPath(), //
+                moduleResource.getRelativePath(), //
+                moduleContext);
+        //
+        module.setCompression(moduleResource.getCompression());
+
+        // 设置到servletContext全局属性
+        if (servletContext != null) {
+            String contextAttrKey = WebApplicationContext.class.getName() + "@"
+                    + moduleResource.getModuleUrl();
+            servletContext.setAttribute(contextAttrKey, moduleContext);
+        }
 
-            // resolvers
-            module.setCustomerResolvers(customerResolvers);
-            if (logger.isDebugEnabled()) {
-                logger.debug("module '" + module.getMappingPath() + "': apply resolvers "
-                        + customerResolvers);
-            }
-
-            // 将拦截器设置到module中
-            List<InterceptorDelegate> interceptors = findInterceptors(moduleContext);
-            for (Iterator<InterceptorDelegate> iter = interceptors.iterator(); iter.hasNext();) {
-                InterceptorDelegate interceptor = iter.next();
-
-                ControllerInterceptor most = InterceptorDelegate
-                        .getMostInnerInterceptor(interceptor);
-
-                if (!most.getClass().getName().startsWith("net.paoding.rose.web")) {
-
-                    // 先排除deny禁止的
-                    if (moduleResource.getInterceptedDeny() != null) {
-                        if (RoseStringUtil.matches(moduleResource.getInterceptedDeny(), interceptor
-                                .getName())) {
-                            iter.remove();
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("module '" + module.getMappingPath()
-                                        + "': remove interceptor by rose.properties: "
-                                        + most.getClass().getName());
-                            }
-                            continue;
+        // 从Spring应用环境中找出本web模块要使用的ParamValidator，ParamResolver, ControllerInterceptor, ControllerErrorHandler
+        List<ParamResolver> customerResolvers = findContextResolvers(moduleContext);
+
+        // resolvers
+        module.setCustomerResolvers(customerResolvers);
+        if (logger.isDebugEnabled()) {
+            logger.debug("module '" + module.getMappingPath() + "': apply resolvers "
+                    + customerResolvers);
+        }
+
+        // 将拦截器设置到module中
+        List<InterceptorDelegate> interceptors = findInterceptors(moduleContext);
+        for (Iterator<InterceptorDelegate> iter = interceptors.iterator(); iter.hasNext();) {
+            InterceptorDelegate interceptor = iter.next();
+
+            ControllerInterceptor most = InterceptorDelegate
+                    .getMostInnerInterceptor(interceptor);
+
+            if (!most.getClass().getName().startsWith("net.paoding.rose.web")) {
+
+                // 先排除deny禁止的
+                if (moduleResource.getInterceptedDeny() != null) {
+                    if (RoseStringUtil.matches(moduleResource.getInterceptedDeny(), interceptor
+                            .getName())) {
+                        iter.remove();
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("module '" + module.getMappingPath()
+                                    + "': remove interceptor by rose.properties: "
+                                    + most.getClass().getName());
                         }
+                        continue;
                     }
-                    //  确认最大的allow允许
-                    if (moduleResource.getInterceptedAllow() != null) {
-                        if (!RoseStringUtil.matches(moduleResource.getInterceptedAllow(),
-                                interceptor.getName())) {
-                            iter.remove();
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("module '" + module.getMappingPath()
-                                        + "': remove interceptor by rose.properties: "
-                                        + most.getClass().getName());
-                            }
-                            continue;
+                }
+                //  确认最大的allow允许
+                if (moduleResource.getInterceptedAllow() != null) {
+                    if (!RoseStringUtil.matches(moduleResource.getInterceptedAllow(),
+                            interceptor.getName())) {
+                        iter.remove();
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("module '" + module.getMappingPath()
+                                    + "': remove interceptor by rose.properties: "
+                                    + most.getClass().getName());
                         }
+                        continue;
                     }
                 }
             }
-            module.setControllerInterceptors(interceptors);
-            if (logger.isDebugEnabled()) {
-                logger.debug("module '" + module.getMappingPath() + "': apply intercetpors "
-                        + interceptors);
-            }
+        }
+        module.setControllerInterceptors(interceptors);
+        if (logger.isDebugEnabled()) {
+            logger.debug("module '" + module.getMappingPath() + "': apply intercetpors "
+                    + interceptors);
+        }
 
-            // 将validator设置到module中
-            List<ParamValidator> validators = findContextValidators(moduleContext);
-            module.setValidators(validators);
-            if (logger.isDebugEnabled()) {
-                logger.debug("module '" + module.getMappingPath() + "': apply global validators "
-                        + validators);
-            }
-
-            // errorhandler
-            ControllerErrorHandler errorHandler = getContextErrorHandler(moduleContext);
-            if (errorHandler != null) {
-                if (Proxy.isProxyClass(errorHandler.getClass())) {
-                    module.setErrorHandler(errorHandler);
-                } else {
-                    ErrorHandlerDispatcher dispatcher = new ErrorHandlerDispatcher(errorHandler);
-                    module.setErrorHandler(dispatcher);
-                }
-                if (logger.isInfoEnabled()) {
-                    logger.info("set errorHandler: " + module.getMappingPath() + "  "
-                            + errorHandler);
-                }
-            }
+        // 将validator设置到module中
+        List<ParamValidator> validators = findContextValidators(moduleContext);
+        module.setValidators(validators);
+        if (logger.isDebugEnabled()) {
+            logger.debug("module '" + module.getMappingPath() + "': apply global validators "
+                    + validators);
+        }
 
-            // controllers
-            final ListableBeanFactory beanFactory = moduleContext.getBeanFactory();
-            for (String beanName : beanFactory.getBeanDefinitionNames()) {
-                checkController(moduleContext, beanName, module);
+        // errorhandler
+        ControllerErrorHandler errorHandler = getContextErrorHandler(moduleContext);
+        if (errorHandler != null) {
+            if (Proxy.isProxyClass(errorHandler.getClass())) {
+                module.setErrorHandler(errorHandler);
+            } else {
+                ErrorHandlerDispatcher dispatcher = new ErrorHandlerDispatcher(errorHandler);
+                module.setErrorHandler(dispatcher);
             }
+            if (logger.isInfoEnabled()) {
+                logger.info("set errorHandler: " + module.getMappingPath() + "  "
+                        + errorHandler);
+            }
+        }
 
-            // 放进去以返回
-            modules.add(module);
+        // controllers
+        final ListableBeanFactory beanFactory = moduleContext.getBeanFactory();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            checkController(moduleContext, beanName, module);
         }
 
-        return modules;
+        if (logger.isInfoEnabled()) {
+            logger.info("[moduleBuild] built module '" + module.getMappingPath() + "' in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        return module;
     }
 
     private void throwExceptionIfDuplicatedNames(List<InterceptorDelegate> interceptors) {
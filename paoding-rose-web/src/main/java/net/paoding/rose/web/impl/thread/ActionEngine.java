@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -33,6 +34,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.paoding.rose.RoseVersion;
+import net.paoding.rose.util.MethodInvoker;
+import net.paoding.rose.util.SpringUtils;
 import net.paoding.rose.util.RoseStringUtil;
 import net.paoding.rose.web.ControllerInterceptor;
 import net.paoding.rose.web.InterceptorDelegate;
@@ -40,17 +43,30 @@ import net.paoding.rose.web.Invocation;
 import net.paoding.rose.web.InvocationChain;
 import net.paoding.rose.web.ParamValidator;
 import net.paoding.rose.web.RequestPath;
+import net.paoding.rose.web.annotation.AsyncTimeout;
+import net.paoding.rose.web.annotation.Compress;
+import net.paoding.rose.web.annotation.VirtualThread;
 import net.paoding.rose.web.annotation.HttpFeatures;
 import net.paoding.rose.web.annotation.IfParamExists;
 import net.paoding.rose.web.annotation.Intercepted;
 import net.paoding.rose.web.annotation.Return;
 import net.paoding.rose.web.impl.module.Module;
+import net.paoding.rose.web.instruction.DefaultJsonSerializer;
+import net.paoding.rose.web.instruction.JsonSerializer;
+import net.paoding.rose.web.instruction.Instruction;
+import net.paoding.rose.web.metrics.ActionMetrics;
+import net.paoding.rose.web.metrics.InterceptorMetrics;
+import net.paoding.rose.web.metrics.Phase;
+import net.paoding.rose.web.metrics.RequestTimings;
+import net.paoding.rose.web.metrics.RoseMetrics;
 import net.paoding.rose.web.impl.validation.ParameterBindingResult;
 import net.paoding.rose.web.paramresolver.MethodParameterResolver;
 import net.paoding.rose.web.paramresolver.ParamMetaData;
 import net.paoding.rose.web.paramresolver.ParamResolver;
 import net.paoding.rose.web.paramresolver.ParameterNameDiscovererImpl;
 import net.paoding.rose.web.paramresolver.ResolverFactoryImpl;
+import net.paoding.rose.web.var.Model;
+import net.paoding.rose.web.var.ModelImpl;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -74,8 +90,26 @@ public final class ActionEngine implements Engine {
 
     private final Method method;
 
+    /** 调用action方法的调用器，在创建引擎时生成，代替每次请求的反射调用 */
+    private final MethodInvoker methodInvoker;
+
     private final HttpFeatures httpFeatures;
 
+    /** 由 {@link HttpFeatures} 声明为json的action，返回的对象以json输出 */
+    private final boolean json;
+
+    /** 由 {@link Compress} 或模块rose.properties设置的是否压缩响应，null表示没有设置 */
+    private final Boolean compression;
+
+    /** json输出使用的序列化器，第一次使用时从模块的Spring容器中取得 */
+    private volatile JsonSerializer jsonSerializer;
+
+    /** 异步action的超时时间(毫秒)，-1表示没有设置 */
+    private final long asyncTimeout;
+
+    /** 由 {@link VirtualThread} 设置的是否在虚拟线程中执行，null表示没有设置 */
+    private final Boolean virtualThread;
+
     private final InterceptorDelegate[] interceptors;
 
     private final ParamValidator[] validators;
@@ -84,6 +118,16 @@ public final class ActionEngine implements Engine {
 
     private final MethodParameterResolver methodParameterResolver;
 
+    /** 每个action最多缓存的已解析指令个数 */
+    private static final int MAX_CACHED_INSTRUCTIONS = 16;
+
+    /** 参数绑定结果在model中的名字 */
+    private static final String PARAM_BINDING_RESULT_NAME = MODEL_KEY_PREFIX
+            + ParameterBindingResult.OBJECT_NAME;
+
+    /** action返回的字符串(包括@Return的值)解析后的指令，key为返回的原字符串 */
+    private final ConcurrentHashMap<String, Instruction> instructions = new ConcurrentHashMap<String, Instruction>();
+
     private transient String toStringCache;
 
     public ActionEngine(Module module, Class<?> controllerClass, Object controller, Method method) {
@@ -91,6 +135,7 @@ public final class ActionEngine implements Engine {
         this.controllerClass = controllerClass;
         this.controller = controller;
         this.method = method;
+        this.methodInvoker = MethodInvoker.create(method);
         this.interceptors = compileInterceptors();
         this.methodParameterResolver = compileParamResolvers();
         this.validators = compileValidators();
@@ -100,6 +145,25 @@ public final class ActionEngine implements Engine {
             httpFeatures = this.controllerClass.getAnnotation(HttpFeatures.class);
         }
         this.httpFeatures = httpFeatures;
+        this.json = httpFeatures != null
+                && (httpFeatures.contentType().equals("json") || httpFeatures.contentType()
+                        .startsWith("application/json"));
+        AsyncTimeout asyncTimeout = method.getAnnotation(AsyncTimeout.class);
+        if (asyncTimeout == null) {
+            asyncTimeout = this.controllerClass.getAnnotation(AsyncTimeout.class);
+        }
+        this.asyncTimeout = asyncTimeout == null ? -1 : asyncTimeout.value();
+        VirtualThread virtualThread = method.getAnnotation(VirtualThread.class);
+        if (virtualThread == null) {
+            virtualThread = this.controllerClass.getAnnotation(VirtualThread.class);
+        }
+        this.virtualThread = virtualThread == null ? null : Boolean.valueOf(virtualThread.value());
+        Compress compress = method.getAnnotation(Compress.class);
+        if (compress == null) {
+            compress = this.controllerClass.getAnnotation(Compress.class);
+        }
+        this.compression = compress == null ? module.getCompression() : Boolean.valueOf(compress
+                .value());
     }
 
     public InterceptorDelegate[] getRegisteredInterceptors() {
@@ -118,6 +182,87 @@ public final class ActionEngine implements Engine {
         return method;
     }
 
+    /**
+     * 返回由 {@link AsyncTimeout} 设置的异步超时时间(毫秒)，没有设置的返回-1
+     * 
+     * @return
+     */
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * 返回由 {@link VirtualThread} 设置的是否在虚拟线程中执行，没有设置的返回null
+     * 
+     * @return
+     */
+    public Boolean getVirtualThread() {
+        return virtualThread;
+    }
+
+    /**
+     * 返回由 {@link Compress} 或模块rose.properties的compression设置的是否压缩响应，都没有设置的返回null
+     * 
+     * @return
+     */
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * 返回这个action曾经返回过的字符串已经解析好的指令
+     * 
+     * @param str action返回的字符串
+     * @return 没有缓存时返回null
+     */
+    public Instruction getCachedInstruction(String str) {
+        return instructions.get(str);
+    }
+
+    /**
+     * 缓存action返回的字符串解析后的指令，调用者需保证这个指令可以被多个请求同时渲染；
+     * 缓存满了以后(说明返回的多是动态的字符串)不再缓存新的
+     * 
+     * @param str
+     * @param instruction
+     * @return 实际缓存的指令(可能是其他线程先放入的)
+     */
+    public Instruction cacheInstruction(String str, Instruction instruction) {
+        if (instructions.size() >= MAX_CACHED_INSTRUCTIONS) {
+            return instruction;
+        }
+        Instruction old = instructions.putIfAbsent(str, instruction);
+        return old == null ? instruction : old;
+    }
+
+    /**
+     * 是否由 {@link HttpFeatures} 声明了以json输出
+     * 
+     * @return
+     */
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * 返回json输出使用的序列化器：模块(或其上级)Spring容器中的 {@link JsonSerializer}，没有配置时使用
+     * {@link DefaultJsonSerializer}
+     * 
+     * @return
+     */
+    public JsonSerializer getJsonSerializer() {
+        JsonSerializer jsonSerializer = this.jsonSerializer;
+        if (jsonSerializer == null) {
+            jsonSerializer = SpringUtils.getBean(module.getApplicationContext(),
+                    JsonSerializer.class);
+            if (jsonSerializer == null) {
+                jsonSerializer = DefaultJsonSerializer.getInstance();
+            }
+            this.jsonSerializer = jsonSerializer;
+        }
+        return jsonSerializer;
+    }
+
     public String[] getParameterNames() {
         return methodParameterResolver.getParameterNames();
     }
@@ -396,11 +541,12 @@ public final class ActionEngine implements Engine {
 
     protected Object innerExecute(Rose rose) throws Throwable {
         Invocation inv = rose.getInvocation();
+        final RequestTimings timings = rose.getTimings();
+        final long begin = timings == null ? 0 : System.nanoTime();
 
         // creates parameter binding result (not bean, just simple type, like int, Integer, int[] ...
         ParameterBindingResult paramBindingResult = new ParameterBindingResult(inv);
-        String paramBindingResultName = MODEL_KEY_PREFIX + paramBindingResult.getObjectName();
-        inv.addModel(paramBindingResultName, paramBindingResult);
+        inv.addModel(PARAM_BINDING_RESULT_NAME, paramBindingResult);
 
         // resolves method parameters, adds the method parameters to model
         Object[] methodParameters = methodParameterResolver.resolve(inv, paramBindingResult);
@@ -428,21 +574,43 @@ public final class ActionEngine implements Engine {
                     if (instruction instanceof String && ((String) instruction).length() == 0) {
                         continue;
                     }
+                    if (timings != null) {
+                        timings.add(Phase.RESOLVE, System.nanoTime() - begin);
+                    }
                     return instruction;
                 }
             }
         }
         
-        //
-        for (int i = 0; i < parameterNames.length; i++) {
-            if (parameterNames[i] != null && methodParameters[i] != null
-                    && inv.getModel().get(parameterNames[i]) != methodParameters[i]) {
-                inv.addModel(parameterNames[i], methodParameters[i]);
+        // adds the method parameters to model
+        Model model = inv.getModel();
+        if (model instanceof ModelImpl) {
+            ((ModelImpl) model).addParameters(parameterNames, methodParameters);
+        } else {
+            for (int i = 0; i < parameterNames.length; i++) {
+                if (parameterNames[i] != null && methodParameters[i] != null
+                        && model.get(parameterNames[i]) != methodParameters[i]) {
+                    model.add(parameterNames[i], methodParameters[i]);
+                }
             }
         }
 
         // intetceptors & controller
-        return new InvocationChainImpl(rose).doNext();
+        if (timings == null) {
+            return new InvocationChainImpl(rose, null).doNext();
+        }
+        final long chainBegin = System.nanoTime();
+        timings.add(Phase.RESOLVE, chainBegin - begin);
+        final long actionNanos = timings.get(Phase.ACTION);
+        final RoseMetrics metrics = rose.getMetrics();
+        try {
+            return new InvocationChainImpl(rose, metrics == null ? null : metrics
+                    .getActionMetrics(this)).doNext();
+        } finally {
+            // 拦截器的耗时不含action方法本身
+            timings.add(Phase.INTERCEPTORS, System.nanoTime() - chainBegin
+                    - (timings.get(Phase.ACTION) - actionNanos));
+        }
     }
 
     private class InvocationChainImpl implements InvocationChain {
@@ -455,17 +623,54 @@ public final class ActionEngine implements Engine {
 
         private Object instruction;
 
-        public InvocationChainImpl(Rose rose) {
+        /** 开启metrics时这个action的统计，否则为null */
+        private final ActionMetrics metrics;
+
+        /** 开启metrics时，各拦截器调用chain.doNext()的时间，0表示没有调用 */
+        private long[] nextStarts;
+
+        /** 开启metrics时，各拦截器调用的chain.doNext()正常返回的时间，0表示没有正常返回 */
+        private long[] nextEnds;
+
+        public InvocationChainImpl(Rose rose, ActionMetrics metrics) {
             this.rose = rose;
+            this.metrics = metrics;
+            if (metrics != null && interceptors.length > 0) {
+                this.nextStarts = new long[interceptors.length];
+                this.nextEnds = new long[interceptors.length];
+            }
         }
 
         @Override
         public Object doNext() throws Exception {
+            if (nextStarts == null) {
+                return proceed();
+            }
+            // 第一次调用时index就是调用者(拦截器)的下标，-1表示由ActionEngine调用
+            final int caller = index;
+            final boolean timed = caller >= 0 && caller < nextStarts.length
+                    && nextStarts[caller] == 0;
+            if (timed) {
+                nextStarts[caller] = System.nanoTime();
+            }
+            Object instruction = proceed();
+            if (timed) {
+                nextEnds[caller] = System.nanoTime();
+            }
+            return instruction;
+        }
+
+        private Object proceed() throws Exception {
             if (++index < interceptors.length) { // ++index 用于将-1转化为0
                 InterceptorDelegate interceptor = interceptors[index];
                 //
-                rose.addAfterCompletion(interceptor);
-                Object instruction = interceptor.roundInvocation(rose.getInvocation(), this);
+                Object instruction;
+                if (metrics == null) {
+                    rose.addAfterCompletion(interceptor);
+                    instruction = interceptor.roundInvocation(rose.getInvocation(), this);
+                } else {
+                    instruction = roundInvocation(interceptor, index);
+                }
                 //
                 if (debugEnabled) {
                     logger.debug("interceptor[" + interceptor.getName() + "] do round and return '"
@@ -484,8 +689,7 @@ public final class ActionEngine implements Engine {
                     applyHttpFeatures(rose.getInvocation());
                 }
 
-                this.instruction = method.invoke(controller, rose.getInvocation()
-                        .getMethodParameters());
+                this.instruction = invokeAction();
 
                 // @Return
                 if (this.instruction == null) {
@@ -501,6 +705,78 @@ public final class ActionEngine implements Engine {
                             + "; interceptors.length=" + interceptors.length);
         }
 
+        /**
+         * 执行拦截器并记录它的before、after耗时，是否短路、是否抛出异常
+         */
+        private Object roundInvocation(InterceptorDelegate interceptor, int level)
+                throws Exception {
+            final InterceptorMetrics interceptorMetrics = metrics.getInterceptorMetrics(level);
+            if (interceptor.isAfterCompletion()) {
+                rose.addAfterCompletion(new TimedAfterCompletion(interceptor, interceptorMetrics));
+            } else {
+                rose.addAfterCompletion(interceptor);
+            }
+            final long begin = System.nanoTime();
+            boolean success = false;
+            try {
+                Object instruction = interceptor.roundInvocation(rose.getInvocation(), this);
+                success = true;
+                return instruction;
+            } finally {
+                final long end = System.nanoTime();
+                final long nextStart = nextStarts[level];
+                if (nextStart == 0) {
+                    // 没有调用chain.doNext()：或者短路返回，或者在此之前抛出了异常
+                    interceptorMetrics.recordRound(end - begin, -1, success, !success);
+                } else {
+                    // chain.doNext()没有正常返回时，异常来自后面的拦截器或action，不计入这个拦截器
+                    final long nextEnd = nextEnds[level];
+                    interceptorMetrics.recordRound(nextStart - begin, nextEnd == 0 ? -1 : end
+                            - nextEnd, false, !success && nextEnd != 0);
+                }
+            }
+        }
+
+        private Object invokeAction() throws Exception {
+            final RequestTimings timings = rose.getTimings();
+            if (timings == null) {
+                return methodInvoker.invoke(controller, rose.getInvocation().getMethodParameters());
+            }
+            final long begin = System.nanoTime();
+            try {
+                return methodInvoker.invoke(controller, rose.getInvocation().getMethodParameters());
+            } finally {
+                timings.add(Phase.ACTION, System.nanoTime() - begin);
+            }
+        }
+
+    }
+
+    /**
+     * 开启metrics时代替拦截器注册的 {@link AfterCompletion}，记录其耗时和异常
+     */
+    private static class TimedAfterCompletion implements AfterCompletion {
+
+        private final InterceptorDelegate interceptor;
+
+        private final InterceptorMetrics metrics;
+
+        TimedAfterCompletion(InterceptorDelegate interceptor, InterceptorMetrics metrics) {
+            this.interceptor = interceptor;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void afterCompletion(Invocation inv, Throwable ex) throws Exception {
+            final long begin = System.nanoTime();
+            boolean success = false;
+            try {
+                interceptor.afterCompletion(inv, ex);
+                success = true;
+            } finally {
+                metrics.recordAfterCompletion(System.nanoTime() - begin, !success);
+            }
+        }
     }
 
     private Exception createException(Rose rose, Throwable exception) {
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import net.paoding.rose.web.Invocation;
+
+/**
+ * 异步action(返回Callable、Future或DeferredResult)的结果到达之后、渲染之前调用，按注册的顺序依次处理这个结果。
+ * <p>
+ * {@link net.paoding.rose.web.ControllerInterceptorAdapter} 用它把拦截器的after推迟到异步结果到达时，
+ * 使after得到的是实际的结果，而不是Callable等对象本身。
+ * 
+ * @see Rose#addAfterAsyncResult(AfterAsyncResult)
+ */
+public interface AfterAsyncResult {
+
+    /**
+     * 
+     * @param inv
+     * @param result 异步结果，或者前一个 {@link AfterAsyncResult} 返回的
+     * @return 用于渲染的结果，返回null表示不改变
+     * @throws Exception 和同步action时拦截器的after抛出的异常一样，交给模块的错误处理器
+     */
+    Object afterAsyncResult(Invocation inv, Object result) throws Exception;
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.paoding.rose.web.DeferredResult;
+import net.paoding.rose.web.InvocationUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * {@link AsyncExecution} 负责action返回的异步结果：{@link Callable}、{@link Future}(包括 Java
+ * 8 的 CompletableFuture)以及 {@link DeferredResult}。
+ * <p>
+ * 请求可以异步处理时(请求是普通的REQUEST请求，且RoseFilter和容器都开启了Servlet 3的异步支持)，
+ * {@link #start()} 启动一个 {@link AsyncContext}，容器线程随即返回；Callable以及需要阻塞等待的一般Future
+ * 交给 {@link RootEngine#getAsyncExecutor()} 执行，不占用容器的线程。结果到达后在产生结果的线程中：
+ * 把请求绑定到该线程、调用推迟的拦截器after({@link AfterAsyncResult})、把异常交给模块的错误处理器、渲染、
+ * 调用所有的afterCompletion，最后结束异步处理。
+ * <p>
+ * 不能异步处理时(包括已经在虚拟线程中执行的请求)，由 {@link #await()} 在当前线程中等待结果，然后按原来的同步流程渲染；
+ * 设置了超时时间的Callable仍交给线程池执行，以便超时后不再等待。
+ */
+final class AsyncExecution implements AsyncListener {
+
+    private static final Log logger = LogFactory.getLog(AsyncExecution.class);
+
+    private static final boolean completableFuturePresent = ClassUtils.isPresent(
+            "java.util.concurrent.CompletableFuture", AsyncExecution.class.getClassLoader());
+
+    /**
+     * 所给的action返回值是否是需要等待的异步结果
+     *
+     * @param instruction
+     * @return
+     */
+    static boolean isAsyncResult(Object instruction) {
+        return instruction instanceof Callable || instruction instanceof Future
+                || instruction instanceof DeferredResult;
+    }
+
+    private final Rose rose;
+
+    private final RootEngine rootEngine;
+
+    /** 本次请求的执行链，0是action引擎 */
+    private final LinkedEngine[] engines;
+
+    private final Object asyncResult;
+
+    /** 超时时间(毫秒)，-1表示使用容器的默认值，0表示不超时 */
+    private final long timeout;
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private AsyncContext asyncContext;
+
+    /** 在asyncExecutor中执行Callable或等待Future的任务，超时时取消它以中断执行线程 */
+    private volatile Future<?> task;
+
+    AsyncExecution(Rose rose, RootEngine rootEngine, Object asyncResult) {
+        this.rose = rose;
+        this.rootEngine = rootEngine;
+        this.asyncResult = asyncResult;
+        this.engines = rose.getEngineChain();
+        long timeout = -1;
+        if (asyncResult instanceof DeferredResult) {
+            long deferredTimeout = ((DeferredResult) asyncResult).getTimeout();
+            if (deferredTimeout > 0) {
+                timeout = deferredTimeout;
+            }
+        }
+        if (timeout < 0) {
+            Engine leaf = engines[0].getTarget();
+            if (leaf instanceof ActionEngine) {
+                timeout = ((ActionEngine) leaf).getAsyncTimeout();
+            }
+        }
+        if (timeout < 0) {
+            timeout = rootEngine.getAsyncTimeout();
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * 能否以Servlet 3的异步方式处理本次请求
+     *
+     * @return
+     */
+    boolean isAsyncPossible() {
+        InvocationBean inv = rose.getInvocation();
+        // 已经在虚拟线程中异步执行的请求不能再次startAsync，直接在该线程中等待即可；
+        // 在Rose内部forward而来的，和发起forward的请求一样可以异步处理
+        return rose.isAsyncDispatch()
+                && inv.getRequest().isAsyncSupported() && !inv.getRequest().isAsyncStarted();
+    }
+
+    /**
+     * 开始异步处理，调用后容器线程可以返回
+     */
+    void start() {
+        HttpServletRequest request = rose.getInvocation().getRequest();
+        this.asyncContext = request.startAsync();
+        if (timeout >= 0) {
+            asyncContext.setTimeout(timeout);
+        }
+        asyncContext.addListener(this);
+        if (logger.isDebugEnabled()) {
+            logger.debug("async started for '" + rose.getInvocation().getRequestPath().getUri()
+                    + "': " + asyncResult + ", timeout=" + timeout);
+        }
+        if (asyncResult instanceof DeferredResult) {
+            ((DeferredResult) asyncResult).setResultHandler(new DeferredResult.ResultHandler() {
+
+                @Override
+                public void handleResult(Object result, Throwable error) {
+                    complete(result, error);
+                }
+            });
+        } else if (completableFuturePresent && CompletableFutureAdapter.accept(asyncResult)) {
+            CompletableFutureAdapter.whenComplete(asyncResult, this);
+        } else {
+            Runnable runnable = new Runnable() {
+
+                @Override
+                public void run() {
+                    execute();
+                }
+            };
+            Executor executor = rootEngine.getAsyncExecutor();
+            if (executor == null) {
+                asyncContext.start(runnable);
+                return;
+            }
+            // Callable以及一般的Future(需要阻塞等待)使用Rose自己的线程池执行，不占用容器的线程
+            FutureTask<Object> futureTask = new FutureTask<Object>(runnable, null);
+            this.task = futureTask;
+            try {
+                executor.execute(futureTask);
+            } catch (RejectedExecutionException e) {
+                logger.warn("async executor is busy, rejected: "
+                        + rose.getInvocation().getRequestPath().getUri());
+                complete(null, e);
+            }
+        }
+    }
+
+    private void execute() {
+        Object result = null;
+        Throwable error = null;
+        try {
+            result = callBound(timeout > 0 ? timeout : 0);
+        } catch (Throwable e) {
+            error = e;
+        }
+        complete(result, error);
+    }
+
+    /**
+     * 在执行线程中调用Callable或等待Future，期间当前请求绑定到该线程，InvocationUtils可以使用
+     */
+    private Object callBound(long timeout) throws Exception {
+        HttpServletRequest threadRequest = InvocationUtils.getCurrentThreadRequest();
+        InvocationBean inv = rose.getInvocation();
+        InvocationUtils.bindRequestToCurrentThread(inv.getRequest());
+        // 内部forward的目标：容器线程返回时请求上绑定的已经是发起forward的invocation
+        InvocationUtils.bindInvocationToRequest(inv, inv.getRequest());
+        try {
+            return call(timeout);
+        } finally {
+            if (threadRequest != null) {
+                InvocationUtils.bindRequestToCurrentThread(threadRequest);
+            } else {
+                InvocationUtils.unindRequestFromCurrentThread();
+            }
+        }
+    }
+
+    /**
+     * 在当前线程中等待异步结果，用于不能异步处理的请求；异常和同步调用时一样交给模块的错误处理器
+     *
+     * @return
+     * @throws Throwable
+     */
+    Object await() throws Throwable {
+        try {
+            Object result;
+            if (asyncResult instanceof DeferredResult) {
+                result = awaitDeferredResult((DeferredResult) asyncResult);
+            } else if (asyncResult instanceof Callable && timeout > 0
+                    && rootEngine.getAsyncExecutor() != null) {
+                result = awaitCallable(rootEngine.getAsyncExecutor());
+            } else {
+                result = call(timeout);
+            }
+            return rose.afterAsyncResult(result);
+        } catch (Throwable e) {
+            return handleError(unwrap(e));
+        }
+    }
+
+    private Object call(long timeout) throws Exception {
+        if (asyncResult instanceof Callable) {
+            return ((Callable<?>) asyncResult).call();
+        }
+        Future<?> future = (Future<?>) asyncResult;
+        if (timeout > 0) {
+            try {
+                return future.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                throw e;
+            }
+        }
+        return future.get();
+    }
+
+    /**
+     * 有超时时间的Callable(比如在虚拟线程中执行的action返回的)交给线程池执行，当前线程最多等待timeout毫秒
+     */
+    private Object awaitCallable(Executor executor) throws Exception {
+        FutureTask<Object> futureTask = new FutureTask<Object>(new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                return callBound(0);
+            }
+        });
+        executor.execute(futureTask);
+        try {
+            return futureTask.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            futureTask.cancel(true);
+            throw newTimeoutException();
+        }
+    }
+
+    private Object awaitDeferredResult(DeferredResult deferredResult) throws Throwable {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] holder = new Object[2];
+        deferredResult.setResultHandler(new DeferredResult.ResultHandler() {
+
+            @Override
+            public void handleResult(Object result, Throwable error) {
+                holder[0] = result;
+                holder[1] = error;
+                latch.countDown();
+            }
+        });
+        if (timeout > 0) {
+            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                if (deferredResult.getTimeoutResult() != null) {
+                    return deferredResult.getTimeoutResult();
+                }
+                throw newTimeoutException();
+            }
+        } else {
+            latch.await();
+        }
+        if (holder[1] != null) {
+            throw (Throwable) holder[1];
+        }
+        return holder[0];
+    }
+
+    /**
+     * 异步结果到达(或出错、超时)时调用；只有第一次调用有效
+     *
+     * @param result
+     * @param error
+     */
+    void complete(Object result, Throwable error) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        InvocationBean inv = rose.getInvocation();
+        HttpServletRequest request = inv.getRequest();
+        HttpServletRequest threadRequest = InvocationUtils.getCurrentThreadRequest();
+        InvocationUtils.bindRequestToCurrentThread(request);
+        InvocationUtils.bindInvocationToRequest(inv, request);
+        Throwable failure = null;
+        try {
+            Object instruction = null;
+            if (error == null) {
+                // 拦截器的after在这里得到实际的结果
+                try {
+                    instruction = rose.afterAsyncResult(result);
+                } catch (Throwable e) {
+                    error = e;
+                }
+            }
+            if (error != null) {
+                instruction = handleError(unwrap(error));
+            }
+            rootEngine.render(inv, instruction);
+        } catch (Throwable e) {
+            failure = e;
+            String msg = request.getMethod() + " " + inv.getRequestPath().getUri();
+            logger.error(msg, e);
+            Throwable cause = unwrap(e);
+            sendError(cause instanceof TimeoutException
+                    || cause instanceof RejectedExecutionException ? 503 : 500);
+        } finally {
+            rose.afterCompletion(failure);
+            if (threadRequest != null) {
+                InvocationUtils.bindRequestToCurrentThread(threadRequest);
+            } else {
+                InvocationUtils.unindRequestFromCurrentThread();
+            }
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // 容器已经结束了这个异步请求(比如客户端断开)
+                logger.debug("", e);
+            }
+        }
+    }
+
+    private Object handleError(Throwable error) throws Throwable {
+        for (LinkedEngine engine : engines) {
+            if (engine.getTarget() instanceof ModuleEngine) {
+                return ((ModuleEngine) engine.getTarget()).handleError(rose, error);
+            }
+        }
+        throw error;
+    }
+
+    private void sendError(int status) {
+        HttpServletResponse response = rose.getInvocation().getResponse();
+        if (!response.isCommitted()) {
+            try {
+                response.sendError(status);
+            } catch (IOException e) {
+                logger.debug("", e);
+            }
+        }
+    }
+
+    private TimeoutException newTimeoutException() {
+        return new TimeoutException("async timeout after " + timeout + "ms: "
+                + rose.getInvocation().getRequestPath().getUri());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        // CompletableFuture的回调得到的可能是CompletionException
+        while ((error instanceof ExecutionException || error.getClass().getName().equals(
+                "java.util.concurrent.CompletionException"))
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    // ------------------------------------------------------------ AsyncListener
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        Object timeoutResult = null;
+        if (asyncResult instanceof DeferredResult) {
+            timeoutResult = ((DeferredResult) asyncResult).getTimeoutResult();
+        }
+        if (timeoutResult != null) {
+            complete(timeoutResult, null);
+        } else {
+            complete(null, newTimeoutException());
+        }
+        // 先完成再取消，以免取消引起的回调抢先完成本次请求
+        if (asyncResult instanceof Future) {
+            ((Future<?>) asyncResult).cancel(true);
+        }
+        Future<?> task = this.task;
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+        complete(null, event.getThrowable());
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public String toString() {
+        return "async[" + asyncResult + "]";
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * 使用Java 8 CompletableFuture 的回调等待其结果，不占用任何线程。
+ * <p>
+ * 只有在运行环境中存在 CompletableFuture 时，{@link AsyncExecution} 才会使用(加载)这个类。
+ */
+final class CompletableFutureAdapter {
+
+    private CompletableFutureAdapter() {
+    }
+
+    static boolean accept(Object asyncResult) {
+        return asyncResult instanceof CompletableFuture;
+    }
+
+    static void whenComplete(Object asyncResult, final AsyncExecution execution) {
+        ((CompletableFuture<?>) asyncResult).whenComplete(new BiConsumer<Object, Throwable>() {
+
+            @Override
+            public void accept(Object result, Throwable error) {
+                execution.complete(result, error);
+            }
+        });
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * {@link InternalForwarder} 使用的请求：和容器forward之后的请求一样，返回新的URI、servletPath，
+ * 以javax.servlet.forward.*属性记录最初的请求地址，forward地址中的查询参数优先于原有的参数。
+ *
+ */
+class ForwardedRequest extends HttpServletRequestWrapper {
+
+    private final String contextPath;
+
+    private final String requestURI;
+
+    private final String servletPath;
+
+    private final String queryString;
+
+    /** forward地址中的查询参数 */
+    private final Map<String, String[]> forwardParameters;
+
+    /** javax.servlet.forward.*属性，只在第一次forward时设置 */
+    private final Map<String, Object> forwardAttributes;
+
+    /**
+     * 
+     * @param request
+     * @param contextPath 发起forward时的contextPath：异步处理中(比如在虚拟线程中)，有的容器在容器线程返回后不再给出
+     * @param path
+     */
+    ForwardedRequest(HttpServletRequest request, String contextPath, String path) {
+        super(request);
+        this.contextPath = contextPath;
+        String query = null;
+        int queryIndex = path.indexOf('?');
+        if (queryIndex != -1) {
+            query = path.substring(queryIndex + 1);
+            path = path.substring(0, queryIndex);
+        }
+        this.servletPath = path;
+        this.requestURI = contextPath + path;
+        this.forwardParameters = parseQuery(query, request.getCharacterEncoding());
+        if (query == null) {
+            this.queryString = request.getQueryString();
+        } else if (request.getQueryString() == null) {
+            this.queryString = query;
+        } else {
+            this.queryString = query + "&" + request.getQueryString();
+        }
+        if (request.getAttribute(WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE) == null) {
+            forwardAttributes = new HashMap<String, Object>(8);
+            putIfNotNull(WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE, request.getRequestURI());
+            putIfNotNull(WebUtils.FORWARD_CONTEXT_PATH_ATTRIBUTE, contextPath);
+            putIfNotNull(WebUtils.FORWARD_SERVLET_PATH_ATTRIBUTE, request.getServletPath());
+            putIfNotNull(WebUtils.FORWARD_PATH_INFO_ATTRIBUTE, request.getPathInfo());
+            putIfNotNull(WebUtils.FORWARD_QUERY_STRING_ATTRIBUTE, request.getQueryString());
+        } else {
+            forwardAttributes = Collections.emptyMap();
+        }
+    }
+
+    private void putIfNotNull(String name, Object value) {
+        if (value != null) {
+            forwardAttributes.put(name, value);
+        }
+    }
+
+    private static Map<String, String[]> parseQuery(String query, String encoding) {
+        if (StringUtils.isEmpty(query)) {
+            return Collections.emptyMap();
+        }
+        if (encoding == null) {
+            encoding = "UTF-8";
+        }
+        Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        for (String pair : StringUtils.split(query, '&')) {
+            int eq = pair.indexOf('=');
+            String name = decode(eq == -1 ? pair : pair.substring(0, eq), encoding);
+            String value = eq == -1 ? "" : decode(pair.substring(eq + 1), encoding);
+            String[] values = parameters.get(name);
+            parameters.put(name, values == null ? new String[] { value } : (String[]) ArrayUtils
+                    .add(values, value));
+        }
+        return parameters;
+    }
+
+    private static String decode(String str, String encoding) {
+        try {
+            return URLDecoder.decode(str, encoding);
+        } catch (UnsupportedEncodingException e) {
+            return str;
+        } catch (IllegalArgumentException e) {
+            return str;
+        }
+    }
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        StringBuffer url = new StringBuffer();
+        url.append(getScheme()).append("://").append(getServerName());
+        int port = getServerPort();
+        if (port > 0 && !(port == 80 && "http".equals(getScheme()))
+                && !(port == 443 && "https".equals(getScheme()))) {
+            url.append(':').append(port);
+        }
+        url.append(requestURI);
+        return url;
+    }
+
+    @Override
+    public String getServletPath() {
+        return servletPath;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return null;
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        Object value = forwardAttributes.get(name);
+        return value != null ? value : super.getAttribute(name);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Enumeration getAttributeNames() {
+        if (forwardAttributes.isEmpty()) {
+            return super.getAttributeNames();
+        }
+        Vector<String> names = new Vector<String>(forwardAttributes.keySet());
+        Enumeration<String> e = super.getAttributeNames();
+        while (e.hasMoreElements()) {
+            String name = e.nextElement();
+            if (!forwardAttributes.containsKey(name)) {
+                names.add(name);
+            }
+        }
+        return names.elements();
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = forwardParameters.get(name);
+        return values != null ? values[0] : super.getParameter(name);
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = forwardParameters.get(name);
+        if (values == null) {
+            return super.getParameterValues(name);
+        }
+        String[] original = super.getParameterValues(name);
+        return original == null ? values : (String[]) ArrayUtils.addAll(values, original);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map getParameterMap() {
+        if (forwardParameters.isEmpty()) {
+            return super.getParameterMap();
+        }
+        Map<String, String[]> map = new HashMap<String, String[]>(super.getParameterMap());
+        for (String name : forwardParameters.keySet()) {
+            map.put(name, getParameterValues(name));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Enumeration getParameterNames() {
+        if (forwardParameters.isEmpty()) {
+            return super.getParameterNames();
+        }
+        return Collections.enumeration(getParameterMap().keySet());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.paoding.rose.web.Invocation;
+import net.paoding.rose.web.RequestPath;
+import net.paoding.rose.web.impl.mapping.MappingNode;
+import net.paoding.rose.web.impl.mapping.MatchCache;
+import net.paoding.rose.web.impl.mapping.ignored.IgnoredPath;
+import net.paoding.rose.web.impl.module.Module;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.util.NestedServletException;
+
+/**
+ * {@link InternalForwarder} 在Rose内部完成到另一个Rose地址的forward：直接在已有的匹配树上匹配目标地址并执行它的引擎链，
+ * 不再经过容器的RequestDispatcher和RoseFilter。由RoseFilter的internalForward参数开启。
+ * <p>
+ * 和容器的forward一样：
+ * <ul>
+ * <li>请求的URI、servletPath变为目标地址，javax.servlet.forward.*属性记录最初的地址，目标地址中的查询参数优先</li>
+ * <li>forward之前清空response的缓冲区，response已经提交时抛出 {@link IllegalStateException}</li>
+ * <li>目标的 {@link Invocation#getPreInvocation()} 是发起forward的invocation，getHeadInvocation()是最初的invocation</li>
+ * </ul>
+ * 目标的执行和发起forward的请求一样：可以在虚拟线程中执行，返回的异步结果(Callable、Future、DeferredResult)
+ * 可以以Servlet 3的异步方式处理；此时发起forward的请求的afterCompletion推迟到目标完成之后。
+ * <p>
+ * 目标地址被RoseFilter忽略、或者在匹配树上找不到时返回false，由调用者改用容器的forward；
+ * 目标action返回":continue"时同样返回false，并以 {@link #CONTINUE_ATTR} 标记这个地址：
+ * 随后容器的forward经过RoseFilter时直接交给容器的其他组件，不再执行一遍Rose。
+ *
+ */
+public class InternalForwarder {
+
+    private static final Log logger = LogFactory.getLog(InternalForwarder.class);
+
+    /** 目标action返回了":continue"的地址，RoseFilter对这个地址的forward直接交给过滤链的下一个组件 */
+    public static final String CONTINUE_ATTR = "$$paoding-rose.internalForward.continue";
+
+    private final List<Module> modules;
+
+    private final MappingNode mappingTree;
+
+    private final MatchCache matchCache;
+
+    private final IgnoredPath ignoredPath;
+
+    /**
+     * 
+     * @param modules
+     * @param mappingTree
+     * @param matchCache 匹配结果缓存，可以为null
+     * @param ignoredPath RoseFilter忽略的地址，forward到这些地址时交给容器
+     */
+    public InternalForwarder(List<Module> modules, MappingNode mappingTree,
+            MatchCache matchCache, IgnoredPath ignoredPath) {
+        this.modules = modules;
+        this.mappingTree = mappingTree;
+        this.matchCache = matchCache;
+        this.ignoredPath = ignoredPath;
+    }
+
+    /**
+     * forward到所给的地址
+     *
+     * @param inv 发起forward的invocation
+     * @param path 以'/'开始、不含contextPath的地址，可以带有查询参数
+     * @return 目标不由Rose处理时返回false，此时没有做任何事情；目标action返回":continue"时也返回false
+     * @throws ServletException
+     * @throws IOException
+     */
+    public boolean forward(Invocation inv, String path) throws ServletException, IOException {
+        if (path == null || !path.startsWith("/")) {
+            return false;
+        }
+        HttpServletRequest request = new ForwardedRequest(inv.getRequest(), inv.getRequestPath()
+                .getCtxpath(), path);
+        HttpServletResponse response = inv.getResponse();
+        RequestPath requestPath = new RequestPath(request);
+        if (ignoredPath.hit(requestPath)) {
+            return false;
+        }
+        Rose from = ((InvocationBean) inv).getRose();
+        Rose rose = new Rose(modules, mappingTree, request, response, requestPath);
+        rose.setMatchCache(matchCache);
+        rose.setVirtualThreadExecutor(from.getVirtualThreadExecutor());
+        rose.setInternalForwarder(this);
+        rose.setIgnoredPathMatcher(from.getIgnoredPathMatcher());
+        rose.setMetrics(from.getMetrics());
+        rose.setForwardedFrom(from);
+        if (!rose.match()) {
+            return false;
+        }
+        if (response.isCommitted()) {
+            throw new IllegalStateException("Cannot forward after response has been committed");
+        }
+        response.resetBuffer();
+        if (logger.isDebugEnabled()) {
+            logger.debug("internal forward to '" + requestPath.getUri() + "'");
+        }
+        try {
+            if (!rose.start()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("':continue' in internal forward, forward to '"
+                            + requestPath.getUri() + "' by the container");
+                }
+                request.setAttribute(CONTINUE_ATTR, requestPath.getUri());
+                return false;
+            }
+        } catch (ServletException e) {
+            throw e;
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new NestedServletException(requestPath.getMethod() + " "
+                    + requestPath.getUri(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "InternalForwarder[modules=" + modules.size() + "]";
+    }
+}
@@ -183,7 +183,7 @@ public final class InvocationBean implements Invocation {
     }
 
     private <T extends Engine> T getEngine(Class<? extends Engine> engineClass) {
-        for (LinkedEngine engine : rose.getEngines()) {
+        for (LinkedEngine engine : rose.getEngineChain()) {
             if (engine.getTarget().getClass() == engineClass) {
                 @SuppressWarnings("unchecked")
                 T t = (T) engine.getTarget();
@@ -324,7 +324,7 @@ public final class InvocationBean implements Invocation {
     @Override
     public synchronized Invocation setAttribute(String name, Object value) {
         if (attributes == null) {
-            attributes = new HashMap<String, Object>();
+            attributes = new HashMap<String, Object>(4);
         }
         if (logger.isDebugEnabled()) {
             logger.debug("setAttribute(" + name + "=" + value + ")");
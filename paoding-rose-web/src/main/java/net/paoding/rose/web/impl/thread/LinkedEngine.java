@@ -37,10 +37,34 @@ public final class LinkedEngine implements Engine {
 
     private MappingNode node;
 
+    /** 从本引擎到根引擎的整条执行链，下标0是本引擎；在构造时确定，所有请求共用，不可修改 */
+    private final LinkedEngine[] chain;
+
+    /** 执行链上的 {@link ModuleEngine}、{@link ControllerEngine} 所在的结点 */
+    private final MappingNode moduleNode;
+
+    private final MappingNode controllerNode;
+
     public LinkedEngine(LinkedEngine parent, Engine target, MappingNode node) {
         this.parent = parent;
         this.target = target;
         this.node = node;
+        if (parent == null) {
+            this.chain = new LinkedEngine[] { this };
+        } else {
+            this.chain = new LinkedEngine[parent.chain.length + 1];
+            this.chain[0] = this;
+            System.arraycopy(parent.chain, 0, this.chain, 1, parent.chain.length);
+        }
+        MappingNode moduleNode = parent == null ? null : parent.moduleNode;
+        MappingNode controllerNode = parent == null ? null : parent.controllerNode;
+        if (target.getClass() == ModuleEngine.class) {
+            moduleNode = node;
+        } else if (target.getClass() == ControllerEngine.class) {
+            controllerNode = node;
+        }
+        this.moduleNode = moduleNode;
+        this.controllerNode = controllerNode;
     }
 
     public MappingNode getNode() {
@@ -55,6 +79,23 @@ public final class LinkedEngine implements Engine {
         return target;
     }
 
+    /**
+     * 返回从本引擎到根引擎的执行链，下标0是本引擎；返回的是共用的数组，调用者不能修改它
+     * 
+     * @return
+     */
+    LinkedEngine[] getChain() {
+        return chain;
+    }
+
+    MappingNode getModuleNode() {
+        return moduleNode;
+    }
+
+    MappingNode getControllerNode() {
+        return controllerNode;
+    }
+
     @Override
     public int isAccepted(HttpServletRequest request) {
         return target.isAccepted(request);
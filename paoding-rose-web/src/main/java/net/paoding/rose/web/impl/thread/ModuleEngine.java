@@ -114,65 +114,93 @@ public class ModuleEngine implements Engine {
                 module.getApplicationContext());
 
         boolean isMultiPartRequest = false;
+        Object instruction = null;
         try {
             isMultiPartRequest = checkMultipart(inv);
-            return rose.doNext();
+            instruction = rose.doNext();
+            return instruction;
         } catch (Throwable invException) {
             // 抛出异常了(可能是拦截器或控制器抛出的)，此时让该控制器所在模块的ControllerErrorHanlder处理
+            return handleError(rose, invException);
+        } finally {
+            if (isMultiPartRequest) {
+                if (AsyncExecution.isAsyncResult(instruction)) {
+                    // 异步action的结果还没有到达，上传的文件要在渲染之后(由AsyncExecution调用afterCompletion时)才能清除
+                    final MultipartHttpServletRequest request = getMultipartRequest(inv);
+                    if (request != null) {
+                        rose.addAfterCompletion(new AfterCompletion() {
 
-            Throwable cause = invException;
-            // 因为使用的是类反射技术，所以需要先把实际异常从InvocationTargetException取出来
-            while (cause instanceof InvocationTargetException) {
-                cause = ((InvocationTargetException) cause).getTargetException();
-            }
-            // 
-            Module errorHandlerModule = module;
-            ControllerErrorHandler errorHandler = errorHandlerModule.getErrorHandler();
-            while (errorHandler == null && errorHandlerModule != null) {
-                errorHandlerModule = errorHandlerModule.getParent();
-                if (errorHandlerModule != null) {
-                    errorHandler = errorHandlerModule.getErrorHandler();
-                    if (errorHandler != null) {
-                        if (errorHandler.getClass().isAnnotationPresent(NotForSubModules.class)) {
-                            errorHandler = null;
-                            continue;
-                        }
+                            @Override
+                            public void afterCompletion(Invocation inv, Throwable ex)
+                                    throws Exception {
+                                multipartResolver.cleanupMultipart(request);
+                            }
+                        });
                     }
                 } else {
-                    errorHandler = null;
-                    break;
+                    cleanupMultipart(inv);
                 }
             }
-            Object instruction = null;
-            if (errorHandler != null) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("exception happended； " + errorHandler.getClass().getName()
-                            + " will handle the exception: " //
-                            + cause.getClass().getName() + ":" + cause.getMessage());
-                }
-                rose.getInvocation().setViewModule(errorHandlerModule);
-                // 
-                HttpServletRequest request = rose.getInvocation().getRequest();
-                WebUtils.exposeErrorRequestAttributes(request, cause, null);
-                StackTraceSimplifier.simplify(cause);	//对栈进行简化
-                instruction = errorHandler.onError(rose.getInvocation(), cause);
-            }
+        }
+    }
 
-            // onError方法返回null，表示需要重新throw出去
-            // rethrow出去的不是cause而是invException，目的要把整个异常抛出来，以让知道整个异常的来由
-            if ((errorHandler == null) || (instruction == null)) {
-                if (invException instanceof Exception) {
-                    throw (Exception) invException;
-                } else {
-                    throw (Error) invException;
+    /**
+     * 把拦截器或控制器抛出的异常(包括异步action稍后产生的异常)交给该模块或上级模块的ControllerErrorHanlder处理
+     * 
+     * @param rose
+     * @param invException
+     * @return 错误处理器返回的指令
+     * @throws Throwable 没有错误处理器或错误处理器返回null时，重新抛出invException
+     */
+    public Object handleError(Rose rose, Throwable invException) throws Throwable {
+        Throwable cause = invException;
+        // 因为使用的是类反射技术，所以需要先把实际异常从InvocationTargetException取出来
+        while (cause instanceof InvocationTargetException) {
+            cause = ((InvocationTargetException) cause).getTargetException();
+        }
+        // 
+        Module errorHandlerModule = module;
+        ControllerErrorHandler errorHandler = errorHandlerModule.getErrorHandler();
+        while (errorHandler == null && errorHandlerModule != null) {
+            errorHandlerModule = errorHandlerModule.getParent();
+            if (errorHandlerModule != null) {
+                errorHandler = errorHandlerModule.getErrorHandler();
+                if (errorHandler != null) {
+                    if (errorHandler.getClass().isAnnotationPresent(NotForSubModules.class)) {
+                        errorHandler = null;
+                        continue;
+                    }
                 }
+            } else {
+                errorHandler = null;
+                break;
             }
-            return instruction;
-        } finally {
-            if (isMultiPartRequest) {
-                cleanupMultipart(inv);
+        }
+        Object instruction = null;
+        if (errorHandler != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("exception happended； " + errorHandler.getClass().getName()
+                        + " will handle the exception: " //
+                        + cause.getClass().getName() + ":" + cause.getMessage());
+            }
+            rose.getInvocation().setViewModule(errorHandlerModule);
+            // 
+            HttpServletRequest request = rose.getInvocation().getRequest();
+            WebUtils.exposeErrorRequestAttributes(request, cause, null);
+            StackTraceSimplifier.simplify(cause);	//对栈进行简化
+            instruction = errorHandler.onError(rose.getInvocation(), cause);
+        }
+
+        // onError方法返回null，表示需要重新throw出去
+        // rethrow出去的不是cause而是invException，目的要把整个异常抛出来，以让知道整个异常的来由
+        if ((errorHandler == null) || (instruction == null)) {
+            if (invException instanceof Exception) {
+                throw (Exception) invException;
+            } else {
+                throw (Error) invException;
             }
         }
+        return instruction;
     }
 
     public void destroy() {
@@ -217,13 +245,8 @@ public class ModuleEngine implements Engine {
      * @see MultipartResolver#cleanupMultipart
      */
     protected void cleanupMultipart(Invocation inv) {
-        HttpServletRequest src = inv.getRequest();
-        while (src != null && !(src instanceof MultipartHttpServletRequest)
-                && src instanceof HttpServletRequestWrapper) {
-            src = (HttpServletRequest) ((HttpServletRequestWrapper) src).getRequest();
-        }
-        if (src instanceof MultipartHttpServletRequest) {
-            final MultipartHttpServletRequest request = (MultipartHttpServletRequest) src;
+        final MultipartHttpServletRequest request = getMultipartRequest(inv);
+        if (request != null) {
             MultipartCleanup multipartCleaner = inv.getMethod().getAnnotation(
                     MultipartCleanup.class);
             if (multipartCleaner == null
@@ -242,6 +265,16 @@ public class ModuleEngine implements Engine {
 
     }
 
+    private static MultipartHttpServletRequest getMultipartRequest(Invocation inv) {
+        HttpServletRequest src = inv.getRequest();
+        while (src != null && !(src instanceof MultipartHttpServletRequest)
+                && src instanceof HttpServletRequestWrapper) {
+            src = (HttpServletRequest) ((HttpServletRequestWrapper) src).getRequest();
+        }
+        return src instanceof MultipartHttpServletRequest ? (MultipartHttpServletRequest) src
+                : null;
+    }
+
     private static MultipartResolver initMultipartResolver(ApplicationContext context) {
         MultipartResolver multipartResolver = (MultipartResolver) SpringUtils.getBean(context,
                 MultipartResolver.class);
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -54,6 +55,12 @@ public class RootEngine implements Engine {
     /** 由它最终负责执行模块返回给Rose的指令，进行页面渲染等 */
     protected InstructionExecutor instructionExecutor = new InstructionExecutorImpl();
 
+    /** 异步action的默认超时时间(毫秒)，-1表示使用容器的默认值 */
+    protected long asyncTimeout = -1;
+
+    /** 执行异步action返回的Callable、等待一般Future的线程池，null时使用容器的线程 */
+    protected Executor asyncExecutor;
+
     // ------------------------------------------------------------
 
     /**
@@ -71,6 +78,34 @@ public class RootEngine implements Engine {
         }
     }
 
+    /**
+     * 设置异步action的默认超时时间(毫秒)；action方法或控制器上的 @AsyncTimeout 优先于此设置
+     * 
+     * @param asyncTimeout -1表示使用容器的默认值，0表示不超时
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * 设置执行异步action返回的Callable、等待一般Future的线程池；它拒绝执行时请求返回503。
+     * <p>
+     * 没有设置时使用 AsyncContext.start 交给容器的线程执行。
+     * 
+     * @param asyncExecutor
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
     // ------------------------------------------------------------
 
     @Override
@@ -125,23 +160,50 @@ public class RootEngine implements Engine {
         // instruction是控制器action方法的返回结果或其对应的Instruction对象(也可能是拦截器、错误处理器返回的)
         Object instruction = rose.doNext();
 
-        if (Thread.currentThread().isInterrupted()) {
-            logger.info("stop to render: thread is interrupted");
-        } else {
-            // 写flash消息到Cookie (被include的请求不会有功能)
-            if (!requestPath.isIncludeRequest()) {
-                FlashImpl flash = (FlashImpl) inv.getFlash(false);
-                if (flash != null) {
-                    flash.writeNewMessages();
+        // action返回了Callable、Future或DeferredResult：能够异步处理的释放当前线程，稍后再渲染；否则在此等待其结果
+        if (AsyncExecution.isAsyncResult(instruction)) {
+            AsyncExecution async = new AsyncExecution(rose, this, instruction);
+            if (async.isAsyncPossible()) {
+                rose.setAsyncExecution(async);
+                try {
+                    async.start();
+                } catch (Throwable e) {
+                    rose.setAsyncExecution(null);
+                    throw e;
                 }
+                return instruction;
             }
+            instruction = async.await();
+        }
 
-            // 渲染页面
-            instructionExecutor.render(inv, instruction);
+        if (Thread.currentThread().isInterrupted()) {
+            logger.info("stop to render: thread is interrupted");
+        } else {
+            render(inv, instruction);
         }
         return instruction;
     }
 
+    /**
+     * 写flash消息并渲染页面
+     * 
+     * @param inv
+     * @param instruction
+     * @throws Exception
+     */
+    protected void render(InvocationBean inv, Object instruction) throws Exception {
+        // 写flash消息到Cookie (被include的请求不会有功能)
+        if (!inv.getRequestPath().isIncludeRequest()) {
+            FlashImpl flash = (FlashImpl) inv.getFlash(false);
+            if (flash != null) {
+                flash.writeNewMessages();
+            }
+        }
+
+        // 渲染页面
+        instructionExecutor.render(inv, instruction);
+    }
+
     @Override
     public void destroy() {
     }
@@ -16,10 +16,12 @@
 package net.paoding.rose.web.impl.thread;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,12 +33,17 @@ import net.paoding.rose.web.RequestPath;
 import net.paoding.rose.web.annotation.ReqMethod;
 import net.paoding.rose.web.impl.mapping.EngineGroup;
 import net.paoding.rose.web.impl.mapping.MappingNode;
+import net.paoding.rose.web.impl.mapping.MatchCache;
 import net.paoding.rose.web.impl.mapping.MatchResult;
+import net.paoding.rose.web.impl.mapping.ignored.IgnoredPathMatcher;
 import net.paoding.rose.web.impl.module.Module;
+import net.paoding.rose.web.metrics.Phase;
+import net.paoding.rose.web.metrics.RequestTimings;
+import net.paoding.rose.web.metrics.RoseEvents;
+import net.paoding.rose.web.metrics.RoseMetrics;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.util.Assert;
 
 /**
  * 
@@ -51,6 +58,22 @@ public class Rose implements EngineChain {
 
     private final MappingNode mappingTree;
 
+    private MatchCache matchCache;
+
+    private VirtualThreadExecutor virtualThreadExecutor;
+
+    private InternalForwarder internalForwarder;
+
+    private IgnoredPathMatcher ignoredPathMatcher;
+
+    private RoseMetrics metrics;
+
+    /** 开启metrics或JFR的RoseRequest事件时本次请求的计时，否则为null */
+    private RequestTimings timings;
+
+    /** JFR的RoseRequest事件，没有开启时为null */
+    private final Object requestEvent;
+
     private final RequestPath path;
 
     private final HttpServletRequest originalHttpRequest;
@@ -59,15 +82,41 @@ public class Rose implements EngineChain {
 
     private boolean started;
 
-    private List<LinkedEngine> engines = new ArrayList<LinkedEngine>(6);
+    /** 叶子引擎预先计算好的执行链(下标0是叶子引擎)，所有请求共用，不可修改 */
+    private LinkedEngine[] engines;
 
     private List<MatchResult> matchResults;
 
+    /** {@link #match()} 的结果：null表示还没有匹配 */
+    private Boolean matched;
+
+    private MatchCache.Entry cachedMatch;
+
+    private List<MatchResult> matchedResults;
+
+    private EngineGroup leafEngineGroup;
+
     private InvocationBean inv;
 
     private int curIndexOfChain;
 
-    private final LinkedList<AfterCompletion> afterCompletions = new LinkedList<AfterCompletion>();
+    /** 按注册顺序保存，调用时逆序；大部分请求没有，需要时才创建 */
+    private List<AfterCompletion> afterCompletions;
+
+    /** 异步处理中的action，非null时请求的收尾工作由它在异步结果到达后完成 */
+    private AsyncExecution asyncExecution;
+
+    /** 按注册顺序调用，只有返回异步结果的action才有 */
+    private List<AfterAsyncResult> afterAsyncResults;
+
+    /** 在Rose内部forward到本次请求的rose，不是内部forward时为null */
+    private Rose forwardedFrom;
+
+    /** 内部forward的目标转为异步处理时非null：本次执行和目标都结束(减到0)后才调用本次的afterCompletion */
+    private volatile AtomicInteger pendingCompletions;
+
+    /** 推迟调用afterCompletion时记下的异常 */
+    private volatile Throwable deferredError;
 
     public Rose(List<Module> modules, MappingNode mappingTree, HttpServletRequest httpRequest,
             HttpServletResponse httpResponse, RequestPath requestPath) {
@@ -76,12 +125,153 @@ public class Rose implements EngineChain {
         this.originalHttpRequest = httpRequest;
         this.originalHttpResponse = httpResponse;
         this.path = requestPath;
+        this.requestEvent = RoseEvents.getInstance().beginRequest();
+        if (requestEvent != null) {
+            this.timings = new RequestTimings();
+        }
     }
 
     public MappingNode getMappingTree() {
         return mappingTree;
     }
 
+    /**
+     * 设置匹配结果缓存，null表示不使用缓存
+     * 
+     * @param matchCache
+     */
+    public void setMatchCache(MatchCache matchCache) {
+        this.matchCache = matchCache;
+    }
+
+    /**
+     * 返回所使用的匹配结果缓存，没有使用缓存的返回null
+     * 
+     * @return
+     */
+    public MatchCache getMatchCache() {
+        return matchCache;
+    }
+
+    /**
+     * 设置虚拟线程执行器，null表示总是在当前线程中执行
+     * 
+     * @param virtualThreadExecutor
+     */
+    public void setVirtualThreadExecutor(VirtualThreadExecutor virtualThreadExecutor) {
+        this.virtualThreadExecutor = virtualThreadExecutor;
+    }
+
+    /**
+     * 返回虚拟线程执行器，没有开启时返回null
+     * 
+     * @return
+     */
+    public VirtualThreadExecutor getVirtualThreadExecutor() {
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * 由 {@link InternalForwarder} 设置发起forward的rose；应在 {@link #start()} 之前调用
+     * 
+     * @param forwardedFrom
+     */
+    void setForwardedFrom(Rose forwardedFrom) {
+        this.forwardedFrom = forwardedFrom;
+    }
+
+    /**
+     * 本次执行能否转为异步处理(Servlet 3的异步或者虚拟线程)：容器直接派发的请求，或者由这样的请求在Rose内部forward而来的
+     * 
+     * @return
+     */
+    boolean isAsyncDispatch() {
+        Rose rose = this;
+        while (rose.forwardedFrom != null) {
+            rose = rose.forwardedFrom;
+        }
+        return rose.path.getDispatcher() == Dispatcher.REQUEST;
+    }
+
+    /**
+     * 本次执行(内部forward的目标)即将转为异步处理：发起forward的rose的afterCompletion推迟到本次结束之后
+     * 
+     * @param defer false表示取消推迟(转为异步处理失败时)
+     */
+    private void deferForwarderCompletion(boolean defer) {
+        for (Rose rose = forwardedFrom; rose != null; rose = rose.forwardedFrom) {
+            rose.pendingCompletions = defer ? new AtomicInteger(2) : null;
+        }
+    }
+
+    /**
+     * 设置内部forward使用的转发器，null表示forward总是交给容器
+     * 
+     * @param internalForwarder
+     */
+    public void setInternalForwarder(InternalForwarder internalForwarder) {
+        this.internalForwarder = internalForwarder;
+    }
+
+    /**
+     * 返回内部forward使用的转发器，没有开启内部forward时返回null
+     * 
+     * @return
+     */
+    public InternalForwarder getInternalForwarder() {
+        return internalForwarder;
+    }
+
+    /**
+     * 设置RoseFilter使用的忽略地址匹配器，供/rose-info查看
+     * 
+     * @param ignoredPathMatcher
+     */
+    public void setIgnoredPathMatcher(IgnoredPathMatcher ignoredPathMatcher) {
+        this.ignoredPathMatcher = ignoredPathMatcher;
+    }
+
+    /**
+     * 返回RoseFilter使用的忽略地址匹配器，可能为null
+     * 
+     * @return
+     */
+    public IgnoredPathMatcher getIgnoredPathMatcher() {
+        return ignoredPathMatcher;
+    }
+
+    /**
+     * 设置请求计时的统计，null表示不计时；应在 {@link #match()}、{@link #start()} 之前调用
+     * 
+     * @param metrics
+     */
+    public void setMetrics(RoseMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics == null && requestEvent == null) {
+            this.timings = null;
+        } else if (timings == null) {
+            this.timings = new RequestTimings();
+        }
+    }
+
+    /**
+     * 返回请求计时的统计，没有开启metrics时返回null
+     * 
+     * @return
+     */
+    public RoseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 返回本次请求的计时，没有开启metrics也没有开启JFR的RoseRequest事件时返回null
+     * 
+     * @return
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
     public InvocationBean getInvocation() {
         return inv;
     }
@@ -90,7 +280,20 @@ public class Rose implements EngineChain {
         return modules;
     }
 
+    /**
+     * 返回本次请求的执行链，下标0是叶子引擎(ActionEngine)；还没有匹配时返回空列表
+     * 
+     * @return 不可修改的列表
+     */
     public List<LinkedEngine> getEngines() {
+        if (engines == null) {
+            return Collections.emptyList();
+        }
+        // 执行链由叶子引擎预先计算、所有请求共享，不能让调用者通过set改动它
+        return Collections.unmodifiableList(Arrays.asList(engines));
+    }
+
+    LinkedEngine[] getEngineChain() {
         return engines;
     }
 
@@ -113,23 +316,58 @@ public class Rose implements EngineChain {
         return matchResults;
     }
 
+    /**
+     * 本次请求是否已经转为异步处理(此时 {@link #start()} 返回后，页面渲染和afterCompletion还没有进行)
+     * 
+     * @return
+     */
+    public boolean isAsyncStarted() {
+        return asyncExecution != null;
+    }
+
+    void setAsyncExecution(AsyncExecution asyncExecution) {
+        this.asyncExecution = asyncExecution;
+        // 转为异步失败时(null)，本次的afterCompletion照常调用，推迟的发起者也就随之结束，不必取消
+        if (asyncExecution != null) {
+            deferForwarderCompletion(true);
+        }
+    }
+
     /**
      * @throws IndexOutOfBoundsException
      */
     @Override
     public Object doNext() throws Throwable {
-        return engines.get(--curIndexOfChain).execute(this);
+        return engines[--curIndexOfChain].execute(this);
     }
 
-    private boolean innerStart() throws Throwable {
+    /**
+     * 在匹配树上匹配请求地址，只做匹配，不执行；可以在 {@link #start()} 之前调用以判断请求是否由Rose处理
+     * 
+     * @return 地址不是Rose的地址时返回false
+     */
+    public boolean match() {
+        if (matched != null) {
+            return matched.booleanValue();
+        }
         final boolean debugEnabled = logger.isDebugEnabled();
-        final List<MatchResult> matchResults = mappingTree.match(this.path);
-        if (matchResults == null) {
-            // not rose uri
-            if (debugEnabled) {
-                logger.debug("not rose uri: '" + this.path.getUri() + "'");
+        List<MatchResult> matchResults;
+        MatchCache.Entry cached = null;
+        if (matchCache != null) {
+            cached = matchCache.get(path.getMethod(), path.getRosePath());
+        }
+        if (cached != null) {
+            matchResults = cached.getMatchResults();
+        } else {
+            matchResults = mappingTree.match(this.path);
+            if (matchResults == null) {
+                // not rose uri
+                if (debugEnabled) {
+                    logger.debug("not rose uri: '" + this.path.getUri() + "'");
+                }
+                matched = Boolean.FALSE;
+                return false;
             }
-            return false;
         }
 
         final MatchResult lastMatched = matchResults.get(matchResults.size() - 1);
@@ -140,10 +378,30 @@ public class Rose implements EngineChain {
                 logger.debug("not rose uri, not exits leaf engines for it: '" + this.path.getUri()
                         + "'");
             }
+            matched = Boolean.FALSE;
             return false;
 
         }
-        final LinkedEngine leafEngine = select(leafEngineGroup.getEngines(path.getMethod()));
+        if (cached == null && matchCache != null) {
+            cached = matchCache.put(path.getMethod(), path.getRosePath(), matchResults);
+        }
+        this.cachedMatch = cached;
+        this.matchedResults = matchResults;
+        this.leafEngineGroup = leafEngineGroup;
+        matched = Boolean.TRUE;
+        return true;
+    }
+
+    private boolean innerStart() throws Throwable {
+        final boolean debugEnabled = logger.isDebugEnabled();
+        if (!match()) {
+            return false;
+        }
+        final List<MatchResult> matchResults = this.matchedResults;
+        final MatchCache.Entry cached = this.cachedMatch;
+        final EngineGroup leafEngineGroup = this.leafEngineGroup;
+        final LinkedEngine leafEngine = select(cached != null ? cached.getLeafEngines()
+                : leafEngineGroup.getEngines(path.getMethod()));
         if (leafEngine == null) {
             // 405 Method Not Allowed
             /* 
@@ -176,56 +434,50 @@ public class Rose implements EngineChain {
                     + actionEngine.getMethod().getName());
         }
 
-        // bind engines
-        LinkedEngine tempEngine = leafEngine;
-        MappingNode moduleNode = null;
-        MappingNode controllerNode = null;
-        while (tempEngine != null) {
-            engines.add(tempEngine);
-            Class<? extends Engine> target = tempEngine.getTarget().getClass();
-            if (target == ModuleEngine.class) {
-                moduleNode = tempEngine.getNode();
-            } else if (target == ControllerEngine.class) {
-                controllerNode = tempEngine.getNode();
-            }
-            tempEngine = tempEngine.getParent();
-        }
+        // bind engines: 直接使用叶子引擎预先计算好的执行链
+        this.engines = leafEngine.getChain();
+        final MappingNode moduleNode = leafEngine.getModuleNode();
+        final MappingNode controllerNode = leafEngine.getControllerNode();
+
         // set module/controller/action path to RequsetPath object
-        StringBuilder sb = new StringBuilder(path.getUri().length());
-        MatchResult moduleMatchResult = null;
-        MatchResult controllerMatchResult = null;
+        // 各匹配结果依次连接起来就是rosePath，这里只记录分界位置，module/controller/action path在用到时才截取
+        int offset = 0;
+        int modulePathEnd = -1;
+        int controllerPathEnd = -1;
         for (int i = 0; i < matchResults.size(); i++) {
             MatchResult matchResult = matchResults.get(i);
-            sb.append(matchResult.getValue());
+            offset += matchResult.getValue().length();
             if (matchResult.getMappingNode() == moduleNode) {
-                moduleMatchResult = matchResult;
-                path.setModulePath(sb.toString()); // modulePath
-                Assert.notNull(engines.get(2));
-                sb.setLength(0);
+                modulePathEnd = offset;
             }
             if (matchResult.getMappingNode() == controllerNode) {
-                controllerMatchResult = matchResult;
-                path.setControllerPath(sb.toString()); // controllerPath
-                Assert.notNull(engines.get(1));
-                sb.setLength(0);
+                controllerPathEnd = offset;
             }
         }
-        path.setActionPath(sb.toString()); // actionPath
-        Assert.notNull(moduleMatchResult);
-        Assert.notNull(controllerMatchResult);
+        if (modulePathEnd < 0 || controllerPathEnd < 0) {
+            throw new IllegalStateException("module or controller not matched: " + matchResults);
+        }
+        path.setPathBoundaries(modulePathEnd, controllerPathEnd);
         this.matchResults = matchResults;
+        if (timings != null) {
+            timings.add(Phase.MATCH, System.nanoTime() - timings.getStartTime());
+        }
 
-        this.curIndexOfChain = engines.size();
+        this.curIndexOfChain = engines.length;
 
         Map<String, String> uriParameters = null;
-        for (int i = matchResults.size() - 1; i >= 0; i--) {
-            MatchResult matchResult = matchResults.get(i);
-            String name = matchResult.getParameterName();
-            if (name != null) {
-                if (uriParameters == null) {
-                    uriParameters = new HashMap<String, String>(matchResults.size() << 1);
+        if (cached != null) {
+            uriParameters = cached.getUriParameters();
+        } else {
+            for (int i = matchResults.size() - 1; i >= 0; i--) {
+                MatchResult matchResult = matchResults.get(i);
+                String name = matchResult.getParameterName();
+                if (name != null) {
+                    if (uriParameters == null) {
+                        uriParameters = new HashMap<String, String>(matchResults.size() << 1);
+                    }
+                    uriParameters.put(name, matchResult.getValue());
                 }
-                uriParameters.put(name, matchResult.getValue());
             }
         }
 
@@ -234,6 +486,34 @@ public class Rose implements EngineChain {
             httpRequest = new ParameteredUriRequest(originalHttpRequest, uriParameters);
         }
 
+        // 虚拟线程执行模式：容器线程到此为止，余下的执行链在虚拟线程中进行
+        if (virtualThreadExecutor != null && isAsyncDispatch()
+                && originalHttpRequest.isAsyncSupported()
+                && !originalHttpRequest.isAsyncStarted()
+                && virtualThreadExecutor.isEnabled((ActionEngine) leafEngine.getTarget())) {
+            if (debugEnabled) {
+                logger.debug("execute '" + path.getUri() + "' in virtual thread");
+            }
+            deferForwarderCompletion(true);
+            try {
+                virtualThreadExecutor.execute(this, httpRequest);
+            } catch (RuntimeException e) {
+                deferForwarderCompletion(false);
+                throw e;
+            }
+            return true;
+        }
+        return invoke(httpRequest);
+    }
+
+    /**
+     * 在当前线程中执行已经匹配的执行链，包括afterCompletion的调用
+     * 
+     * @param httpRequest 含有uri参数的请求
+     * @return 如果action返回":continue"，返回false
+     * @throws Throwable
+     */
+    boolean invoke(HttpServletRequest httpRequest) throws Throwable {
         // originalThreadRequest可能为null，特别是在portal框架下
         HttpServletRequest originalThreadRequest = InvocationUtils.getCurrentThreadRequest();
         //
@@ -261,12 +541,9 @@ public class Rose implements EngineChain {
             error = local;
             throw local;
         } finally {
-            for (AfterCompletion task : afterCompletions) {
-                try {
-                    task.afterCompletion(inv, error);
-                } catch (Throwable e) {
-                    logger.error("", e);
-                }
+            // 异步处理的请求，由AsyncExecution在结果渲染之后调用
+            if (asyncExecution == null) {
+                afterCompletion(error);
             }
             if (originalThreadRequest != null) {
                 InvocationUtils.bindRequestToCurrentThread(originalThreadRequest);
@@ -317,6 +594,105 @@ public class Rose implements EngineChain {
 
     @Override
     public void addAfterCompletion(AfterCompletion task) {
-        afterCompletions.addFirst(task);
+        if (afterCompletions == null) {
+            afterCompletions = new ArrayList<AfterCompletion>(4);
+        }
+        afterCompletions.add(task);
+    }
+
+    /**
+     * 所给的action返回值是否是异步结果(Callable、Future或DeferredResult)，它们在结果到达之后才渲染
+     * 
+     * @param instruction
+     * @return
+     */
+    public static boolean isAsyncResult(Object instruction) {
+        return AsyncExecution.isAsyncResult(instruction);
+    }
+
+    /**
+     * 登记在异步结果到达之后、渲染之前调用的处理，比如拦截器的after
+     * 
+     * @param task
+     */
+    public void addAfterAsyncResult(AfterAsyncResult task) {
+        if (afterAsyncResults == null) {
+            afterAsyncResults = new ArrayList<AfterAsyncResult>(4);
+        }
+        afterAsyncResults.add(task);
+    }
+
+    /**
+     * 按注册的顺序调用所有的 {@link AfterAsyncResult}
+     * 
+     * @param result
+     * @return
+     * @throws Exception
+     */
+    Object afterAsyncResult(Object result) throws Exception {
+        if (afterAsyncResults != null) {
+            for (AfterAsyncResult task : afterAsyncResults) {
+                Object instruction = task.afterAsyncResult(inv, result);
+                // 和拦截器链一样，返回null的恢复为原来的结果
+                if (instruction != null) {
+                    result = instruction;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按注册的相反顺序调用所有的 {@link AfterCompletion}
+     * 
+     * @param error
+     */
+    void afterCompletion(Throwable error) {
+        AtomicInteger pendingCompletions = this.pendingCompletions;
+        if (pendingCompletions != null) {
+            // 内部forward的目标转为了异步处理：本次执行和目标都结束后才继续
+            if (error != null) {
+                deferredError = error;
+            }
+            if (pendingCompletions.decrementAndGet() > 0) {
+                return;
+            }
+            error = deferredError;
+        }
+        if (afterCompletions != null) {
+            for (int i = afterCompletions.size() - 1; i >= 0; i--) {
+                AfterCompletion task = afterCompletions.get(i);
+                try {
+                    task.afterCompletion(inv, error);
+                } catch (Throwable e) {
+                    logger.error("", e);
+                }
+            }
+        }
+        if (timings != null) {
+            timings.finish();
+            int status = originalHttpResponse.getStatus();
+            // 异常由容器转为500，此时response的状态还没有改变
+            if (error != null && status < 500) {
+                status = 500;
+            }
+            try {
+                if (metrics != null) {
+                    metrics.record(inv, timings, status, error);
+                }
+                if (requestEvent != null) {
+                    RoseEvents.getInstance().commitRequest(requestEvent, inv, timings, status,
+                            error);
+                }
+            } catch (Throwable e) {
+                logger.error("", e);
+            }
+        }
+        // 本次是转为异步处理的内部forward目标，由它结束发起forward的rose
+        if (forwardedFrom != null && forwardedFrom.pendingCompletions != null) {
+            InvocationUtils.bindInvocationToRequest(forwardedFrom.inv, forwardedFrom.inv
+                    .getRequest());
+            forwardedFrom.afterCompletion(error);
+        }
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.paoding.rose.web.annotation.VirtualThread;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link VirtualThreadExecutor} 负责Rose的虚拟线程执行模式：请求在容器线程中完成匹配后，
+ * 通过Servlet 3的异步处理把整个执行链(拦截器、控制器、渲染、afterCompletion)交给一个虚拟线程执行，
+ * 容器线程随即返回。由RoseFilter的virtualThreads参数全局开启，或由 {@link VirtualThread} 对个别action开启或关闭。
+ * <p>
+ * 只有普通的REQUEST请求，并且RoseFilter(以及它之前的filter)在web.xml中配置了
+ * &lt;async-supported&gt;true&lt;/async-supported&gt; 时才会这样执行，forward、include的请求总是在当前线程中执行。
+ * 运行环境(JDK 21以前)没有虚拟线程时不使用这个模式(RoseFilter不创建它，并在启动时给出警告)，action仍在容器线程中执行：
+ * 用普通线程代替虚拟线程意味着每个请求一个平台线程，负载高时线程数不受控制。
+ * <p>
+ * <strong>ThreadLocal</strong>: 在虚拟线程中执行时，下列ThreadLocal都是属于某个虚拟线程的，
+ * 也就是说每个请求一份，它们的正确性不受影响，但原来"每个线程复用一个对象"的效果不再存在：
+ * <ul>
+ * <li>InvocationUtils的当前请求：Rose在虚拟线程中重新绑定，执行结束后解除，InvocationUtils.getCurrentThreadXxx 和原来一样可用；
+ * 但控制器自己启动的其他线程仍然看不到它</li>
+ * <li>SafedTypeConverterFactory的SimpleTypeConverter：只在需要Spring类型转换的参数上才会创建，每个请求至多一个</li>
+ * <li>Jade SystemInterpreter的StringBuilder和ExqlContextImpl：每次执行DAO语句的虚拟线程各自创建</li>
+ * <li>Velocity渲染本身不使用ThreadLocal，不受影响</li>
+ * </ul>
+ * 应用自己使用的ThreadLocal(包括依赖容器线程池的那些)同样需要按"每个请求一份"来考虑。
+ */
+public class VirtualThreadExecutor {
+
+    private static final Log logger = LogFactory.getLog(VirtualThreadExecutor.class);
+
+    /** JDK 21 的 Executors.newVirtualThreadPerTaskExecutor()，没有时为null */
+    private static final Method virtualThreadPerTaskExecutorFactory = findFactoryMethod();
+
+    private final boolean enabledByDefault;
+
+    private ExecutorService executorService;
+
+    private boolean shutdown;
+
+    /**
+     *
+     * @param enabledByDefault 没有 {@link VirtualThread} 标注的action是否在虚拟线程中执行
+     * @throws IllegalStateException 运行环境不支持虚拟线程
+     */
+    public VirtualThreadExecutor(boolean enabledByDefault) {
+        if (!isVirtualThreadSupported()) {
+            throw new IllegalStateException("virtual threads are not supported by this JVM ("
+                    + System.getProperty("java.version") + ")");
+        }
+        this.enabledByDefault = enabledByDefault;
+    }
+
+    /**
+     * 运行环境是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadPerTaskExecutorFactory != null;
+    }
+
+    public boolean isEnabledByDefault() {
+        return enabledByDefault;
+    }
+
+    /**
+     * 所给的action是否应该在虚拟线程中执行
+     *
+     * @param actionEngine
+     * @return
+     */
+    boolean isEnabled(ActionEngine actionEngine) {
+        Boolean virtualThread = actionEngine.getVirtualThread();
+        return virtualThread == null ? enabledByDefault : virtualThread.booleanValue();
+    }
+
+    /**
+     * 开始异步处理，并在虚拟线程中调用 {@link Rose#invoke(HttpServletRequest)}
+     *
+     * @param rose 已经完成匹配的rose
+     * @param httpRequest 传给 {@link Rose#invoke(HttpServletRequest)} 的请求
+     */
+    void execute(final Rose rose, final HttpServletRequest httpRequest) {
+        final AsyncContext asyncContext = httpRequest.startAsync();
+        // 和在容器线程中执行时一样，不限制执行时间；异步action的超时由AsyncExecution另行控制
+        asyncContext.setTimeout(0);
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+                String msg = httpRequest.getMethod() + " " + httpRequest.getRequestURI();
+                try {
+                    if (!rose.invoke(httpRequest)) {
+                        // 容器线程已经返回，无法再交给filterChain的下一个组件
+                        logger.warn("':continue' is not supported in virtual thread: " + msg);
+                        sendError(response, 404);
+                    }
+                } catch (Throwable e) {
+                    logger.error(msg, e);
+                    sendError(response, e instanceof TimeoutException ? 503 : 500);
+                } finally {
+                    try {
+                        asyncContext.complete();
+                    } catch (IllegalStateException e) {
+                        // 容器已经结束了这个异步请求(比如客户端断开)
+                        logger.debug("", e);
+                    }
+                }
+            }
+
+            @Override
+            public String toString() {
+                return httpRequest.getRequestURI();
+            }
+        };
+        try {
+            getExecutorService().execute(task);
+        } catch (RejectedExecutionException e) {
+            // 正在关闭或者不能创建虚拟线程，在当前线程中执行完这个请求
+            task.run();
+        }
+    }
+
+    private synchronized ExecutorService getExecutorService() {
+        if (shutdown) {
+            throw new RejectedExecutionException("shutdown");
+        }
+        if (executorService == null) {
+            executorService = createExecutorService();
+            if (logger.isInfoEnabled()) {
+                logger.info("using " + executorService);
+            }
+        }
+        return executorService;
+    }
+
+    /**
+     * 关闭所用的线程池，已经提交的请求仍会执行完
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    private static ExecutorService createExecutorService() {
+        try {
+            return (ExecutorService) virtualThreadPerTaskExecutorFactory.invoke(null);
+        } catch (Exception e) {
+            logger.error("failed to create virtual thread executor", e);
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    private static Method findFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void sendError(HttpServletResponse response, int status) {
+        if (!response.isCommitted()) {
+            try {
+                response.sendError(status);
+            } catch (IOException e) {
+                logger.debug("", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutor[enabledByDefault=" + enabledByDefault + ", virtualThread="
+                + isVirtualThreadSupported() + "]";
+    }
+}
@@ -20,10 +20,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
 
 import net.paoding.rose.util.SpringUtils;
 import net.paoding.rose.web.Invocation;
@@ -57,13 +61,18 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
 
     private static Log logger = LogFactory.getLog(ViewDispatcherImpl.class);
 
-    private ViewResolver jspViewResolver;
+    private volatile ViewResolver jspViewResolver;
 
     private ViewResolver internalResourceViewResolver = new InternalResourceViewResolver();
 
     private ConfigurableWebApplicationContext applicationContext;
 
-    private Map<String, VelocityViewResolver> velocityViewResolvers = new HashMap<String, VelocityViewResolver>();
+    // 启动时由prepare准备好的视图目录到VelocityViewResolver的映射，不可修改，只在prepare时整体替换
+    private volatile Map<String, VelocityViewResolver> preparedVelocityViewResolvers = Collections
+            .emptyMap();
+
+    // 没有预先准备的视图目录(或视图地址)，在请求时才创建的VelocityViewResolver
+    private Map<String, VelocityViewResolver> velocityViewResolvers = new ConcurrentHashMap<String, VelocityViewResolver>();
 
     public ViewDispatcherImpl() {
     }
@@ -78,6 +87,47 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
         return applicationContext;
     }
 
+    /**
+     * 启动时为所给目录及其子目录中的视图预先创建ViewResolver：含有.vm、.xml文件的目录创建
+     * VelocityViewResolver(或有layout.vm时的VelocityLayoutViewResolver)，含有.jsp文件时创建jsp的ViewResolver。
+     * 这样第一次请求时不再需要查找layout文件、注册bean定义；没有准备到的视图仍在请求时创建。
+     * 
+     * @param servletContext
+     * @param index /views目录的索引
+     * @param viewsHome 以/views开始的目录地址，一般是某个模块的视图目录
+     * @throws IOException
+     */
+    public synchronized void prepare(ServletContext servletContext, ViewFileIndex index,
+            String viewsHome) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Map<String, VelocityViewResolver> prepared = new HashMap<String, VelocityViewResolver>(
+                preparedVelocityViewResolvers);
+        int count = 0;
+        boolean jsp = false;
+        for (ViewFileIndex.Directory directory : index.getDirectories(viewsHome)) {
+            if (!jsp && directory.containsFileEndsWith(".jsp")) {
+                jsp = true;
+            }
+            if (prepared.containsKey(directory.getPath())) {
+                continue;
+            }
+            if (directory.containsFileEndsWith(".vm") || directory.containsFileEndsWith(".xml")) {
+                prepared.put(directory.getPath(), createVelocityViewResolver(servletContext,
+                        directory.getPath()));
+                count++;
+            }
+        }
+        if (jsp) {
+            getJspViewResolver();
+        }
+        this.preparedVelocityViewResolvers = Collections.unmodifiableMap(prepared);
+        if (logger.isInfoEnabled()) {
+            logger.info("prepared " + count + " velocity view resolvers" + (jsp ? " and jsp" : "")
+                    + " for " + viewsHome + " in " + (System.currentTimeMillis() - startTime)
+                    + "ms");
+        }
+    }
+
     @Override
     public View resolveViewName(Invocation inv, String viewPath, Locale locale) throws Exception {
         ViewResolver viewResolver = getSpringViewResolver(inv, viewPath);
@@ -135,6 +185,13 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
     }
 
     protected ViewResolver getJspViewResolver() throws IOException {
+        if (this.jspViewResolver != null) {
+            return this.jspViewResolver;
+        }
+        return createJspViewResolver();
+    }
+
+    private synchronized ViewResolver createJspViewResolver() {
         if (this.jspViewResolver != null) {
             return this.jspViewResolver;
         }
@@ -159,17 +216,39 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
     protected ViewResolver getVelocityViewResolver(Invocation inv, String viewPath)
             throws IOException {
         //
-        VelocityViewResolver viewResolver = velocityViewResolvers.get(viewPath);
+        String viewDirectory = getDirectory(viewPath);
+        VelocityViewResolver viewResolver = preparedVelocityViewResolvers.get(viewDirectory);
         if (viewResolver != null) {
             return viewResolver;
         }
-        //
-        String viewDirectory = getDirectory(viewPath);
-        viewResolver = velocityViewResolvers.get(viewDirectory);
+        viewResolver = velocityViewResolvers.get(viewPath);
         if (viewResolver != null) {
-            velocityViewResolvers.put(viewPath, viewResolver);
             return viewResolver;
         }
+        //
+        viewResolver = velocityViewResolvers.get(viewDirectory);
+        if (viewResolver == null) {
+            // 并发的第一次请求不要重复注册bean定义
+            synchronized (this) {
+                viewResolver = velocityViewResolvers.get(viewDirectory);
+                if (viewResolver == null) {
+                    viewResolver = createVelocityViewResolver(inv.getServletContext(),
+                            viewDirectory);
+                    velocityViewResolvers.put(viewDirectory, viewResolver);
+                }
+            }
+        }
+        velocityViewResolvers.put(viewPath, viewResolver);
+        return viewResolver;
+    }
+
+    /**
+     * 为所给的视图目录找到或创建VelocityViewResolver：优先使用名为xxxVelocityViewResolver的bean，
+     * 其次向上查找layout.vm创建VelocityLayoutViewResolver，都没有时使用velocityViewResolver
+     */
+    private VelocityViewResolver createVelocityViewResolver(ServletContext servletContext,
+            String viewDirectory) throws IOException {
+        VelocityViewResolver viewResolver;
         StringBuilder sb = new StringBuilder();
         boolean beUpperCase = false;
         for (int i = 0; i < viewDirectory.length(); i++) {
@@ -195,7 +274,7 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
                 if (logger.isDebugEnabled()) {
                     logger.debug("is default layout file exist? " + _layoutUrl);
                 }
-                File layout = new File(inv.getServletContext().getRealPath(_layoutUrl));
+                File layout = new File(servletContext.getRealPath(_layoutUrl));
                 if (layout.exists()) {
                     layoutUrl = _layoutUrl;
                     if (logger.isDebugEnabled()) {
@@ -220,18 +299,16 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
                         beanName);
             }
             if (viewResolver == null) {
-                viewResolver = createVelocityViewResolver(inv, beanName, layoutUrl);
+                viewResolver = registerVelocityViewResolver(servletContext, beanName, layoutUrl);
             }
         }
-        velocityViewResolvers.put(viewDirectory, viewResolver);
-        velocityViewResolvers.put(viewPath, viewResolver);
         return viewResolver;
     }
 
-    private VelocityViewResolver createVelocityViewResolver(Invocation inv, String beanName,
-            String layoutUrl) throws MalformedURLException, IOException {
+    private VelocityViewResolver registerVelocityViewResolver(ServletContext servletContext,
+            String beanName, String layoutUrl) throws MalformedURLException, IOException {
         if (SpringUtils.getBean(getApplicationContext(), VelocityConfig.class) == null) {
-            URL propertiesLocation = inv.getServletContext().getResource(
+            URL propertiesLocation = servletContext.getResource(
                     "/WEB-INF/velocity.properties");
             Properties velocityProperties = new Properties();
             if (propertiesLocation != null) {
@@ -270,10 +347,10 @@ public class ViewDispatcherImpl implements ViewDispatcher, ApplicationContextAwa
                 .addPropertyValue(new PropertyValue("contentType", "text/html;charset=UTF-8"));
         String toolboxConfigLocation = "/WEB-INF/velocity-toolbox.xml";
         propertyValues.addPropertyValue(new PropertyValue("cache", Boolean.TRUE));
-        URL toolbox = inv.getServletContext().getResource(toolboxConfigLocation);
+        URL toolbox = servletContext.getResource(toolboxConfigLocation);
         if (toolbox == null) {
             toolboxConfigLocation = "/WEB-INF/toolbox.xml";
-            toolbox = inv.getServletContext().getResource(toolboxConfigLocation);
+            toolbox = servletContext.getResource(toolboxConfigLocation);
         }
         if (toolbox != null) {
             propertyValues.addPropertyValue(new PropertyValue("toolboxConfigLocation",
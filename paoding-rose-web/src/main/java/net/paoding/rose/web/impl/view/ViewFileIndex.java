@@ -0,0 +1,329 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.view;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.servlet.ServletContext;
+
+import net.paoding.rose.RoseConstants;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link ViewFileIndex} 是启动时对 /views 目录做的一次完整扫描：记录每个目录下的文件名和子目录名，
+ * 查找视图文件时不再访问文件系统。
+ * <p>
+ * 索引是不可变的快照，可被多个线程同时读取；{@link #startRefresh(int, Runnable)}
+ * 可以定期重新扫描，发现变化时替换快照并通知调用者(比如清空视图地址缓存)，开发时修改、增加视图文件不需要重启。
+ *
+ */
+public class ViewFileIndex {
+
+    private static final Log logger = LogFactory.getLog(ViewFileIndex.class);
+
+    private final File viewsHome;
+
+    private volatile Map<String, Directory> directories;
+
+    private Timer refreshTimer;
+
+    private ViewFileIndex(File viewsHome) {
+        this.viewsHome = viewsHome;
+        this.directories = scan(viewsHome);
+    }
+
+    /**
+     * 扫描所给web应用的 /views 目录并建立索引；如果应用不是以目录形式部署的(getRealPath返回null)，返回null
+     *
+     * @param servletContext
+     * @return
+     */
+    public static ViewFileIndex build(ServletContext servletContext) {
+        String realPath = servletContext.getRealPath(RoseConstants.VIEWS_PATH);
+        if (realPath == null) {
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        ViewFileIndex index = new ViewFileIndex(new File(realPath));
+        if (logger.isInfoEnabled()) {
+            logger.info("indexed " + index.directories.size() + " view directories in "
+                    + (System.currentTimeMillis() - startTime) + "ms: " + realPath);
+        }
+        return index;
+    }
+
+    /**
+     * 返回所给目录的索引
+     *
+     * @param directoryPath 以 /views 开始、不以'/'结尾的目录地址，比如/views/admin
+     * @return 目录不存在时返回null
+     */
+    public Directory getDirectory(String directoryPath) {
+        return directories.get(directoryPath);
+    }
+
+    /**
+     * 返回所给目录及其所有子目录的索引，按地址排序
+     *
+     * @param directoryPath 以 /views 开始、不以'/'结尾的目录地址
+     * @return
+     */
+    public List<Directory> getDirectories(String directoryPath) {
+        List<Directory> result = new ArrayList<Directory>();
+        String prefix = directoryPath + "/";
+        for (Directory directory : directories.values()) {
+            if (directory.getPath().equals(directoryPath)
+                    || directory.getPath().startsWith(prefix)) {
+                result.add(directory);
+            }
+        }
+        Collections.sort(result, new Comparator<Directory>() {
+
+            @Override
+            public int compare(Directory o1, Directory o2) {
+                return o1.getPath().compareTo(o2.getPath());
+            }
+        });
+        return result;
+    }
+
+    public int size() {
+        return directories.size();
+    }
+
+    /**
+     * 重新扫描 /views 目录
+     *
+     * @return 如果有变化返回true
+     */
+    public boolean refresh() {
+        Map<String, Directory> directories = scan(viewsHome);
+        if (directories.equals(this.directories)) {
+            return false;
+        }
+        this.directories = directories;
+        return true;
+    }
+
+    /**
+     * 在后台线程中每隔所给的秒数重新扫描一次，发现变化时调用listener
+     *
+     * @param intervalSeconds
+     * @param listener
+     */
+    public synchronized void startRefresh(int intervalSeconds, final Runnable listener) {
+        if (refreshTimer != null) {
+            throw new IllegalStateException("refresh has been started");
+        }
+        long period = intervalSeconds * 1000L;
+        refreshTimer = new Timer("rose-views-refresh", true);
+        refreshTimer.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                try {
+                    if (refresh()) {
+                        if (logger.isInfoEnabled()) {
+                            logger.info("views changed, reindexed " + directories.size()
+                                    + " directories: " + viewsHome);
+                        }
+                        listener.run();
+                    }
+                } catch (Throwable e) {
+                    logger.error("", e);
+                }
+            }
+        }, period, period);
+    }
+
+    public synchronized void stopRefresh() {
+        if (refreshTimer != null) {
+            refreshTimer.cancel();
+            refreshTimer = null;
+        }
+    }
+
+    private static Map<String, Directory> scan(File viewsHome) {
+        Map<String, Directory> directories = new HashMap<String, Directory>();
+        if (!viewsHome.isDirectory()) {
+            return directories;
+        }
+        LinkedList<Object[]> toScan = new LinkedList<Object[]>();
+        toScan.add(new Object[] { RoseConstants.VIEWS_PATH, viewsHome });
+        while (!toScan.isEmpty()) {
+            Object[] item = toScan.removeFirst();
+            String path = (String) item[0];
+            File dir = (File) item[1];
+            File[] children = dir.listFiles();
+            if (children == null) {
+                continue;
+            }
+            List<String> fileNames = new ArrayList<String>(children.length);
+            List<String> directoryNames = new ArrayList<String>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    directoryNames.add(child.getName());
+                    toScan.add(new Object[] { path + "/" + child.getName(), child });
+                } else if (child.isFile()) {
+                    fileNames.add(child.getName());
+                }
+            }
+            Collections.sort(fileNames);
+            Collections.sort(directoryNames);
+            directories.put(path, new Directory(path, //
+                    fileNames.toArray(new String[fileNames.size()]), //
+                    directoryNames.toArray(new String[directoryNames.size()])));
+        }
+        return Collections.unmodifiableMap(directories);
+    }
+
+    /**
+     * 判断一个文件名是否符合所要找的视图名：相同(视图名带有后缀时)或者视图名加上后缀
+     *
+     * @param fileName 文件名
+     * @param fileNameToFind 视图名，不含目录
+     * @param ignoreCase
+     * @return
+     */
+    public static boolean matchesViewFile(String fileName, String fileNameToFind,
+            boolean ignoreCase) {
+        String _notDirectoryViewName = fileNameToFind;
+        String _fileName = fileName;
+        if (ignoreCase) {
+            _fileName = fileName.toLowerCase();
+            _notDirectoryViewName = fileNameToFind.toLowerCase();
+        }
+        if (_fileName.startsWith(_notDirectoryViewName)) {
+            if (fileName.length() == fileNameToFind.length()
+                    && fileNameToFind.lastIndexOf('.') != -1) {
+                return true;
+            }
+            if (fileName.length() > fileNameToFind.length()
+                    && fileName.charAt(fileNameToFind.length()) == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个视图目录的索引
+     */
+    public static final class Directory {
+
+        private final String path;
+
+        private final String[] fileNames;
+
+        private final String[] directoryNames;
+
+        Directory(String path, String[] fileNames, String[] directoryNames) {
+            this.path = path;
+            this.fileNames = fileNames;
+            this.directoryNames = directoryNames;
+        }
+
+        /**
+         * 以 /views 开始的目录地址
+         *
+         * @return
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * 查找子目录的名字，优先大小写完全相同的，其次忽略大小写的
+         *
+         * @param name
+         * @return 找不到时返回null
+         */
+        public String findDirectoryName(String name) {
+            if (Arrays.binarySearch(directoryNames, name) >= 0) {
+                return name;
+            }
+            for (String directoryName : directoryNames) {
+                if (directoryName.equalsIgnoreCase(name)) {
+                    return directoryName;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 本目录下(不含子目录)是否有以所给后缀结尾的文件
+         *
+         * @param suffix 比如.vm
+         * @return
+         */
+        public boolean containsFileEndsWith(String suffix) {
+            for (String fileName : fileNames) {
+                if (fileName.endsWith(suffix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 查找视图文件，多个文件符合时返回按字典序的第一个
+         *
+         * @param fileNameToFind
+         * @param ignoreCase
+         * @return 找不到时返回null
+         */
+        public String findViewFile(String fileNameToFind, boolean ignoreCase) {
+            for (String fileName : fileNames) {
+                if (matchesViewFile(fileName, fileNameToFind, ignoreCase)) {
+                    return fileName;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Directory)) {
+                return false;
+            }
+            Directory that = (Directory) obj;
+            return path.equals(that.path) && Arrays.equals(fileNames, that.fileNames)
+                    && Arrays.equals(directoryNames, that.directoryNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Arrays.hashCode(fileNames);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+}
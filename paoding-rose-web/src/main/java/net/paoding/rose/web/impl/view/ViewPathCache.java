@@ -15,35 +15,112 @@
  */
 package net.paoding.rose.web.impl.view;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.paoding.rose.RoseConstants;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 /**
+ * 一个视图目录下视图名称到视图地址的缓存，可被多个线程同时读写。
+ * <p>
+ * 使用/views目录的索引查找时，找不到的视图也会被记录下来(连同当时的404信息)，以免同一个不存在的视图反复查找，
+ * 索引重新扫描发现变化时随缓存一起清空；直接访问文件系统查找时不记录找不到的视图，以免之后新增的视图文件一直404。
+ * <p>
+ * 缓存的项数有上限，达到上限后新的视图名称不再缓存(视图名称可能来自请求参数)。
  * 
  * @author 王志亮 [qieqie.wang@gmail.com]
  * 
  */
 public class ViewPathCache {
 
+    private static final Log logger = LogFactory.getLog(ViewPathCache.class);
+
+    /** 默认的最大缓存项数 */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
     private String directoryPath;
 
-    private HashMap<String, String> viewPathMap = new HashMap<String, String>();
+    private final int maxSize;
+
+    // 值为视图地址或 NotFound 对象
+    private final ConcurrentHashMap<String, Object> viewPathMap = new ConcurrentHashMap<String, Object>();
+
+    private volatile boolean full;
 
     public ViewPathCache(String modulePath) {
+        this(modulePath, DEFAULT_MAX_SIZE);
+    }
+
+    public ViewPathCache(String modulePath, int maxSize) {
         directoryPath = RoseConstants.VIEWS_PATH + modulePath;
+        this.maxSize = maxSize;
     }
 
+    /**
+     * 返回缓存的视图地址；没有缓存或缓存的是"找不到"时返回null
+     * 
+     * @param viewName
+     * @return
+     */
     public String getViewPath(String viewName) {
-        return viewPathMap.get(viewName);
+        Object value = viewPathMap.get(viewName);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * 如果缓存记录了这个视图找不到，返回当时的404信息，否则返回null
+     * 
+     * @param viewName
+     * @return
+     */
+    public String getNotFoundMessage(String viewName) {
+        Object value = viewPathMap.get(viewName);
+        return value instanceof NotFound ? ((NotFound) value).message : null;
     }
 
     public void setViewPath(String viewName, String viewPath) {
-        viewPathMap.put(viewName, viewPath);
+        put(viewName, viewPath);
+    }
+
+    /**
+     * 记录这个视图找不到
+     * 
+     * @param viewName
+     * @param message 返回给客户端的404信息
+     */
+    public void setNotFound(String viewName, String message) {
+        put(viewName, new NotFound(message));
+    }
+
+    private void put(String viewName, Object value) {
+        if (viewPathMap.size() >= maxSize) {
+            if (!full) {
+                full = true;
+                logger.warn("view path cache of '" + directoryPath + "' is full (" + maxSize
+                        + "), new view names will not be cached");
+            }
+            return;
+        }
+        viewPathMap.put(viewName, value);
+    }
+
+    public int size() {
+        return viewPathMap.size();
     }
 
     public String getDirectoryPath() {
         return directoryPath;
     }
 
+    private static final class NotFound {
+
+        final String message;
+
+        NotFound(String message) {
+            this.message = message;
+        }
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link BufferPool} 是输出响应时使用的缓冲区池，避免每次输出都分配新的缓冲区。
+ * <p>
+ * 缓冲区的大小和池中最多保留的个数可以通过RoseFilter的outputBufferSize、outputBufferPoolSize参数设置；
+ * 池空时直接分配新的缓冲区，池满时归还的缓冲区被丢弃，所以池的大小不影响正确性。
+ *
+ */
+public final class BufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private static volatile BufferPool instance = new BufferPool(DEFAULT_BUFFER_SIZE,
+            DEFAULT_MAX_POOLED);
+
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * 设置缓冲区的大小和池中最多保留的个数，替换当前使用的池
+     *
+     * @param bufferSize 缓冲区字节数
+     * @param maxPooled 最多保留的缓冲区个数，0表示不保留
+     */
+    public static void configure(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize " + bufferSize);
+        }
+        instance = new BufferPool(bufferSize, Math.max(0, maxPooled));
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 取得一个缓冲区，用完后应调用 {@link #release(byte[])} 归还
+     *
+     * @return
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+            return buffer;
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * 归还缓冲区
+     *
+     * @param buffer
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool[bufferSize=" + bufferSize + ", maxPooled=" + maxPooled + ", pooled="
+                + pooled.get() + "]";
+    }
+}
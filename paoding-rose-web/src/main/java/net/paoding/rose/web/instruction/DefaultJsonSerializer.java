@@ -0,0 +1,379 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import java.beans.PropertyDescriptor;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.paoding.rose.util.MethodInvoker;
+
+import org.springframework.beans.BeanUtils;
+
+/**
+ * {@link DefaultJsonSerializer} 是Rose默认的 {@link JsonSerializer}，不依赖第三方json库：
+ * <ul>
+ * <li>null、字符串、数字、布尔值按json的规定输出；NaN和无穷大输出为null</li>
+ * <li>{@link Date}、{@link Calendar} 输出为毫秒数，枚举输出为它的名字</li>
+ * <li>{@link Map} 输出为对象，键使用String.valueOf</li>
+ * <li>数组、{@link Iterable}、{@link Iterator}、{@link Enumeration} 输出为数组，逐个元素边取边写，不复制集合</li>
+ * <li>json库自己的对象直接输出它的toString()：类名为JSONObject、JSONArray的(比如org.json的)，
+ * 以及Jackson的JsonNode、Gson的JsonElement、json-lib的JSON、json-simple和fastjson的JSONAware，
+ * 按父类和接口判断，子类同样适用</li>
+ * <li>其他对象按公开的getter输出为对象；每个类的属性表只在第一次序列化时生成并缓存</li>
+ * <li>没有公开getter、但覆盖了toString()的对象输出它的toString()，和没有json序列化之前一样</li>
+ * </ul>
+ * 对象嵌套超过 {@value #MAX_DEPTH} 层时(通常是循环引用)抛出 {@link IllegalStateException}。
+ *
+ */
+public class DefaultJsonSerializer implements JsonSerializer {
+
+    public static final int MAX_DEPTH = 64;
+
+    private static final DefaultJsonSerializer instance = new DefaultJsonSerializer();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final BeanProperty[] NO_PROPERTIES = new BeanProperty[0];
+
+    /** 每个类的可输出属性，按属性名排序 */
+    private final ConcurrentHashMap<Class<?>, BeanProperty[]> beanProperties = new ConcurrentHashMap<Class<?>, BeanProperty[]>();
+
+    /** 没有可输出属性、但覆盖了toString()的类，直接输出toString() */
+    private static final BeanProperty[] TO_STRING = new BeanProperty[0];
+
+    /** 每个类是否是json库自己的类型 */
+    private final ConcurrentHashMap<Class<?>, Boolean> jsonTypes = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /** 这些类型(及其子类、实现类)的toString()就是json */
+    private static final String[] JSON_TYPES = { "com.fasterxml.jackson.databind.JsonNode",
+            "org.codehaus.jackson.JsonNode", "com.google.gson.JsonElement", "net.sf.json.JSON",
+            "org.json.simple.JSONAware", "com.alibaba.fastjson.JSONAware" };
+
+    public static DefaultJsonSerializer getInstance() {
+        return instance;
+    }
+
+    @Override
+    public void serialize(Object value, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 2048);
+        write(writer, value, 0);
+        writer.flush();
+    }
+
+    /**
+     * 把对象的json写到所给的Writer，不flush
+     *
+     * @param writer
+     * @param value
+     * @throws IOException
+     */
+    public void serialize(Object value, Writer writer) throws IOException {
+        write(writer, value, 0);
+    }
+
+    private void write(Writer writer, Object value, int depth) throws IOException {
+        if (value == null) {
+            writer.write("null");
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            writeString(writer, value.toString());
+        } else if (value instanceof Number) {
+            if ((value instanceof Double && (((Double) value).isNaN() || ((Double) value)
+                    .isInfinite()))
+                    || (value instanceof Float && (((Float) value).isNaN() || ((Float) value)
+                            .isInfinite()))) {
+                writer.write("null");
+            } else {
+                writer.write(value.toString());
+            }
+        } else if (value instanceof Boolean) {
+            writer.write(((Boolean) value).booleanValue() ? "true" : "false");
+        } else if (value instanceof Date) {
+            writer.write(String.valueOf(((Date) value).getTime()));
+        } else if (value instanceof Calendar) {
+            writer.write(String.valueOf(((Calendar) value).getTimeInMillis()));
+        } else if (value instanceof Enum<?>) {
+            writeString(writer, ((Enum<?>) value).name());
+        } else {
+            if (++depth > MAX_DEPTH) {
+                throw new IllegalStateException("json nesting is deeper than " + MAX_DEPTH
+                        + ", circular reference? " + value.getClass().getName());
+            }
+            if (isJsonType(value.getClass())) {
+                // 放在Map、Iterable之前：JsonNode、JsonArray等同时也是Iterable
+                writer.write(value.toString());
+            } else if (value instanceof Map<?, ?>) {
+                writeMap(writer, (Map<?, ?>) value, depth);
+            } else if (value instanceof Iterable<?>) {
+                writeIterator(writer, ((Iterable<?>) value).iterator(), depth);
+            } else if (value instanceof Iterator<?>) {
+                writeIterator(writer, (Iterator<?>) value, depth);
+            } else if (value instanceof Enumeration<?>) {
+                writeEnumeration(writer, (Enumeration<?>) value, depth);
+            } else if (value.getClass().isArray()) {
+                writeArray(writer, value, depth);
+            } else {
+                writeBean(writer, value, depth);
+            }
+        }
+    }
+
+    private void writeMap(Writer writer, Map<?, ?> map, int depth) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writeString(writer, String.valueOf(entry.getKey()));
+            writer.write(':');
+            write(writer, entry.getValue(), depth);
+        }
+        writer.write('}');
+    }
+
+    private void writeIterator(Writer writer, Iterator<?> iterator, int depth) throws IOException {
+        writer.write('[');
+        boolean first = true;
+        while (iterator.hasNext()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            write(writer, iterator.next(), depth);
+        }
+        writer.write(']');
+    }
+
+    private void writeEnumeration(Writer writer, Enumeration<?> enumeration, int depth)
+            throws IOException {
+        writer.write('[');
+        boolean first = true;
+        while (enumeration.hasMoreElements()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            write(writer, enumeration.nextElement(), depth);
+        }
+        writer.write(']');
+    }
+
+    private void writeArray(Writer writer, Object array, int depth) throws IOException {
+        writer.write('[');
+        int length = Array.getLength(array);
+        if (array instanceof Object[]) {
+            Object[] objects = (Object[]) array;
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                write(writer, objects[i], depth);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                write(writer, Array.get(array, i), depth);
+            }
+        }
+        writer.write(']');
+    }
+
+    private void writeBean(Writer writer, Object bean, int depth) throws IOException {
+        BeanProperty[] properties = getBeanProperties(bean.getClass());
+        if (properties == TO_STRING) {
+            writer.write(bean.toString());
+            return;
+        }
+        writer.write('{');
+        boolean first = true;
+        for (BeanProperty property : properties) {
+            Object propertyValue;
+            try {
+                propertyValue = property.invoker.invoke(bean, null);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("failed to get " + property, e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("failed to get " + property, e);
+            }
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write(property.prefix);
+            write(writer, propertyValue, depth);
+        }
+        writer.write('}');
+    }
+
+    private BeanProperty[] getBeanProperties(Class<?> beanClass) {
+        BeanProperty[] properties = beanProperties.get(beanClass);
+        if (properties == null) {
+            properties = createBeanProperties(beanClass);
+            BeanProperty[] old = beanProperties.putIfAbsent(beanClass, properties);
+            if (old != null) {
+                properties = old;
+            }
+        }
+        return properties;
+    }
+
+    private static BeanProperty[] createBeanProperties(Class<?> beanClass) {
+        PropertyDescriptor[] descriptors = BeanUtils.getPropertyDescriptors(beanClass);
+        List<BeanProperty> properties = new ArrayList<BeanProperty>(descriptors.length);
+        for (PropertyDescriptor descriptor : descriptors) {
+            Method readMethod = descriptor.getReadMethod();
+            if (readMethod == null || readMethod.getDeclaringClass() == Object.class
+                    || !Modifier.isPublic(readMethod.getModifiers())) {
+                continue;
+            }
+            if (!Modifier.isPublic(readMethod.getDeclaringClass().getModifiers())) {
+                readMethod.setAccessible(true);
+            }
+            properties.add(new BeanProperty(descriptor.getName(), MethodInvoker.create(readMethod)));
+        }
+        if (properties.isEmpty()) {
+            return declaresToString(beanClass) ? TO_STRING : NO_PROPERTIES;
+        }
+        return properties
+                .toArray(new BeanProperty[properties.size()]);
+    }
+
+    private boolean isJsonType(Class<?> clazz) {
+        Boolean json = jsonTypes.get(clazz);
+        if (json == null) {
+            json = inheritsJsonType(clazz);
+            jsonTypes.put(clazz, json);
+        }
+        return json;
+    }
+
+    /** 类本身、父类或者实现的接口是json库自己的类型 */
+    private static boolean inheritsJsonType(Class<?> clazz) {
+        for (Class<?> type = clazz; type != null && type != Object.class; type = type
+                .getSuperclass()) {
+            String name = type.getSimpleName();
+            if (name.equalsIgnoreCase("JSONObject") || name.equalsIgnoreCase("JSONArray")
+                    || isJsonTypeName(type.getName())) {
+                return true;
+            }
+            for (Class<?> face : type.getInterfaces()) {
+                if (inheritsJsonType(face)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isJsonTypeName(String name) {
+        for (String jsonType : JSON_TYPES) {
+            if (jsonType.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean declaresToString(Class<?> clazz) {
+        try {
+            return clazz.getMethod("toString").getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static void writeString(Writer writer, String str) throws IOException {
+        writer.write('"');
+        int length = str.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            String escaped;
+            if (c == '"') {
+                escaped = "\\\"";
+            } else if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else if (c == '\t') {
+                escaped = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029' || c == '<') {
+                // U+2028、U+2029在javascript中是换行；'<' 转义后可以安全地嵌入到html的script中
+                escaped = null;
+            } else {
+                continue;
+            }
+            if (i > start) {
+                writer.write(str, start, i - start);
+            }
+            start = i + 1;
+            if (escaped != null) {
+                writer.write(escaped);
+            } else {
+                writer.write("\\u");
+                writer.write(HEX[(c >> 12) & 0xf]);
+                writer.write(HEX[(c >> 8) & 0xf]);
+                writer.write(HEX[(c >> 4) & 0xf]);
+                writer.write(HEX[c & 0xf]);
+            }
+        }
+        if (length > start) {
+            writer.write(str, start, length - start);
+        }
+        writer.write('"');
+    }
+
+    private static final class BeanProperty {
+
+        /** 已经转义好的 "name": */
+        final String prefix;
+
+        final MethodInvoker invoker;
+
+        BeanProperty(String name, MethodInvoker invoker) {
+            this.invoker = invoker;
+            StringBuilder sb = new StringBuilder(name.length() + 3);
+            sb.append('"').append(name).append("\":");
+            this.prefix = sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return invoker.getMethod().toString();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.paoding.rose.web.Invocation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link FileInstruction} 把一个文件(或者 {@link FileChannel})的内容作为响应输出，
+ * action返回 {@link File}、java.nio.file.Path 或 {@link FileChannel} 时由Rose自动创建。
+ * <p>
+ * <ul>
+ * <li>设置Content-Length、Accept-Ranges；对文件还设置Last-Modified、ETag，并对If-None-Match、If-Modified-Since返回304</li>
+ * <li>支持单个和多个字节范围的Range请求(206，多个范围时为multipart/byteranges)，以及If-Range；范围无效时返回416。
+ * If-Range按强比较判断，ETag是弱验证器，所以If-Range给出ETag时总是返回完整内容</li>
+ * <li>容器支持sendfile时(Tomcat的org.apache.tomcat.sendfile.support)交给容器直接发送文件，
+ * 否则使用 {@link FileChannel#transferTo} 分块写入响应的输出流，不把整个文件读入内存</li>
+ * </ul>
+ * 内容类型没有设置时，按文件名从ServletContext取得，取不到的使用application/octet-stream。
+ * 输出完成后，由 {@link FileChannel} 创建的实例会关闭这个channel。
+ *
+ */
+public class FileInstruction extends AbstractInstruction {
+
+    protected static Log logger = LogFactory.getLog(FileInstruction.class);
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    /** 超过这么多个范围的Range请求按完整内容返回，避免过多的小范围 */
+    private static final int MAX_RANGES = 16;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private String contentType;
+
+    public FileInstruction(File file) {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        this.file = file;
+        this.channel = null;
+    }
+
+    public FileInstruction(FileChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+        this.file = null;
+        this.channel = channel;
+    }
+
+    /**
+     * 设置内容类型；不设置时按文件名判断
+     *
+     * @param contentType
+     * @return
+     */
+    public FileInstruction contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    @Override
+    protected void doRender(Invocation inv) throws IOException, ServletException, Exception {
+        try {
+            render(inv.getRequest(), inv.getResponse(), inv);
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private void render(HttpServletRequest request, HttpServletResponse response, Invocation inv)
+            throws IOException {
+        long length;
+        long lastModified = -1;
+        String etag = null;
+        if (file != null) {
+            if (!file.isFile()) {
+                logger.warn("not found file: " + file);
+                response.sendError(404);
+                return;
+            }
+            length = file.length();
+            // http日期只精确到秒
+            lastModified = file.lastModified() / 1000 * 1000;
+            etag = "W/\"" + length + "-" + lastModified + "\"";
+        } else {
+            length = channel.size() - channel.position();
+        }
+
+        String contentType = this.contentType;
+        if (contentType == null) {
+            contentType = response.getContentType();
+        }
+        if (contentType == null && file != null) {
+            contentType = inv.getServletContext().getMimeType(file.getName());
+        }
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        response.setContentType(contentType);
+        response.setHeader("Accept-Ranges", "bytes");
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<long[]> ranges = parseRanges(request, length, etag, lastModified);
+        if (ranges != null && ranges.isEmpty()) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        boolean head = "HEAD".equals(request.getMethod());
+        if (ranges == null || ranges.size() == 1) {
+            long start = 0;
+            long end = length - 1;
+            if (ranges != null) {
+                start = ranges.get(0)[0];
+                end = ranges.get(0)[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+            setContentLength(response, end - start + 1);
+            if (head) {
+                return;
+            }
+            if (file != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute("org.apache.tomcat.sendfile.filename", file
+                        .getAbsolutePath());
+                request.setAttribute("org.apache.tomcat.sendfile.start", Long.valueOf(start));
+                request.setAttribute("org.apache.tomcat.sendfile.end", Long.valueOf(end + 1));
+                return;
+            }
+            OutputStream out = response.getOutputStream();
+            transfer(out, start, end - start + 1);
+            out.flush();
+            return;
+        }
+
+        // multipart/byteranges
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                    + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n")
+                    .getBytes("ISO-8859-1");
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+        contentLength += end.length;
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        setContentLength(response, contentLength);
+        if (head) {
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            transfer(out, range[0], range[1] - range[0] + 1);
+        }
+        out.write(end);
+        out.flush();
+    }
+
+    private void transfer(OutputStream out, long start, long count) throws IOException {
+        FileChannel channel = this.channel;
+        FileInputStream in = null;
+        if (channel == null) {
+            in = new FileInputStream(file);
+            channel = in.getChannel();
+        } else {
+            start += channel.position();
+        }
+        try {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    // 文件在输出过程中被截短了
+                    throw new IOException("unexpected end of " + (file != null ? file : channel)
+                            + " at " + position);
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    private static void setContentLength(HttpServletResponse response, long contentLength) {
+        if (contentLength <= Integer.MAX_VALUE) {
+            response.setContentLength((int) contentLength);
+        } else {
+            response.setHeader("Content-Length", String.valueOf(contentLength));
+        }
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, String etag,
+            long lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etag != null && matchesETag(ifNoneMatch, etag);
+        }
+        if (lastModified > 0) {
+            long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+            return ifModifiedSince >= lastModified;
+        }
+        return false;
+    }
+
+    private static boolean matchesETag(String header, String etag) {
+        String opaque = opaqueTag(etag);
+        for (String candidate : StringUtils.split(header, ',')) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaqueTag(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析Range请求头
+     *
+     * @return null表示返回完整内容；空列表表示范围无法满足(416)；否则为各个范围的[start, end]，end包含在内
+     */
+    private static List<long[]> parseRanges(HttpServletRequest request, long length, String etag,
+            long lastModified) {
+        String header = request.getHeader("Range");
+        if (header == null || !"GET".equals(request.getMethod())
+                && !"HEAD".equals(request.getMethod())) {
+            return null;
+        }
+        header = header.trim();
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        // If-Range不符合时返回完整内容
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                // If-Range要求强比较，弱验证器(包括这里的ETag)从不相符
+                if (etag == null || ifRange.startsWith("W/") || etag.startsWith("W/")
+                        || !ifRange.equals(etag)) {
+                    return null;
+                }
+            } else if (lastModified <= 0 || getDateHeader(request, "If-Range") != lastModified) {
+                return null;
+            }
+        }
+        String[] specs = StringUtils.split(header.substring("bytes=".length()), ',');
+        if (specs.length == 0 || specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<long[]>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long start;
+            long end;
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec
+                            .substring(dash + 1));
+                    if (end < start) {
+                        return null;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (start < length) {
+                ranges.add(new long[] { start, end });
+            }
+        }
+        return ranges;
+    }
+
+    @Override
+    public String toString() {
+        return "file:" + (file != null ? file.getPath() : String.valueOf(channel));
+    }
+}
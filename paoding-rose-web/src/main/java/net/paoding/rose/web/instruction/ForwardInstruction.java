@@ -21,8 +21,13 @@ import javax.servlet.ServletException;
 
 import net.paoding.rose.web.Invocation;
 import net.paoding.rose.web.RequestPath;
+import net.paoding.rose.web.impl.thread.InternalForwarder;
+import net.paoding.rose.web.impl.thread.InvocationBean;
 
 /**
+ * 转发请求的指令。
+ * <p>
+ * RoseFilter开启internalForward时，目标地址由Rose处理的，由 {@link InternalForwarder} 在内部完成，否则交给容器的RequestDispatcher。
  * 
  * @author 王志亮 [qieqie.wang@gmail.com]
  * 
@@ -32,7 +37,18 @@ public class ForwardInstruction extends AbstractInstruction {
     @Override
     public void doRender(Invocation inv) throws ServletException, IOException {
         String path = resolvePlaceHolder(this.path, inv);
-        inv.getRequest().getRequestDispatcher(path).forward(inv.getRequest(), inv.getResponse());
+        if (inv instanceof InvocationBean) {
+            InternalForwarder internalForwarder = ((InvocationBean) inv).getRose()
+                    .getInternalForwarder();
+            if (internalForwarder != null && internalForwarder.forward(inv, path)) {
+                return;
+            }
+        }
+        try {
+            inv.getRequest().getRequestDispatcher(path).forward(inv.getRequest(), inv.getResponse());
+        } finally {
+            inv.getRequest().removeAttribute(InternalForwarder.CONTINUE_ATTR);
+        }
     }
 
     // -----------------------------
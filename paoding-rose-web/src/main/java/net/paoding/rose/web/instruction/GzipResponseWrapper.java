@@ -0,0 +1,424 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * 由 {@link InstructionExecutorImpl} 在渲染前包装的response：先把输出缓冲到compressionMinSize，
+ * 之后(或者输出结束、调用response.flushBuffer()时)按内容类型、大小、状态决定是否以gzip输出。
+ * <p>
+ * 不压缩时缓冲的内容原样写出，并在能确定时设置Content-Length；压缩时不设置Content-Length。
+ * forward到JSP时容器会关闭这个response的输出流，{@link #finish()} 因此可以被调用多次。
+ *
+ */
+class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0,
+            0, 0, 0, (byte) 0xff };
+
+    private static final int UNDECIDED = 0;
+
+    private static final int COMPRESS = 1;
+
+    private static final int PASS = -1;
+
+    private final ResponseCompression compression;
+
+    private int state = UNDECIDED;
+
+    /** 决定之前缓冲的内容 */
+    private byte[] buffer;
+
+    private int count;
+
+    /** 应用声明的Content-Length，-1表示没有声明 */
+    private long contentLength = -1;
+
+    /** 应用自己设置了Content-Encoding */
+    private boolean encoded;
+
+    private GzipOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    private ServletOutputStream target;
+
+    private Deflater deflater;
+
+    private CRC32 crc;
+
+    private byte[] deflateBuffer;
+
+    private boolean finished;
+
+    GzipResponseWrapper(HttpServletResponse response, ResponseCompression compression) {
+        super(response);
+        this.compression = compression;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (outputStream == null) {
+            outputStream = new GzipOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            outputStream = new GzipOutputStream();
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    /**
+     * 和servlet规范对容器的要求一致：已经缓冲或写出了内容时抛出IllegalStateException，
+     * 调用者({@link TextInstruction})据此判断在此之前是否有过输出
+     */
+    @Override
+    public void setBufferSize(int size) {
+        if (count > 0 || state == COMPRESS) {
+            throw new IllegalStateException("content has already been written");
+        }
+        super.setBufferSize(size);
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        if (state == PASS) {
+            super.setContentLength(len);
+        } else {
+            contentLength = len;
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!interceptHeader(name, value)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!interceptHeader(name, value)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!interceptHeader(name, String.valueOf(value))) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!interceptHeader(name, String.valueOf(value))) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    private boolean interceptHeader(String name, String value) {
+        if ("Content-Encoding".equalsIgnoreCase(name)) {
+            encoded = true;
+            return false;
+        }
+        if (state != PASS && "Content-Length".equalsIgnoreCase(name)) {
+            try {
+                contentLength = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                contentLength = -1;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        pass();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        pass();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        pass();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (state == UNDECIDED) {
+            decide(false);
+        }
+        if (state == COMPRESS) {
+            target.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (state == UNDECIDED) {
+            count = 0;
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        if (state == UNDECIDED) {
+            count = 0;
+            contentLength = -1;
+            encoded = false;
+        }
+    }
+
+    /** 放弃压缩：sendError、sendRedirect时缓冲的内容不再需要，之后的输出原样写到 {@link #target()} */
+    private void pass() {
+        if (state == UNDECIDED) {
+            state = PASS;
+            count = 0;
+        }
+    }
+
+    /**
+     * 决定是否压缩，并写出已经缓冲的内容
+     *
+     * @param complete 内容是否已经全部输出，此时缓冲区中的就是全部内容
+     */
+    private void decide(boolean complete) throws IOException {
+        // 包装之前(比如拦截器)已经往原response写过内容时，既不能压缩，也不能以缓冲的大小作为Content-Length
+        boolean targetEmpty = isTargetEmpty();
+        long size = contentLength >= 0 ? contentLength : (complete && targetEmpty ? count : -1);
+        int status = getStatus();
+        boolean eligible = targetEmpty && !encoded && status >= 200 && status != SC_NO_CONTENT
+                && status != SC_PARTIAL_CONTENT && status != SC_NOT_MODIFIED;
+        boolean compress = eligible && (size < 0 || size >= compression.getMinSize())
+                && compression.isCompressible(getContentType());
+        if (compress) {
+            state = COMPRESS;
+            super.setHeader("Content-Encoding", "gzip");
+            super.addHeader("Vary", "Accept-Encoding");
+            target = super.getOutputStream();
+            deflater = compression.acquire();
+            crc = new CRC32();
+            deflateBuffer = BufferPool.getInstance().acquire();
+            target.write(GZIP_HEADER);
+            if (count > 0) {
+                deflate(buffer, 0, count);
+            }
+        } else {
+            state = PASS;
+            if (eligible) {
+                // 因内容类型或大小没有压缩，同一URL的其它响应仍可能压缩，缓存需要按Accept-Encoding区分
+                super.addHeader("Vary", "Accept-Encoding");
+            }
+            if (size >= 0) {
+                setContentLengthHeader(size);
+            }
+            if (count > 0) {
+                target().write(buffer, 0, count);
+            }
+        }
+        count = 0;
+        buffer = null;
+    }
+
+    /** 被包装的response还没有任何输出：没有提交，并且可以调用setBufferSize() */
+    private boolean isTargetEmpty() {
+        if (super.isCommitted()) {
+            return false;
+        }
+        try {
+            super.setBufferSize(super.getBufferSize());
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("response has been finished");
+        }
+        if (state == UNDECIDED) {
+            if (buffer == null) {
+                buffer = new byte[Math.max(compression.getMinSize(), 1)];
+            }
+            if (count + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            decide(false);
+        }
+        if (state == COMPRESS) {
+            deflate(b, off, len);
+        } else {
+            target().write(b, off, len);
+        }
+    }
+
+    /** 原始response的输出流；sendError、sendRedirect之后的PASS状态下在第一次写出时才取得 */
+    private ServletOutputStream target() throws IOException {
+        if (target == null) {
+            target = super.getOutputStream();
+        }
+        return target;
+    }
+
+    private void deflate(byte[] b, int off, int len) throws IOException {
+        crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            int n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+            if (n > 0) {
+                target.write(deflateBuffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * 输出结束：写出缓冲的内容或gzip的结尾，并归还Deflater；可以调用多次
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (writer != null) {
+            writer.flush();
+        }
+        finished = true;
+        try {
+            if (state == UNDECIDED) {
+                if (count == 0 && outputStream == null) {
+                    // 没有任何输出(比如HEAD请求或者只设置了状态)，保持response原样
+                    state = PASS;
+                    if (contentLength >= 0) {
+                        setContentLengthHeader(contentLength);
+                    }
+                    return;
+                }
+                decide(true);
+            }
+            if (state == COMPRESS) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+                    if (n > 0) {
+                        target.write(deflateBuffer, 0, n);
+                    }
+                }
+                writeIntLE((int) crc.getValue());
+                writeIntLE((int) deflater.getBytesRead());
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 渲染失败时只归还资源，不再输出
+     */
+    void abort() {
+        finished = true;
+        release();
+    }
+
+    private void release() {
+        if (deflater != null) {
+            compression.release(deflater);
+            deflater = null;
+        }
+        if (deflateBuffer != null) {
+            BufferPool.getInstance().release(deflateBuffer);
+            deflateBuffer = null;
+        }
+    }
+
+    private void setContentLengthHeader(long length) {
+        if (length <= Integer.MAX_VALUE) {
+            super.setContentLength((int) length);
+        } else {
+            super.setHeader("Content-Length", String.valueOf(length));
+        }
+    }
+
+    private void writeIntLE(int i) throws IOException {
+        target.write(i & 0xff);
+        target.write((i >> 8) & 0xff);
+        target.write((i >> 16) & 0xff);
+        target.write((i >> 24) & 0xff);
+    }
+
+    private class GzipOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            GzipResponseWrapper.this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            GzipResponseWrapper.this.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // 决定之前缓冲的内容不超过compressionMinSize，继续保留；需要立即提交的应调用response.flushBuffer()
+            if (!finished && state != UNDECIDED) {
+                target().flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+}
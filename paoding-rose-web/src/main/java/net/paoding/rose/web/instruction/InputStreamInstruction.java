@@ -36,7 +36,8 @@ public class InputStreamInstruction extends AbstractInstruction {
 
     protected static Log logger = LogFactory.getLog(InputStreamInstruction.class);
 
-    private int bufferSize = 2048;
+    // 0表示使用 BufferPool 中的缓冲区
+    private int bufferSize = 0;
 
     private InputStream inputStream;
 
@@ -70,8 +71,9 @@ public class InputStreamInstruction extends AbstractInstruction {
                 logger.debug("set response.contentType by default:" + response.getContentType());
             }
         }
+        BufferPool bufferPool = BufferPool.getInstance();
+        byte[] buffer = bufferSize > 0 ? new byte[bufferSize] : bufferPool.acquire();
         try {
-            byte[] buffer = new byte[bufferSize];
             int read;
             OutputStream out = null;
             while ((read = inputStream.read(buffer)) != -1) {
@@ -83,9 +85,14 @@ public class InputStreamInstruction extends AbstractInstruction {
                 }
                 out.write(buffer, 0, read);
             }
-            out.flush();
+            if (out != null) {
+                out.flush();
+            }
         } finally {
             inputStream.close();
+            if (bufferSize <= 0) {
+                bufferPool.release(buffer);
+            }
         }
     }
 
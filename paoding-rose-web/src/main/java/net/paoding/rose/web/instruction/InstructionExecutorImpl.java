@@ -16,14 +16,24 @@
 package net.paoding.rose.web.instruction;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import net.paoding.rose.RoseConstants;
+import net.paoding.rose.util.PlaceHolderUtils;
 import net.paoding.rose.util.SpringUtils;
 import net.paoding.rose.web.Invocation;
+import net.paoding.rose.web.impl.thread.ActionEngine;
 import net.paoding.rose.web.impl.thread.InvocationBean;
+import net.paoding.rose.web.metrics.Phase;
+import net.paoding.rose.web.metrics.RequestTimings;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
@@ -38,16 +48,91 @@ public class InstructionExecutorImpl implements InstructionExecutor {
 
     private Log logger = LogFactory.getLog(getClass());
 
+    // Java 7的java.nio.file.Path.toFile()，运行环境没有时为null
+    private static final Method pathToFile = findPathToFile();
+
+    // 正在压缩输出的请求带有这个属性，避免forward到的action再压缩一次
+    private static final String COMPRESSING_ATTR = "$$paoding-rose.compressing";
+
     @Override
     public Object render(Invocation inv, Object instruction) throws IOException, ServletException,
             Exception {
-        instruction = translatesToInstructionObject((InvocationBean) inv, instruction);
+        final RequestTimings timings = ((InvocationBean) inv).getRose().getTimings();
+        if (timings == null) {
+            return doRender((InvocationBean) inv, instruction);
+        }
+        final long begin = System.nanoTime();
+        try {
+            return doRender((InvocationBean) inv, instruction);
+        } finally {
+            timings.add(Phase.RENDER, System.nanoTime() - begin);
+        }
+    }
+
+    private Object doRender(InvocationBean inv, Object instruction) throws Exception {
+        instruction = translatesToInstructionObject(inv, instruction);
         if (instruction != null && !Thread.currentThread().isInterrupted()) {
-            ((Instruction) instruction).render(inv);
+            GzipResponseWrapper gzip = compressIfNecessary(inv, (Instruction) instruction);
+            if (gzip == null) {
+                ((Instruction) instruction).render(inv);
+            } else {
+                renderCompressed(inv, (Instruction) instruction, gzip);
+            }
         }
         return instruction;
     }
 
+    private void renderCompressed(InvocationBean inv, Instruction instruction,
+            GzipResponseWrapper gzip) throws Exception {
+        HttpServletResponse response = inv.getResponse();
+        HttpServletRequest request = inv.getRequest();
+        inv.setResponse(gzip);
+        request.setAttribute(COMPRESSING_ATTR, Boolean.TRUE);
+        boolean success = false;
+        try {
+            instruction.render(inv);
+            success = true;
+        } finally {
+            request.removeAttribute(COMPRESSING_ATTR);
+            inv.setResponse(response);
+            if (success) {
+                gzip.finish();
+            } else {
+                gzip.abort();
+            }
+        }
+    }
+
+    /**
+     * 需要压缩时返回包装好的response
+     */
+    private GzipResponseWrapper compressIfNecessary(InvocationBean inv, Instruction instruction) {
+        // 文件由FileInstruction按Range、sendfile输出，转发、重定向、错误交给容器
+        if (!(instruction instanceof TextInstruction || instruction instanceof ViewInstruction
+                || instruction instanceof InputStreamInstruction
+                || instruction instanceof JsonInstruction)) {
+            return null;
+        }
+        ResponseCompression compression = ResponseCompression.getInstance();
+        Boolean compress = inv.getActionEngine().getCompression();
+        if (!(compress == null ? compression.isEnabledByDefault() : compress.booleanValue())) {
+            return null;
+        }
+        HttpServletRequest request = inv.getRequest();
+        HttpServletResponse response = inv.getResponse();
+        if (response.isCommitted() || "HEAD".equals(request.getMethod())
+                || request.getAttribute(COMPRESSING_ATTR) != null
+                || request.getAttribute("javax.servlet.include.request_uri") != null
+                || request.getAttribute(RoseConstants.WINDOW_ATTR) != null
+                || !ResponseCompression.acceptsGzip(request)) {
+            return null;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("compress response of " + instruction + " by " + compression);
+        }
+        return new GzipResponseWrapper(response, compression);
+    }
+
     /**
      * @param inv
      * @param instruction
@@ -56,6 +141,17 @@ public class InstructionExecutorImpl implements InstructionExecutor {
      */
     private Instruction translatesToInstructionObject(InvocationBean inv, Object instruction)
             throws StackOverflowError {
+        // action返回的字符串解析过一次后缓存在ActionEngine中，不再重复解析
+        String str = null;
+        ActionEngine actionEngine = null;
+        if (instruction != null && instruction.getClass() == String.class) {
+            str = (String) instruction;
+            actionEngine = inv.getActionEngine();
+            Instruction cached = actionEngine.getCachedInstruction(str);
+            if (cached != null) {
+                return cached;
+            }
+        }
         int count = 0;
         while (!(instruction instanceof Instruction)) {
             if (count++ > 50) {
@@ -76,9 +172,36 @@ public class InstructionExecutorImpl implements InstructionExecutor {
                 instruction = parseInstruction(inv, instruction);
             }
         }
+        if (str != null && isCacheable(str, (Instruction) instruction)) {
+            return actionEngine.cacheInstruction(str, (Instruction) instruction);
+        }
         return (Instruction) instruction;
     }
 
+    /**
+     * 判断字符串解析出来的指令能否被之后的请求直接使用：字符串不含占位符、解析时没有副作用(status:)，
+     * 并且指令在渲染时不改变自己(forward、redirect到相对的module、controller、action时，地址在渲染时才计算)
+     */
+    private static boolean isCacheable(String str, Instruction instruction) {
+        if (str.indexOf(PlaceHolderUtils.PLACEHOLDER_PREFIX) != -1 || str.startsWith("s:")
+                || str.startsWith("status:")) {
+            return false;
+        }
+        if (instruction == null) {
+            return false;
+        }
+        // 只缓存Rose自己创建的指令，子类可能有自己的状态
+        Class<?> clazz = instruction.getClass();
+        if (clazz == TextInstruction.class || clazz == ViewInstruction.class
+                || clazz == HttpErrorInstruction.class) {
+            return true;
+        }
+        if (clazz == RedirectInstruction.class || clazz == ForwardInstruction.class) {
+            return ((AbstractInstruction) instruction).preInstruction == null;
+        }
+        return false;
+    }
+
     protected Object parseInstruction(Invocation inv, Object ins) {
         if (logger.isDebugEnabled()) {
             logger.debug("parset instruction:" + ins.getClass().getName() + ": '" + ins + "'");
@@ -210,15 +333,41 @@ public class InstructionExecutorImpl implements InstructionExecutor {
                 return Forward.path(str);
             }
             return new ViewInstruction(str);
+        } else if (ins instanceof File) {
+            return new FileInstruction((File) ins);
+        } else if (ins instanceof FileChannel) {
+            return new FileInstruction((FileChannel) ins);
+        } else if (pathToFile != null && pathToFile.getDeclaringClass().isInstance(ins)) {
+            try {
+                return new FileInstruction((File) pathToFile.invoke(ins));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("can't render path '" + ins + "'", e);
+            }
         } else if (ins instanceof InputStream) {
             return new InputStreamInstruction((InputStream) ins);
         } else if (ins instanceof byte[]) {
             return new InputStreamInstruction(new ByteArrayInputStream((byte[]) ins));
         } else {
+            // @HttpFeatures(contentType = "json")的action返回的对象直接序列化到输出流
+            if (inv instanceof InvocationBean) {
+                ActionEngine actionEngine = ((InvocationBean) inv).getActionEngine();
+                if (actionEngine.isJson()) {
+                    return new JsonInstruction(ins, actionEngine.getJsonSerializer());
+                }
+            }
             return Text.text(ins.toString());
         }
     }
 
+    private static Method findPathToFile() {
+        try {
+            return ClassUtils.forName("java.nio.file.Path",
+                    InstructionExecutorImpl.class.getClassLoader()).getMethod("toFile");
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
     private class StringInstruction {
 
         Boolean forward;
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import javax.servlet.http.HttpServletResponse;
+
+import net.paoding.rose.web.Invocation;
+import net.paoding.rose.web.annotation.HttpFeatures;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link JsonInstruction} 把一个对象序列化为json直接写到response.getOutputStream()，编码总是UTF-8，
+ * 不先生成完整的字符串。
+ * <p>
+ * 标注了 @{@link HttpFeatures}(contentType = "json") 的action返回的对象(字符串、基本类型和Rose能识别的返回值除外)
+ * 由Rose自动创建这个指令；集合、Map、数组、Iterator等逐个元素输出，POJO按getter输出。
+ * 序列化由 {@link JsonSerializer} 完成，应用可以在Spring容器中配置自己的实现。
+ *
+ */
+public class JsonInstruction extends AbstractInstruction {
+
+    protected static Log logger = LogFactory.getLog(JsonInstruction.class);
+
+    private final Object value;
+
+    private final JsonSerializer serializer;
+
+    public JsonInstruction(Object value) {
+        this(value, DefaultJsonSerializer.getInstance());
+    }
+
+    public JsonInstruction(Object value, JsonSerializer serializer) {
+        if (serializer == null) {
+            throw new NullPointerException("serializer");
+        }
+        this.value = value;
+        this.serializer = serializer;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    protected void doRender(Invocation inv) throws Exception {
+        HttpServletResponse response = inv.getResponse();
+        if (response.getContentType() == null) {
+            response.setContentType("application/json");
+        }
+        response.setCharacterEncoding("UTF-8");
+        if (logger.isDebugEnabled()) {
+            logger.debug("write json by " + serializer.getClass().getName() + ": "
+                    + (value == null ? null : value.getClass().getName()));
+        }
+        serializer.serialize(value, response.getOutputStream());
+    }
+
+    @Override
+    public String toString() {
+        return "json:" + (value == null ? null : value.getClass().getName());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link JsonSerializer} 把action的返回值序列化为json，由 {@link JsonInstruction} 使用。
+ * <p>
+ * 在应用(或模块)的Spring容器中配置一个 {@link JsonSerializer} 的实现即可替换默认的
+ * {@link DefaultJsonSerializer}，比如改为基于Jackson、Gson的实现。
+ *
+ */
+public interface JsonSerializer {
+
+    /**
+     * 把所给的对象以UTF-8编码的json写到输出流；实现应边序列化边输出，不要先生成完整的字符串，
+     * 返回前应把自己缓冲的内容flush到out，但不要关闭out
+     *
+     * @param value 要序列化的对象，可能为null
+     * @param out
+     * @throws IOException
+     */
+    void serialize(Object value, OutputStream out) throws IOException;
+}
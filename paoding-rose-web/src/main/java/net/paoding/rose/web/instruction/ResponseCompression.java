@@ -0,0 +1,209 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.instruction;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * {@link ResponseCompression} 是Rose内置的响应压缩(gzip)的配置，以及压缩时使用的 {@link Deflater} 池。
+ * <p>
+ * 由RoseFilter的compression、compressionMinSize、compressionMimeTypes、compressionLevel参数设置，
+ * 并可以由action、控制器上的 @Compress 或模块rose.properties中的compression覆盖是否开启。
+ * 开启时，{@link InstructionExecutorImpl} 在渲染 {@link TextInstruction}、{@link ViewInstruction}、
+ * {@link InputStreamInstruction}、{@link JsonInstruction} 之前包装response，输出时再决定是否真的压缩：
+ * <ul>
+ * <li>客户端的Accept-Encoding接受gzip，并且不是HEAD请求、include请求</li>
+ * <li>内容类型在compressionMimeTypes之中(比如图片、zip等已经压缩过的内容不在其中)</li>
+ * <li>内容(或声明的Content-Length)不少于compressionMinSize字节</li>
+ * <li>应用没有自己设置Content-Encoding，响应状态不是204、206、304等</li>
+ * </ul>
+ * {@link Deflater} 用完后reset并放回池中，避免每个请求创建(以及等待finalize释放)本地的压缩缓冲区。
+ *
+ */
+public final class ResponseCompression {
+
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    public static final String[] DEFAULT_MIME_TYPES = { "text/html", "text/xml", "text/plain",
+            "text/css", "text/javascript", "application/javascript", "application/x-javascript",
+            "application/json", "application/xml" };
+
+    private static volatile ResponseCompression instance = new ResponseCompression(false,
+            DEFAULT_MIN_SIZE, DEFAULT_MIME_TYPES, Deflater.DEFAULT_COMPRESSION);
+
+    private final boolean enabledByDefault;
+
+    private final int minSize;
+
+    private final Set<String> mimeTypes;
+
+    private final int level;
+
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private ResponseCompression(boolean enabledByDefault, int minSize, String[] mimeTypes,
+            int level) {
+        this.enabledByDefault = enabledByDefault;
+        this.minSize = minSize;
+        Set<String> set = new HashSet<String>();
+        for (String mimeType : mimeTypes) {
+            mimeType = mimeType.trim().toLowerCase();
+            if (mimeType.length() > 0) {
+                set.add(mimeType);
+            }
+        }
+        this.mimeTypes = Collections.unmodifiableSet(set);
+        this.level = level;
+    }
+
+    public static ResponseCompression getInstance() {
+        return instance;
+    }
+
+    /**
+     * 设置压缩参数，替换当前使用的配置
+     *
+     * @param enabledByDefault 没有被 @Compress 或模块rose.properties设置的action是否压缩
+     * @param minSize 小于这么多字节的内容不压缩
+     * @param mimeTypes 可以压缩的内容类型，null表示使用 {@link #DEFAULT_MIME_TYPES}
+     * @param level 压缩级别，0-9或-1(默认)
+     */
+    public static void configure(boolean enabledByDefault, int minSize, String[] mimeTypes,
+            int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("compressionLevel " + level);
+        }
+        ResponseCompression old = instance;
+        instance = new ResponseCompression(enabledByDefault, Math.max(0, minSize),
+                mimeTypes == null ? DEFAULT_MIME_TYPES : mimeTypes, level);
+        old.clear();
+    }
+
+    public boolean isEnabledByDefault() {
+        return enabledByDefault;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * 请求是否接受gzip编码的响应
+     *
+     * @param request
+     * @return
+     */
+    public static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : StringUtils.split(acceptEncoding, ',')) {
+            int semicolon = coding.indexOf(';');
+            String name = (semicolon == -1 ? coding : coding.substring(0, semicolon)).trim();
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")
+                    || name.equals("*")) {
+                if (semicolon != -1) {
+                    String param = coding.substring(semicolon + 1).trim();
+                    if (param.startsWith("q=") && isZero(param.substring(2))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZero(String qvalue) {
+        try {
+            return Float.parseFloat(qvalue.trim()) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 所给的内容类型是否可以压缩
+     *
+     * @param contentType 可以带有charset等参数
+     * @return
+     */
+    public boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        if (semicolon != -1) {
+            contentType = contentType.substring(0, semicolon);
+        }
+        return mimeTypes.contains(contentType.trim().toLowerCase());
+    }
+
+    /**
+     * 从池中取得一个Deflater(输出gzip所需的不带zlib头的)，用完后应调用 {@link #release(Deflater)} 归还
+     *
+     * @return
+     */
+    Deflater acquire() {
+        Deflater deflater = deflaters.poll();
+        if (deflater != null) {
+            pooled.decrementAndGet();
+            return deflater;
+        }
+        return new Deflater(level, true);
+    }
+
+    void release(Deflater deflater) {
+        if (this != instance || pooled.incrementAndGet() > DEFAULT_MAX_POOLED) {
+            if (this == instance) {
+                pooled.decrementAndGet();
+            }
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        deflaters.offer(deflater);
+    }
+
+    private void clear() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCompression[enabledByDefault=" + enabledByDefault + ", minSize="
+                + minSize + ", mimeTypes=" + mimeTypes + ", level=" + level + ", pooled="
+                + pooled.get() + "]";
+    }
+}
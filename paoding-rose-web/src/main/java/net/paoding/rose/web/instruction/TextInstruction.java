@@ -16,7 +16,14 @@
 package net.paoding.rose.web.instruction;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -28,6 +35,17 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.util.Assert;
 
 /**
+ * 输出文本的指令。
+ * <p>
+ * 文本按response的字符集编码后通过getOutputStream()输出，不经过PrintWriter：
+ * 编码使用 {@link BufferPool} 的缓冲区；同一个实例被再次渲染时直接使用上次按该字符集编码好的字节。
+ * 实例能否被再次渲染取决于 {@link InstructionExecutorImpl} 对指令的缓存：action返回的不含占位符的"@..."常量
+ * 被解析成TextInstruction后缓存在所属的ActionEngine中(见ActionEngine#cacheInstruction)，之后的请求复用同一个实例；
+ * 没有被缓存的实例只渲染一次，不会保留编码结果。
+ * <p>
+ * 在此之前response还没有任何输出时(没有提交，拦截器、前置指令也没有写过内容)，设置Content-Length为编码后的字节数；
+ * 是否写过内容通过response.setBufferSize()判断：servlet规范要求有内容写出后调用它时抛出IllegalStateException，
+ * {@link GzipResponseWrapper} 也按此约定在缓冲了内容后拒绝调用。
  * 
  * @author 王志亮 [qieqie.wang@gmail.com]
  * 
@@ -40,12 +58,20 @@ public class TextInstruction extends AbstractInstruction {
 
     private String text;
 
+    /** 被再次渲染时缓存的编码结果 */
+    private volatile EncodedText encoded;
+
+    /** 是否已经渲染过，用于判断这个实例是否被重复使用 */
+    private volatile boolean rendered;
+
     public String text() {
         return text;
     }
 
     public TextInstruction text(String text) {
         this.text = text;
+        this.encoded = null;
+        this.rendered = false;
         return this;
     }
 
@@ -85,11 +111,154 @@ public class TextInstruction extends AbstractInstruction {
 
     private void sendResponse(HttpServletResponse response, String text) throws IOException {
         if (StringUtils.isNotEmpty(text)) {
-            PrintWriter out = response.getWriter();
             if (logger.isDebugEnabled()) {
             	logger.debug("write text to response:" + text);
             }
-            out.print(text);
+            String encoding = response.getCharacterEncoding();
+            EncodedText encoded = this.encoded;
+            if (encoded != null && encoded.encoding.equals(encoding)) {
+                write(response, text, encoded.bytes, encoded.bytes.length);
+                return;
+            }
+            boolean reused = rendered;
+            rendered = true;
+            BufferPool pool = BufferPool.getInstance();
+            byte[] buffer = pool.acquire();
+            try {
+                int length = encode(text, encoding, buffer);
+                if (length < 0) {
+                    // 放不进缓冲区或者字符集不支持，交给String编码
+                    byte[] bytes = text.getBytes(encoding);
+                    if (reused) {
+                        this.encoded = new EncodedText(encoding, bytes);
+                    }
+                    write(response, text, bytes, bytes.length);
+                } else {
+                    if (reused) {
+                        byte[] bytes = new byte[length];
+                        System.arraycopy(buffer, 0, bytes, 0, length);
+                        this.encoded = new EncodedText(encoding, bytes);
+                    }
+                    write(response, text, buffer, length);
+                }
+            } finally {
+                pool.release(buffer);
+            }
+        }
+    }
+
+    private void write(HttpServletResponse response, String text, byte[] bytes, int length)
+            throws IOException {
+        OutputStream out;
+        try {
+            out = response.getOutputStream();
+        } catch (IllegalStateException e) {
+            // 之前已经有人调用过getWriter()
+            PrintWriter writer = response.getWriter();
+            writer.print(text);
+            return;
+        }
+        if (isNothingWritten(response)) {
+            response.setContentLength(length);
+        }
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * response是否还没有任何输出：没有提交，并且可以调用setBufferSize()(有内容写出后调用它会抛出IllegalStateException)
+     */
+    private static boolean isNothingWritten(HttpServletResponse response) {
+        if (response.isCommitted()) {
+            return false;
+        }
+        try {
+            response.setBufferSize(response.getBufferSize());
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 把文本编码到所给的缓冲区
+     * 
+     * @return 编码后的字节数；缓冲区放不下或字符集不支持时返回-1
+     */
+    static int encode(String text, String encoding, byte[] buffer) {
+        int length = text.length();
+        if ("UTF-8".equalsIgnoreCase(encoding)) {
+            if (length > buffer.length) {
+                return -1;
+            }
+            int pos = 0;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    if (pos >= buffer.length) {
+                        return -1;
+                    }
+                    buffer[pos++] = (byte) c;
+                    continue;
+                }
+                if (pos + 4 > buffer.length) {
+                    return -1;
+                }
+                if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xc0 | (c >> 6));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+                    buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    buffer[pos++] = '?';
+                } else {
+                    buffer[pos++] = (byte) (0xe0 | (c >> 12));
+                    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return pos;
+        }
+        if ("ISO-8859-1".equalsIgnoreCase(encoding) || "US-ASCII".equalsIgnoreCase(encoding)) {
+            if (length > buffer.length) {
+                return -1;
+            }
+            char max = "US-ASCII".equalsIgnoreCase(encoding) ? (char) 0x7f : (char) 0xff;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                buffer[i] = c > max ? (byte) '?' : (byte) c;
+            }
+            return length;
+        }
+        CharsetEncoder encoder;
+        try {
+            encoder = Charset.forName(encoding).newEncoder();
+        } catch (Exception e) {
+            return -1;
+        }
+        encoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                CodingErrorAction.REPLACE);
+        ByteBuffer out = ByteBuffer.wrap(buffer);
+        CoderResult result = encoder.encode(CharBuffer.wrap(text), out, true);
+        if (result.isOverflow() || encoder.flush(out).isOverflow()) {
+            return -1;
+        }
+        return out.position();
+    }
+
+    private static final class EncodedText {
+
+        final String encoding;
+
+        final byte[] bytes;
+
+        EncodedText(String encoding, byte[] bytes) {
+            this.encoding = encoding;
+            this.bytes = bytes;
         }
     }
 
@@ -19,9 +19,10 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -31,7 +32,10 @@ import net.paoding.rose.web.Invocation;
 import net.paoding.rose.web.impl.thread.InvocationBean;
 import net.paoding.rose.web.impl.view.ViewDispatcher;
 import net.paoding.rose.web.impl.view.ViewDispatcherImpl;
+import net.paoding.rose.web.impl.view.ViewFileIndex;
+import net.paoding.rose.web.impl.module.Module;
 import net.paoding.rose.web.impl.view.ViewPathCache;
+import net.paoding.rose.web.metrics.RoseEvents;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -57,7 +61,10 @@ public class ViewInstruction extends AbstractInstruction {
     public static final String ROSE_INVOCATION = "roseInvocation";
 
     // 视图名称到视图地址的映射(缓存这个映射避免重复计算视图地址)
-    private static Map<String, ViewPathCache> globalViewPathCaches = new HashMap<String, ViewPathCache>();
+    private static final ConcurrentHashMap<String, ViewPathCache> globalViewPathCaches = new ConcurrentHashMap<String, ViewPathCache>();
+
+    // 启动时建立的/views目录索引，为null时直接访问文件系统
+    private static volatile ViewFileIndex viewFileIndex;
 
     // 视图名称，不包含路径，一般没有后缀名
     private final String name;
@@ -69,6 +76,64 @@ public class ViewInstruction extends AbstractInstruction {
         this.name = name;
     }
 
+    /**
+     * 扫描/views目录建立视图文件索引，此后查找视图地址不再访问文件系统；由RoseFilter在启动时调用。
+     * 
+     * @param servletContext
+     * @param refreshInterval 大于0时，每隔这么多秒重新扫描一次，发现变化时清空视图地址缓存
+     */
+    public static synchronized void initViewFileIndex(ServletContext servletContext,
+            int refreshInterval) {
+        destroyViewFileIndex();
+        ViewFileIndex index = ViewFileIndex.build(servletContext);
+        if (index != null && refreshInterval > 0) {
+            index.startRefresh(refreshInterval, new Runnable() {
+
+                @Override
+                public void run() {
+                    globalViewPathCaches.clear();
+                }
+            });
+        }
+        globalViewPathCaches.clear();
+        viewFileIndex = index;
+    }
+
+    /**
+     * 在启动时为每个模块准备好它的视图目录所需的ViewResolver(velocity、jsp)，
+     * 避免部署后的第一批请求查找layout文件、注册bean定义；必须在 {@link #initViewFileIndex} 之后调用。
+     * 
+     * @param modules
+     * @throws IOException
+     */
+    public static void prepareViewDispatchers(List<Module> modules) throws IOException {
+        ViewFileIndex index = viewFileIndex;
+        if (index == null) {
+            return;
+        }
+        ViewInstruction instruction = new ViewInstruction(RoseConstants.VIEWS_PATH);
+        for (Module module : modules) {
+            String viewsHome = RoseConstants.VIEWS_PATH + module.getRelativePath();
+            if (index.getDirectory(viewsHome) == null) {
+                continue;
+            }
+            WebApplicationContext applicationContext = module.getApplicationContext();
+            ViewDispatcher viewDispatcher = instruction.getViewDispatcher(applicationContext);
+            if (viewDispatcher instanceof ViewDispatcherImpl) {
+                ((ViewDispatcherImpl) viewDispatcher).prepare(applicationContext
+                        .getServletContext(), index, viewsHome);
+            }
+        }
+    }
+
+    public static synchronized void destroyViewFileIndex() {
+        if (viewFileIndex != null) {
+            viewFileIndex.stopRefresh();
+            viewFileIndex = null;
+        }
+        globalViewPathCaches.clear();
+    }
+
     @Override
     public void doRender(Invocation inv) throws Exception {
         String name = resolvePlaceHolder(this.name, inv);
@@ -77,14 +142,22 @@ public class ViewInstruction extends AbstractInstruction {
         if (viewPath != null) {
             HttpServletRequest request = inv.getRequest();
             HttpServletResponse response = inv.getResponse();
-            //
-            View view = viewResolver.resolveViewName(inv, viewPath, request.getLocale());
+            // JFR的RoseRender事件，没有开启时为null
+            final Object event = RoseEvents.getInstance().beginRender();
+            View view = null;
+            try {
+                view = viewResolver.resolveViewName(inv, viewPath, request.getLocale());
 
-            if (!Thread.interrupted()) {
-                inv.addModel(ROSE_INVOCATION, inv);
-                view.render(inv.getModel().getAttributes(), request, response);
-            } else {
-                logger.info("interrupted");
+                if (!Thread.interrupted()) {
+                    inv.addModel(ROSE_INVOCATION, inv);
+                    view.render(inv.getModel().getAttributes(), request, response);
+                } else {
+                    logger.info("interrupted");
+                }
+            } finally {
+                if (event != null) {
+                    RoseEvents.getInstance().commitRender(event, viewPath, view);
+                }
             }
         }
     }
@@ -117,8 +190,14 @@ public class ViewInstruction extends AbstractInstruction {
         ViewPathCache viewPathCache = globalViewPathCaches.get(viewRelativePath);
         if (viewPathCache == null) {
             String directoryPath = RoseConstants.VIEWS_PATH + viewRelativePath;
-            File directoryFile = new File(inv.getServletContext().getRealPath(directoryPath));
-            if (!directoryFile.exists()) {
+            ViewFileIndex index = viewFileIndex;
+            boolean exists;
+            if (index != null) {
+                exists = index.getDirectory(directoryPath) != null;
+            } else {
+                exists = new File(inv.getServletContext().getRealPath(directoryPath)).exists();
+            }
+            if (!exists) {
                 String msg = "404: view directory not found, you need to create it in your webapp:"
                         + directoryPath;
                 logger.error(msg);
@@ -126,7 +205,11 @@ public class ViewInstruction extends AbstractInstruction {
                 return null;
             }
             viewPathCache = new ViewPathCache(viewRelativePath);
-            globalViewPathCaches.put(viewRelativePath, viewPathCache);
+            ViewPathCache existing = globalViewPathCaches.putIfAbsent(viewRelativePath,
+                    viewPathCache);
+            if (existing != null) {
+                viewPathCache = existing;
+            }
         }
         //
         String viewPath;
@@ -160,6 +243,15 @@ public class ViewInstruction extends AbstractInstruction {
         if (viewPath != null) {
             return viewPath;
         }
+        String notFoundMessage = viewPathCache.getNotFoundMessage(viewName);
+        if (notFoundMessage != null) {
+            inv.getResponse().sendError(404, notFoundMessage);
+            return null;
+        }
+        ViewFileIndex index = viewFileIndex;
+        if (index != null && viewName.charAt(0) != '/') {
+            return getViewPathFromIndex(inv, index, viewPathCache, viewName);
+        }
 
         final boolean debugEnabled;
         if (debugEnabled = logger.isDebugEnabled()) {
@@ -200,7 +292,9 @@ public class ViewInstruction extends AbstractInstruction {
         if (directoryFile == null || !directoryFile.exists()) {
             logger.error("not found directoryPath '" + directoryPath + "' for directoryFile '"
                     + directoryFile + "' of view named '" + viewName + "'");
-            inv.getResponse().sendError(404, "not found directoryPath '" + directoryPath + "'");
+            // 直接访问文件系统时不记录"找不到"：没有索引的重新扫描来清除它，之后新增的文件会一直404
+            String msg = "not found directoryPath '" + directoryPath + "'";
+            inv.getResponse().sendError(404, msg);
             return null;
         } else {
             if (debugEnabled) {
@@ -226,6 +320,50 @@ public class ViewInstruction extends AbstractInstruction {
         }
     }
 
+    /**
+     * 和 {@link #getViewPathFromCache} 的查找规则相同，但使用启动时建立的索引而不访问文件系统
+     */
+    private String getViewPathFromIndex(InvocationBean inv, ViewFileIndex index,
+            ViewPathCache viewPathCache, String viewName) throws IOException {
+        String notDirectoryViewName = viewName;
+        String directoryPath = viewPathCache.getDirectoryPath();
+        ViewFileIndex.Directory directory = index.getDirectory(directoryPath);
+        int viewNameIndex = viewName.lastIndexOf('/');
+        if (viewNameIndex > 0) {
+            notDirectoryViewName = viewName.substring(viewNameIndex + 1);
+            String[] subDirs = StringUtils.split(viewName.substring(0, viewNameIndex), "/");
+            for (int i = 0; directory != null && i < subDirs.length; i++) {
+                String subDir = directory.findDirectoryName(subDirs[i]);
+                directory = subDir == null ? null : index.getDirectory(directory.getPath() + "/"
+                        + subDir);
+            }
+        }
+        String msg;
+        if (directory == null) {
+            logger.error("not found directoryPath '" + directoryPath + "' of view named '"
+                    + viewName + "'");
+            msg = "not found directoryPath '" + directoryPath + "'";
+        } else {
+            directoryPath = directory.getPath();
+            String viewFileName = directory.findViewFile(notDirectoryViewName, false);
+            if (viewFileName == null) {
+                viewFileName = directory.findViewFile(notDirectoryViewName, true);
+            }
+            if (viewFileName != null) {
+                String viewPath = directoryPath + "/" + viewFileName;
+                viewPathCache.setViewPath(viewName, viewPath);
+                return viewPath;
+            }
+            msg = "not found view file '" + notDirectoryViewName + "' in " + directoryPath;
+            if (logger.isWarnEnabled()) {
+                logger.warn(msg);
+            }
+        }
+        viewPathCache.setNotFound(viewName, msg);
+        inv.getResponse().sendError(404, msg);
+        return null;
+    }
+
     /**
      * 优先获取大小写敏感的路径，如若找不到，则获取忽略大小写后的路径
      * 
@@ -274,24 +412,8 @@ public class ViewInstruction extends AbstractInstruction {
 
             @Override
             public boolean accept(File dir, String fileName) {
-                String _notDirectoryViewName = fileNameToFind;
-                String _fileName = fileName;
-                if (ignoreCase) {
-                    _fileName = fileName.toLowerCase();
-                    _notDirectoryViewName = fileNameToFind.toLowerCase();
-                }
-                // 忽略大小写
-                if (_fileName.startsWith(_notDirectoryViewName) && new File(dir, fileName).isFile()) {
-                    if (fileName.length() == fileNameToFind.length()
-                            && fileNameToFind.lastIndexOf('.') != -1) {
-                        return true;
-                    }
-                    if (fileName.length() > fileNameToFind.length()
-                            && fileName.charAt(fileNameToFind.length()) == '.') {
-                        return true;
-                    }
-                }
-                return false;
+                return ViewFileIndex.matchesViewFile(fileName, fileNameToFind, ignoreCase)
+                        && new File(dir, fileName).isFile();
             }
         });
         Arrays.sort(viewFiles);
@@ -301,10 +423,14 @@ public class ViewInstruction extends AbstractInstruction {
     //-------------------------------------------
 
     protected ViewDispatcher getViewDispatcher(Invocation inv) {
-        ViewDispatcher viewDispatcher = (ViewDispatcher) SpringUtils.getBean(inv
-                .getApplicationContext(), viewDispatcherName);
+        return getViewDispatcher(inv.getApplicationContext());
+    }
+
+    protected ViewDispatcher getViewDispatcher(WebApplicationContext applicationContext) {
+        ViewDispatcher viewDispatcher = (ViewDispatcher) SpringUtils.getBean(applicationContext,
+                viewDispatcherName);
         if (viewDispatcher == null) {
-            viewDispatcher = registerViewDispatcher(inv.getApplicationContext());
+            viewDispatcher = registerViewDispatcher(applicationContext);
         }
         return viewDispatcher;
     }
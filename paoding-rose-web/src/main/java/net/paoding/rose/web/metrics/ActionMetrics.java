@@ -0,0 +1,154 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个action的统计：请求数、异常数、各响应状态的次数，每个阶段耗时(微秒)的 {@link Histogram}，
+ * 以及它的每个拦截器的 {@link InterceptorMetrics}
+ *
+ */
+public class ActionMetrics {
+
+    private static final int MIN_STATUS = 100;
+
+    private static final int MAX_STATUS = 599;
+
+    private final String name;
+
+    private final Histogram[] histograms = new Histogram[Phase.VALUES.length];
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS - MIN_STATUS + 1);
+
+    /** 不在100-599之间的状态 */
+    private final AtomicLong otherStatuses = new AtomicLong();
+
+    /** 和action的拦截器一一对应 */
+    private final InterceptorMetrics[] interceptors;
+
+    public ActionMetrics(String name) {
+        this(name, new String[0]);
+    }
+
+    /**
+     * 
+     * @param name
+     * @param interceptorNames action的各拦截器的名字，按执行顺序
+     */
+    public ActionMetrics(String name, String[] interceptorNames) {
+        this.name = name;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+        this.interceptors = new InterceptorMetrics[interceptorNames.length];
+        for (int i = 0; i < interceptors.length; i++) {
+            interceptors[i] = new InterceptorMetrics(interceptorNames[i]);
+        }
+    }
+
+    /**
+     * 形如"com.xxx.controllers.UserController#show"
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 记录一次请求；请求没有经过的阶段(耗时为0)不记入该阶段的直方图
+     *
+     * @param timings
+     * @param status
+     * @param error
+     */
+    public void record(RequestTimings timings, int status, boolean error) {
+        for (Phase phase : Phase.VALUES) {
+            long nanos = timings.get(phase);
+            if (nanos > 0) {
+                histograms[phase.ordinal()].record(nanos / 1000);
+            }
+        }
+        if (error) {
+            errors.incrementAndGet();
+        }
+        if (status >= MIN_STATUS && status <= MAX_STATUS) {
+            statuses.incrementAndGet(status - MIN_STATUS);
+        } else {
+            otherStatuses.incrementAndGet();
+        }
+    }
+
+    public Histogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * 第index个拦截器的统计
+     *
+     * @param index 拦截器的执行顺序，从0开始
+     * @return
+     */
+    public InterceptorMetrics getInterceptorMetrics(int index) {
+        return interceptors[index];
+    }
+
+    /**
+     * 各拦截器的统计，按执行顺序
+     *
+     * @return
+     */
+    public List<InterceptorMetrics> getInterceptorMetrics() {
+        return Collections.unmodifiableList(Arrays.asList(interceptors));
+    }
+
+    /**
+     * 出现过的响应状态及其次数，按状态排序；不在100-599之间的状态记为-1
+     *
+     * @return
+     */
+    public Map<Integer, Long> getStatuses() {
+        Map<Integer, Long> map = new TreeMap<Integer, Long>();
+        for (int i = 0; i < statuses.length(); i++) {
+            long count = statuses.get(i);
+            if (count > 0) {
+                map.put(i + MIN_STATUS, count);
+            }
+        }
+        if (otherStatuses.get() > 0) {
+            map.put(-1, otherStatuses.get());
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionMetrics[" + name + "]";
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个拦截器在一个action上的统计：调用次数、短路次数(没有调用chain.doNext()就返回)、异常次数，
+ * 以及before(调用chain.doNext()之前)、after(chain.doNext()返回之后)、afterCompletion的耗时。
+ * <p>
+ * 同一个拦截器被很多action、很多线程同时使用，计数分散在多个条带(stripe)上：每个线程按线程id落在其中一个条带，
+ * 一个条带的8个计数正好占一个缓存行，不同条带之间互不争用；读取时把各条带相加。
+ *
+ */
+public class InterceptorMetrics {
+
+    private static final int CALLS = 0;
+
+    private static final int SHORT_CIRCUITS = 1;
+
+    private static final int ERRORS = 2;
+
+    private static final int BEFORE_NANOS = 3;
+
+    private static final int AFTERS = 4;
+
+    private static final int AFTER_NANOS = 5;
+
+    private static final int AFTER_COMPLETIONS = 6;
+
+    private static final int AFTER_COMPLETION_NANOS = 7;
+
+    /** 每个条带的计数个数，8个long是64字节 */
+    private static final int FIELDS = 8;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final String name;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * FIELDS);
+
+    public InterceptorMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 不小于cpu数的2的幂，最多64
+     */
+    private static int stripes(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * FIELDS;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 记录一次roundInvocation
+     *
+     * @param beforeNanos 调用chain.doNext()之前的耗时，短路时是整个roundInvocation的耗时
+     * @param afterNanos chain.doNext()返回之后的耗时，短路或chain.doNext()抛出异常时为-1
+     * @param shortCircuit 没有调用chain.doNext()就返回
+     * @param error 拦截器自己抛出了异常(不包括从chain.doNext()传出的异常)
+     */
+    public void recordRound(long beforeNanos, long afterNanos, boolean shortCircuit,
+            boolean error) {
+        int base = stripe();
+        cells.incrementAndGet(base + CALLS);
+        cells.addAndGet(base + BEFORE_NANOS, beforeNanos);
+        if (afterNanos >= 0) {
+            cells.incrementAndGet(base + AFTERS);
+            cells.addAndGet(base + AFTER_NANOS, afterNanos);
+        }
+        if (shortCircuit) {
+            cells.incrementAndGet(base + SHORT_CIRCUITS);
+        }
+        if (error) {
+            cells.incrementAndGet(base + ERRORS);
+        }
+    }
+
+    /**
+     * 记录一次afterCompletion
+     *
+     * @param nanos
+     * @param error afterCompletion抛出了异常
+     */
+    public void recordAfterCompletion(long nanos, boolean error) {
+        int base = stripe();
+        cells.incrementAndGet(base + AFTER_COMPLETIONS);
+        cells.addAndGet(base + AFTER_COMPLETION_NANOS, nanos);
+        if (error) {
+            cells.incrementAndGet(base + ERRORS);
+        }
+    }
+
+    private long sum(int field) {
+        long sum = 0;
+        for (int i = field; i < cells.length(); i += FIELDS) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    public long getCalls() {
+        return sum(CALLS);
+    }
+
+    public long getShortCircuits() {
+        return sum(SHORT_CIRCUITS);
+    }
+
+    /**
+     * roundInvocation以及afterCompletion中拦截器自己抛出的异常数
+     *
+     * @return
+     */
+    public long getErrors() {
+        return sum(ERRORS);
+    }
+
+    public long getBeforeNanos() {
+        return sum(BEFORE_NANOS);
+    }
+
+    /**
+     * 计入了after耗时的次数(没有短路、chain.doNext()正常返回的调用)
+     *
+     * @return
+     */
+    public long getAfters() {
+        return sum(AFTERS);
+    }
+
+    public long getAfterNanos() {
+        return sum(AFTER_NANOS);
+    }
+
+    public long getAfterCompletions() {
+        return sum(AFTER_COMPLETIONS);
+    }
+
+    public long getAfterCompletionNanos() {
+        return sum(AFTER_COMPLETION_NANOS);
+    }
+
+    /**
+     * 把另一个统计加到这里，用于按拦截器名字汇总各action的统计
+     *
+     * @param other
+     */
+    public void add(InterceptorMetrics other) {
+        for (int field = 0; field < FIELDS; field++) {
+            cells.addAndGet(field, other.sum(field));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InterceptorMetrics[" + name + ", calls=" + getCalls() + "]";
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import jdk.jfr.EventType;
+import net.paoding.rose.web.Invocation;
+
+/**
+ * 运行在有jdk.jfr的JVM上时的 {@link RoseEvents}
+ *
+ */
+class JfrRoseEvents extends RoseEvents {
+
+    private final EventType requestType = EventType.getEventType(RoseRequestEvent.class);
+
+    private final EventType renderType = EventType.getEventType(RoseRenderEvent.class);
+
+    @Override
+    public Object beginRequest() {
+        if (!requestType.isEnabled()) {
+            return null;
+        }
+        RoseRequestEvent event = new RoseRequestEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitRequest(Object event, Invocation inv, RequestTimings timings, int status,
+            Throwable error) {
+        RoseRequestEvent e = (RoseRequestEvent) event;
+        e.end();
+        if (!e.shouldCommit()) {
+            return;
+        }
+        e.uri = inv.getRequestPath().getUri();
+        e.method = inv.getRequestPath().getMethod().toString();
+        e.action = inv.getControllerClass().getName() + "#" + inv.getMethod().getName();
+        e.status = status;
+        e.error = error == null ? null : error.getClass().getName();
+        e.match = timings.get(Phase.MATCH);
+        e.resolve = timings.get(Phase.RESOLVE);
+        e.interceptors = timings.get(Phase.INTERCEPTORS);
+        e.actionTime = timings.get(Phase.ACTION);
+        e.render = timings.get(Phase.RENDER);
+        e.commit();
+    }
+
+    @Override
+    public Object beginRender() {
+        if (!renderType.isEnabled()) {
+            return null;
+        }
+        RoseRenderEvent event = new RoseRenderEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitRender(Object event, String viewPath, Object view) {
+        RoseRenderEvent e = (RoseRenderEvent) event;
+        e.end();
+        if (!e.shouldCommit()) {
+            return;
+        }
+        e.viewPath = viewPath;
+        e.view = view == null ? null : view.getClass().getName();
+        e.commit();
+    }
+}
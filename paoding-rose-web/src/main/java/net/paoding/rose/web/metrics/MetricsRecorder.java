@@ -0,0 +1,40 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import net.paoding.rose.web.Invocation;
+
+/**
+ * {@link MetricsRecorder} 接收每个Rose请求结束时的计时结果。
+ * <p>
+ * RoseFilter的metrics参数为true时，Rose使用内置的 {@link RoseMetrics} 统计各action的耗时分布(/rose-info/metrics)，
+ * 同时把结果转交给根容器(applicationContext*.xml)中所有 {@link MetricsRecorder} 类型的bean，
+ * 应用可以由此输出到自己的监控系统。
+ * <p>
+ * 这个方法在请求线程中调用，实现应当很快返回，抛出的异常只被记录到日志中。
+ *
+ */
+public interface MetricsRecorder {
+
+    /**
+     *
+     * @param inv 结束的请求
+     * @param timings 各阶段的耗时
+     * @param status 响应状态；action抛出异常时不小于500
+     * @param error action、拦截器或渲染抛出的异常，没有时为null
+     */
+    void record(Invocation inv, RequestTimings timings, int status, Throwable error);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+/**
+ * 一次Rose请求被计时的各个阶段
+ *
+ */
+public enum Phase {
+
+    /** 从Rose接到请求到选定action：匹配树(或匹配缓存)的匹配以及引擎的选择 */
+    MATCH,
+
+    /** action方法参数的解析以及验证器 */
+    RESOLVE,
+
+    /** 拦截器的执行时间，不含其中action方法的执行 */
+    INTERCEPTORS,
+
+    /** action方法本身的执行 */
+    ACTION,
+
+    /** action返回结果的渲染，包括页面 */
+    RENDER,
+
+    /** 整个请求，从Rose接到请求到afterCompletion完成(异步的action包括等待结果的时间) */
+    TOTAL;
+
+    static final Phase[] VALUES = values();
+}
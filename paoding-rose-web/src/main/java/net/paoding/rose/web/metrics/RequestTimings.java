@@ -0,0 +1,79 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+/**
+ * 一次请求各阶段的耗时(纳秒)，由Rose在开启metrics时为每个请求创建，请求结束后交给 {@link MetricsRecorder}。
+ * <p>
+ * 同一个请求的各阶段是先后发生的(异步action的结果由另一个线程渲染，但不会同时进行)，所以这里不做同步。
+ *
+ */
+public final class RequestTimings {
+
+    private final long startTime = System.nanoTime();
+
+    private final long[] nanos = new long[Phase.VALUES.length];
+
+    /**
+     * 请求开始的时间，System.nanoTime()
+     *
+     * @return
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * 累加所给阶段的耗时
+     *
+     * @param phase
+     * @param nanos
+     */
+    public void add(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * 所给阶段的耗时，0表示请求没有经过这个阶段
+     *
+     * @param phase
+     * @return
+     */
+    public long get(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * 结束计时，记下 {@link Phase#TOTAL}；重复调用不改变第一次的结果
+     */
+    public void finish() {
+        if (nanos[Phase.TOTAL.ordinal()] == 0) {
+            nanos[Phase.TOTAL.ordinal()] = Math.max(System.nanoTime() - startTime, 1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128).append("RequestTimings[");
+        for (Phase phase : Phase.VALUES) {
+            if (phase.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase.name().toLowerCase()).append('=').append(nanos[phase.ordinal()]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import net.paoding.rose.web.Invocation;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link RoseEvents} 向JDK Flight Recorder(JFR)发出Rose的事件：每个请求一个RoseRequest事件(uri、action、
+ * 各阶段耗时、响应状态)，每次页面渲染一个RoseRender事件(页面路径、解析出的view)。
+ * <p>
+ * 事件像JDK自带的事件一样由JFR的设置控制，比如
+ * -XX:StartFlightRecording 或 jcmd JFR.start，并可以在.jfc文件中为net.paoding.rose.RoseRequest等设置enabled、threshold；
+ * 没有开启录制或没有开启这些事件时，begin方法只是判断一下事件类型是否开启并返回null，调用者不再做任何事情。
+ * <p>
+ * 运行在没有jdk.jfr的JVM上(Java 8u262之前)时使用空实现，begin方法总是返回null。
+ *
+ */
+public abstract class RoseEvents {
+
+    private static final Log logger = LogFactory.getLog(RoseEvents.class);
+
+    private static final RoseEvents instance = create();
+
+    public static RoseEvents getInstance() {
+        return instance;
+    }
+
+    private static RoseEvents create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+        } catch (Throwable e) {
+            return new RoseEvents() {};
+        }
+        try {
+            // 通过反射加载，使本类不直接引用jdk.jfr
+            return (RoseEvents) Class.forName(RoseEvents.class.getPackage().getName()
+                    + ".JfrRoseEvents").newInstance();
+        } catch (Throwable e) {
+            logger.warn("JFR events of rose are disabled", e);
+            return new RoseEvents() {};
+        }
+    }
+
+    /**
+     * 开始一个请求的事件
+     *
+     * @return 没有开启这个事件时返回null
+     */
+    public Object beginRequest() {
+        return null;
+    }
+
+    /**
+     * 结束并提交 {@link #beginRequest()} 返回的事件
+     *
+     * @param event 非null
+     * @param inv
+     * @param timings 各阶段的耗时
+     * @param status 响应状态
+     * @param error 请求中抛出的异常，没有时为null
+     */
+    public void commitRequest(Object event, Invocation inv, RequestTimings timings, int status,
+            Throwable error) {
+    }
+
+    /**
+     * 开始一个页面渲染的事件
+     *
+     * @return 没有开启这个事件时返回null
+     */
+    public Object beginRender() {
+        return null;
+    }
+
+    /**
+     * 结束并提交 {@link #beginRender()} 返回的事件
+     *
+     * @param event 非null
+     * @param viewPath 页面路径
+     * @param view 解析出的view，没有解析出时为null
+     */
+    public void commitRender(Object event, String viewPath, Object view) {
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.paoding.rose.web.InterceptorDelegate;
+import net.paoding.rose.web.Invocation;
+import net.paoding.rose.web.impl.thread.ActionEngine;
+import net.paoding.rose.web.impl.thread.InvocationBean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link RoseMetrics} 是RoseFilter开启metrics时使用的 {@link MetricsRecorder}：按action分别统计，
+ * 第一次请求某个action时才为它创建 {@link ActionMetrics}，并把每次的结果转交给另外加入的 {@link MetricsRecorder}。
+ *
+ */
+public class RoseMetrics implements MetricsRecorder {
+
+    private static final Log logger = LogFactory.getLog(RoseMetrics.class);
+
+    private final ConcurrentMap<ActionEngine, ActionMetrics> actions = new ConcurrentHashMap<ActionEngine, ActionMetrics>();
+
+    private final List<MetricsRecorder> recorders = new CopyOnWriteArrayList<MetricsRecorder>();
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * 加入一个同样接收计时结果的recorder
+     *
+     * @param recorder
+     */
+    public void addRecorder(MetricsRecorder recorder) {
+        if (recorder == null || recorder == this) {
+            throw new IllegalArgumentException("recorder " + recorder);
+        }
+        recorders.add(recorder);
+    }
+
+    public List<MetricsRecorder> getRecorders() {
+        return Collections.unmodifiableList(recorders);
+    }
+
+    /**
+     * 开始统计的时间
+     *
+     * @return
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public void record(Invocation inv, RequestTimings timings, int status, Throwable error) {
+        getActionMetrics(((InvocationBean) inv).getActionEngine()).record(timings, status,
+                error != null);
+        for (MetricsRecorder recorder : recorders) {
+            try {
+                recorder.record(inv, timings, status, error);
+            } catch (Throwable e) {
+                logger.error("error occurred in " + recorder.getClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 所给action的统计，没有时创建
+     *
+     * @param actionEngine
+     * @return
+     */
+    public ActionMetrics getActionMetrics(ActionEngine actionEngine) {
+        ActionMetrics metrics = actions.get(actionEngine);
+        if (metrics == null) {
+            InterceptorDelegate[] interceptors = actionEngine.getRegisteredInterceptors();
+            String[] interceptorNames = new String[interceptors.length];
+            for (int i = 0; i < interceptors.length; i++) {
+                interceptorNames[i] = interceptors[i].getName();
+            }
+            metrics = new ActionMetrics(actionEngine.getControllerClass().getName() + "#"
+                    + actionEngine.getMethod().getName(), interceptorNames);
+            ActionMetrics old = actions.putIfAbsent(actionEngine, metrics);
+            if (old != null) {
+                metrics = old;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 所有被请求过的action的统计，按名字排序
+     *
+     * @return
+     */
+    public List<ActionMetrics> getActionMetrics() {
+        List<ActionMetrics> list = new ArrayList<ActionMetrics>(actions.values());
+        Collections.sort(list, new Comparator<ActionMetrics>() {
+
+            @Override
+            public int compare(ActionMetrics o1, ActionMetrics o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * 按拦截器名字汇总各action上的拦截器统计，按名字排序
+     *
+     * @return
+     */
+    public Map<String, InterceptorMetrics> getInterceptorMetrics() {
+        Map<String, InterceptorMetrics> map = new TreeMap<String, InterceptorMetrics>();
+        for (ActionMetrics action : actions.values()) {
+            for (InterceptorMetrics interceptor : action.getInterceptorMetrics()) {
+                InterceptorMetrics sum = map.get(interceptor.getName());
+                if (sum == null) {
+                    sum = new InterceptorMetrics(interceptor.getName());
+                    map.put(interceptor.getName(), sum);
+                }
+                sum.add(interceptor);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "RoseMetrics[actions=" + actions.size() + ", recorders=" + recorders + "]";
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次页面渲染，包括view的解析
+ *
+ */
+@Name("net.paoding.rose.RoseRender")
+@Label("Rose Render")
+@Category( { "Rose", "Web" })
+@Description("A view rendered by Rose")
+@StackTrace(false)
+class RoseRenderEvent extends Event {
+
+    @Label("View Path")
+    String viewPath;
+
+    @Label("View")
+    @Description("Class of the resolved view")
+    String view;
+}
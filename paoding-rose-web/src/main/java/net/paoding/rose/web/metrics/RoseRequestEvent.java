@@ -0,0 +1,75 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次Rose请求，事件的持续时间是从Rose接到请求到afterCompletion完成
+ *
+ */
+@Name("net.paoding.rose.RoseRequest")
+@Label("Rose Request")
+@Category( { "Rose", "Web" })
+@Description("A request dispatched by Rose")
+@StackTrace(false)
+class RoseRequestEvent extends Event {
+
+    @Label("URI")
+    String uri;
+
+    @Label("Method")
+    String method;
+
+    @Label("Action")
+    @Description("controller#method")
+    String action;
+
+    @Label("Status")
+    int status;
+
+    @Label("Error")
+    @Description("Class of the exception thrown, if any")
+    String error;
+
+    @Label("Match")
+    @Timespan
+    long match;
+
+    @Label("Resolve")
+    @Description("Parameter resolving and validation")
+    @Timespan
+    long resolve;
+
+    @Label("Interceptors")
+    @Description("Interceptors, excluding the action")
+    @Timespan
+    long interceptors;
+
+    @Label("Action Time")
+    @Timespan
+    long actionTime;
+
+    @Label("Render")
+    @Timespan
+    long render;
+}
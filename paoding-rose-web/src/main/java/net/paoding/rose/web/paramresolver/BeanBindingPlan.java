@@ -0,0 +1,200 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.paramresolver;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletRequest;
+
+import net.paoding.rose.util.MethodInvoker;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.multipart.MultipartRequest;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * {@link BeanBindingPlan} 是为一个bean类型预先编译的属性设置表，在创建 {@link MethodParameterResolver} 时生成。
+ * <p>
+ * 对于只涉及String、基本类型及其包装类型属性的请求，直接解析参数并调用setter，
+ * 不再经过 {@link ServletRequestDataBinder} 的属性路径解析和类型转换；
+ * 其他情况(嵌套属性、多值参数、文件上传、字段标记、非简单类型的属性、解析失败等)由 {@link #bind} 返回false，
+ * 调用者应继续使用 {@link ServletRequestDataBinder}，从而保持原有的绑定结果和错误信息。
+ */
+final class BeanBindingPlan {
+
+    /** 简单类型的可写属性，包括Spring查找属性时所容许的首字母大小写变化 */
+    private final Map<String, Setter> setters = new HashMap<String, Setter>();
+
+    /** 其他可写属性的名字，请求中含有这些参数时不使用本计划 */
+    private final Set<String> complexProperties = new HashSet<String>();
+
+    BeanBindingPlan(Class<?> beanClass) {
+        PropertyDescriptor[] pds = BeanUtils.getPropertyDescriptors(beanClass);
+        Map<String, Setter> aliases = new HashMap<String, Setter>();
+        Set<String> complexAliases = new HashSet<String>();
+        for (PropertyDescriptor pd : pds) {
+            if (pd.getWriteMethod() == null) {
+                continue;
+            }
+            String name = pd.getName();
+            SimpleValueParser parser = SimpleValueParser.forType(pd.getPropertyType());
+            if (parser == null) {
+                complexProperties.add(name);
+                complexAliases.add(StringUtils.uncapitalize(name));
+                complexAliases.add(StringUtils.capitalize(name));
+            } else {
+                Setter setter = new Setter(MethodInvoker.create(pd.getWriteMethod()), parser);
+                setters.put(name, setter);
+                if (!aliases.containsKey(StringUtils.uncapitalize(name))) {
+                    aliases.put(StringUtils.uncapitalize(name), setter);
+                }
+                if (!aliases.containsKey(StringUtils.capitalize(name))) {
+                    aliases.put(StringUtils.capitalize(name), setter);
+                }
+            }
+        }
+        // 和 CachedIntrospectionResults 一样，属性名本身优先于首字母大小写变化后的名字
+        for (String alias : complexAliases) {
+            if (!setters.containsKey(alias)) {
+                complexProperties.add(alias);
+            }
+        }
+        for (Map.Entry<String, Setter> alias : aliases.entrySet()) {
+            if (!setters.containsKey(alias.getKey())
+                    && !complexProperties.contains(alias.getKey())) {
+                setters.put(alias.getKey(), alias.getValue());
+            }
+        }
+    }
+
+    /**
+     * 把请求参数绑定到所给的bean上
+     *
+     * @param bean 刚刚创建的bean
+     * @param request
+     * @param prefix 参数名前缀，可以为null
+     * @return 如果本计划无法处理这个请求，返回false，这种情况下bean没有被修改
+     * @throws InvocationTargetException setter抛出了异常，此时bean可能已被部分修改
+     */
+    boolean bind(Object bean, ServletRequest request, String prefix)
+            throws InvocationTargetException, IllegalAccessException {
+        if (WebUtils.getNativeRequest(request, MultipartRequest.class) != null) {
+            return false;
+        }
+        Setter[] matchedSetters = null;
+        Object[] values = null;
+        int count = 0;
+        @SuppressWarnings("unchecked")
+        Enumeration<String> names = request.getParameterNames();
+        while (names != null && names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (prefix != null) {
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                name = name.substring(prefix.length());
+            }
+            if (name.length() == 0 || isNestedOrMarked(name)) {
+                return false;
+            }
+            Setter setter = setters.get(name);
+            if (setter == null) {
+                if (complexProperties.contains(name)) {
+                    return false;
+                }
+                // 不是bean的可写属性，DataBinder也会忽略它
+                continue;
+            }
+            String[] texts = request.getParameterValues(prefix == null ? name : prefix + name);
+            if (texts == null || texts.length == 0) {
+                continue;
+            }
+            if (texts.length > 1) {
+                return false;
+            }
+            // 多个参数名指向同一个属性(如age和Age)时，结果取决于DataBinder的排序，交给它处理
+            for (int i = 0; i < count; i++) {
+                if (matchedSetters[i] == setter) {
+                    return false;
+                }
+            }
+            Object value;
+            try {
+                value = setter.parser.parse(texts[0]);
+            } catch (TypeMismatchException e) {
+                return false;
+            }
+            if (matchedSetters == null) {
+                matchedSetters = new Setter[4];
+                values = new Object[4];
+            } else if (count == matchedSetters.length) {
+                Setter[] newSetters = new Setter[count << 1];
+                Object[] newValues = new Object[count << 1];
+                System.arraycopy(matchedSetters, 0, newSetters, 0, count);
+                System.arraycopy(values, 0, newValues, 0, count);
+                matchedSetters = newSetters;
+                values = newValues;
+            }
+            matchedSetters[count] = setter;
+            values[count] = value;
+            count++;
+        }
+        for (int i = 0; i < count; i++) {
+            matchedSetters[i].set(bean, values[i]);
+        }
+        return true;
+    }
+
+    private static boolean isNestedOrMarked(String name) {
+        if (name.startsWith(WebDataBinder.DEFAULT_FIELD_MARKER_PREFIX)
+                || name.startsWith(WebDataBinder.DEFAULT_FIELD_DEFAULT_PREFIX)) {
+            return true;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch == '.' || ch == '[') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Setter {
+
+        final MethodInvoker invoker;
+
+        final SimpleValueParser parser;
+
+        Setter(MethodInvoker invoker, SimpleValueParser parser) {
+            this.invoker = invoker;
+            this.parser = parser;
+        }
+
+        void set(Object bean, Object value) throws InvocationTargetException,
+                IllegalAccessException {
+            invoker.invoke(bean, new Object[] { value });
+        }
+    }
+}
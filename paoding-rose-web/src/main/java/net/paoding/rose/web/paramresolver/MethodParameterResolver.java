@@ -47,6 +47,16 @@ public final class MethodParameterResolver {
 
     private final ParamMetaData[] paramMetaDatas;
 
+    // 以下是启动时为每个参数预先计算好的信息，避免每次请求都去查找注解、转换默认值
+
+    private final DefValue[] defValues;
+
+    /** 基本类型参数解析失败时使用的值；没有预先计算的为null */
+    private final Object[] mismatchValues;
+
+    /** 参数解析失败时报告错误所用的参数名 */
+    private final String[] errorParamNames;
+
     public MethodParameterResolver(Class<?> controllerClazz, Method method,
             ParameterNameDiscovererImpl parameterNameDiscoverer, ResolverFactory resolverFactory) {
         this.method = method;
@@ -61,6 +71,28 @@ public final class MethodParameterResolver {
             paramMetaDatas[i] = paramMetaData;
             resolvers[i] = resolverFactory.supports(paramMetaData);
         }
+        defValues = new DefValue[parameterTypes.length];
+        mismatchValues = new Object[parameterTypes.length];
+        errorParamNames = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            defValues[i] = paramMetaDatas[i].getAnnotation(DefValue.class);
+            if (parameterTypes[i].isPrimitive()) {
+                try {
+                    mismatchValues[i] = convertMismatchValue(i);
+                } catch (RuntimeException e) {
+                    // 错误的@DefValue保持原来的行为，在请求时才抛出
+                }
+            }
+            String paramName = parameterNames[i];
+            if (paramName == null) {
+                for (String name : paramMetaDatas[i].getParamNames()) {
+                    if ((paramName = name) != null) {
+                        break;
+                    }
+                }
+            }
+            errorParamNames[i] = paramName;
+        }
     }
 
     public ParamMetaData[] getParamMetaDatas() {
@@ -100,7 +132,7 @@ public final class MethodParameterResolver {
                     ((InitializingBean) parameters[i]).afterPropertiesSet();
                 }
                 if (parameters[i] == null) {
-                    DefValue defValudeAnnotation = paramMetaDatas[i].getAnnotation(DefValue.class);
+                    DefValue defValudeAnnotation = defValues[i];
                     if (defValudeAnnotation != null && paramMetaDatas[i].getParamType() == String.class) {
                         parameters[i] = defValudeAnnotation.value();
                     }
@@ -112,42 +144,11 @@ public final class MethodParameterResolver {
 
                 // 对简单类型的参数，设置一个默认值给它以支持对该方法的继续调用
                 if (paramMetaDatas[i].getParamType().isPrimitive()) {
-                    DefValue defValudeAnnotation = paramMetaDatas[i].getAnnotation(DefValue.class);
-                    if (defValudeAnnotation == null
-                            || DefValue.NATIVE_DEFAULT.equals(defValudeAnnotation.value())) {
-                        // 对这最常用的类型做一下if-else判断，其他类型就简单使用converter来做吧
-                        if (paramMetaDatas[i].getParamType() == int.class) {
-                            parameters[i] = Integer.valueOf(0);
-                        } else if (paramMetaDatas[i].getParamType() == long.class) {
-                            parameters[i] = Long.valueOf(0);
-                        } else if (paramMetaDatas[i].getParamType() == boolean.class) {
-                            parameters[i] = Boolean.FALSE;
-                        } else if (paramMetaDatas[i].getParamType() == double.class) {
-                            parameters[i] = Double.valueOf(0);
-                        } else if (paramMetaDatas[i].getParamType() == float.class) {
-                            parameters[i] = Float.valueOf(0);
-                        } else {
-                            TypeConverter typeConverter = SafedTypeConverterFactory
-                                    .getCurrentConverter();
-                            parameters[i] = typeConverter.convertIfNecessary("0", paramMetaDatas[i]
-                                    .getParamType());
-                        }
-                    } else {
-                        TypeConverter typeConverter = SafedTypeConverterFactory
-                                .getCurrentConverter();
-                        parameters[i] = typeConverter.convertIfNecessary(defValudeAnnotation
-                                .value(), paramMetaDatas[i].getParamType());
-                    }
+                    parameters[i] = mismatchValues[i] != null ? mismatchValues[i]
+                            : convertMismatchValue(i);
                 }
                 // 
-                String paramName = parameterNames[i];
-                if (paramName == null) {
-                    for (String name : paramMetaDatas[i].getParamNames()) {
-                        if ((paramName = name) != null) {
-                            break;
-                        }
-                    }
-                }
+                String paramName = errorParamNames[i];
                 Assert.isTrue(paramName != null);
                 FieldError fieldError = new FieldError(//
                         "method", // 该出错字段所在的对象的名字；对于这类异常我们统一规定名字为method
@@ -168,4 +169,33 @@ public final class MethodParameterResolver {
         return parameters;
     }
 
+    /**
+     * 计算基本类型参数解析失败时使用的值：没有@DefValue的使用该类型的默认值，否则转换@DefValue的值
+     */
+    private Object convertMismatchValue(int i) throws TypeMismatchException {
+        Class<?> paramType = paramMetaDatas[i].getParamType();
+        DefValue defValudeAnnotation = defValues[i];
+        if (defValudeAnnotation == null
+                || DefValue.NATIVE_DEFAULT.equals(defValudeAnnotation.value())) {
+            // 对这最常用的类型做一下if-else判断，其他类型就简单使用converter来做吧
+            if (paramType == int.class) {
+                return Integer.valueOf(0);
+            } else if (paramType == long.class) {
+                return Long.valueOf(0);
+            } else if (paramType == boolean.class) {
+                return Boolean.FALSE;
+            } else if (paramType == double.class) {
+                return Double.valueOf(0);
+            } else if (paramType == float.class) {
+                return Float.valueOf(0);
+            } else {
+                TypeConverter typeConverter = SafedTypeConverterFactory.getCurrentConverter();
+                return typeConverter.convertIfNecessary("0", paramType);
+            }
+        } else {
+            TypeConverter typeConverter = SafedTypeConverterFactory.getCurrentConverter();
+            return typeConverter.convertIfNecessary(defValudeAnnotation.value(), paramType);
+        }
+    }
+
 }
@@ -17,7 +17,6 @@
 package net.paoding.rose.web.paramresolver;
 
 import java.beans.PropertyEditorSupport;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -510,20 +509,51 @@ public class ResolverFactoryImpl implements ResolverFactory {
 
         @Override
         public boolean supports(ParamMetaData metaData) {
-            return !Modifier.isAbstract(metaData.getParamType().getModifiers());
-
+            boolean supports = !Modifier.isAbstract(metaData.getParamType().getModifiers());
+            if (supports) {
+                try {
+                    metaData.setUserObject(this, new BeanBindingPlan(metaData.getParamType()));
+                } catch (Exception e) {
+                    // 不能预先编译的，每次请求都使用DataBinder绑定
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("cann't compile binding plan for " + metaData, e);
+                    }
+                }
+            }
+            return supports;
         }
 
         @Override
         public Object resolve(Invocation inv, ParamMetaData metaData) {
             Object bean = RoseBeanUtils.instantiateClass(metaData.getParamType());
             ServletRequestDataBinder binder;
+            String prefix;
             if (!metaData.isAnnotationPresent(Param.class)) {
                 binder = new ServletRequestDataBinder(bean);
+                prefix = null;
             } else {
                 binder = new ServletRequestDataBinder(bean, metaData.getParamName());
+                prefix = metaData.getParamName() + '.';
+            }
+            // 简单属性直接使用预先编译的setter表绑定，其他情况仍由binder绑定
+            BeanBindingPlan plan = (BeanBindingPlan) metaData.getUserObject(this);
+            boolean bound = false;
+            if (plan != null) {
+                try {
+                    bound = plan.bind(bean, inv.getRequest(), prefix);
+                } catch (Exception e) {
+                    // setter出错时bean已被部分修改，换一个新的bean由binder重新绑定并记录错误
+                    bean = RoseBeanUtils.instantiateClass(metaData.getParamType());
+                    if (prefix == null) {
+                        binder = new ServletRequestDataBinder(bean);
+                    } else {
+                        binder = new ServletRequestDataBinder(bean, metaData.getParamName());
+                    }
+                }
+            }
+            if (!bound) {
+                binder.bind(inv.getRequest());
             }
-            binder.bind(inv.getRequest());
             String bindingResultName = BindingResult.MODEL_KEY_PREFIX + metaData.getParamName()
                     + "BindingResult";
             inv.addModel(bindingResultName, binder.getBindingResult());
@@ -810,39 +840,60 @@ public class ResolverFactoryImpl implements ResolverFactory {
 
         private final static String stimePattern = "HH:mm";
 
+        // SimpleDateFormat不是线程安全的，这些已解析好pattern的原型只用于clone
+        private final static SimpleDateFormat dateTimeFormat = new SimpleDateFormat(dateTimePattern);
+
+        private final static SimpleDateFormat dateTimeFormat2 = new SimpleDateFormat(dateTimePattern2);
+
+        private final static SimpleDateFormat dateTimeFormat3 = new SimpleDateFormat(dateTimePattern3);
+
+        private final static SimpleDateFormat dateFormat = new SimpleDateFormat(datePattern);
+
+        private final static SimpleDateFormat dateFormat2 = new SimpleDateFormat(datePattern2);
+
+        private final static SimpleDateFormat dateFormat3 = new SimpleDateFormat(datePattern3);
+
+        private final static SimpleDateFormat timeFormat = new SimpleDateFormat(timePattern);
+
+        private final static SimpleDateFormat stimeFormat = new SimpleDateFormat(stimePattern);
+
         private static Date parse(String text) throws ParseException {
             if (text.length() == dateTimePattern.length()) {
                 if (text.charAt(4) == '-' && text.charAt(7) == '-') {
-                    return new SimpleDateFormat(dateTimePattern).parse(text);
+                    return parse(dateTimeFormat, text);
                 }
                 if (text.charAt(4) == '/' && text.charAt(7) == '/') {
                     if (text.charAt(13) == ':' && text.charAt(16) == ':') {
-                        return new SimpleDateFormat(dateTimePattern2).parse(text);
+                        return parse(dateTimeFormat2, text);
                     }
                 }
             } else if (text.length() == dateTimePattern3.length()) {
-                return new SimpleDateFormat(dateTimePattern3).parse(text);
+                return parse(dateTimeFormat3, text);
             } else if (text.length() == datePattern3.length()) {
-                return new SimpleDateFormat(datePattern3).parse(text);
+                return parse(dateFormat3, text);
             } else if (text.length() == datePattern.length()) {
                 if (text.charAt(4) == '-' && text.charAt(7) == '-') {
-                    return new SimpleDateFormat(datePattern).parse(text);
+                    return parse(dateFormat, text);
                 }
                 if (text.charAt(4) == '/' && text.charAt(7) == '/') {
-                    return new SimpleDateFormat(datePattern2).parse(text);
+                    return parse(dateFormat2, text);
                 }
             } else if (text.length() == timePattern.length()) {
                 if (text.charAt(2) == ':' && text.charAt(5) == ':') {
-                    return new SimpleDateFormat(timePattern).parse(text);
+                    return parse(timeFormat, text);
                 }
             } else if (text.length() == stimePattern.length()) {
                 if (text.charAt(2) == ':') {
-                    return new SimpleDateFormat(stimePattern).parse(text);
+                    return parse(stimeFormat, text);
                 }
             }
             return new Date(Long.parseLong(text));
         }
 
+        private static Date parse(SimpleDateFormat prototype, String text) throws ParseException {
+            return ((SimpleDateFormat) prototype.clone()).parse(text);
+        }
+
         private static Date changeType(Date date, Class<?> targetType) {
             if (date == null) {
                 return date;
@@ -863,10 +914,17 @@ public class ResolverFactoryImpl implements ResolverFactory {
 
         @Override
         public boolean supports(ParamMetaData metaData) {
-            return Date.class == metaData.getParamType()
+            boolean supports = Date.class == metaData.getParamType()
                     || java.sql.Date.class == metaData.getParamType()
                     || java.sql.Time.class == metaData.getParamType()
                     || java.sql.Timestamp.class == metaData.getParamType();
+            if (supports) {
+                Pattern pattern = metaData.getAnnotation(Pattern.class);
+                if (pattern != null) {
+                    metaData.setUserObject(this, new CompiledPatterns(pattern.value()));
+                }
+            }
+            return supports;
         }
 
         @Override
@@ -898,42 +956,74 @@ public class ResolverFactoryImpl implements ResolverFactory {
                     return null; // 保留null，而非当前时间
                 }
             }
-            Annotation[] paramAnnotations = metaData.getMethod().getParameterAnnotations()[metaData
-                    .getIndex()];
-            for (Annotation annotation : paramAnnotations) {
-                if (annotation instanceof Pattern) {
-                    String[] patterns = Pattern.class.cast(annotation).value();
-                    for (String pattern : patterns) {
-                        // 以long为时间
-                        if ("long".equals(pattern)) {
-                            boolean digit = true;
-                            for (int i = 0; i < text.length(); i++) {
-                                if (!Character.isDigit(text.charAt(i))) {
-                                    digit = false;
-                                    break;
-                                }
-                            }
-                            if (digit) {
-                                return new Date(Long.parseLong(text));
+            CompiledPatterns compiledPatterns = (CompiledPatterns) metaData.getUserObject(this);
+            if (compiledPatterns != null) {
+                String[] patterns = compiledPatterns.patterns;
+                for (int p = 0; p < patterns.length; p++) {
+                    String pattern = patterns[p];
+                    // 以long为时间
+                    if ("long".equals(pattern)) {
+                        boolean digit = true;
+                        for (int i = 0; i < text.length(); i++) {
+                            if (!Character.isDigit(text.charAt(i))) {
+                                digit = false;
+                                break;
                             }
                         }
-                        // 可以配置多个pattern!! 通过长度匹配
-                        if (text.length() == pattern.length()) {
-                            return new SimpleDateFormat(pattern).parse(text);
+                        if (digit) {
+                            return new Date(Long.parseLong(text));
                         }
                     }
-                    break;
+                    // 可以配置多个pattern!! 通过长度匹配
+                    if (text.length() == pattern.length()) {
+                        return compiledPatterns.parse(p, text);
+                    }
                 }
             }
             return DatePatterns.parse(text);
         }
     }
 
+    /**
+     * 参数上 {@link Pattern} 所声明的日期格式，在启动时预先解析
+     */
+    static final class CompiledPatterns {
+
+        final String[] patterns;
+
+        /** 和patterns一一对应的原型，只用于clone；无法解析的pattern对应null */
+        private final SimpleDateFormat[] prototypes;
+
+        CompiledPatterns(String[] patterns) {
+            this.patterns = patterns;
+            this.prototypes = new SimpleDateFormat[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                try {
+                    prototypes[i] = new SimpleDateFormat(patterns[i]);
+                } catch (IllegalArgumentException e) {
+                    // 保持原有行为：在解析请求参数时再报告错误
+                }
+            }
+        }
+
+        Date parse(int index, String text) throws ParseException {
+            if (prototypes[index] == null) {
+                return new SimpleDateFormat(patterns[index]).parse(text);
+            }
+            return ((SimpleDateFormat) prototypes[index].clone()).parse(text);
+        }
+    }
+
     static final class EditorResolver implements ParamResolver {
 
         @Override
         public boolean supports(ParamMetaData metaData) {
             if (ClassUtils.isPrimitiveOrWrapper(metaData.getParamType())) {
+                // 常用的基本类型不再经过PropertyEditor，直接解析
+                SimpleValueParser parser = SimpleValueParser.forType(metaData.getParamType());
+                if (parser != null) {
+                    metaData.setUserObject(this, parser);
+                }
                 return true;
             }
             SimpleTypeConverter simpleTypeConverter = SafedTypeConverterFactory
@@ -967,6 +1057,10 @@ public class ResolverFactoryImpl implements ResolverFactory {
                 }
             }
             if (toConvert != null) {
+                SimpleValueParser parser = (SimpleValueParser) metaData.getUserObject(this);
+                if (parser != null) {
+                    return parser.parse(toConvert);
+                }
                 SimpleTypeConverter typeConverter = SafedTypeConverterFactory.getCurrentConverter();
                 return typeConverter.convertIfNecessary(toConvert, metaData.getParamType());
             }
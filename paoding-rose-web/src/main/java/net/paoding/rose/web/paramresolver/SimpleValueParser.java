@@ -0,0 +1,143 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.paramresolver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.util.NumberUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * {@link SimpleValueParser} 把请求参数的文本直接解析为String、基本类型或其包装类型的值，
+ * 用于代替每次都要查找 PropertyEditor 的 {@link org.springframework.beans.SimpleTypeConverter}。
+ * <p>
+ * 解析规则与Spring默认的 CustomNumberEditor、CustomBooleanEditor 一致：
+ * 基本类型不允许空值，包装类型的空白文本解析为null；解析失败时抛出 {@link TypeMismatchException}。
+ */
+abstract class SimpleValueParser {
+
+    private static final Map<Class<?>, SimpleValueParser> parsers = new HashMap<Class<?>, SimpleValueParser>();
+
+    static {
+        parsers.put(String.class, new SimpleValueParser(String.class) {
+
+            @Override
+            protected Object doParse(String text) {
+                return text;
+            }
+        });
+        addNumberParser(int.class, Integer.class);
+        addNumberParser(long.class, Long.class);
+        addNumberParser(double.class, Double.class);
+        addNumberParser(float.class, Float.class);
+        addNumberParser(short.class, Short.class);
+        addNumberParser(byte.class, Byte.class);
+        parsers.put(boolean.class, new BooleanParser(boolean.class, false));
+        parsers.put(Boolean.class, new BooleanParser(Boolean.class, true));
+    }
+
+    private static void addNumberParser(Class<?> primitiveType, Class<? extends Number> wrapperType) {
+        parsers.put(primitiveType, new NumberParser(primitiveType, wrapperType, false));
+        parsers.put(wrapperType, new NumberParser(wrapperType, wrapperType, true));
+    }
+
+    /**
+     * 返回所给类型的解析器；不支持的类型返回null，由调用者继续使用 TypeConverter
+     *
+     * @param type
+     * @return
+     */
+    static SimpleValueParser forType(Class<?> type) {
+        return parsers.get(type);
+    }
+
+    private final Class<?> type;
+
+    private SimpleValueParser(Class<?> type) {
+        this.type = type;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * 解析所给的文本
+     *
+     * @param text 非null的文本
+     * @return
+     * @throws TypeMismatchException
+     */
+    public Object parse(String text) throws TypeMismatchException {
+        try {
+            return doParse(text);
+        } catch (IllegalArgumentException e) {
+            throw new TypeMismatchException(text, type, e);
+        }
+    }
+
+    protected abstract Object doParse(String text);
+
+    private static final class NumberParser extends SimpleValueParser {
+
+        private final Class<? extends Number> numberClass;
+
+        private final boolean allowEmpty;
+
+        NumberParser(Class<?> type, Class<? extends Number> numberClass, boolean allowEmpty) {
+            super(type);
+            this.numberClass = numberClass;
+            this.allowEmpty = allowEmpty;
+        }
+
+        @Override
+        protected Object doParse(String text) {
+            if (allowEmpty && !StringUtils.hasText(text)) {
+                return null;
+            }
+            return NumberUtils.parseNumber(text, numberClass);
+        }
+    }
+
+    private static final class BooleanParser extends SimpleValueParser {
+
+        private final boolean allowEmpty;
+
+        BooleanParser(Class<?> type, boolean allowEmpty) {
+            super(type);
+            this.allowEmpty = allowEmpty;
+        }
+
+        @Override
+        protected Object doParse(String text) {
+            String input = text.trim();
+            if (allowEmpty && input.length() == 0) {
+                return null;
+            }
+            if ("true".equalsIgnoreCase(input) || "on".equalsIgnoreCase(input)
+                    || "yes".equalsIgnoreCase(input) || "1".equals(input)) {
+                return Boolean.TRUE;
+            }
+            if ("false".equalsIgnoreCase(input) || "off".equalsIgnoreCase(input)
+                    || "no".equalsIgnoreCase(input) || "0".equals(input)) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("Invalid boolean value [" + text + "]");
+        }
+    }
+}
@@ -18,7 +18,6 @@ package net.paoding.rose.web.var;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import net.paoding.rose.util.PlaceHolderUtils;
@@ -30,6 +29,12 @@ import org.springframework.core.Conventions;
 import org.springframework.util.Assert;
 
 /**
+ * {@link ModelImpl} 通常只被处理请求的一个线程使用，此时读写都不加锁，{@link #getAttributes()} 返回只读的视图而不是复制。
+ * <p>
+ * 被portal、pipe的窗口(在其他线程中执行)共享时，应先调用 {@link #share()}，此后的读写都在同一个锁上同步，
+ * {@link #getAttributes()} 也改为返回复制的快照。
+ * <p>
+ * 以"$$paoding-rose"开头的属性是框架内部使用的，单独存放，不出现在 {@link #getAttributes()} 中。
  * 
  * @author 王志亮 [qieqie.wang@gmail.com]
  * 
@@ -38,30 +43,63 @@ public class ModelImpl implements Model {
 
     private static Log logger = LogFactory.getLog(ModelImpl.class);
 
-    private Map<String, Object> map = new HashMap<String, Object>();
+    private static final String INTERNAL_PREFIX = "$$paoding-rose";
+
+    private final Map<String, Object> map = new HashMap<String, Object>();
+
+    /** map的只读视图，由getAttributes()返回，需要时才创建 */
+    private Map<String, Object> attributes;
+
+    /** 以"$$paoding-rose"开头的内部属性，需要时才创建 */
+    private Map<String, Object> internals;
 
     private Invocation invocation;
 
-    final Object mutex; // Object on which to synchronize
+    /** 非null表示model已经被多个线程共享，所有读写都在它上面同步 */
+    private volatile Object mutex;
 
     public ModelImpl(Invocation inv) {
         this.invocation = inv;
-        this.mutex = map;
     }
 
-    public Map<String, Object> getAttributes() {
-        final Map<String, Object> cloneAndFiltered = new HashMap<String, Object>(map.size() * 2);
-        synchronized (mutex) {
-            final Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                final Map.Entry<String, Object> entry = iterator.next();
-                final String key = entry.getKey();
-                if (key != null && !key.startsWith("$$paoding-rose")) {
-                    cloneAndFiltered.put(key, entry.getValue());
+    /**
+     * 声明这个model将被其他线程(比如portal、pipe的窗口)共享：此后的读写都需要同步。
+     * <p>
+     * 应在其他线程开始使用它之前调用；调用多次没有副作用。
+     */
+    public void share() {
+        if (mutex == null) {
+            synchronized (this) {
+                if (mutex == null) {
+                    mutex = new Object();
                 }
             }
         }
-        return Collections.unmodifiableMap(cloneAndFiltered);
+    }
+
+    /**
+     * 是否已经被多个线程共享
+     * 
+     * @return
+     */
+    public boolean isShared() {
+        return mutex != null;
+    }
+
+    /**
+     * 返回model中的属性(不包括框架内部的属性)；没有共享时返回的是只读的视图，之后的修改会反映在其中
+     */
+    public Map<String, Object> getAttributes() {
+        final Object mutex = this.mutex;
+        if (mutex == null) {
+            if (attributes == null) {
+                attributes = Collections.unmodifiableMap(map);
+            }
+            return attributes;
+        }
+        synchronized (mutex) {
+            return Collections.unmodifiableMap(new HashMap<String, Object>(map));
+        }
     }
 
     @Override
@@ -70,8 +108,13 @@ public class ModelImpl implements Model {
         if (value instanceof String) {
             value = PlaceHolderUtils.resolve((String) value, invocation);
         }
-        synchronized (mutex) {
-            map.put(name, value);
+        final Object mutex = this.mutex;
+        if (mutex == null) {
+            put(name, value);
+        } else {
+            synchronized (mutex) {
+                put(name, value);
+            }
         }
         if (logger.isDebugEnabled()) {
             logger.debug("add attribute to model: " + name + "=" + value);
@@ -79,6 +122,43 @@ public class ModelImpl implements Model {
         return this;
     }
 
+    /**
+     * 把action方法的参数放入model，名字或值为null的参数跳过；已经以同一个对象放入model的参数不再重复放入
+     * 
+     * @param names 参数名
+     * @param values 参数值，和names一一对应
+     */
+    public void addParameters(String[] names, Object[] values) {
+        final Object mutex = this.mutex;
+        if (mutex == null) {
+            putParameters(names, values);
+        } else {
+            synchronized (mutex) {
+                putParameters(names, values);
+            }
+        }
+    }
+
+    private void putParameters(String[] names, Object[] values) {
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            Object value = values[i];
+            if (name == null || value == null) {
+                continue;
+            }
+            if (value instanceof String) {
+                // 只有含有占位符的才可能因为重复解析而改变，这时才需要先判断是否已经放入
+                if (((String) value).indexOf(PlaceHolderUtils.PLACEHOLDER_PREFIX) != -1) {
+                    if (lookup(name) != value) {
+                        put(name, PlaceHolderUtils.resolve((String) value, invocation));
+                    }
+                    continue;
+                }
+            }
+            put(name, value);
+        }
+    }
+
     @Override
     public Model add(Object value) {
         if (value != null) {
@@ -95,15 +175,23 @@ public class ModelImpl implements Model {
 
     @Override
     public boolean contains(String name) {
+        final Object mutex = this.mutex;
+        if (mutex == null) {
+            return containsKey(name);
+        }
         synchronized (mutex) {
-            return map.containsKey(name);
+            return containsKey(name);
         }
     }
 
     @Override
     public Object get(String name) {
+        final Object mutex = this.mutex;
+        if (mutex == null) {
+            return lookup(name);
+        }
         synchronized (mutex) {
-            return map.get(name);
+            return lookup(name);
         }
     }
 
@@ -125,8 +213,13 @@ public class ModelImpl implements Model {
         if (name == null) {
             return this;
         }
-        synchronized (mutex) {
-            map.remove(name);
+        final Object mutex = this.mutex;
+        if (mutex == null) {
+            delete(name);
+        } else {
+            synchronized (mutex) {
+                delete(name);
+            }
         }
         return this;
     }
@@ -135,4 +228,45 @@ public class ModelImpl implements Model {
         return invocation;
     }
 
+    // 以下方法由调用者负责同步
+
+    private static boolean isInternal(String name) {
+        return name != null && name.startsWith(INTERNAL_PREFIX);
+    }
+
+    private void put(String name, Object value) {
+        if (isInternal(name)) {
+            if (internals == null) {
+                internals = new HashMap<String, Object>(4);
+            }
+            internals.put(name, value);
+        } else {
+            map.put(name, value);
+        }
+    }
+
+    private Object lookup(String name) {
+        if (isInternal(name)) {
+            return internals == null ? null : internals.get(name);
+        }
+        return map.get(name);
+    }
+
+    private boolean containsKey(String name) {
+        if (isInternal(name)) {
+            return internals != null && internals.containsKey(name);
+        }
+        return map.containsKey(name);
+    }
+
+    private void delete(String name) {
+        if (isInternal(name)) {
+            if (internals != null) {
+                internals.remove(name);
+            }
+        } else {
+            map.remove(name);
+        }
+    }
+
 }
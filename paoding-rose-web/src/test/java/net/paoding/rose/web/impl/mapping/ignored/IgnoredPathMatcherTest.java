@@ -0,0 +1,159 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.mapping.ignored;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import net.paoding.rose.web.RequestPath;
+import net.paoding.rose.web.annotation.ReqMethod;
+
+/**
+ * {@link IgnoredPathMatcher} 的结果必须和逐个调用 {@link IgnoredPath#hit(RequestPath)} 相同
+ *
+ */
+public class IgnoredPathMatcherTest extends TestCase {
+
+    private static final String[] SEGMENTS = { "", "/", "a", "b", "ab", ".", "x", "/a", "/b" };
+
+    private static final String[] REGEXES = { "/a.*", ".*\\.x", "/(a|b)+", "a|/b", "(a)\\1.*",
+            "(/)(b)\\2?", "[ab]*", "/b?a*", ".*", "", "(?<x>/)a*", "(?<x>a)\\.?x?",
+            "/\\Qa", ".*\\Q.x", "\\Q/\\E(?<=/)b*", "\\\\Q|a" };
+
+    public void testEmpty() {
+        IgnoredPathMatcher matcher = IgnoredPathMatcher.compile(new IgnoredPath[0]);
+        assertFalse(matcher.hit(path("")));
+        assertFalse(matcher.hit(path("/a")));
+    }
+
+    public void testCounts() {
+        IgnoredPathMatcher matcher = IgnoredPathMatcher.compile(new IgnoredPath[] {
+                new IgnoredPathStarts("/views/"), new IgnoredPathEquals("/favicon.ico") });
+        assertTrue(matcher.pass(path("/views/a.jsp")));
+        assertTrue(matcher.pass(path("/favicon.ico")));
+        assertFalse(matcher.pass(path("/favicon.ico2")));
+        assertEquals(2, matcher.getIgnoredCount());
+        assertEquals(1, matcher.getDispatchedCount());
+    }
+
+    public void testCombinable() {
+        assertTrue(IgnoredPathMatcher.isCombinable("/a.*"));
+        assertTrue(IgnoredPathMatcher.isCombinable("\\Q/a(\\E.*"));
+        assertTrue(IgnoredPathMatcher.isCombinable("(?<=/)a(?<!b)"));
+        assertTrue(IgnoredPathMatcher.isCombinable("\\Q\\1(?<x>\\E"));
+        assertTrue(IgnoredPathMatcher.isCombinable("\\\\Q"));
+        assertFalse(IgnoredPathMatcher.isCombinable("(a)\\1"));
+        assertFalse(IgnoredPathMatcher.isCombinable("(?<x>a)\\k<x>"));
+        assertFalse(IgnoredPathMatcher.isCombinable("(?<x>a)b"));
+        assertFalse(IgnoredPathMatcher.isCombinable("/\\Qa"));
+        assertFalse(IgnoredPathMatcher.isCombinable("\\Qa\\E\\Q"));
+    }
+
+    public void testConcurrentCounts() throws InterruptedException {
+        final IgnoredPathMatcher matcher = IgnoredPathMatcher.compile(new IgnoredPath[] {
+                new IgnoredPathStarts("/views/") });
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        matcher.pass(path("/views/a.jsp"));
+                        matcher.pass(path("/a"));
+                        matcher.pass(path("/b"));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8000, matcher.getIgnoredCount());
+        assertEquals(16000, matcher.getDispatchedCount());
+    }
+
+    public void testSameAsLinear() {
+        Random random = new Random(20100101L);
+        for (int round = 0; round < 500; round++) {
+            IgnoredPath[] ignoredPaths = randomIgnoredPaths(random);
+            IgnoredPathMatcher matcher = IgnoredPathMatcher.compile(ignoredPaths);
+            for (int i = 0; i < 100; i++) {
+                RequestPath requestPath = path(randomString(random));
+                assertEquals(matcher + " " + requestPath.getRosePath(), linear(ignoredPaths,
+                        requestPath), matcher.hit(requestPath));
+            }
+        }
+    }
+
+    /** RoseFilter原来的判断方式 */
+    private boolean linear(IgnoredPath[] ignoredPaths, RequestPath requestPath) {
+        for (IgnoredPath ignoredPath : ignoredPaths) {
+            if (ignoredPath.hit(requestPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private IgnoredPath[] randomIgnoredPaths(Random random) {
+        int size = random.nextInt(8);
+        List<IgnoredPath> list = new ArrayList<IgnoredPath>(size);
+        for (int i = 0; i < size; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    list.add(new IgnoredPathEquals(randomString(random)));
+                    break;
+                case 1:
+                    list.add(new IgnoredPathStarts(randomString(random)));
+                    break;
+                case 2:
+                    list.add(new IgnoredPathEnds(randomString(random)));
+                    break;
+                case 3:
+                    list.add(new IgnoredPathRegexMatch(REGEXES[random.nextInt(REGEXES.length)]));
+                    break;
+                default:
+                    // IgnoredPathMatcher不认识的实现
+                    final int length = random.nextInt(4);
+                    list.add(new IgnoredPath() {
+
+                        @Override
+                        public boolean hit(RequestPath requestPath) {
+                            return requestPath.getRosePath().length() == length;
+                        }
+                    });
+            }
+        }
+        return list.toArray(new IgnoredPath[list.size()]);
+    }
+
+    private String randomString(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int n = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            sb.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private RequestPath path(String rosePath) {
+        return new RequestPath(ReqMethod.GET, rosePath, "", null);
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.paoding.rose.RoseFilter;
+import net.paoding.rose.web.impl.thread.ServletProxies.Handler;
+
+/**
+ * 度量一次 {@link RoseFilter#doFilter} 分配的字节数(相当于JMH的gc.alloc.rate.norm)和耗时。
+ * <p>
+ * 构建里没有JMH，这里按它的方式手工执行：先预热若干轮，再测量若干轮，每轮用
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * 取得当前线程在这一轮分配的字节数，除以调用次数；输出各轮的最小值和平均值。
+ * 请求和响应是只实现了所需方法的动态代理，不经过容器，分配的字节基本都来自Rose。
+ * <p>
+ * 不是单元测试，不会被surefire执行。编译测试代码后运行：
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;依赖&gt; \
+ *     net.paoding.rose.web.impl.thread.DispatchAllocationBenchmark [调用次数] [测量轮数]
+ * </pre>
+ *
+ * 依次度量常量地址(/bench/text)和带变量的地址(/bench/user/123)，各自在不使用和使用匹配结果缓存时的结果。
+ *
+ */
+public class DispatchAllocationBenchmark {
+
+    private static final String[] PATHS = { "/bench/text", "/bench/user/123" };
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File webapp = File.createTempFile("rose-webapp", "");
+        webapp.delete();
+        new File(webapp, "WEB-INF").mkdirs();
+        try {
+            for (int matchCacheSize : new int[] { 0, 1024 }) {
+                RoseFilter filter = startFilter(webapp, matchCacheSize);
+                try {
+                    for (String path : PATHS) {
+                        run(filter, path, matchCacheSize, operations, iterations);
+                    }
+                } finally {
+                    filter.destroy();
+                }
+            }
+        } finally {
+            new File(webapp, "WEB-INF").delete();
+            webapp.delete();
+        }
+    }
+
+    private static void run(RoseFilter filter, String path, int matchCacheSize, int operations,
+            int iterations) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        HttpServletRequest request = request(path, attributes);
+        HttpServletResponse response = response();
+        FilterChain chain = new FilterChain() {
+
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                throw new IllegalStateException("not matched: "
+                        + ((HttpServletRequest) request).getRequestURI());
+            }
+        };
+        long[] bytes = new long[iterations];
+        long[] nanos = new long[iterations];
+        for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+            long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            long begin = System.nanoTime();
+            for (int j = 0; j < operations; j++) {
+                attributes.clear();
+                filter.doFilter(request, response, chain);
+            }
+            long end = System.nanoTime();
+            long allocatedAfter = threadMXBean.getThreadAllocatedBytes(threadId);
+            if (i >= 0) {
+                bytes[i] = (allocatedAfter - allocatedBefore) / operations;
+                nanos[i] = (end - begin) / operations;
+            }
+        }
+        System.out.println(String.format("%-18s matchCacheSize=%-5d alloc: min %5d, avg %5d B/op"
+                + "   time: min %6d, avg %6d ns/op", path, matchCacheSize, min(bytes),
+                avg(bytes), min(nanos), avg(nanos)));
+    }
+
+    private static long min(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[0];
+    }
+
+    private static long avg(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static RoseFilter startFilter(final File webapp, int matchCacheSize)
+            throws Exception {
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("load", "net.paoding.rose.web.impl.thread");
+        params.put("matchCacheSize", String.valueOf(matchCacheSize));
+        final Map<String, Object> contextAttributes = new HashMap<String, Object>();
+        final ServletContext servletContext = ServletProxies.proxy(ServletContext.class, new Handler() {
+
+            @Override
+            Object handle(String name, Object[] args) throws Exception {
+                if (name.equals("getAttribute")) {
+                    return contextAttributes.get(args[0]);
+                } else if (name.equals("setAttribute")) {
+                    contextAttributes.put((String) args[0], args[1]);
+                } else if (name.equals("removeAttribute")) {
+                    contextAttributes.remove(args[0]);
+                } else if (name.equals("getAttributeNames")
+                        || name.equals("getInitParameterNames")) {
+                    return Collections.enumeration(Collections.emptyList());
+                } else if (name.equals("getRealPath")) {
+                    return new File(webapp, (String) args[0]).getPath();
+                } else if (name.equals("getResource")) {
+                    File file = new File(webapp, (String) args[0]);
+                    return file.exists() ? file.toURI().toURL() : null;
+                } else if (name.equals("getContextPath")) {
+                    return "";
+                } else if (name.equals("getMajorVersion")) {
+                    return 3;
+                } else if (name.equals("getServletContextName")
+                        || name.equals("getServerInfo")) {
+                    return "benchmark";
+                } else if (name.equals("getClassLoader")) {
+                    return DispatchAllocationBenchmark.class.getClassLoader();
+                }
+                return null;
+            }
+        });
+        RoseFilter filter = new RoseFilter();
+        filter.init(ServletProxies.proxy(FilterConfig.class, new Handler() {
+
+            @Override
+            Object handle(String name, Object[] args) {
+                if (name.equals("getServletContext")) {
+                    return servletContext;
+                } else if (name.equals("getInitParameter")) {
+                    return params.get(args[0]);
+                } else if (name.equals("getInitParameterNames")) {
+                    return Collections.enumeration(params.keySet());
+                } else if (name.equals("getFilterName")) {
+                    return "roseFilter";
+                }
+                return null;
+            }
+        }));
+        return filter;
+    }
+
+    private static HttpServletRequest request(final String uri,
+            final Map<String, Object> attributes) {
+        final StringBuffer url = new StringBuffer("http://localhost" + uri);
+        return ServletProxies.proxy(HttpServletRequest.class, new Handler() {
+
+            @Override
+            Object handle(String name, Object[] args) {
+                if (name.equals("getRequestURI") || name.equals("getServletPath")) {
+                    return uri;
+                } else if (name.equals("getRequestURL")) {
+                    return url;
+                } else if (name.equals("getContextPath")) {
+                    return "";
+                } else if (name.equals("getMethod")) {
+                    return "GET";
+                } else if (name.equals("getCharacterEncoding")) {
+                    return "UTF-8";
+                } else if (name.equals("getAttribute")) {
+                    return attributes.get(args[0]);
+                } else if (name.equals("setAttribute")) {
+                    attributes.put((String) args[0], args[1]);
+                } else if (name.equals("removeAttribute")) {
+                    attributes.remove(args[0]);
+                } else if (name.equals("getAttributeNames")) {
+                    return Collections.enumeration(attributes.keySet());
+                } else if (name.equals("getParameterMap")) {
+                    return Collections.emptyMap();
+                } else if (name.equals("getParameterNames") || name.equals("getHeaderNames")
+                        || name.equals("getHeaders")) {
+                    return Collections.enumeration(Collections.emptyList());
+                } else if (name.equals("getLocale")) {
+                    return Locale.getDefault();
+                } else if (name.equals("getIntHeader")) {
+                    return -1;
+                } else if (name.equals("getDateHeader")) {
+                    return -1L;
+                } else if (name.equals("getDispatcherType")) {
+                    return DispatcherType.REQUEST;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static HttpServletResponse response() {
+        final ServletOutputStream out = new ServletOutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        final PrintWriter writer = new PrintWriter(new Writer() {
+
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return ServletProxies.proxy(HttpServletResponse.class, new Handler() {
+
+            @Override
+            Object handle(String name, Object[] args) {
+                if (name.equals("getOutputStream")) {
+                    return out;
+                } else if (name.equals("getWriter")) {
+                    return writer;
+                } else if (name.equals("getCharacterEncoding")) {
+                    return "UTF-8";
+                } else if (name.equals("getStatus")) {
+                    return 200;
+                } else if (name.equals("getBufferSize")) {
+                    return 8192;
+                } else if (name.equals("getLocale")) {
+                    return Locale.getDefault();
+                }
+                return null;
+            }
+        });
+    }
+}
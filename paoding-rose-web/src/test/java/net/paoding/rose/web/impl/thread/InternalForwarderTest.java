@@ -0,0 +1,425 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+import net.paoding.rose.RoseFilter;
+import net.paoding.rose.web.impl.thread.ServletProxies.Handler;
+import net.paoding.rose.web.impl.thread.controllers.FwdController;
+
+import org.springframework.web.util.WebUtils;
+
+/**
+ * 开启internalForward时，forward的目标在Rose内部执行：返回的异步结果以Servlet 3的异步方式处理，
+ * ":continue"交给容器，能在虚拟线程中执行
+ * <p>
+ * 容器由几个动态代理模拟：请求只支持这里用到的方法，forward直接交回RoseFilter。
+ *
+ */
+public class InternalForwarderTest extends TestCase {
+
+    private File webapp;
+
+    private RoseFilter filter;
+
+    /** 交给容器其他组件的请求地址 */
+    private final List<String> passed = Collections.synchronizedList(new ArrayList<String>());
+
+    private final FilterChain chain = new FilterChain() {
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) {
+            passed.add(((HttpServletRequest) request).getRequestURI());
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        webapp = File.createTempFile("rose-webapp", "");
+        webapp.delete();
+        new File(webapp, "WEB-INF").mkdirs();
+        synchronized (FwdController.completions) {
+            FwdController.completions.clear();
+        }
+        FwdController.continued.set(0);
+        FwdController.release = new CountDownLatch(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (filter != null) {
+            filter.destroy();
+        }
+        delete(webapp);
+    }
+
+    public void testAsyncResult() throws Exception {
+        startFilter(false);
+        FwdController.release = new CountDownLatch(1);
+        Exchange exchange = new Exchange("/fwd/async");
+        filter.doFilter(exchange.request, exchange.response, chain);
+
+        // 容器线程已经返回，forward的目标还在等待Callable的结果
+        assertTrue(exchange.asyncStarted);
+        assertEquals(1, exchange.completed.getCount());
+        assertEquals(0, FwdController.completions.size());
+
+        FwdController.release.countDown();
+        assertTrue(exchange.completed.await(5, TimeUnit.SECONDS));
+        assertEquals("callable", exchange.body());
+        // 发起forward的请求在目标完成之后才结束
+        assertEquals(Arrays.asList("/fwd/callable", "/fwd/async"), completions());
+    }
+
+    public void testContinue() throws Exception {
+        startFilter(false);
+        Exchange exchange = new Exchange("/fwd/continue");
+        filter.doFilter(exchange.request, exchange.response, chain);
+
+        // ":continue"的目标改由容器forward，RoseFilter不再执行一遍，直接交给容器的其他组件
+        assertEquals(Arrays.asList("/fwd/static.txt"), passed);
+        assertEquals(1, FwdController.continued.get());
+        assertEquals(200, exchange.status);
+        assertNull(exchange.attributes.get(InternalForwarder.CONTINUE_ATTR));
+        assertEquals(Arrays.asList("/fwd/continue"), completions());
+    }
+
+    public void testVirtualThread() throws Exception {
+        if (!VirtualThreadExecutor.isVirtualThreadSupported()) {
+            return;
+        }
+        startFilter(true);
+        Exchange exchange = new Exchange("/fwd/virtual");
+        filter.doFilter(exchange.request, exchange.response, chain);
+        assertTrue(exchange.completed.await(5, TimeUnit.SECONDS));
+        assertEquals("virtual=true", exchange.body());
+        assertEquals(Arrays.asList("/fwd/thread", "/fwd/virtual"), completions());
+    }
+
+    private List<String> completions() {
+        synchronized (FwdController.completions) {
+            return new ArrayList<String>(FwdController.completions);
+        }
+    }
+
+    private void startFilter(boolean virtualThreads) throws Exception {
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("load", "net.paoding.rose");
+        params.put("internalForward", "true");
+        if (virtualThreads) {
+            params.put("virtualThreads", "true");
+        }
+        final ServletContext servletContext = ServletProxies.proxy(ServletContext.class, new Handler() {
+
+            private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+            @Override
+            Object handle(String name, Object[] args) throws Exception {
+                if (name.equals("getAttribute")) {
+                    return attributes.get(args[0]);
+                } else if (name.equals("setAttribute")) {
+                    if (args[1] == null) {
+                        attributes.remove(args[0]);
+                    } else {
+                        attributes.put((String) args[0], args[1]);
+                    }
+                } else if (name.equals("removeAttribute")) {
+                    attributes.remove(args[0]);
+                } else if (name.equals("getAttributeNames")
+                        || name.equals("getInitParameterNames")) {
+                    return Collections.enumeration(attributes.keySet());
+                } else if (name.equals("getRealPath")) {
+                    return new File(webapp, (String) args[0]).getPath();
+                } else if (name.equals("getResource")) {
+                    File file = new File(webapp, (String) args[0]);
+                    return file.exists() ? file.toURI().toURL() : null;
+                } else if (name.equals("getContextPath")) {
+                    return "";
+                } else if (name.equals("getMajorVersion")) {
+                    return 3;
+                } else if (name.equals("getServletContextName")
+                        || name.equals("getServerInfo")) {
+                    return "test";
+                } else if (name.equals("getClassLoader")) {
+                    return getClass().getClassLoader();
+                }
+                return null;
+            }
+        });
+        filter = new RoseFilter();
+        filter.init(ServletProxies.proxy(FilterConfig.class, new Handler() {
+
+            @Override
+            Object handle(String name, Object[] args) {
+                if (name.equals("getServletContext")) {
+                    return servletContext;
+                } else if (name.equals("getInitParameter")) {
+                    return params.get(args[0]);
+                } else if (name.equals("getInitParameterNames")) {
+                    return Collections.enumeration(params.keySet());
+                } else if (name.equals("getFilterName")) {
+                    return "roseFilter";
+                }
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * 一次请求和它的响应
+     */
+    private class Exchange {
+
+        final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+
+        volatile boolean asyncStarted;
+
+        volatile int status = 200;
+
+        String contentType;
+
+        String characterEncoding;
+
+        PrintWriter writer;
+
+        AsyncContext asyncContext;
+
+        final HttpServletRequest request;
+
+        final HttpServletResponse response;
+
+        Exchange(String uri) {
+            this.request = request(uri, null);
+            this.response = ServletProxies.proxy(HttpServletResponse.class, new Handler() {
+
+                @Override
+                Object handle(String name, Object[] args) throws Exception {
+                    if (name.equals("getOutputStream")) {
+                        return new ServletOutputStream() {
+
+                            @Override
+                            public void write(int b) {
+                                content.write(b);
+                            }
+                        };
+                    } else if (name.equals("getWriter")) {
+                        if (writer == null) {
+                            writer = new PrintWriter(new OutputStreamWriter(content, "UTF-8"));
+                        }
+                        return writer;
+                    } else if (name.equals("setStatus") || name.equals("sendError")) {
+                        status = (Integer) args[0];
+                    } else if (name.equals("getStatus")) {
+                        return status;
+                    } else if (name.equals("setContentType")) {
+                        contentType = (String) args[0];
+                    } else if (name.equals("getContentType")) {
+                        return contentType;
+                    } else if (name.equals("setCharacterEncoding")) {
+                        characterEncoding = (String) args[0];
+                    } else if (name.equals("getCharacterEncoding")) {
+                        return characterEncoding == null ? "ISO-8859-1" : characterEncoding;
+                    } else if (name.equals("resetBuffer") || name.equals("reset")) {
+                        content.reset();
+                    } else if (name.equals("getBufferSize")) {
+                        return 8192;
+                    } else if (name.equals("getLocale")) {
+                        return Locale.getDefault();
+                    } else if (name.startsWith("encode")) {
+                        return args[0];
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * @param forwardedFrom 容器forward时发起forward的请求，否则为null
+         */
+        HttpServletRequest request(final String uri, final HttpServletRequest forwardedFrom) {
+            return ServletProxies.proxy(HttpServletRequest.class, new Handler() {
+
+                @Override
+                Object handle(String name, Object[] args) throws Exception {
+                    if (name.equals("getRequestURI") || name.equals("getServletPath")) {
+                        return uri;
+                    } else if (name.equals("getRequestURL")) {
+                        return new StringBuffer("http://localhost" + uri);
+                    } else if (name.equals("getContextPath")) {
+                        return "";
+                    } else if (name.equals("getMethod")) {
+                        return "GET";
+                    } else if (name.equals("getScheme")) {
+                        return "http";
+                    } else if (name.equals("getServerName")) {
+                        return "localhost";
+                    } else if (name.equals("getServerPort")) {
+                        return 80;
+                    } else if (name.equals("getCharacterEncoding")) {
+                        return "UTF-8";
+                    } else if (name.equals("getAttribute")) {
+                        if (forwardedFrom != null
+                                && WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE.equals(args[0])) {
+                            return forwardedFrom.getRequestURI();
+                        }
+                        return attributes.get(args[0]);
+                    } else if (name.equals("setAttribute")) {
+                        if (args[1] == null) {
+                            attributes.remove(args[0]);
+                        } else {
+                            attributes.put((String) args[0], args[1]);
+                        }
+                    } else if (name.equals("removeAttribute")) {
+                        attributes.remove(args[0]);
+                    } else if (name.equals("getParameterMap")) {
+                        return Collections.emptyMap();
+                    } else if (name.equals("getAttributeNames")) {
+                        return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+                    } else if (name.equals("getParameterNames") || name.equals("getHeaderNames")
+                            || name.equals("getHeaders") || name.equals("getLocales")) {
+                        return Collections.enumeration(Collections.emptyList());
+                    } else if (name.equals("getLocale")) {
+                        return Locale.getDefault();
+                    } else if (name.equals("getIntHeader")) {
+                        return -1;
+                    } else if (name.equals("getDateHeader")) {
+                        return -1L;
+                    } else if (name.equals("getDispatcherType")) {
+                        return forwardedFrom == null ? DispatcherType.REQUEST
+                                : DispatcherType.FORWARD;
+                    } else if (name.equals("getRequestDispatcher")) {
+                        return dispatcher((String) args[0]);
+                    } else if (name.equals("isAsyncSupported")) {
+                        return true;
+                    } else if (name.equals("isAsyncStarted")) {
+                        return asyncStarted;
+                    } else if (name.equals("startAsync")) {
+                        return startAsync();
+                    } else if (name.equals("getAsyncContext")) {
+                        return asyncContext;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /** 和容器一样，forward的请求经过RoseFilter */
+        RequestDispatcher dispatcher(final String path) {
+            return ServletProxies.proxy(RequestDispatcher.class, new Handler() {
+
+                @Override
+                Object handle(String name, Object[] args) throws Exception {
+                    if (name.equals("forward")) {
+                        content.reset();
+                        filter.doFilter(request(path, request), response, chain);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+        }
+
+        synchronized AsyncContext startAsync() {
+            if (asyncStarted) {
+                throw new IllegalStateException("async has already been started");
+            }
+            asyncStarted = true;
+            asyncContext = ServletProxies.proxy(AsyncContext.class, new Handler() {
+
+                @Override
+                Object handle(String name, Object[] args) throws Exception {
+                    if (name.equals("getRequest")) {
+                        return request;
+                    } else if (name.equals("getResponse")) {
+                        return response;
+                    } else if (name.equals("addListener")) {
+                        listeners.add((AsyncListener) args[0]);
+                    } else if (name.equals("start")) {
+                        new Thread((Runnable) args[0]).start();
+                    } else if (name.equals("complete")) {
+                        if (writer != null) {
+                            writer.flush();
+                        }
+                        for (AsyncListener listener : listeners) {
+                            listener.onComplete(new AsyncEvent(asyncContext));
+                        }
+                        asyncStarted = false;
+                        completed.countDown();
+                    } else if (name.equals("getTimeout")) {
+                        return 0L;
+                    } else if (!name.equals("setTimeout")) {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    return null;
+                }
+            });
+            return asyncContext;
+        }
+
+        String body() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            return content.toString("UTF-8");
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2007-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.paoding.rose.web.impl.thread;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 用动态代理模拟容器对象(请求、响应、ServletContext等)，只实现用到的方法
+ *
+ */
+class ServletProxies {
+
+    /**
+     * 动态代理的处理：只按方法名区分，没有处理的方法返回null(基本类型返回0、false)
+     */
+    static abstract class Handler implements InvocationHandler {
+
+        abstract Object handle(String name, Object[] args) throws Exception;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("hashCode") && method.getParameterTypes().length == 0) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("equals") && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            } else if (name.equals("toString") && method.getParameterTypes().length == 0) {
+                return method.getDeclaringClass().getSimpleName() + "@"
+                        + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            Object result = handle(name, args);
+            if (result == null && method.getReturnType().isPrimitive()) {
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    return false;
+                } else if (type == long.class) {
+                    return 0L;
+                } else if (type != void.class) {
+                    return 0;
+                }
+            }
+            return result;
+        }
+    }
+
+    static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(ServletProxies.class.getClassLoader(),
+                new Class<?>[] { type }, handler));
+    }
+}
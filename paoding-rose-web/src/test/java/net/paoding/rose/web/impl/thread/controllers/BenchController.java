@@ -0,0 +1,20 @@
+package net.paoding.rose.web.impl.thread.controllers;
+
+import net.paoding.rose.web.annotation.Param;
+import net.paoding.rose.web.annotation.rest.Get;
+
+/**
+ * DispatchAllocationBenchmark所用的控制器
+ */
+public class BenchController {
+
+    @Get("text")
+    public String text() {
+        return "@ok";
+    }
+
+    @Get("user/{id:[0-9]+}")
+    public String user(@Param("id") long id) {
+        return "@ok";
+    }
+}
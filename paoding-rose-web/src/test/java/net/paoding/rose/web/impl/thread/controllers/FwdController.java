@@ -0,0 +1,84 @@
+package net.paoding.rose.web.impl.thread.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.paoding.rose.web.Invocation;
+import net.paoding.rose.web.annotation.VirtualThread;
+import net.paoding.rose.web.annotation.rest.Get;
+import net.paoding.rose.web.impl.thread.AfterCompletion;
+
+/**
+ * InternalForwarderTest所用的控制器
+ */
+public class FwdController {
+
+    /** 按完成的先后记录的请求地址 */
+    public static final List<String> completions = new ArrayList<String>();
+
+    public static final AtomicInteger continued = new AtomicInteger();
+
+    /** callable()返回的Callable等到它才返回结果 */
+    public static volatile CountDownLatch release = new CountDownLatch(0);
+
+    private static void recordCompletion(Invocation inv) {
+        inv.addAfterCompletion(new AfterCompletion() {
+
+            @Override
+            public void afterCompletion(Invocation inv, Throwable ex) throws Exception {
+                synchronized (completions) {
+                    completions.add(inv.getRequestPath().getUri());
+                }
+            }
+        });
+    }
+
+    @Get("async")
+    public String async(Invocation inv) {
+        recordCompletion(inv);
+        return "f:/fwd/callable";
+    }
+
+    @Get("callable")
+    public Callable<String> callable(Invocation inv) {
+        recordCompletion(inv);
+        return new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                release.await(5, TimeUnit.SECONDS);
+                return "@callable";
+            }
+        };
+    }
+
+    @Get("continue")
+    public String toContinue(Invocation inv) {
+        recordCompletion(inv);
+        return "f:/fwd/static.txt";
+    }
+
+    @Get("static.txt")
+    public String continued() {
+        continued.incrementAndGet();
+        return ":continue";
+    }
+
+    @VirtualThread(false)
+    @Get("virtual")
+    public String virtual(Invocation inv) {
+        recordCompletion(inv);
+        return "f:/fwd/thread";
+    }
+
+    @Get("thread")
+    public String thread(Invocation inv) throws Exception {
+        recordCompletion(inv);
+        Object virtual = Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        return "@virtual=" + virtual;
+    }
+}